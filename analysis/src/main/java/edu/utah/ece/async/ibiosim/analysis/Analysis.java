@@ -72,6 +72,7 @@ import edu.utah.ece.async.ibiosim.dataModels.util.observe.BioObserver;
  *    <li>-sErr [value]: positive double for relative error</li>
  *    <li>-sd [value]: long for random seed</li>
  *    <li>-r [value]: integer for number of runs</li>
+ *    <li>-nt [value]: integer for number of threads used to run replicates</li>
  *    <li>-sim [value]: simulation type. Options are: ode, hode, ssa, hssa, dfba, jode, jssa.</li>
  *    <li>-data [value]: graph data type. Options are: csv, tsd.</li>
  *  </ul>
@@ -97,6 +98,7 @@ public class Analysis implements BioObserver
   private static final String rErr = "Relative Error";
   private static final String sd = "Random Seed";
   private static final String r = "Number of Runs";
+  private static final String nt = "Number of Threads";
   private static final String sim = "Simulation";
   private static final String data = "Graph Data Type";
 
@@ -131,6 +133,7 @@ public class Analysis implements BioObserver
     System.err.println("\t -sErr [value]: relative error");
     System.err.println("\t -sd [value]: random seed");
     System.err.println("\t -r [value]: number of runs");
+    System.err.println("\t -nt [value]: number of threads");
     System.err.println("\t -sim [value]: simulation type");
     System.err.println("\t -data [value]: output data type");
     System.exit(1);
@@ -205,6 +208,9 @@ public class Analysis implements BioObserver
       case "-r":
         analysis.propertiesMap.put(r, value);
         break;
+      case "-nt":
+        analysis.propertiesMap.put(nt, value);
+        break;
       case "-sim":
         analysis.propertiesMap.put(sim, value);
         break;
@@ -512,6 +518,10 @@ public class Analysis implements BioObserver
       {
         simProperties.setRun(Integer.parseInt(value));
       }
+      else if(key == nt)
+      {
+        simProperties.setThreads(Integer.parseInt(value));
+      }
       else if(key == sim)
       {
         if(value.equals("ode"))
@@ -37,6 +37,7 @@ import edu.utah.ece.async.ibiosim.analysis.markov.BuildStateGraphThread;
 import edu.utah.ece.async.ibiosim.analysis.markov.PerformSteadyStateMarkovAnalysisThread;
 import edu.utah.ece.async.ibiosim.analysis.markov.PerformTransientMarkovAnalysisThread;
 import edu.utah.ece.async.ibiosim.analysis.markov.StateGraph;
+import edu.utah.ece.async.ibiosim.analysis.markov.SteadyStateSolver;
 import edu.utah.ece.async.ibiosim.analysis.markov.StateGraph.Property;
 import edu.utah.ece.async.ibiosim.analysis.properties.AdvancedProperties;
 import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
@@ -270,6 +271,7 @@ public class Run extends CoreObservable implements ActionListener {
       }
     }
     sg = new StateGraph(lhpnFile);
+    sg.setThreads(properties.getSimulationProperties().getThreads());
     this.addObservable(sg);
     BuildStateGraphThread buildStateGraph = new BuildStateGraphThread(sg, null);
     buildStateGraph.start();
@@ -293,6 +295,8 @@ public class Run extends CoreObservable implements ActionListener {
     } else if (sim.equals("steady-state-markov-chain-analysis")) {
       if (!sg.getStop()) {
         message.setLog("Performing steady state Markov chain analysis.");
+        this.notifyObservers(message);
+        sg.setSteadyStateMethod(SteadyStateSolver.Method.fromString(properties.getSimulationProperties().getSteadyStateSolver()));
         PerformSteadyStateMarkovAnalysisThread performMarkovAnalysis = new PerformSteadyStateMarkovAnalysisThread(sg, null);
         if (filename.contains(".lpn")) {
           performMarkovAnalysis.start(properties.getSimulationProperties().getAbsError(), null);
@@ -313,6 +317,8 @@ public class Run extends CoreObservable implements ActionListener {
         }
         performMarkovAnalysis.join();
         if (!sg.getStop()) {
+          message.setLog("Steady state solver finished after " + sg.getSteadyStateIterations() + " iterations with residual " + sg.getSteadyStateResidual() + ".");
+          this.notifyObservers(message);
           String simrep = sg.getMarkovResults();
           if (simrep != null) {
             FileOutputStream simrepstream = new FileOutputStream(new File(properties.getDirectory() + File.separator + "sim-rep.txt"));
@@ -436,6 +442,9 @@ public class Run extends CoreObservable implements ActionListener {
     } else if (sim.equals("SSA-Direct (Hierarchical)")) {
       dynSim = new DynamicSimulation(SimulationType.HIERARCHICAL_DIRECT);
       dynSim.addObservable(this);
+    } else if (sim.equals("SSA-Next Reaction (Hierarchical)")) {
+      dynSim = new DynamicSimulation(SimulationType.HIERARCHICAL_NEXT_REACTION);
+      dynSim.addObservable(this);
     } else if (sim.equals("Mixed-Hierarchical")) {
       dynSim = new DynamicSimulation(SimulationType.HIERARCHICAL_MIXED);
       dynSim.addObservable(this);
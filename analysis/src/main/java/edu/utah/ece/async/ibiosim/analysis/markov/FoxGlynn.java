@@ -0,0 +1,123 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.markov;
+
+/**
+ * Poisson weights for uniformization, truncated on both sides as in Fox and
+ * Glynn. The weights are computed outward from the mode starting at one, so
+ * they neither underflow nor overflow for large rates, and are normalized at
+ * the end.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class FoxGlynn {
+
+	private final int left;
+
+	private final int right;
+
+	private final double[] weights;
+
+	private FoxGlynn(int left, int right, double[] weights) {
+		this.left = left;
+		this.right = right;
+		this.weights = weights;
+	}
+
+	/**
+	 * Computes the truncation points and weights so that the probability mass
+	 * outside [left, right] is at most error.
+	 * 
+	 * @param rate
+	 *            the Poisson rate, which is the uniformization rate times the
+	 *            time step.
+	 * @param error
+	 *            the allowed truncation error.
+	 */
+	public static FoxGlynn compute(double rate, double error) {
+		if (rate <= 0) {
+			return new FoxGlynn(0, 0, new double[] { 1.0 });
+		}
+		double tailError = Math.max(error, Double.MIN_NORMAL) / 2;
+		int mode = (int) Math.floor(rate);
+		double total = 1.0;
+		// Walk right from the mode until the geometric bound on the tail is
+		// small enough
+		double weight = 1.0;
+		int right = mode;
+		while (true) {
+			double ratio = rate / (right + 1);
+			if (ratio < 1 && weight * ratio / (1 - ratio) <= tailError * total) {
+				break;
+			}
+			weight *= ratio;
+			right++;
+			total += weight;
+		}
+		// Walk left the same way
+		weight = 1.0;
+		int left = mode;
+		while (left > 0) {
+			double ratio = left / rate;
+			if (ratio < 1 && weight * ratio / (1 - ratio) <= tailError * total) {
+				break;
+			}
+			weight *= ratio;
+			left--;
+			total += weight;
+		}
+		double[] weights = new double[right - left + 1];
+		weights[mode - left] = 1.0;
+		for (int k = mode; k < right; k++) {
+			weights[k + 1 - left] = weights[k - left] * rate / (k + 1);
+		}
+		for (int k = mode; k > left; k--) {
+			weights[k - 1 - left] = weights[k - left] * k / rate;
+		}
+		total = 0;
+		for (double w : weights) {
+			total += w;
+		}
+		for (int k = 0; k < weights.length; k++) {
+			weights[k] /= total;
+		}
+		return new FoxGlynn(left, right, weights);
+	}
+
+	/**
+	 * Returns the left truncation point.
+	 */
+	public int getLeft() {
+		return left;
+	}
+
+	/**
+	 * Returns the right truncation point.
+	 */
+	public int getRight() {
+		return right;
+	}
+
+	/**
+	 * Returns the normalized weight of k jumps, which is zero outside the
+	 * truncation points.
+	 */
+	public double getWeight(int k) {
+		if (k < left || k > right) {
+			return 0.0;
+		}
+		return weights[k - left];
+	}
+}
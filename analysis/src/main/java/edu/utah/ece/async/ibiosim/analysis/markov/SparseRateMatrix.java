@@ -0,0 +1,143 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.markov;
+
+import java.util.stream.IntStream;
+
+/**
+ * The generator of a continuous-time Markov chain stored by incoming
+ * transitions in compressed sparse row form. Row i lists the states that move
+ * into state i together with their rates, and the exit rates are kept
+ * separately as the negated diagonal, so probability vectors can be advanced
+ * by pulling from predecessors without any locking.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SparseRateMatrix {
+
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	private final int numStates;
+
+	private final int[] rowPointers;
+
+	private final int[] sources;
+
+	private final double[] rates;
+
+	private final double[] exitRates;
+
+	private final int[] blocks;
+
+	/**
+	 * Creates a matrix from incoming transitions.
+	 * 
+	 * @param rowPointers
+	 *            for each state, the start of its incoming transitions, with
+	 *            the total number of transitions appended.
+	 * @param sources
+	 *            the source state of each incoming transition.
+	 * @param rates
+	 *            the rate of each incoming transition.
+	 * @param exitRates
+	 *            the total rate of leaving each state.
+	 */
+	public SparseRateMatrix(int[] rowPointers, int[] sources, double[] rates, double[] exitRates) {
+		this.numStates = exitRates.length;
+		this.rowPointers = rowPointers;
+		this.sources = sources;
+		this.rates = rates;
+		this.exitRates = exitRates;
+		this.blocks = partition(Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	/**
+	 * Splits the rows into blocks with about the same number of transitions.
+	 */
+	private int[] partition(int numBlocks) {
+		numBlocks = Math.max(1, Math.min(numBlocks, numStates));
+		int[] blocks = new int[numBlocks + 1];
+		long nonzeros = rowPointers[numStates] + (long) numStates;
+		int row = 0;
+		for (int b = 1; b < numBlocks; b++) {
+			long target = (nonzeros * b) / numBlocks;
+			while (row < numStates && rowPointers[row] + (long) row < target) {
+				row++;
+			}
+			blocks[b] = row;
+		}
+		blocks[numBlocks] = numStates;
+		return blocks;
+	}
+
+	public int getNumStates() {
+		return numStates;
+	}
+
+	public int getNumTransitions() {
+		return rowPointers[numStates];
+	}
+
+	public int[] getRowPointers() {
+		return rowPointers;
+	}
+
+	public int[] getSources() {
+		return sources;
+	}
+
+	public double[] getRates() {
+		return rates;
+	}
+
+	public double[] getExitRates() {
+		return exitRates;
+	}
+
+	/**
+	 * Returns the largest exit rate, which is the smallest valid
+	 * uniformization rate.
+	 */
+	public double getMaxExitRate() {
+		double max = 0;
+		for (double rate : exitRates) {
+			max = Math.max(max, rate);
+		}
+		return max;
+	}
+
+	/**
+	 * Computes y = x P for the uniformized matrix P = I + Q / gamma, splitting
+	 * the rows across all cores when the matrix is large enough.
+	 */
+	public void multiplyUniformized(double[] x, double[] y, double gamma) {
+		if (getNumTransitions() + numStates < PARALLEL_THRESHOLD || blocks.length <= 2) {
+			multiplyUniformized(x, y, gamma, 0, numStates);
+			return;
+		}
+		IntStream.range(0, blocks.length - 1).parallel()
+				.forEach(b -> multiplyUniformized(x, y, gamma, blocks[b], blocks[b + 1]));
+	}
+
+	private void multiplyUniformized(double[] x, double[] y, double gamma, int start, int end) {
+		for (int i = start; i < end; i++) {
+			double sum = x[i] * (1 - (exitRates[i] / gamma));
+			for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+				sum += x[sources[k]] * (rates[k] / gamma);
+			}
+			y[i] = sum;
+		}
+	}
+}
@@ -17,11 +17,16 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
 import java.util.Observable;
-import java.util.Queue;
 import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import javax.swing.JProgressBar;
 
@@ -29,6 +34,7 @@ import edu.utah.ece.async.ibiosim.dataModels.util.Message;
 import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.DataParser;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 import edu.utah.ece.async.ibiosim.dataModels.util.observe.CoreObservable;
+import edu.utah.ece.async.lema.verification.lpn.CompiledExprTree;
 import edu.utah.ece.async.lema.verification.lpn.ExprTree;
 import edu.utah.ece.async.lema.verification.lpn.LPN;
 import edu.utah.ece.async.lema.verification.lpn.Translator;
@@ -48,17 +54,37 @@ public class StateGraph extends CoreObservable implements Runnable {
 
 	private ArrayList<String> variables;
 
+	private String[] slotVariables;
+
+	private HashMap<String, Integer> slots;
+
+	private boolean[] booleanSlots;
+
+	private int[] vectorSlots;
+
+	private IdentityHashMap<ExprTree, CompiledExprTree> compiledTrees;
+
+	private String[] transitionNames;
+
+	private HashMap<String, Integer> transitionIndices;
+
 	private LPN lhpn;
 
-	private boolean stop;
+	private volatile boolean stop;
 
 	private String markovResults;
 
 	private DataParser probData;
 
-	private int waitingThreads, threadCount;
+	private SparseRateMatrix rateMatrix;
 
-	private boolean phase1, phase2;
+	private int threads = 1;
+
+	private SteadyStateSolver.Method steadyStateMethod = SteadyStateSolver.Method.GAUSS_SEIDEL;
+
+	private int steadyStateIterations;
+
+	private double steadyStateResidual;
 	
 	private double totalUsedMemory, usedMemory;
 
@@ -75,11 +101,9 @@ public class StateGraph extends CoreObservable implements Runnable {
 	}
 
 	public void buildStateGraph(JProgressBar progress) {
-		System.gc();
+		rateMatrix = null;
 		long initialMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
-		stateGraph = new ArrayList<State>();// HashMap<String,
-		// LinkedList<State>>();
-		HashMap<String, LinkedList<Integer>> stateLocations = new HashMap<String, LinkedList<Integer>>();
+		stateGraph = new ArrayList<State>();
 		variables = new ArrayList<String>();
 		for (String var : lhpn.getBooleanVars()) {
 			variables.add(var);
@@ -87,6 +111,11 @@ public class StateGraph extends CoreObservable implements Runnable {
 		for (String var : lhpn.getIntVars()) {
 			variables.add(var);
 		}
+		transitionNames = lhpn.getTransitionList();
+		transitionIndices = new HashMap<String, Integer>();
+		for (int i = 0; i < transitionNames.length; i++) {
+			transitionIndices.put(transitionNames[i], i);
+		}
 		HashMap<String, String> allVariables = new HashMap<String, String>();
 		for (String var : lhpn.getBooleanVars()) {
 			allVariables.put(var, lhpn.getInitialVal(var));
@@ -97,227 +126,338 @@ public class StateGraph extends CoreObservable implements Runnable {
 		for (String var : lhpn.getIntVars()) {
 			allVariables.put(var, lhpn.getInitialVal(var));
 		}
+		compileTrees(allVariables);
+		StateEncoder encoder = new StateEncoder(lhpn, vectorSlots);
+		StateTable stateTable = new StateTable(encoder.getKeyLength());
+		double[] values = getInitialValues(allVariables);
 		ArrayList<String> markedPlaces = new ArrayList<String>();
 		for (String place : lhpn.getPlaceList()) {
 			if (lhpn.getPlace(place).isMarked()) {
 				markedPlaces.add(place);
 			}
 		}
-		// LinkedList<State> markings = new LinkedList<State>();
-		LinkedList<Integer> markings = new LinkedList<Integer>();
-		int counter = 0;
-		State state = new State(markedPlaces.toArray(new String[0]), new StateTransitionPair[0], "S" + counter,
-				createStateVector(variables, allVariables), copyAllVariables(allVariables));
-		// markings.add(state);
-		counter++;
+		State state = new State(markedPlaces.toArray(new String[0]), 0, values);
+		stateGraph.add(state);
 		if (progress != null) {
-			progress.setString("States found: " + counter);
+			progress.setString("States found: " + stateGraph.size());
+		}
+		ArrayList<String> persistentTrans = new ArrayList<String>();
+		ArrayList<String> enabled = updateEnabledTransitions(persistentTrans, markedPlaces, values);
+		state.setPersistentTransitions(persistentTrans.toArray(new String[0]));
+		stateTable.add(encoder.encode(markedPlaces, persistentTrans, values));
+		if (threads > 1) {
+			exploreLevels(new Successor(state, markedPlaces, enabled), encoder, stateTable, progress);
+		}
+		else {
+			exploreDepthFirst(state, markedPlaces, enabled, encoder, stateTable, progress);
 		}
-		stateGraph.add(state);// .put(createStateVector(variables,
-		// allVariables), markings);
-		markings.add(stateGraph.size() - 1);
-		stateLocations.put(createStateVector(variables, allVariables), markings);
+		for (State m : stateGraph) {
+			m.trimTransitions();
+		}
+		totalUsedMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+		usedMemory = (totalUsedMemory - initialMemory) / 1000000;
+		totalUsedMemory = totalUsedMemory /1000000;
+	}
+
+	/**
+	 * Explores the state space depth first from the initial state. A state is
+	 * identified by its marking, its persistent transitions once the enabled
+	 * ones have been added, and its variables, and the same key is used to
+	 * look states up and to add them.
+	 */
+	private void exploreDepthFirst(State initial, ArrayList<String> initialMarking, ArrayList<String> enabled,
+			StateEncoder encoder, StateTable stateTable, JProgressBar progress) {
 		Stack<Transition> transitionsToFire = new Stack<Transition>();
+		for (String transition : enabled) {
+			transitionsToFire.push(new Transition(transition, copyArrayList(initialMarking), initial));
+		}
+		while (transitionsToFire.size() != 0 && !stop) {
+			Transition fire = transitionsToFire.pop();
+			ArrayList<String> markedPlaces = fire.getMarkedPlaces();
+			double[] sourceValues = fire.getState().getValues();
+			double[] values = sourceValues.clone();
+			fireTransition(fire.getTransition(), markedPlaces, values);
+			ArrayList<String> persistentTrans = getPersistentTransitionsAfter(fire.getState(), fire.getTransition());
+			ArrayList<String> nextEnabled = updateEnabledTransitions(persistentTrans, markedPlaces, values);
+			double rate = evaluate(lhpn.getTransitionRateTree(fire.getTransition()), sourceValues);
+			long[] key = encoder.encode(markedPlaces, persistentTrans, values);
+			int match = stateTable.get(key);
+			if (match != -1) {
+				fire.getState().addNextState(stateGraph.get(match), rate, fire.getTransition());
+			}
+			else {
+				State state = new State(markedPlaces.toArray(new String[0]), stateGraph.size(), values);
+				fire.getState().addNextState(state, rate, fire.getTransition());
+				state.setPersistentTransitions(persistentTrans.toArray(new String[0]));
+				stateGraph.add(state);
+				if (progress != null) {
+					progress.setString("States found: " + stateGraph.size());
+				}
+				for (String transition : nextEnabled) {
+					transitionsToFire.push(new Transition(transition, copyArrayList(markedPlaces), state));
+				}
+				stateTable.add(key);
+			}
+		}
+	}
+
+	/**
+	 * Explores the state space breadth first, one level at a time. The states
+	 * of a level are expanded concurrently against the table of states found
+	 * so far, and the new states are then numbered in the order of the level
+	 * and of the transitions that reached them, so the graph does not depend
+	 * on the number of threads. States are keyed as in exploreDepthFirst, both
+	 * within a level and in the table of all states, so the graph has the
+	 * same states and transitions as the one built depth first.
+	 */
+	private void exploreLevels(Successor initial, StateEncoder encoder, StateTable stateTable, JProgressBar progress) {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			ArrayList<Successor> frontier = new ArrayList<Successor>();
+			frontier.add(initial);
+			while (!frontier.isEmpty() && !stop) {
+				ArrayList<Successor> current = frontier;
+				@SuppressWarnings("unchecked")
+				ArrayList<Successor>[] expanded = new ArrayList[current.size()];
+				pool.submit(() -> IntStream.range(0, current.size()).parallel()
+						.forEach(i -> expanded[i] = expand(current.get(i), encoder, stateTable))).get();
+				if (stop) {
+					break;
+				}
+				// Number the new states in order, merging those reached more
+				// than once within the level
+				int firstNew = stateGraph.size();
+				StateTable levelTable = new StateTable(encoder.getKeyLength());
+				frontier = new ArrayList<Successor>();
+				for (int i = 0; i < current.size(); i++) {
+					State source = current.get(i).state;
+					for (Successor next : expanded[i]) {
+						if (next.target == -1) {
+							int pending = levelTable.get(next.key);
+							if (pending == -1) {
+								pending = levelTable.add(next.key);
+								next.state = new State(next.markedPlaces.toArray(new String[0]), stateGraph.size(),
+										next.values);
+								next.state.setPersistentTransitions(next.persistentTransitions);
+								stateGraph.add(next.state);
+								frontier.add(next);
+							}
+							next.target = firstNew + pending;
+						}
+						source.addNextState(stateGraph.get(next.target), next.rate, next.transition);
+					}
+				}
+				for (Successor next : frontier) {
+					stateTable.add(next.key);
+					next.values = null;
+					next.persistentTransitions = null;
+				}
+				if (progress != null) {
+					progress.setString("States found: " + stateGraph.size());
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stop = true;
+		}
+		catch (ExecutionException e) {
+			stop = true;
+			message.setErrorDialog("Unable to Build State Graph", e.getCause().toString());
+			this.notifyObservers(message);
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Fires each enabled transition of a state without changing the graph.
+	 */
+	private ArrayList<Successor> expand(Successor source, StateEncoder encoder, StateTable stateTable) {
+		ArrayList<Successor> successors = new ArrayList<Successor>();
+		double[] sourceValues = source.state.getValues();
+		for (String transition : source.enabled) {
+			if (stop) {
+				break;
+			}
+			ArrayList<String> markedPlaces = copyArrayList(source.markedPlaces);
+			double[] values = sourceValues.clone();
+			fireTransition(transition, markedPlaces, values);
+			ArrayList<String> persistentTrans = getPersistentTransitionsAfter(source.state, transition);
+			Successor next = new Successor(null, markedPlaces,
+					updateEnabledTransitions(persistentTrans, markedPlaces, values));
+			next.transition = transition;
+			next.rate = evaluate(lhpn.getTransitionRateTree(transition), sourceValues);
+			next.values = values;
+			next.persistentTransitions = persistentTrans.toArray(new String[0]);
+			next.key = encoder.encode(markedPlaces, persistentTrans, values);
+			next.target = stateTable.get(next.key);
+			successors.add(next);
+		}
+		return successors;
+	}
+
+	/**
+	 * Updates the marking and the value vector for a transition firing.
+	 */
+	private void fireTransition(String transition, ArrayList<String> markedPlaces, double[] values) {
+		for (String place : lhpn.getPreset(transition)) {
+			markedPlaces.remove(place);
+		}
+		for (String place : lhpn.getPostset(transition)) {
+			markedPlaces.add(place);
+		}
+		// Assignments see the values of the assignments made before them
+		for (int i = 0; i < slotVariables.length; i++) {
+			String key = slotVariables[i];
+			if (lhpn.getBoolAssignTree(transition, key) != null) {
+				values[i] = evaluate(lhpn.getBoolAssignTree(transition, key), values) == 0.0 ? 0.0 : 1.0;
+			}
+			if (lhpn.getContAssignTree(transition, key) != null) {
+				values[i] = evaluate(lhpn.getContAssignTree(transition, key), values);
+			}
+			if (lhpn.getIntAssignTree(transition, key) != null) {
+				values[i] = (int) evaluate(lhpn.getIntAssignTree(transition, key), values);
+			}
+		}
+	}
+
+	/**
+	 * Compiles the enabling, rate and assignment trees of the transitions,
+	 * binding each variable to a slot of a value vector.
+	 */
+	private void compileTrees(HashMap<String, String> allVariables) {
+		slotVariables = allVariables.keySet().toArray(new String[0]);
+		slots = new HashMap<String, Integer>();
+		for (int i = 0; i < slotVariables.length; i++) {
+			slots.put(slotVariables[i], i);
+		}
+		booleanSlots = new boolean[slotVariables.length];
+		for (String var : lhpn.getBooleanVars()) {
+			booleanSlots[slots.get(var)] = true;
+		}
+		vectorSlots = new int[variables.size()];
+		for (int i = 0; i < vectorSlots.length; i++) {
+			vectorSlots[i] = slots.get(variables.get(i));
+		}
+		compiledTrees = new IdentityHashMap<ExprTree, CompiledExprTree>();
+		for (String transition : lhpn.getTransitionList()) {
+			compileTree(lhpn.getEnablingTree(transition));
+			compileTree(lhpn.getTransitionRateTree(transition));
+			for (String key : slotVariables) {
+				compileTree(lhpn.getBoolAssignTree(transition, key));
+				compileTree(lhpn.getContAssignTree(transition, key));
+				compileTree(lhpn.getIntAssignTree(transition, key));
+			}
+		}
+	}
+
+	private void compileTree(ExprTree tree) {
+		if (tree != null && !compiledTrees.containsKey(tree)) {
+			compiledTrees.put(tree, tree.compile(slots));
+		}
+	}
+
+	private double evaluate(ExprTree tree, double[] values) {
+		return compiledTrees.get(tree).evaluate(values);
+	}
+
+	/**
+	 * Returns the value vector of the initial values of the variables. A
+	 * range starts at its lower bound.
+	 */
+	private double[] getInitialValues(HashMap<String, String> allVariables) {
+		double[] values = new double[slotVariables.length];
+		for (int i = 0; i < slotVariables.length; i++) {
+			String value = allVariables.get(slotVariables[i]);
+			if (value != null && value.contains(",")) {
+				value = value.split(",")[0].replace("[", "");
+			}
+			values[i] = CompiledExprTree.valueOf(value);
+		}
+		return values;
+	}
+
+	/**
+	 * Returns a variable value in the form the expression trees read from a
+	 * string map.
+	 */
+	private String formatValue(int slot, double value) {
+		if (booleanSlots[slot]) {
+			if (Double.isNaN(value)) {
+				return "unknown";
+			}
+			return value == 0.0 ? "false" : "true";
+		}
+		if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	/**
+	 * Returns the persistent transitions of a state that are still persistent
+	 * after one of its transitions fires, before any newly enabled ones are
+	 * added.
+	 */
+	private static ArrayList<String> getPersistentTransitionsAfter(State source, String fired) {
+		ArrayList<String> persistentTrans = new ArrayList<String>();
+		for (String trans : source.getPersistentTransitions()) {
+			if (!fired.equals(trans)) {
+				persistentTrans.add(trans);
+			}
+		}
+		return persistentTrans;
+	}
+
+	/**
+	 * Updates the persistent transitions of a new state for its marking and
+	 * variables, and returns the transitions it enables.
+	 */
+	private ArrayList<String> updateEnabledTransitions(ArrayList<String> persistentTrans,
+			ArrayList<String> markedPlaces, double[] values) {
+		ArrayList<String> enabled = new ArrayList<String>();
 		for (String transition : lhpn.getTransitionList()) {
 			boolean addToStack = true;
 			if (lhpn.getEnablingTree(transition) != null
-					&& lhpn.getEnablingTree(transition).evaluateExpr(allVariables) == 0.0
-					&& !state.containsPersistentTransition(transition)) {
+					&& evaluate(lhpn.getEnablingTree(transition), values) == 0.0
+					&& !persistentTrans.contains(transition)) {
 				addToStack = false;
 			}
-			else if (lhpn.getTransition(transition).isPersistent() && !state.containsPersistentTransition(transition)) {
-				state.addPersistentTransition(transition);
+			else if (lhpn.getTransition(transition).isPersistent() && !persistentTrans.contains(transition)) {
+				persistentTrans.add(transition);
 			}
 			if (lhpn.getTransitionRateTree(transition) != null
-					&& lhpn.getTransitionRateTree(transition).evaluateExpr(allVariables) == 0.0) {
+					&& evaluate(lhpn.getTransitionRateTree(transition), values) == 0.0) {
 				addToStack = false;
-				state.removePersistentTransition(transition);
+				persistentTrans.remove(transition);
 			}
 			if (lhpn.getPreset(transition).length != 0) {
 				for (String place : lhpn.getPreset(transition)) {
 					if (!markedPlaces.contains(place)) {
 						addToStack = false;
-						state.removePersistentTransition(transition);
+						persistentTrans.remove(transition);
 					}
 				}
 			}
 			else {
 				addToStack = false;
-				state.removePersistentTransition(transition);
+				persistentTrans.remove(transition);
 			}
-
 			if (addToStack) {
-				transitionsToFire.push(new Transition(transition, copyArrayList(markedPlaces), state));
+				enabled.add(transition);
 			}
 		}
-		while (transitionsToFire.size() != 0 && !stop) {
-			Transition fire = transitionsToFire.pop();
-			markedPlaces = fire.getMarkedPlaces();
-			allVariables = copyAllVariables(fire.getState().getVariables());
-			for (String place : lhpn.getPreset(fire.getTransition())) {
-				markedPlaces.remove(place);
-			}
-			for (String place : lhpn.getPostset(fire.getTransition())) {
-				markedPlaces.add(place);
-			}
-			for (String key : allVariables.keySet()) {
-				if (lhpn.getBoolAssignTree(fire.getTransition(), key) != null) {
-					double eval = lhpn.getBoolAssignTree(fire.getTransition(), key).evaluateExpr(allVariables);
-					if (eval == 0.0) {
-						allVariables.put(key, "false");
-					}
-					else {
-						allVariables.put(key, "true");
-					}
-				}
-				if (lhpn.getContAssignTree(fire.getTransition(), key) != null) {
-					allVariables.put(key,
-							"" + lhpn.getContAssignTree(fire.getTransition(), key).evaluateExpr(allVariables));
-				}
-				if (lhpn.getIntAssignTree(fire.getTransition(), key) != null) {
-					allVariables.put(key,
-							"" + ((int) lhpn.getIntAssignTree(fire.getTransition(), key).evaluateExpr(allVariables)));
-				}
-			}
-			if (!stateLocations.containsKey(createStateVector(variables, allVariables))) {
-				markings = new LinkedList<Integer>();
-			}
-			else {
-				markings = stateLocations.get(createStateVector(variables, allVariables));
-			}
-			ArrayList<String> transitions = new ArrayList<String>();
-			for (String trans : fire.getState().getPersistentTransitions()) {
-				if (!fire.getTransition().equals(trans)) {
-					transitions.add(trans);
-				}
-			}
-			for (String transition : lhpn.getTransitionList()) {
-				if (lhpn.getEnablingTree(transition) != null
-						&& lhpn.getEnablingTree(transition).evaluateExpr(allVariables) != 0.0
-						&& lhpn.getTransition(transition).isPersistent() && !transitions.contains(transition)) {
-					if (lhpn.getPreset(transition).length != 0) {
-						boolean add = true;
-						for (String place : lhpn.getPreset(transition)) {
-							if (!markedPlaces.contains(place)) {
-								add = false;
-							}
-						}
-						if (add) {
-							transitions.add(transition);
-						}
-					}
-				}
-			}
-			boolean add = true;
-			boolean same = true;
-			for (Integer index : markings) {// State mark : stateGraph) {
-				State mark = stateGraph.get(index);
-				for (String place : mark.getMarkings()) {
-					if (!markedPlaces.contains(place)) {
-						same = false;
-						break;
-					}
-				}
-				for (String place : markedPlaces) {
-					boolean contains = false;
-					for (String place2 : mark.getMarkings()) {
-						if (place2.equals(place)) {
-							contains = true;
-							break;
-						}
-					}
-					if (!contains) {
-						same = false;
-						break;
-					}
-				}
-				for (String trans : mark.getPersistentTransitions()) {
-					if (!transitions.contains(trans)) {
-						same = false;
-						break;
-					}
-				}
-				for (String trans : transitions) {
-					boolean contains = false;
-					for (String trans2 : mark.getPersistentTransitions()) {
-						if (trans2.equals(trans)) {
-							contains = true;
-							break;
-						}
-					}
-					if (!contains) {
-						same = false;
-						break;
-					}
-				}
-				if (same) {
-					add = false;
-					fire.getState().addNextState(
-							mark,
-							lhpn.getTransitionRateTree(fire.getTransition()).evaluateExpr(
-									fire.getState().getVariables()), fire.getTransition());
-				}
-				same = true;
-			}
-			if (add) {
-				state = new State(markedPlaces.toArray(new String[0]), new StateTransitionPair[0], "S" + counter,
-						createStateVector(variables, allVariables), copyAllVariables(allVariables));
-				// markings.add(state);
-				fire.getState().addNextState(state,
-						lhpn.getTransitionRateTree(fire.getTransition()).evaluateExpr(fire.getState().getVariables()),
-						fire.getTransition());
-				ArrayList<String> persistentTrans = new ArrayList<String>();
-				for (String trans : fire.getState().getPersistentTransitions()) {
-					if (!fire.getTransition().equals(trans)) {
-						persistentTrans.add(trans);
-					}
-				}
-				state.setPersistentTransitions(persistentTrans.toArray(new String[0]));
-				counter++;
-				if (progress != null) {
-					progress.setString("States found: " + counter);
-				}
-				stateGraph.add(state);// .put(createStateVector(variables,
-				// allVariables), markings);
-				markings.add(stateGraph.size() - 1);
-				stateLocations.put(createStateVector(variables, allVariables), markings);
-				for (String transition : lhpn.getTransitionList()) {
-					boolean addToStack = true;
-					if (lhpn.getEnablingTree(transition) != null
-							&& lhpn.getEnablingTree(transition).evaluateExpr(allVariables) == 0.0
-							&& !state.containsPersistentTransition(transition)) {
-						addToStack = false;
-					}
-					else if (lhpn.getTransition(transition).isPersistent()
-							&& !state.containsPersistentTransition(transition)) {
-						state.addPersistentTransition(transition);
-					}
-					if (lhpn.getTransitionRateTree(transition) != null
-							&& lhpn.getTransitionRateTree(transition).evaluateExpr(allVariables) == 0.0) {
-						addToStack = false;
-						state.removePersistentTransition(transition);
-					}
-					if (lhpn.getPreset(transition).length != 0) {
-						for (String place : lhpn.getPreset(transition)) {
-							if (!markedPlaces.contains(place)) {
-								addToStack = false;
-								state.removePersistentTransition(transition);
-							}
-						}
-					}
-					else {
-						addToStack = false;
-						state.removePersistentTransition(transition);
-					}
-					if (addToStack) {
-						transitionsToFire.push(new Transition(transition, copyArrayList(markedPlaces), state));
-					}
-				}
-			}
-		}
-		totalUsedMemory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
-		usedMemory = (totalUsedMemory - initialMemory) / 1000000;
-		totalUsedMemory = totalUsedMemory /1000000;
+		return enabled;
+	}
+
+	/**
+	 * Sets the number of threads used to build the state graph. With more than
+	 * one, states are explored breadth first in parallel.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
 	}
 
 	public boolean canPerformMarkovianAnalysis() {
@@ -525,32 +665,10 @@ public class StateGraph extends CoreObservable implements Runnable {
 					for (State m : stateGraph) {
 						Gamma = Math.max(m.getTransitionSum(0.0, null), Gamma);
 					}
-					// Compute K
-					int K = 0;
-					double xi = 1;
-					double delta = 1;
-					double eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * timeStep)));
-					while (delta < eta) {
-						K = K + 1;
-						xi = xi * ((Gamma * timeStep) / K);
-						delta = delta + xi;
-					}
 					double step = Math.min(Math.min(timeStep, lowerbound), nextPrint);
 					for (double i = 0; i < lowerbound; i += step) {
 						step = Math.min(Math.min(timeStep, lowerbound - i), nextPrint - i);
-						if (step != timeStep) {
-							// Compute K
-							K = 0;
-							xi = 1;
-							delta = 1;
-							eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * step)));
-							while (delta < eta) {
-								K = K + 1;
-								xi = xi * ((Gamma * step) / K);
-								delta = delta + xi;
-							}
-						}
-						if (!performTransientMarkovianAnalysis(step, Gamma, K, progress)) {
+						if (!performTransientMarkovianAnalysis(step, Gamma, error, progress)) {
 							return false;
 						}
 						double prob = 0;
@@ -612,32 +730,10 @@ public class StateGraph extends CoreObservable implements Runnable {
 				for (State m : stateGraph) {
 					Gamma = Math.max(m.getTransitionSum(0.0, null), Gamma);
 				}
-				// Compute K
-				int K = 0;
-				double xi = 1;
-				double delta = 1;
-				double eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * timeStep)));
-				while (delta < eta) {
-					K = K + 1;
-					xi = xi * ((Gamma * timeStep) / K);
-					delta = delta + xi;
-				}
 				double step = Math.min(Math.min(timeStep, upperbound - lowerbound), nextPrint - lowerbound);
 				for (double i = 0; i < upperbound; i += step) {
 					step = Math.min(Math.min(timeStep, upperbound - i), nextPrint - lowerbound - i);
-					if (step != timeStep) {
-						// Compute K
-						K = 0;
-						xi = 1;
-						delta = 1;
-						eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * step)));
-						while (delta < eta) {
-							K = K + 1;
-							xi = xi * ((Gamma * step) / K);
-							delta = delta + xi;
-						}
-					}
-					if (!performTransientMarkovianAnalysis(step, Gamma, K, progress)) {
+					if (!performTransientMarkovianAnalysis(step, Gamma, error, progress)) {
 						return false;
 					}
 					failureProb = 0;
@@ -764,31 +860,9 @@ public class StateGraph extends CoreObservable implements Runnable {
 				for (State m : stateGraph) {
 					Gamma = Math.max(m.getTransitionSum(0.0, null), Gamma);
 				}
-				// Compute K
-				int K = 0;
-				double xi = 1;
-				double delta = 1;
-				double eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * timeStep)));
-				while (delta < eta) {
-					K = K + 1;
-					xi = xi * ((Gamma * timeStep) / K);
-					delta = delta + xi;
-				}
 				for (double i = 0; i < timeLimit; i += timeStep) {
 					double step = Math.min(timeStep, timeLimit - i);
-					if (step == timeLimit - i) {
-						// Compute K
-						K = 0;
-						xi = 1;
-						delta = 1;
-						eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * step)));
-						while (delta < eta) {
-							K = K + 1;
-							xi = xi * ((Gamma * step) / K);
-							delta = delta + xi;
-						}
-					}
-					stop = !performTransientMarkovianAnalysis(step, Gamma, K, progress);
+					stop = !performTransientMarkovianAnalysis(step, Gamma, error, progress);
 					if (progress!=null) {
 						progress.setValue((int) i);
 					}
@@ -839,7 +913,7 @@ public class StateGraph extends CoreObservable implements Runnable {
 				globallyTrue = true;
 			}
 			for (State initial : stateGraph) {
-				if (initial.getVariables().keySet().contains(id)) {
+				if (initial.hasVariable(id)) {
 					break;
 				}
 				enableAllTransitions();
@@ -862,32 +936,10 @@ public class StateGraph extends CoreObservable implements Runnable {
 					for (State m : stateGraph) {
 						Gamma = Math.max(m.getTransitionSum(0.0, null), Gamma);
 					}
-					// Compute K
-					int K = 0;
-					double xi = 1;
-					double delta = 1;
-					double eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * timeStep)));
-					while (delta < eta) {
-						K = K + 1;
-						xi = xi * ((Gamma * timeStep) / K);
-						delta = delta + xi;
-					}
 					double step = Math.min(timeStep, lowerbound);
 					for (double i = 0; i < lowerbound; i += step) {
 						step = Math.min(timeStep, lowerbound - i);
-						if (step != timeStep) {
-							// Compute K
-							K = 0;
-							xi = 1;
-							delta = 1;
-							eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * step)));
-							while (delta < eta) {
-								K = K + 1;
-								xi = xi * ((Gamma * step) / K);
-								delta = delta + xi;
-							}
-						}
-						performTransientMarkovianAnalysis(step, Gamma, K, null);
+						performTransientMarkovianAnalysis(step, Gamma, error, null);
 					}
 				}
 				else {
@@ -925,32 +977,10 @@ public class StateGraph extends CoreObservable implements Runnable {
 				for (State m : stateGraph) {
 					Gamma = Math.max(m.getTransitionSum(0.0, null), Gamma);
 				}
-				// Compute K
-				int K = 0;
-				double xi = 1;
-				double delta = 1;
-				double eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * timeStep)));
-				while (delta < eta) {
-					K = K + 1;
-					xi = xi * ((Gamma * timeStep) / K);
-					delta = delta + xi;
-				}
 				double step = Math.min(timeStep, upperbound - lowerbound);
 				for (double i = 0; i < upperbound; i += step) {
 					step = Math.min(timeStep, upperbound - i);
-					if (step != timeStep) {
-						// Compute K
-						K = 0;
-						xi = 1;
-						delta = 1;
-						eta = (1 - error) / (Math.pow(Math.E, ((0 - Gamma) * step)));
-						while (delta < eta) {
-							K = K + 1;
-							xi = xi * ((Gamma * step) / K);
-							delta = delta + xi;
-						}
-					}
-					performTransientMarkovianAnalysis(step, Gamma, K, null);
+					performTransientMarkovianAnalysis(step, Gamma, error, null);
 				}
 				//double failureProb = 0;
 				double successProb = 0;
@@ -993,7 +1023,13 @@ public class StateGraph extends CoreObservable implements Runnable {
 		return id;
 	}
 
-	private synchronized boolean performTransientMarkovianAnalysis(double timeLimit, double Gamma, int K,
+	/**
+	 * Advances the current probabilities by timeLimit with uniformization. The
+	 * number of uniformized steps comes from the Fox-Glynn truncation points
+	 * for the given error, and each step is a sparse matrix-vector product over
+	 * the enabled transitions.
+	 */
+	private boolean performTransientMarkovianAnalysis(double timeLimit, double Gamma, double error,
 			JProgressBar progress) {
 		if (timeLimit == 0.0) {
 			return true;
@@ -1002,177 +1038,85 @@ public class StateGraph extends CoreObservable implements Runnable {
 		if (progress != null) {
 			progressValue = progress.getValue();
 		}
-		// Approximate pi(t)
-		threadCount = 4;
-		waitingThreads = threadCount;
-		phase1 = true;
-		phase2 = false;
-		ArrayList<TransientMarkovMatrixMultiplyThread> threads = new ArrayList<TransientMarkovMatrixMultiplyThread>();
-		for (int i = 0; i < threadCount; i++) {
-			TransientMarkovMatrixMultiplyThread thread = new TransientMarkovMatrixMultiplyThread(this);
-			thread.start((i * stateGraph.size()) / threadCount, ((i + 1) * stateGraph.size()) / threadCount, Gamma,
-					timeLimit, K);
-			threads.add(thread);
-		}
-		for (int k = 1; k <= K && !stop; k++) {
-			while (waitingThreads != 0) {
-				try {
-					notifyAll();
-					wait();
-				}
-				catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
+		SparseRateMatrix matrix = getRateMatrix();
+		FoxGlynn foxGlynn = FoxGlynn.compute(Gamma * timeLimit, error);
+		int numStates = stateGraph.size();
+		double[] current = new double[numStates];
+		double[] next = new double[numStates];
+		double[] pi = new double[numStates];
+		for (int i = 0; i < numStates; i++) {
+			current[i] = stateGraph.get(i).getCurrentProb();
+		}
+		int right = foxGlynn.getRight();
+		for (int k = 0; k <= right; k++) {
 			if (stop) {
-				for (TransientMarkovMatrixMultiplyThread thread : threads) {
-					try {
-						thread.join();
-					}
-					catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				}
 				return false;
 			}
-			phase1 = false;
-			phase2 = true;
-			while (waitingThreads != threadCount) {
-				try {
-					notifyAll();
-					wait();
-				}
-				catch (InterruptedException e) {
-					e.printStackTrace();
+			double weight = foxGlynn.getWeight(k);
+			if (weight != 0.0) {
+				for (int i = 0; i < numStates; i++) {
+					pi[i] += weight * current[i];
 				}
 			}
-			if (stop) {
-				for (TransientMarkovMatrixMultiplyThread thread : threads) {
-					try {
-						thread.join();
-					}
-					catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				}
-				return false;
+			if (k < right) {
+				matrix.multiplyUniformized(current, next, Gamma);
+				double[] temp = current;
+				current = next;
+				next = temp;
 			}
-			phase1 = true;
-			phase2 = false;
-			if (progress != null) {
-				progress.setValue(progressValue + ((int) ((timeLimit * k) / K)));
-			}
-			/*
-			 * for (State m : stateGraph) { //for (String state :
-			 * stateGraph.keySet()) { // for (State m : stateGraph.get(state)) {
-			 * double nextProb = m.getCurrentProb() (1 -
-			 * (m.getTransitionSum(0.0, null) / Gamma)); for
-			 * (StateTransitionPair prev : m.getPrevStatesWithTrans()) { // if
-			 * (lhpn.getTransitionRateTree(prev.getTransition()) // != null) {
-			 * // prob = //
-			 * lhpn.getTransitionRateTree(prev.getTransition()).evaluateExpr
-			 * (prev.getState().getVariables()); // } nextProb +=
-			 * (prev.getState().getCurrentProb() * (prev.getTransition() /
-			 * Gamma)); } m.setNextProb(nextProb * ((Gamma * timeLimit) / k));
-			 * m.setPiProb(m.getPiProb() + m.getNextProb()); //} } if (stop) {
-			 * return false; } for (State m : stateGraph) { //for (String state
-			 * : stateGraph.keySet()) { //for (State m : stateGraph.get(state))
-			 * { m.setCurrentProbToNext(); //} } progress.setValue(progressValue
-			 * + ((int) ((timeLimit * k) / K)));
-			 */
-		}
-		try {
-			while (waitingThreads != 0) {
-				try {
-					notifyAll();
-					wait(10);
-				}
-				catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-			for (TransientMarkovMatrixMultiplyThread thread : threads) {
-				thread.join();
+			if (progress != null && right > 0) {
+				progress.setValue(progressValue + ((int) ((timeLimit * k) / right)));
 			}
 		}
-		catch (InterruptedException e) {
-			e.printStackTrace();
-		}
-		if (!stop) {
-			for (State m : stateGraph) {
-				// for (String state : stateGraph.keySet()) {
-				// for (State m : stateGraph.get(state)) {
-				m.setPiProb(m.getPiProb() * (Math.pow(Math.E, ((0 - Gamma) * timeLimit))));
-				m.setCurrentProbToPi();
-				// }
-			}
-		}
-		if (stop) {
-			return false;
+		for (int i = 0; i < numStates; i++) {
+			State m = stateGraph.get(i);
+			m.setPiProb(pi[i]);
+			m.setCurrentProbToPi();
 		}
 		return true;
 	}
 
-	public synchronized void transientMarkovMatrixMultiplication(int startIndex, int endIndex, double Gamma,
-			double timeLimit, int K) {
-		for (int k = 1; k <= K && !stop; k++) {
-			for (int i = startIndex; i < endIndex; i++) {
-				State m = stateGraph.get(i);
-				double nextProb = m.getCurrentProb() * (1 - (m.getTransitionSum(0.0, null) / Gamma));
-				for (StateTransitionPair prev : m.getPrevStatesWithTrans()) {
-					if (prev.isEnabled()) {
-						nextProb += (prev.getState().getCurrentProb() * (prev.getTransition() / Gamma));
-					}
-				}
-				m.setNextProb(nextProb * ((Gamma * timeLimit) / k));
-				m.setPiProb(m.getPiProb() + m.getNextProb());
-				if (stop) {
-					waitingThreads--;
-					notifyAll();
-					return;
-				}
-			}
-			waitingThreads--;
-			if (waitingThreads == 0) {
-				notifyAll();
-			}
-			try {
-				while (!phase2 && !stop) {
-					wait();
-				}
-			}
-			catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-			for (int i = startIndex; i < endIndex; i++) {
-				State m = stateGraph.get(i);
-				m.setCurrentProbToNext();
-				if (stop) {
-					waitingThreads++;
-					notifyAll();
-					return;
-				}
-			}
-			waitingThreads++;
-			if (waitingThreads == threadCount) {
-				notifyAll();
-			}
-			try {
-				while (!phase1 && !stop) {
-					wait();
-				}
-			}
-			catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-			if (stop) {
-				return;
-			}
-		}
-		waitingThreads--;
+	/**
+	 * Returns the rate matrix of the enabled transitions, building it on first
+	 * use after the graph or the enabled transitions change.
+	 */
+	private SparseRateMatrix getRateMatrix() {
+		if (rateMatrix != null) {
+			return rateMatrix;
+		}
+		int numStates = stateGraph.size();
+		int[] rowPointers = new int[numStates + 1];
+		double[] exitRates = new double[numStates];
+		for (int i = 0; i < numStates; i++) {
+			State m = stateGraph.get(i);
+			exitRates[i] = m.getTransitionSum(0.0, null);
+			int count = 0;
+			for (int j = 0; j < m.numPrevStates; j++) {
+				if (!stateGraph.get(m.prevStates[j]).pruned) {
+					count++;
+				}
+			}
+			rowPointers[i + 1] = rowPointers[i] + count;
+		}
+		int[] sources = new int[rowPointers[numStates]];
+		double[] rates = new double[rowPointers[numStates]];
+		for (int i = 0; i < numStates; i++) {
+			State m = stateGraph.get(i);
+			int k = rowPointers[i];
+			for (int j = 0; j < m.numPrevStates; j++) {
+				if (!stateGraph.get(m.prevStates[j]).pruned) {
+					sources[k] = m.prevStates[j];
+					rates[k] = m.prevRates[j];
+					k++;
+				}
+			}
+		}
+		rateMatrix = new SparseRateMatrix(rowPointers, sources, rates, exitRates);
+		return rateMatrix;
 	}
 
 	public void pruneStateGraph(String condition) {
+		rateMatrix = null;
 		for (State m : stateGraph) {
 			// for (String state : stateGraph.keySet()) {
 			// for (State m : stateGraph.get(state)) {
@@ -1180,24 +1124,9 @@ public class StateGraph extends CoreObservable implements Runnable {
 			expr.token = expr.intexpr_gettok(condition);
 			expr.intexpr_L(condition);
 			if (expr.evaluateExpr(m.getVariables()) == 1.0) {
-				for (State s : m.getNextStates()) {
-					// ArrayList<StateTransitionPair> newTrans = new
-					// ArrayList<StateTransitionPair>();
-					for (StateTransitionPair trans : s.getPrevStatesWithTrans()) {
-						if (trans.getState() == m) {
-							trans.setEnabled(false);
-						}
-						// if (trans.getState() != m) {
-						// newTrans.add(trans);
-						// }
-					}
-					// s.setPrevStatesWithTrans(newTrans.toArray(new
-					// StateTransitionPair[0]));
-				}
-				for (StateTransitionPair trans : m.getNextStatesWithTrans()) {
-					trans.setEnabled(false);
-				}
-				// m.setNextStatesWithTrans(new StateTransitionPair[0]);
+				// Disables the transitions out of the state, in both
+				// directions
+				m.pruned = true;
 			}
 			m.setTransitionSum(-1);
 			// }
@@ -1205,17 +1134,34 @@ public class StateGraph extends CoreObservable implements Runnable {
 	}
 
 	public void enableAllTransitions() {
+		rateMatrix = null;
 		for (State m : stateGraph) {
-			for (StateTransitionPair trans : m.getNextStatesWithTrans()) {
-				trans.setEnabled(true);
-			}
-			for (StateTransitionPair trans : m.getPrevStatesWithTrans()) {
-				trans.setEnabled(true);
-			}
+			m.pruned = false;
 			m.setTransitionSum(-1);
 		}
 	}
 
+	/**
+	 * Sets the iterative method used for steady-state analysis.
+	 */
+	public void setSteadyStateMethod(SteadyStateSolver.Method method) {
+		steadyStateMethod = method;
+	}
+
+	/**
+	 * Returns the number of iterations of the last steady-state analysis.
+	 */
+	public int getSteadyStateIterations() {
+		return steadyStateIterations;
+	}
+
+	/**
+	 * Returns the relative residual of the last steady-state analysis.
+	 */
+	public double getSteadyStateResidual() {
+		return steadyStateResidual;
+	}
+
 	public boolean performSteadyStateMarkovianAnalysis(double tolerance, ArrayList<Property> props, State initial, JProgressBar progress) throws BioSimException {
 		if (!canPerformMarkovianAnalysis()) {
 			stop = true;
@@ -1248,136 +1194,22 @@ public class StateGraph extends CoreObservable implements Runnable {
 			}
 			initial.setCurrentProb(1.0);
 		}
-		resetColorsForMarkovianAnalysis();
-		int period = findPeriod(initial);
-		if (period == 0) {
-			period = 1;
-		}
-		int step = 0;
-		boolean done = false;
-		if (!stop) {
-			do {
-				step++;
-				step = step % period;
-				for (State m : stateGraph) {
-					// for (String state : stateGraph.keySet()) {
-					// for (State m : stateGraph.get(state)) {
-					if (m.getColor() != -1 && m.getColor() % period == step) {
-						double nextProb = m.getCurrentProb();
-						for (StateTransitionPair next : m.getNextStatesWithTrans()) {
-							if (next.isEnabled() && next.transition > 0) {
-								nextProb = 0.0;
-							}
-						}
-						for (StateTransitionPair prev : m.getPrevStatesWithTrans()) {
-							if (prev.isEnabled()) {
-								double transProb = 0.0;
-								transProb += prev.getTransition();
-								// if
-								// (lhpn.getTransitionRateTree(prev.getTransition())
-								// !=
-								// null) {
-								// if
-								// (lhpn.getTransitionRateTree(prev.getTransition())
-								// !=
-								// null) {
-								// if
-								// (!lhpn.isExpTransitionRateTree(prev
-								// .getTransition())
-								// &&
-								// lhpn.getDelayTree(prev.getTransition())
-								// .evaluateExpr(null) == 0) {
-								// transProb = 1.0;
-								// }
-								// else {
-								// transProb =
-								// lhpn.getTransitionRateTree(prev.getTransition()).evaluateExpr(
-								// prev.getState().getVariables());
-								// }
-								// }
-								// }
-								// else {
-								// transProb = 1.0;
-								// }
-								double transitionSum = prev.getState().getTransitionSum(1.0, m);
-								if (transitionSum != 0) {
-									transProb = (transProb / transitionSum);
-								}
-								else {
-									transProb = 0.0;
-								}
-								nextProb += (prev.getState().getCurrentProb() * transProb);
-								if (stop) {
-									return false;
-								}
-							}
-						}
-						m.setNextProb(nextProb);
-					}
-					if (stop) {
-						return false;
-					}
-				}
-				if (stop) {
-					return false;
-				}
-				// }
-				boolean change = false;
-				for (State m : stateGraph) {
-					// for (String state : stateGraph.keySet()) {
-					// for (State m : stateGraph.get(state)) {
-					if (m.getColor() != -1 && m.getColor() % period == step) {
-						if ((m.getCurrentProb() != 0)
-								&& (Math.abs(((m.getCurrentProb() - m.getNextProb())) / m.getCurrentProb()) > tolerance)) {
-							change = true;
-						}
-						else if (m.getCurrentProb() == 0 && m.getNextProb() > tolerance) {
-							change = true;
-						}
-						m.setCurrentProbToNext();
-					}
-					if (stop) {
-						return false;
-					}
-				}
-				if (stop) {
-					return false;
-				}
-				// }
-				if (!change) {
-					done = true;
-				}
-			}
-			while (!done && !stop);
-		}
 		if (!stop) {
-			double totalProb = 0.0;
-			for (State m : stateGraph) {
-				// for (String state : stateGraph.keySet()) {
-				// for (State m : stateGraph.get(state)) {
-				double transitionSum = m.getTransitionSum(1.0, null);
-				if (transitionSum != 0.0) {
-					m.setCurrentProb((m.getCurrentProb() / period) / transitionSum);
-				}
-				totalProb += m.getCurrentProb();
-				if (stop) {
-					return false;
-				}
-			}
-			if (stop) {
+			int numStates = stateGraph.size();
+			double[] initialProbs = new double[numStates];
+			for (int i = 0; i < numStates; i++) {
+				initialProbs[i] = stateGraph.get(i).getCurrentProb();
+			}
+			SteadyStateSolver solver = new SteadyStateSolver(steadyStateMethod, tolerance);
+			double[] probs = solver.solve(getRateMatrix(), initialProbs, () -> stop);
+			if (probs == null || stop) {
 				return false;
 			}
-			// }
-			for (State m : stateGraph) {
-				// for (String state : stateGraph.keySet()) {
-				// for (State m : stateGraph.get(state)) {
-				if (totalProb != 0.0) {
-					m.setCurrentProb(m.getCurrentProb() / totalProb);
-				}
-				if (stop) {
-					return false;
-				}
+			for (int i = 0; i < numStates; i++) {
+				stateGraph.get(i).setCurrentProb(probs[i]);
 			}
+			steadyStateIterations = solver.getIterations();
+			steadyStateResidual = solver.getResidual();
 			resetColors();
 			HashMap<String, Double> output = new HashMap<String, Double>();
 			if (!stop) {
@@ -1462,77 +1294,6 @@ public class StateGraph extends CoreObservable implements Runnable {
 		return false;
 	}
 
-	private int findPeriod(State state) {
-		if (stop) {
-			return 0;
-		}
-		int period = 0;
-		int color = 0;
-		state.setColor(color);
-		color = state.getColor() + 1;
-		Queue<State> unVisitedStates = new LinkedList<State>();
-		for (State s : state.getNextStates()) {
-			if (s.getColor() == -1) {
-				s.setColor(color);
-				unVisitedStates.add(s);
-			}
-			else {
-				if (period == 0) {
-					period = (state.getColor() - s.getColor() + 1);
-				}
-				else {
-					period = gcd(state.getColor() - s.getColor() + 1, period);
-				}
-			}
-			if (stop) {
-				return 0;
-			}
-		}
-		while (!unVisitedStates.isEmpty() && !stop) {
-			state = unVisitedStates.poll();
-			color = state.getColor() + 1;
-			for (State s : state.getNextStates()) {
-				if (s.getColor() == -1) {
-					s.setColor(color);
-					unVisitedStates.add(s);
-				}
-				else {
-					if (period == 0) {
-						period = (state.getColor() - s.getColor() + 1);
-					}
-					else {
-						period = gcd(state.getColor() - s.getColor() + 1, period);
-					}
-				}
-				if (stop) {
-					return 0;
-				}
-			}
-		}
-		return period;
-	}
-
-	private int gcd(int a, int b) {
-		if (b == 0)
-			return a;
-		return gcd(b, a % b);
-	}
-
-	private void resetColorsForMarkovianAnalysis() {
-		for (State m : stateGraph) {
-			// for (String state : stateGraph.keySet()) {
-			// for (State m : stateGraph.get(state)) {
-			m.setColor(-1);
-			if (stop) {
-				return;
-			}
-		}
-		// if (stop) {
-		// return;
-		// }
-		// }
-	}
-
 	public void resetColors() {
 		for (State m : stateGraph) {
 			// for (String state : stateGraph.keySet()) {
@@ -1602,32 +1363,6 @@ public class StateGraph extends CoreObservable implements Runnable {
 		return copy;
 	}
 
-	private static HashMap<String, String> copyAllVariables(HashMap<String, String> original) {
-		HashMap<String, String> copy = new HashMap<String, String>();
-		for (String s : original.keySet()) {
-			copy.put(s, original.get(s));
-		}
-		return copy;
-	}
-
-	private static String createStateVector(ArrayList<String> variables, HashMap<String, String> allVariables) {
-		String vector = "";
-		for (String s : variables) {
-			if (allVariables.get(s).toLowerCase().equals("true")) {
-				vector += "1,";
-			}
-			else if (allVariables.get(s).toLowerCase().equals("false")) {
-				vector += "0,";
-			}
-			else {
-				vector += allVariables.get(s) + ",";
-			}
-		}
-		if (vector.length() > 0) {
-			vector = vector.substring(0, vector.length() - 1);
-		}
-		return vector;
-	}
 
 	public void outputStateGraph(String file, boolean withProbs) {
 		try {
@@ -1640,14 +1375,14 @@ public class StateGraph extends CoreObservable implements Runnable {
 				// for (String state : stateGraph.keySet()) {
 				// for (State m : stateGraph.get(state)) {
 				if (withProbs) {
-					out.write(m.getID() + " [shape=\"ellipse\",label=\"" + m.getID() + "\\n<" + m.stateVector
+					out.write(m.getID() + " [shape=\"ellipse\",label=\"" + m.getID() + "\\n<" + m.getStateVector()
 							+ ">\\nProb = " + num.format(m.getCurrentProb()) + "\"]\n");
 				}
 				else {
-					out.write(m.getID() + " [shape=\"ellipse\",label=\"" + m.getID() + "\\n<" + m.stateVector
+					out.write(m.getID() + " [shape=\"ellipse\",label=\"" + m.getID() + "\\n<" + m.getStateVector()
 							+ ">\"]\n");
 				}
-				for (StateTransitionPair next : m.getNextStatesWithTrans()) {
+				for (int j = 0; j < m.numNextStates && !m.pruned; j++) {
 					/*
 					 * System.out.println(m.getID() + " -> " +
 					 * next.getState().getID() + " [label=\"" +
@@ -1656,10 +1391,8 @@ public class StateGraph extends CoreObservable implements Runnable {
 					 * System.out.println(lhpn.getTransitionRateTree(
 					 * next.getTransition ()).evaluateExpr(m.getVariables()));
 					 */
-					if (next.isEnabled()) {
-						out.write(m.getID() + " -> " + next.getState().getID() + " [label=\""
-								+ next.getTransitionName() + "\\n" + num.format(next.getTransition()) + "\"]\n");
-					}
+					out.write(m.getID() + " -> " + stateGraph.get(m.nextStates[j]).getID() + " [label=\""
+							+ transitionNames[m.nextTransitions[j]] + "\\n" + num.format(m.nextRates[j]) + "\"]\n");
 					// if (lhpn.getTransitionRateTree(next.getTransition())
 					// != null) {
 					// out.write(m.getID()
@@ -1728,79 +1461,149 @@ public class StateGraph extends CoreObservable implements Runnable {
 //		}
 	}
 
-	private class Transition {
-		private String transition;
+	/**
+	 * Packs a marking, its persistent transitions and the values of the
+	 * boolean and integer variables into a fixed-length key. Places and
+	 * transitions become bits, and each variable value is numbered the first
+	 * time it is seen and stored in half a word. Encoding is safe from several
+	 * threads at once.
+	 */
+	private static final class StateEncoder {
+		private final HashMap<String, Integer> placeIndex;
 
-		private ArrayList<String> markedPlaces;
+		private final HashMap<String, Integer> transitionIndex;
 
-		private State parent;
+		private final int[] variables;
 
-		private Transition(String transition, ArrayList<String> markedPlaces, State parent) {
-			this.transition = transition;
-			this.markedPlaces = markedPlaces;
-			this.parent = parent;
-		}
+		private final ArrayList<ConcurrentHashMap<Double, Integer>> valueCodes;
 
-		private String getTransition() {
-			return transition;
+		private final ArrayList<AtomicInteger> nextCodes;
+
+		private final int markingWords, transitionWords, keyLength;
+
+		/**
+		 * @param variables
+		 *            The slots of the boolean and integer variables in the
+		 *            value vectors.
+		 */
+		private StateEncoder(LPN lhpn, int[] variables) {
+			placeIndex = new HashMap<String, Integer>();
+			for (String place : lhpn.getPlaceList()) {
+				placeIndex.put(place, placeIndex.size());
+			}
+			transitionIndex = new HashMap<String, Integer>();
+			for (String transition : lhpn.getTransitionList()) {
+				transitionIndex.put(transition, transitionIndex.size());
+			}
+			this.variables = variables;
+			valueCodes = new ArrayList<ConcurrentHashMap<Double, Integer>>();
+			nextCodes = new ArrayList<AtomicInteger>();
+			for (int i = 0; i < variables.length; i++) {
+				valueCodes.add(new ConcurrentHashMap<Double, Integer>());
+				nextCodes.add(new AtomicInteger());
+			}
+			markingWords = (placeIndex.size() + 63) >>> 6;
+			transitionWords = (transitionIndex.size() + 63) >>> 6;
+			keyLength = markingWords + transitionWords + (variables.length + 1) / 2;
 		}
 
-		private ArrayList<String> getMarkedPlaces() {
-			return markedPlaces;
+		private int getKeyLength() {
+			return keyLength;
 		}
 
-		private State getState() {
-			return parent;
+		private long[] encode(Iterable<String> markedPlaces, Iterable<String> persistentTransitions, double[] values) {
+			long[] key = new long[keyLength];
+			for (String place : markedPlaces) {
+				int bit = placeIndex.get(place);
+				key[bit >>> 6] |= 1L << bit;
+			}
+			for (String transition : persistentTransitions) {
+				int bit = transitionIndex.get(transition);
+				key[markingWords + (bit >>> 6)] |= 1L << bit;
+			}
+			for (int i = 0; i < variables.length; i++) {
+				AtomicInteger nextCode = nextCodes.get(i);
+				int code = valueCodes.get(i).computeIfAbsent(values[variables[i]], v -> nextCode.getAndIncrement());
+				key[markingWords + transitionWords + (i >>> 1)] |= (code & 0xFFFFFFFFL) << ((i & 1) << 5);
+			}
+			return key;
 		}
 	}
 
-	private class StateTransitionPair {
-		private double transition;
+	/**
+	 * A state reached during breadth-first exploration, before and after it
+	 * is added to the graph.
+	 */
+	private static final class Successor {
+		private State state;
 
-		private String transitionName;
+		private ArrayList<String> markedPlaces;
 
-		private State state;
+		private ArrayList<String> enabled;
 
-		private boolean enabled;
+		private double[] values;
+
+		private String[] persistentTransitions;
+
+		private String transition;
 
-		private StateTransitionPair(State state, double transition, String transitionName) {
+		private double rate;
+
+		private long[] key;
+
+		private int target;
+
+		private Successor(State state, ArrayList<String> markedPlaces, ArrayList<String> enabled) {
 			this.state = state;
-			this.transition = transition;
-			this.transitionName = transitionName;
-			enabled = true;
+			this.markedPlaces = markedPlaces;
+			this.enabled = enabled;
 		}
+	}
 
-		private State getState() {
-			return state;
-		}
+	private class Transition {
+		private String transition;
 
-		private double getTransition() {
-			return transition;
+		private ArrayList<String> markedPlaces;
+
+		private State parent;
+
+		private Transition(String transition, ArrayList<String> markedPlaces, State parent) {
+			this.transition = transition;
+			this.markedPlaces = markedPlaces;
+			this.parent = parent;
 		}
 
-		private String getTransitionName() {
-			return transitionName;
+		private String getTransition() {
+			return transition;
 		}
 
-		private boolean isEnabled() {
-			return enabled;
+		private ArrayList<String> getMarkedPlaces() {
+			return markedPlaces;
 		}
 
-		private void setEnabled(boolean enabled) {
-			this.enabled = enabled;
+		private State getState() {
+			return parent;
 		}
 	}
 
+	/**
+	 * A state of the graph. The transitions into and out of a state are kept
+	 * in parallel arrays of state indices, rates and, for outgoing ones,
+	 * transition indices. A pruned state has its outgoing transitions
+	 * disabled. The variables are kept as a value vector in the slots the
+	 * expression trees were compiled with, and only turned into strings for
+	 * output and for checking properties.
+	 */
 	public class State {
 		private String[] markings;
 
-		private StateTransitionPair[] nextStates;
+		private int[] nextStates, nextTransitions, prevStates;
 
-		private StateTransitionPair[] prevStates;
+		private double[] nextRates, prevRates;
 
-		private String stateVector;
+		private int numNextStates, numPrevStates;
 
-		private String id;
+		private boolean pruned;
 
 		private int color;
 
@@ -1810,70 +1613,50 @@ public class StateGraph extends CoreObservable implements Runnable {
 
 		private double piProb;
 
-		private String variablesStr;
+		private double[] values;
+
+		private HashMap<String, String> addedVariables;
 
 		private double transitionSum;
 
 		private String[] persistentTrans;
 
-		public State(String[] markings, StateTransitionPair[] nextStates, String id, String stateVector,
-				HashMap<String, String> variables) {
+		private int index;
+
+		public State(String[] markings, int index, double[] values) {
 			this.markings = markings;
-			this.nextStates = nextStates;
-			prevStates = new StateTransitionPair[0];
-			this.id = id;
-			this.stateVector = stateVector;
+			this.index = index;
+			nextStates = nextTransitions = prevStates = new int[0];
+			nextRates = prevRates = new double[0];
 			color = 0;
 			currentProb = 0.0;
 			nextProb = 0.0;
-			this.variablesStr = "";
-			for (String key : variables.keySet()) {
-				String value = variables.get(key);
-				if (value.contains(",")) {
-					String[] valueSplit = value.split(",");
-					value = valueSplit[0].replace("[","");
-				}
-				if (this.variablesStr.equals("")) {
-					this.variablesStr += key + "=" + value;
-				}
-				else {
-					this.variablesStr += "," + key + "=" + value;
-				}
-			}
+			this.values = values;
 			transitionSum = -1;
 			persistentTrans = new String[0];
 		}
 
+		/**
+		 * Records a value computed for the state after the graph was built,
+		 * such as the result of a probabilistic property.
+		 */
 		private void addVariable(String variable, String value) {
 			if (value.contains(",")) {
 				String[] valueSplit = value.split(",");
 				value = valueSplit[0].replace("[","");
 			}
-			if (this.variablesStr.equals("")) {
-				this.variablesStr += variable + "=" + value;
-			}
-			else {
-				this.variablesStr += "," + variable + "=" + value;
+			if (addedVariables == null) {
+				addedVariables = new HashMap<String, String>();
 			}
+			addedVariables.put(variable, value);
 		}
 
-		private void addPersistentTransition(String transition) {
-			String[] newTrans = new String[persistentTrans.length + 1];
-			for (int i = 0; i < persistentTrans.length; i++) {
-				newTrans[i] = persistentTrans[i];
-			}
-			newTrans[newTrans.length - 1] = transition;
-			persistentTrans = newTrans;
+		private boolean hasVariable(String variable) {
+			return slots.containsKey(variable) || (addedVariables != null && addedVariables.containsKey(variable));
 		}
 
-		private void removePersistentTransition(String transition) {
-			ArrayList<String> newTrans = new ArrayList<String>();
-			for (String trans : persistentTrans) {
-				if (!trans.equals(transition)) {
-					newTrans.add(trans);
-				}
-			}
-			persistentTrans = newTrans.toArray(new String[0]);
+		private double[] getValues() {
+			return values;
 		}
 
 		private String[] getPersistentTransitions() {
@@ -1884,27 +1667,21 @@ public class StateGraph extends CoreObservable implements Runnable {
 			this.persistentTrans = persistentTrans;
 		}
 
-		private boolean containsPersistentTransition(String transition) {
-			for (String trans : persistentTrans) {
-				if (trans.equals(transition)) {
-					return true;
-				}
-			}
-			return false;
-		}
-
 		private String getID() {
-			return id;
+			return "S" + index;
 		}
 
+		/**
+		 * Returns the variables as the string map the property expressions
+		 * are evaluated against.
+		 */
 		private HashMap<String, String> getVariables() {
 			HashMap<String, String> vars = new HashMap<String, String>();
-			if (!variablesStr.equals("")) {
-				String[] assignments = variablesStr.split(",");
-				for (String assignment : assignments) {
-					String[] split = assignment.split("=");
-					vars.put(split[0], split[1]);
-				}
+			for (int i = 0; i < values.length; i++) {
+				vars.put(slotVariables[i], formatValue(i, values[i]));
+			}
+			if (addedVariables != null) {
+				vars.putAll(addedVariables);
 			}
 			return vars;
 		}
@@ -1952,10 +1729,8 @@ public class StateGraph extends CoreObservable implements Runnable {
 		private double getTransitionSum(double noRate, State n) {
 			if (transitionSum == -1) {
 				transitionSum = 0;
-				for (StateTransitionPair next : nextStates) {
-					if (next.isEnabled()) {
-						transitionSum += next.getTransition();
-					}
+				for (int i = 0; i < numNextStates && !pruned; i++) {
+					transitionSum += nextRates[i];
 					// if (lhpn.getTransitionRateTree(next.getTransition()) !=
 					// null) {
 					// if
@@ -1983,33 +1758,27 @@ public class StateGraph extends CoreObservable implements Runnable {
 			return transitionSum;
 		}
 
-		private StateTransitionPair[] getNextStatesWithTrans() {
-			return nextStates;
-		}
-
-		private StateTransitionPair[] getPrevStatesWithTrans() {
-			return prevStates;
-		}
-		
 		public int getNumTransitions() {
-			return nextStates.length;
+			return numNextStates;
 		}
 
 		public State[] getNextStates() {
-			ArrayList<State> next = new ArrayList<State>();
-			for (StateTransitionPair st : nextStates) {
-				if (st.isEnabled()) {
-					next.add(st.getState());
-				}
+			if (pruned) {
+				return new State[0];
+			}
+			State[] next = new State[numNextStates];
+			for (int i = 0; i < numNextStates; i++) {
+				next[i] = stateGraph.get(nextStates[i]);
 			}
-			return next.toArray(new State[0]);
+			return next;
 		}
 
 		public State[] getPrevStates() {
 			ArrayList<State> prev = new ArrayList<State>();
-			for (StateTransitionPair st : prevStates) {
-				if (st.isEnabled()) {
-					prev.add(st.getState());
+			for (int i = 0; i < numPrevStates; i++) {
+				State state = stateGraph.get(prevStates[i]);
+				if (!state.pruned) {
+					prev.add(state);
 				}
 			}
 			return prev.toArray(new State[0]);
@@ -2023,38 +1792,66 @@ public class StateGraph extends CoreObservable implements Runnable {
 			this.color = color;
 		}
 
+		/**
+		 * Returns the values of the boolean and integer variables, with
+		 * booleans written as 1 and 0.
+		 */
 		public String getStateVector() {
-			return stateVector;
+			StringBuilder vector = new StringBuilder();
+			for (int i = 0; i < vectorSlots.length; i++) {
+				if (i > 0) {
+					vector.append(',');
+				}
+				int slot = vectorSlots[i];
+				if (booleanSlots[slot] && !Double.isNaN(values[slot])) {
+					vector.append(values[slot] == 0.0 ? '0' : '1');
+				}
+				else {
+					vector.append(formatValue(slot, values[slot]));
+				}
+			}
+			return vector.toString();
 		}
 
+		/**
+		 * Adds a transition, growing the arrays geometrically. The arrays may
+		 * then be longer than the number of transitions until
+		 * trimTransitions is called.
+		 */
 		private void addNextState(State nextState, double transition, String transitionName) {
-			StateTransitionPair[] newNextStates = new StateTransitionPair[nextStates.length + 1];
-			for (int i = 0; i < nextStates.length; i++) {
-				newNextStates[i] = nextStates[i];
+			if (numNextStates == nextStates.length) {
+				int length = Math.max(4, 2 * numNextStates);
+				nextStates = Arrays.copyOf(nextStates, length);
+				nextTransitions = Arrays.copyOf(nextTransitions, length);
+				nextRates = Arrays.copyOf(nextRates, length);
 			}
-			newNextStates[newNextStates.length - 1] = new StateTransitionPair(nextState, transition, transitionName);
-			nextStates = newNextStates;
-			nextState.addPreviousState(this, transition, transitionName);
+			nextStates[numNextStates] = nextState.index;
+			nextTransitions[numNextStates] = transitionIndices.get(transitionName);
+			nextRates[numNextStates++] = transition;
+			nextState.addPreviousState(this, transition);
 		}
 
-		private void addPreviousState(State prevState, double transition, String transitionName) {
-			StateTransitionPair[] newPrevStates = new StateTransitionPair[prevStates.length + 1];
-			for (int i = 0; i < prevStates.length; i++) {
-				newPrevStates[i] = prevStates[i];
+		private void addPreviousState(State prevState, double transition) {
+			if (numPrevStates == prevStates.length) {
+				int length = Math.max(4, 2 * numPrevStates);
+				prevStates = Arrays.copyOf(prevStates, length);
+				prevRates = Arrays.copyOf(prevRates, length);
+			}
+			prevStates[numPrevStates] = prevState.index;
+			prevRates[numPrevStates++] = transition;
+		}
+
+		private void trimTransitions() {
+			if (nextStates.length != numNextStates) {
+				nextStates = Arrays.copyOf(nextStates, numNextStates);
+				nextTransitions = Arrays.copyOf(nextTransitions, numNextStates);
+				nextRates = Arrays.copyOf(nextRates, numNextStates);
+			}
+			if (prevStates.length != numPrevStates) {
+				prevStates = Arrays.copyOf(prevStates, numPrevStates);
+				prevRates = Arrays.copyOf(prevRates, numPrevStates);
 			}
-			newPrevStates[newPrevStates.length - 1] = new StateTransitionPair(prevState, transition, transitionName);
-			prevStates = newPrevStates;
 		}
-		
-//		@SuppressWarnings("unused")
-//		private void setNextStatesWithTrans(StateTransitionPair[] trans) {
-//			nextStates = trans;
-//		}
-//
-//		@SuppressWarnings("unused")
-//		private void setPrevStatesWithTrans(StateTransitionPair[] trans) {
-//			prevStates = trans;
-//		}
 	}
 
 	@Override
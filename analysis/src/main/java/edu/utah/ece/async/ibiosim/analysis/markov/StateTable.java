@@ -0,0 +1,124 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.markov;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash table from fixed-length packed state keys to
+ * consecutive integer state ids.
+ * 
+ * <p>
+ * Keys are stored back to back in one long array, indexed by id, and the
+ * table itself only holds ids, so a state costs a few words rather than the
+ * strings and maps used to describe it.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public final class StateTable {
+
+	private final int keyLength;
+
+	private long[] keys;
+
+	private int[] slots;
+
+	private int size;
+
+	/**
+	 * Creates an empty table.
+	 * 
+	 * @param keyLength
+	 *            the number of longs in each key.
+	 */
+	public StateTable(int keyLength) {
+		this.keyLength = keyLength;
+		keys = new long[Math.max(keyLength, 1) * 16];
+		slots = new int[32];
+		Arrays.fill(slots, -1);
+	}
+
+	/**
+	 * Returns the number of keys added.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the id of the first key added that equals the given key, or -1
+	 * if there is none.
+	 */
+	public int get(long[] key) {
+		int mask = slots.length - 1;
+		for (int slot = hash(key, 0) & mask;; slot = (slot + 1) & mask) {
+			int id = slots[slot];
+			if (id == -1) {
+				return -1;
+			}
+			if (matches(key, id)) {
+				return id;
+			}
+		}
+	}
+
+	/**
+	 * Adds a key and returns its id, which is the number of keys added before
+	 * it. Equal keys may be added more than once and get separate ids.
+	 */
+	public int add(long[] key) {
+		if (keys.length < (size + 1) * keyLength) {
+			keys = Arrays.copyOf(keys, keys.length * 2);
+		}
+		System.arraycopy(key, 0, keys, size * keyLength, keyLength);
+		if (2 * (size + 1) > slots.length) {
+			slots = new int[slots.length * 2];
+			Arrays.fill(slots, -1);
+			for (int id = 0; id < size; id++) {
+				insert(id);
+			}
+		}
+		insert(size);
+		return size++;
+	}
+
+	private void insert(int id) {
+		int mask = slots.length - 1;
+		int slot = hash(keys, id * keyLength) & mask;
+		while (slots[slot] != -1) {
+			slot = (slot + 1) & mask;
+		}
+		slots[slot] = id;
+	}
+
+	private boolean matches(long[] key, int id) {
+		int offset = id * keyLength;
+		for (int i = 0; i < keyLength; i++) {
+			if (keys[offset + i] != key[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int hash(long[] array, int offset) {
+		long h = 0x9E3779B97F4A7C15L;
+		for (int i = offset; i < offset + keyLength; i++) {
+			h = (h ^ array[i]) * 0xBF58476D1CE4E5B9L;
+			h ^= h >>> 31;
+		}
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,511 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.markov;
+
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Computes the long-run distribution of a continuous-time Markov chain from
+ * an initial distribution.
+ * 
+ * <p>
+ * The chain is split into strongly connected components. Probability that
+ * starts in transient states flows into the bottom components, and the amount
+ * reaching each one comes from a single linear solve over the transient
+ * states. Inside each bottom component that receives probability, the
+ * stationary distribution is found by fixing one state and solving for the
+ * rest. Absorbing states are bottom components of size one, so chains made
+ * absorbing by pruning are handled the same way as ergodic ones.
+ * 
+ * <p>
+ * Each linear system is solved with Jacobi, Gauss-Seidel, SOR or BiCGStab.
+ * The iteration count and the relative residual of the last solve are kept
+ * for reporting.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SteadyStateSolver {
+
+	public enum Method {
+		JACOBI, GAUSS_SEIDEL, SOR, BICGSTAB;
+
+		/**
+		 * Parses a method name such as "gauss-seidel" or "bicgstab", defaulting
+		 * to Gauss-Seidel.
+		 */
+		public static Method fromString(String name) {
+			if (name != null) {
+				for (Method method : values()) {
+					if (method.name().replace('_', '-').equalsIgnoreCase(name.trim())) {
+						return method;
+					}
+				}
+			}
+			return GAUSS_SEIDEL;
+		}
+	}
+
+	private final Method method;
+
+	private final double tolerance;
+
+	private final int maxIterations;
+
+	private final double omega;
+
+	private int iterations;
+
+	private double residual;
+
+	public SteadyStateSolver(Method method, double tolerance) {
+		this(method, tolerance, 100000, 1.2);
+	}
+
+	/**
+	 * Creates a solver.
+	 * 
+	 * @param method
+	 *            the iterative method.
+	 * @param tolerance
+	 *            the relative change (Jacobi, Gauss-Seidel, SOR) or relative
+	 *            residual (BiCGStab) at which a solve stops.
+	 * @param maxIterations
+	 *            the maximum number of iterations of each solve.
+	 * @param omega
+	 *            the SOR relaxation factor.
+	 */
+	public SteadyStateSolver(Method method, double tolerance, int maxIterations, double omega) {
+		this.method = method;
+		this.tolerance = tolerance;
+		this.maxIterations = maxIterations;
+		this.omega = omega;
+	}
+
+	/**
+	 * Returns the total number of iterations of the last call to solve.
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * Returns the largest relative residual of the linear systems solved in the
+	 * last call to solve.
+	 */
+	public double getResidual() {
+		return residual;
+	}
+
+	/**
+	 * Computes the long-run distribution.
+	 * 
+	 * @param matrix
+	 *            the rate matrix.
+	 * @param initial
+	 *            the initial distribution.
+	 * @param stop
+	 *            checked between iterations to cancel the solve.
+	 * @return the long-run probability of each state, or null if cancelled.
+	 */
+	public double[] solve(SparseRateMatrix matrix, double[] initial, BooleanSupplier stop) {
+		iterations = 0;
+		residual = 0;
+		int numStates = matrix.getNumStates();
+		int[] rowPointers = matrix.getRowPointers();
+		int[] sources = matrix.getSources();
+		double[] rates = matrix.getRates();
+		int[] components = findComponents(matrix);
+		int numComponents = 0;
+		for (int component : components) {
+			numComponents = Math.max(numComponents, component + 1);
+		}
+		boolean[] bottom = new boolean[numComponents];
+		Arrays.fill(bottom, true);
+		for (int i = 0; i < numStates; i++) {
+			for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+				if (rates[k] > 0 && components[sources[k]] != components[i]) {
+					bottom[components[sources[k]]] = false;
+				}
+			}
+		}
+
+		// Probability reaching each bottom component, from the expected time
+		// spent in each transient state
+		double[] mass = new double[numComponents];
+		boolean[] isTransient = new boolean[numStates];
+		for (int i = 0; i < numStates; i++) {
+			isTransient[i] = !bottom[components[i]];
+			if (!isTransient[i]) {
+				mass[components[i]] += initial[i];
+			}
+		}
+		double[] occupancy = solveSubset(matrix, isTransient, initial, stop);
+		if (occupancy == null) {
+			return null;
+		}
+		for (int i = 0; i < numStates; i++) {
+			if (!isTransient[i]) {
+				for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+					if (isTransient[sources[k]]) {
+						mass[components[i]] += occupancy[sources[k]] * rates[k];
+					}
+				}
+			}
+		}
+
+		// Stationary distribution of each bottom component that is reached
+		double[] result = new double[numStates];
+		int[] reference = new int[numComponents];
+		Arrays.fill(reference, -1);
+		for (int i = 0; i < numStates; i++) {
+			if (!isTransient[i] && reference[components[i]] == -1) {
+				reference[components[i]] = i;
+			}
+		}
+		boolean[] members = new boolean[numStates];
+		double[] rhs = new double[numStates];
+		for (int c = 0; c < numComponents; c++) {
+			if (!bottom[c] || mass[c] <= 0) {
+				continue;
+			}
+			int r = reference[c];
+			boolean single = true;
+			for (int i = 0; i < numStates; i++) {
+				members[i] = components[i] == c && i != r;
+				rhs[i] = 0;
+				single &= !members[i];
+			}
+			if (single) {
+				result[r] = mass[c];
+				continue;
+			}
+			// With the reference state fixed at one, the others balance the
+			// flow they receive from it
+			for (int i = 0; i < numStates; i++) {
+				if (members[i]) {
+					for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+						if (sources[k] == r) {
+							rhs[i] += rates[k];
+						}
+					}
+				}
+			}
+			double[] stationary = solveSubset(matrix, members, rhs, stop);
+			if (stationary == null) {
+				return null;
+			}
+			double total = 1.0;
+			for (int i = 0; i < numStates; i++) {
+				if (members[i]) {
+					total += stationary[i];
+				}
+			}
+			result[r] = mass[c] / total;
+			for (int i = 0; i < numStates; i++) {
+				if (members[i]) {
+					result[i] = mass[c] * stationary[i] / total;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Solves x A = b over the given states, where A has the exit rates on the
+	 * diagonal and the negated rates between the states elsewhere.
+	 */
+	private double[] solveSubset(SparseRateMatrix matrix, boolean[] subset, double[] b, BooleanSupplier stop) {
+		int numStates = matrix.getNumStates();
+		int[] local = new int[numStates];
+		int size = 0;
+		boolean hasRhs = false;
+		for (int i = 0; i < numStates; i++) {
+			local[i] = subset[i] ? size++ : -1;
+			hasRhs |= subset[i] && b[i] != 0;
+		}
+		double[] result = new double[numStates];
+		if (!hasRhs) {
+			return result;
+		}
+
+		// Copy the subset into a local system scaled by the diagonal, so that
+		// x = c + x N with c = b / d and N = rates / d
+		int[] localRows = new int[size + 1];
+		double[] c = new double[size];
+		int[] rowPointers = matrix.getRowPointers();
+		int[] sources = matrix.getSources();
+		double[] rates = matrix.getRates();
+		double[] exitRates = matrix.getExitRates();
+		int count = 0;
+		for (int i = 0; i < numStates; i++) {
+			if (subset[i]) {
+				for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+					if (rates[k] > 0 && subset[sources[k]]) {
+						count++;
+					}
+				}
+			}
+		}
+		int[] localSources = new int[count];
+		double[] scaledRates = new double[count];
+		count = 0;
+		for (int i = 0; i < numStates; i++) {
+			if (subset[i]) {
+				int row = local[i];
+				for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+					if (rates[k] > 0 && subset[sources[k]]) {
+						localSources[count] = local[sources[k]];
+						scaledRates[count] = rates[k] / exitRates[i];
+						count++;
+					}
+				}
+				localRows[row + 1] = count;
+				c[row] = b[i] / exitRates[i];
+			}
+		}
+
+		double[] x;
+		if (method == Method.BICGSTAB) {
+			x = solveBiCGStab(localRows, localSources, scaledRates, c, stop);
+		}
+		else {
+			x = solveStationary(localRows, localSources, scaledRates, c, stop);
+		}
+		if (x == null) {
+			return null;
+		}
+		double[] r = new double[size];
+		multiply(localRows, localSources, scaledRates, x, r);
+		double residualNorm = 0;
+		for (int i = 0; i < size; i++) {
+			residualNorm = Math.max(residualNorm, Math.abs(c[i] - r[i]));
+		}
+		residual = Math.max(residual, residualNorm / Math.max(maxNorm(c), Double.MIN_NORMAL));
+		for (int i = 0; i < numStates; i++) {
+			if (subset[i]) {
+				result[i] = x[local[i]];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Jacobi, Gauss-Seidel or SOR sweeps until the largest change is within
+	 * tolerance of the largest value.
+	 */
+	private double[] solveStationary(int[] rows, int[] sources, double[] rates, double[] c, BooleanSupplier stop) {
+		int size = c.length;
+		double[] x = c.clone();
+		double[] previous = method == Method.JACOBI ? new double[size] : null;
+		double relaxation = method == Method.SOR ? omega : 1.0;
+		for (int iteration = 0; iteration < maxIterations; iteration++) {
+			if (stop.getAsBoolean()) {
+				return null;
+			}
+			iterations++;
+			double change = 0;
+			double norm = 0;
+			if (previous != null) {
+				System.arraycopy(x, 0, previous, 0, size);
+			}
+			double[] read = previous != null ? previous : x;
+			for (int i = 0; i < size; i++) {
+				double sum = c[i];
+				for (int k = rows[i]; k < rows[i + 1]; k++) {
+					sum += read[sources[k]] * rates[k];
+				}
+				double value = (1 - relaxation) * x[i] + relaxation * sum;
+				change = Math.max(change, Math.abs(value - x[i]));
+				norm = Math.max(norm, Math.abs(value));
+				x[i] = value;
+			}
+			if (change <= tolerance * norm) {
+				break;
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * BiCGStab on (I - N) x = c, restarting on breakdown.
+	 */
+	private double[] solveBiCGStab(int[] rows, int[] sources, double[] rates, double[] c, BooleanSupplier stop) {
+		int size = c.length;
+		double[] x = c.clone();
+		double[] r = new double[size];
+		multiply(rows, sources, rates, x, r);
+		for (int i = 0; i < size; i++) {
+			r[i] = c[i] - r[i];
+		}
+		double[] shadow = r.clone();
+		double[] p = new double[size];
+		double[] v = new double[size];
+		double[] s = new double[size];
+		double[] t = new double[size];
+		double rho = 1;
+		double alpha = 1;
+		double w = 1;
+		double target = tolerance * Math.max(norm2(c), Double.MIN_NORMAL);
+		for (int iteration = 0; iteration < maxIterations && norm2(r) > target; iteration++) {
+			if (stop.getAsBoolean()) {
+				return null;
+			}
+			iterations++;
+			double rhoNext = dot(shadow, r);
+			if (rhoNext == 0 || w == 0) {
+				System.arraycopy(r, 0, shadow, 0, size);
+				Arrays.fill(p, 0);
+				Arrays.fill(v, 0);
+				rho = alpha = w = 1;
+				rhoNext = dot(shadow, r);
+			}
+			double beta = (rhoNext / rho) * (alpha / w);
+			rho = rhoNext;
+			for (int i = 0; i < size; i++) {
+				p[i] = r[i] + beta * (p[i] - w * v[i]);
+			}
+			multiply(rows, sources, rates, p, v);
+			double shadowV = dot(shadow, v);
+			if (shadowV == 0) {
+				w = 0;
+				continue;
+			}
+			alpha = rho / shadowV;
+			for (int i = 0; i < size; i++) {
+				s[i] = r[i] - alpha * v[i];
+			}
+			if (norm2(s) <= target) {
+				for (int i = 0; i < size; i++) {
+					x[i] += alpha * p[i];
+					r[i] = s[i];
+				}
+				break;
+			}
+			multiply(rows, sources, rates, s, t);
+			double tt = dot(t, t);
+			w = tt == 0 ? 0 : dot(t, s) / tt;
+			for (int i = 0; i < size; i++) {
+				x[i] += alpha * p[i] + w * s[i];
+				r[i] = s[i] - w * t[i];
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * Computes y = x (I - N).
+	 */
+	private static void multiply(int[] rows, int[] sources, double[] rates, double[] x, double[] y) {
+		for (int i = 0; i < y.length; i++) {
+			double sum = 0;
+			for (int k = rows[i]; k < rows[i + 1]; k++) {
+				sum += x[sources[k]] * rates[k];
+			}
+			y[i] = x[i] - sum;
+		}
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double sum = 0;
+		for (int i = 0; i < a.length; i++) {
+			sum += a[i] * b[i];
+		}
+		return sum;
+	}
+
+	private static double norm2(double[] a) {
+		return Math.sqrt(dot(a, a));
+	}
+
+	private static double maxNorm(double[] a) {
+		double max = 0;
+		for (double value : a) {
+			max = Math.max(max, Math.abs(value));
+		}
+		return max;
+	}
+
+	/**
+	 * Numbers the strongly connected components with an iterative version of
+	 * Tarjan's algorithm. The rows of the matrix list predecessors, so this
+	 * walks the reversed graph, which has the same components.
+	 */
+	private static int[] findComponents(SparseRateMatrix matrix) {
+		int numStates = matrix.getNumStates();
+		int[] rowPointers = matrix.getRowPointers();
+		int[] sources = matrix.getSources();
+		double[] rates = matrix.getRates();
+		int[] index = new int[numStates];
+		int[] lowLink = new int[numStates];
+		int[] components = new int[numStates];
+		boolean[] onStack = new boolean[numStates];
+		int[] stack = new int[numStates];
+		int[] callStack = new int[numStates];
+		int[] edge = new int[numStates];
+		Arrays.fill(index, -1);
+		int stackSize = 0;
+		int nextIndex = 0;
+		int nextComponent = 0;
+		for (int root = 0; root < numStates; root++) {
+			if (index[root] != -1) {
+				continue;
+			}
+			int depth = 0;
+			callStack[depth++] = root;
+			index[root] = lowLink[root] = nextIndex++;
+			edge[root] = rowPointers[root];
+			stack[stackSize++] = root;
+			onStack[root] = true;
+			while (depth > 0) {
+				int v = callStack[depth - 1];
+				if (edge[v] < rowPointers[v + 1]) {
+					int k = edge[v]++;
+					if (rates[k] <= 0) {
+						continue;
+					}
+					int w = sources[k];
+					if (index[w] == -1) {
+						index[w] = lowLink[w] = nextIndex++;
+						edge[w] = rowPointers[w];
+						stack[stackSize++] = w;
+						onStack[w] = true;
+						callStack[depth++] = w;
+					}
+					else if (onStack[w]) {
+						lowLink[v] = Math.min(lowLink[v], index[w]);
+					}
+					continue;
+				}
+				depth--;
+				if (depth > 0) {
+					int parent = callStack[depth - 1];
+					lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+				}
+				if (lowLink[v] == index[v]) {
+					int w;
+					do {
+						w = stack[--stackSize];
+						onStack[w] = false;
+						components[w] = nextComponent;
+					}
+					while (w != v);
+					nextComponent++;
+				}
+			}
+		}
+		return components;
+	}
+}
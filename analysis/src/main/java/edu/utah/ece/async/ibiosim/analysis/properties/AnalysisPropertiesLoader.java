@@ -13,7 +13,11 @@
  *******************************************************************************/
 package edu.utah.ece.async.ibiosim.analysis.properties;
 
+import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.markov_steady_state_solver;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.mc_start_index;
+import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.mc_threads;
+import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.ode_integrator;
+import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.sim_compile_math;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -243,6 +247,14 @@ public class AnalysisPropertiesLoader {
 						&& ((String) key).substring(0, 38).equals("reb2sac.absolute.inhibition.threshold.")) {} else if (((String) key).length() > 27 && ((String) key).substring(0, 28).equals("reb2sac.concentration.level.")) {} else if (((String) key).length() > 19
 								&& ((String) key).substring(0, 20).equals("reb2sac.final.state.")) {} else if (key.equals("reb2sac.analysis.stop.enabled")) {} else if (key.equals("reb2sac.analysis.stop.rate")) {} else if (key.equals(mc_start_index)) {
 					simProperties.setStartIndex(Integer.parseInt(load.getProperty(mc_start_index)));
+				} else if (key.equals(mc_threads)) {
+					simProperties.setThreads(Integer.parseInt(load.getProperty(mc_threads)));
+				} else if (key.equals(sim_compile_math)) {
+					simProperties.setCompileMath(Boolean.parseBoolean(load.getProperty(sim_compile_math)));
+				} else if (key.equals(ode_integrator)) {
+					simProperties.setOdeIntegrator(load.getProperty(ode_integrator));
+				} else if (key.equals(markov_steady_state_solver)) {
+					simProperties.setSteadyStateSolver(load.getProperty(markov_steady_state_solver));
 				} else if (key.equals("abstraction.interesting")) {
 					String intVars = load.getProperty("abstraction.interesting");
 					String[] array = intVars.split(" ");
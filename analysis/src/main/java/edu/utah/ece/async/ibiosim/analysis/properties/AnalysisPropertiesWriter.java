@@ -15,6 +15,7 @@ package edu.utah.ece.async.ibiosim.analysis.properties;
 
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.complex_formation_abstraction;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.gcm_Abstraction;
+import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.markov_steady_state_solver;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.mc_min_print_interval;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.mc_min_time_step;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.mc_number_steps;
@@ -23,9 +24,11 @@ import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.mc_runs;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.mc_seed;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.mc_start_index;
+import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.mc_threads;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.mc_time_limit;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.mc_time_step;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.ode_abs_error;
+import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.ode_integrator;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.ode_min_print_interval;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.ode_min_time_step;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.ode_number_steps;
@@ -52,6 +55,7 @@ import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.reb2sac_simulation;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.reb2sac_stats;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.reb2sac_transform;
+import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.sim_compile_math;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.sim_init_time;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.sim_out_time;
 import static edu.utah.ece.async.ibiosim.analysis.properties.PropertiesConstants.sim_printer;
@@ -219,6 +223,8 @@ public class AnalysisPropertiesWriter {
 			}
 		} else if (analysisProperties.isMarkov()) {
 			properties.setProperty(reb2sac_simulation, "markov");
+			properties.setProperty(markov_steady_state_solver, analysisProperties.getSimulationProperties().getSteadyStateSolver());
+			properties.setProperty(mc_threads, String.valueOf(analysisProperties.getSimulationProperties().getThreads()));
 		} else if (analysisProperties.isFba()) {
 			properties.setProperty(reb2sac_simulation, "FBA");
 		} else if (analysisProperties.isSbml()) {
@@ -252,6 +258,7 @@ public class AnalysisPropertiesWriter {
 			properties.setProperty(mc_seed, String.valueOf(analysisProperties.getSimulationProperties().getRndSeed()));
 			properties.setProperty(mc_runs, String.valueOf(analysisProperties.getSimulationProperties().getRun()));
 			properties.setProperty(mc_start_index, String.valueOf(analysisProperties.getSimulationProperties().getStartIndex()));
+			properties.setProperty(ode_integrator, analysisProperties.getSimulationProperties().getOdeIntegrator());
 			properties.setProperty(ode_out_dir, analysisProperties.getOutDir());
 		}
 		if (analysisProperties.isSsa()) {
@@ -276,9 +283,11 @@ public class AnalysisPropertiesWriter {
 			properties.setProperty(mc_seed, String.valueOf(analysisProperties.getSimulationProperties().getRndSeed()));
 			properties.setProperty(mc_runs, String.valueOf(analysisProperties.getSimulationProperties().getRun()));
 			properties.setProperty(mc_start_index, String.valueOf(analysisProperties.getSimulationProperties().getStartIndex()));
+			properties.setProperty(mc_threads, String.valueOf(analysisProperties.getSimulationProperties().getThreads()));
 			properties.setProperty(mc_out_dir, analysisProperties.getOutDir());
 		}
 		properties.setProperty(sim_run_term, "constraint");
+		properties.setProperty(sim_compile_math, String.valueOf(analysisProperties.getSimulationProperties().isCompileMath()));
 
 		File file = new File(analysisProperties.getPropertiesFilename());
 		FileOutputStream store = new FileOutputStream(file);
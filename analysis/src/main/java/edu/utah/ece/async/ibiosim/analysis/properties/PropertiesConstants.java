@@ -57,6 +57,7 @@ public class PropertiesConstants {
 	public static final String sim_init_time = "simulation.initial.time";
 	public static final String sim_out_time = "simulation.output.start.time";
 	public static final String sim_run_term = "simulation.run.termination.decider";
+	public static final String sim_compile_math = "simulation.compile.math";
 
 	/*
 	 * ODE simulation constants
@@ -70,6 +71,12 @@ public class PropertiesConstants {
 	public static final String ode_abs_error = "ode.simulation.absolute.error";
 	public static final String ode_rel_error = "ode.simulation.relative.error";
 	public static final String ode_out_dir = "ode.simulation.out.dir";
+	public static final String ode_integrator = "ode.simulation.integrator";
+
+	/*
+	 * Markov analysis constants
+	 */
+	public static final String markov_steady_state_solver = "markov.steady.state.solver";
 
 	/*
 	 * Monte Carlo constants
@@ -86,5 +93,6 @@ public class PropertiesConstants {
 	public static final String mc_simulation_runs = "monte.carlo.simulation.runs";
 	public static final String mc_out_dir = "monte.carlo.simulation.out.dir";
 	public static final String mc_start_index = "monte.carlo.simulation.start.index";
+	public static final String mc_threads = "monte.carlo.simulation.threads";
 
 }
@@ -29,11 +29,14 @@ import edu.utah.ece.async.ibiosim.dataModels.util.observe.CoreObservable;
  */
 public final class SimulationProperties extends CoreObservable {
 
-	private int numSteps, run, startIndex;
+	private int numSteps, run, startIndex, threads;
 	private double initialTime, outputStartTime, minTimeStep, maxTimeStep, printInterval, timeLimit, absError, relError;
 	private String printer_id, printer_track_quantity, genStats;
 	private long rndSeed;
 	private List<String> intSpecies;
+	private boolean compileMath;
+	private String odeIntegrator;
+	private String steadyStateSolver;
 
 	SimulationProperties() {
 		run = 1;
@@ -51,6 +54,10 @@ public final class SimulationProperties extends CoreObservable {
 		timeLimit = 100;
 		intSpecies = new ArrayList<>();
 		startIndex = 1;
+		threads = 1;
+		compileMath = true;
+		odeIntegrator = "rk";
+		steadyStateSolver = "gauss-seidel";
 
 	}
 
@@ -357,4 +364,82 @@ public final class SimulationProperties extends CoreObservable {
 	public void setStartIndex(int startIndex) {
 		this.startIndex = startIndex;
 	}
+
+	/**
+	 * Gets the number of threads used to run simulation replicates and to build
+	 * Markov state graphs.
+	 *
+	 * @return the number of threads.
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Sets the number of threads used to run simulation replicates and to build
+	 * Markov state graphs.
+	 *
+	 * @param threads
+	 *          - a positive integer corresponding to the number of threads.
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Checks whether math is compiled before simulation. When false, math is interpreted.
+	 *
+	 * @return true if math is compiled.
+	 */
+	public boolean isCompileMath() {
+		return compileMath;
+	}
+
+	/**
+	 * Sets whether math is compiled before simulation.
+	 *
+	 * @param compileMath
+	 *          - false to interpret math instead.
+	 */
+	public void setCompileMath(boolean compileMath) {
+		this.compileMath = compileMath;
+	}
+
+	/**
+	 * Gets the integrator used by the hierarchical ODE simulator.
+	 *
+	 * @return "rk" for the explicit Runge-Kutta method or "rosenbrock" for the stiff Rosenbrock method.
+	 */
+	public String getOdeIntegrator() {
+		return odeIntegrator;
+	}
+
+	/**
+	 * Sets the integrator used by the hierarchical ODE simulator.
+	 *
+	 * @param odeIntegrator
+	 *          - "rk" for the explicit Runge-Kutta method or "rosenbrock" for stiff models.
+	 */
+	public void setOdeIntegrator(String odeIntegrator) {
+		this.odeIntegrator = odeIntegrator;
+	}
+
+	/**
+	 * Gets the iterative method used for Markov steady-state analysis.
+	 *
+	 * @return "jacobi", "gauss-seidel", "sor" or "bicgstab".
+	 */
+	public String getSteadyStateSolver() {
+		return steadyStateSolver;
+	}
+
+	/**
+	 * Sets the iterative method used for Markov steady-state analysis.
+	 *
+	 * @param steadyStateSolver
+	 *          - "jacobi", "gauss-seidel", "sor" or "bicgstab".
+	 */
+	public void setSteadyStateSolver(String steadyStateSolver) {
+		this.steadyStateSolver = steadyStateSolver;
+	}
 }
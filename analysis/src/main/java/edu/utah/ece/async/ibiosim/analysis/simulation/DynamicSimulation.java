@@ -22,9 +22,12 @@ import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
 import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorODERK;
 import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorSSACR;
 import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorSSADirect;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalEnsembleSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalHybridSimulator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalMixedSimulator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalSSADirectSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalSSANextReactionSimulator;
 import edu.utah.ece.async.ibiosim.dataModels.util.Message;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 import edu.utah.ece.async.ibiosim.dataModels.util.observe.CoreObservable;
@@ -49,7 +52,7 @@ public class DynamicSimulation extends CoreObservable {
   private boolean statisticsFlag;
 
   public static enum SimulationType {
-    CR, DIRECT, RK, HIERARCHICAL_DIRECT, HIERARCHICAL_HYBRID, HIERARCHICAL_RK, HIERARCHICAL_MIXED;
+    CR, DIRECT, RK, HIERARCHICAL_DIRECT, HIERARCHICAL_NEXT_REACTION, HIERARCHICAL_HYBRID, HIERARCHICAL_RK, HIERARCHICAL_MIXED;
   }
 
   /**
@@ -99,7 +102,17 @@ public class DynamicSimulation extends CoreObservable {
         simulator.addObservable(this);
         break;
       case HIERARCHICAL_DIRECT:
-        simulator = new HierarchicalSSADirectSimulator(properties);
+        if (runs > 1 && simProperties.getThreads() > 1) {
+          simulator = new HierarchicalEnsembleSimulator(properties, simProperties.getThreads());
+          // The ensemble simulates all runs at once
+          runs = 1;
+        } else {
+          simulator = new HierarchicalSSADirectSimulator(properties);
+        }
+        simulator.addObservable(this);
+        break;
+      case HIERARCHICAL_NEXT_REACTION:
+        simulator = new HierarchicalSSANextReactionSimulator(properties);
         simulator.addObservable(this);
         break;
       case HIERARCHICAL_RK:
@@ -107,6 +120,8 @@ public class DynamicSimulation extends CoreObservable {
         simulator.addObservable(this);
         break;
       case HIERARCHICAL_HYBRID:
+        simulator = new HierarchicalHybridSimulator(properties);
+        simulator.addObservable(this);
         break;
       case HIERARCHICAL_MIXED:
         simulator = new HierarchicalMixedSimulator(properties);
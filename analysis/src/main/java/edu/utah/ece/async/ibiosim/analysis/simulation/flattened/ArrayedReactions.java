@@ -0,0 +1,759 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import org.sbml.jsbml.ASTNode;
+import org.sbml.jsbml.LocalParameter;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Parameter;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.SpeciesReference;
+
+import edu.utah.ece.async.ibiosim.dataModels.biomodel.annotation.AnnotationUtility;
+import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
+
+/**
+ * The arrayed reactions of a grid model, simulated without expanding them.
+ *
+ * Each arrayed reaction is kept as one template: the slots of its reactant
+ * and product among the arrayed species, the row and column offsets of their
+ * get2DArrayElement indices and the rate constant of its kinetic law. An
+ * element of the reaction at (row, col) reads and changes the values at
+ * ((row + rowOffset) * numCols + col + colOffset) * numSpecies + slot, so the
+ * model loads in time proportional to the size of its arrays rather than
+ * through a copy of every reaction and kinetic law per element.
+ *
+ * Templates that move a species to each of its four neighbours at one rate
+ * become diffusion rates of the {@link NextSubvolumeMethod}. The other
+ * templates are its local reactions.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+class ArrayedReactions implements IndexedReactions
+{
+
+	private static final String						ARRAY_ELEMENT	= "get2DArrayElement";
+
+	private final int								numRows;
+	private final int								numCols;
+	private final String[]							speciesNames;
+
+	// one entry per arrayed reaction of the model
+	private final String[]							templateIDs;
+	private final int[]								reactantSlots;
+	private final int[]								reactantRowOffsets;
+	private final int[]								reactantColOffsets;
+	private final int[]								productSlots;
+	private final int[]								productRowOffsets;
+	private final int[]								productColOffsets;
+	private final ASTNode[]							rateNodes;
+	private final ArrayList<HashMap<String, Double>>	localParameterValues;
+
+	// the elements of the templates that are local reactions, set up for each
+	// run
+	private double[]								values;
+	private double[]								rates;
+	private int[]									reactantIndices;
+	private int[]									productIndices;
+	private int[]									stoichiometryPointers;
+	private int[]									stoichiometrySpecies;
+	private int[]									dependencyPointers;
+	private int[]									dependencies;
+
+	private ArrayedReactions(int numRows, int numCols, String[] speciesNames, int numTemplates)
+	{
+
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.speciesNames = speciesNames;
+
+		templateIDs = new String[numTemplates];
+		reactantSlots = new int[numTemplates];
+		reactantRowOffsets = new int[numTemplates];
+		reactantColOffsets = new int[numTemplates];
+		productSlots = new int[numTemplates];
+		productRowOffsets = new int[numTemplates];
+		productColOffsets = new int[numTemplates];
+		rateNodes = new ASTNode[numTemplates];
+		localParameterValues = new ArrayList<HashMap<String, Double>>();
+	}
+
+	/**
+	 * reads the arrayed reactions of a simulator's model before its arrays are
+	 * set up
+	 *
+	 * @param simulator
+	 *            the simulator, before {@link Simulator#setupArrays()}
+	 * @return the templates, or null if the model has anything other than
+	 *         arrayed species on one grid and first-order arrayed reactions
+	 *         between them, in which case the arrays have to be expanded
+	 */
+	static ArrayedReactions parse(Simulator simulator)
+	{
+
+		Model model = simulator.model;
+
+		if (simulator.stoichAmpBoolean == true || model.getReactionCount() == 0 || model.getEventCount() > 0 || model.getRuleCount() > 0 || model.getConstraintCount() > 0)
+		{
+			return null;
+		}
+
+		// the arrayed species, which have to span the same grid
+		LinkedHashMap<String, Integer> speciesToSlotMap = new LinkedHashMap<String, Integer>();
+		int[] bounds = null;
+
+		for (Species species : model.getListOfSpecies())
+		{
+
+			int[] speciesBounds = AnnotationUtility.parseSpeciesArrayAnnotation(species);
+
+			if (speciesBounds == null)
+			{
+				continue;
+			}
+
+			if (bounds == null)
+			{
+				bounds = speciesBounds;
+			}
+			else if (Arrays.equals(bounds, speciesBounds) == false)
+			{
+				return null;
+			}
+
+			if (species.getBoundaryCondition() == true || species.getConstant() == true || species.isSetConversionFactor())
+			{
+				return null;
+			}
+
+			speciesToSlotMap.put(species.getId(), speciesToSlotMap.size());
+		}
+
+		// the expansion names the elements ROW{row}_COL{col}__{species}, so
+		// the grid starts at row and column zero
+		if (bounds == null || bounds[0] != 0 || bounds[1] != 0 || bounds[2] < 0 || bounds[3] < 0)
+		{
+			return null;
+		}
+
+		ArrayedReactions arrayedReactions = new ArrayedReactions(bounds[2] + 1, bounds[3] + 1, speciesToSlotMap.keySet().toArray(new String[0]), model.getReactionCount());
+
+		for (int i = 0; i < model.getReactionCount(); ++i)
+		{
+
+			if (arrayedReactions.parseTemplate(model, model.getReaction(i), i, speciesToSlotMap) == false)
+			{
+				return null;
+			}
+		}
+
+		return arrayedReactions;
+	}
+
+	/**
+	 * reads one arrayed reaction the way {@link Simulator#setupArrays()}
+	 * expands it
+	 *
+	 * @return false if the reaction cannot be a template
+	 */
+	private boolean parseTemplate(Model model, Reaction reaction, int template, HashMap<String, Integer> speciesToSlotMap)
+	{
+
+		if (reaction.getId().contains("MembraneDiffusion") || reaction.isSetKineticLaw() == false || reaction.getReactantCount() != 1 || reaction.getProductCount() > 1
+				|| reaction.getModifierCount() > 0)
+		{
+			return false;
+		}
+
+		SpeciesReference reactant = reaction.getReactant(0);
+
+		if (speciesToSlotMap.containsKey(reactant.getSpecies()) == false || reactant.getStoichiometry() != 1 || reactant.isSetStoichiometryMath())
+		{
+			return false;
+		}
+
+		// the reactant's element and then the product's element are the first
+		// get2DArrayElement calls on species
+		ArrayList<ASTNode> elementNodes = new ArrayList<ASTNode>();
+		ASTNode math = reaction.getKineticLaw().getMath();
+
+		Simulator.getSatisfyingNodes(math, ARRAY_ELEMENT, elementNodes);
+
+		for (int i = elementNodes.size() - 1; i >= 0; --i)
+		{
+
+			ASTNode elementNode = elementNodes.get(i);
+
+			if (elementNode.getChildCount() != 3 || elementNode.getChild(0).isName() == false || model.getParameter(elementNode.getChild(0).getName()) != null)
+			{
+				elementNodes.remove(i);
+			}
+		}
+
+		if (elementNodes.isEmpty() || elementNodes.get(0).getChild(0).getName().equals(reactant.getSpecies()) == false)
+		{
+			return false;
+		}
+
+		templateIDs[template] = reaction.getId();
+		reactantSlots[template] = speciesToSlotMap.get(reactant.getSpecies());
+		reactantRowOffsets[template] = getOffset(elementNodes.get(0).getChild(1));
+		reactantColOffsets[template] = getOffset(elementNodes.get(0).getChild(2));
+		productSlots[template] = -1;
+
+		if (reaction.getProductCount() == 1)
+		{
+
+			SpeciesReference product = reaction.getProduct(0);
+
+			if (speciesToSlotMap.containsKey(product.getSpecies()) == false || product.getStoichiometry() != 1 || product.isSetStoichiometryMath() || elementNodes.size() < 2)
+			{
+				return false;
+			}
+
+			productSlots[template] = speciesToSlotMap.get(product.getSpecies());
+			productRowOffsets[template] = getOffset(elementNodes.get(1).getChild(1));
+			productColOffsets[template] = getOffset(elementNodes.get(1).getChild(2));
+		}
+
+		// the expansion keeps the forward half of the kinetic law of arrayed
+		// reactions other than degradation
+		if (reaction.getId().contains(GlobalConstants.DEGRADATION) == false)
+		{
+
+			if (math.getType() != ASTNode.Type.MINUS)
+			{
+				return false;
+			}
+
+			math = math.getLeftChild();
+		}
+
+		// the kinetic law has to be a rate times the reactant's element
+		if (math.getType() != ASTNode.Type.TIMES || math.getChildCount() != 2)
+		{
+			return false;
+		}
+
+		ASTNode rateNode = null;
+
+		if (math.getChild(1) == elementNodes.get(0))
+		{
+			rateNode = math.getChild(0);
+		}
+		else if (math.getChild(0) == elementNodes.get(0))
+		{
+			rateNode = math.getChild(1);
+		}
+
+		HashMap<String, Double> localValues = new HashMap<String, Double>();
+
+		for (LocalParameter localParameter : reaction.getKineticLaw().getListOfLocalParameters())
+		{
+			localValues.put(localParameter.getId(), localParameter.getValue());
+		}
+
+		if (rateNode == null || isConstant(model, rateNode, localValues) == false)
+		{
+			return false;
+		}
+
+		rateNodes[template] = rateNode;
+		localParameterValues.add(localValues);
+
+		return true;
+	}
+
+	/**
+	 * reads an index of get2DArrayElement the way the expansion does
+	 *
+	 * @return the offset added to the row or column of the element
+	 */
+	private static int getOffset(ASTNode indexNode)
+	{
+
+		if (indexNode.getType() == ASTNode.Type.PLUS)
+		{
+			return indexNode.getRightChild().getInteger();
+		}
+		else if (indexNode.getType() == ASTNode.Type.MINUS)
+		{
+			return -indexNode.getRightChild().getInteger();
+		}
+
+		return 0;
+	}
+
+	/**
+	 * @return true if a rate is arithmetic on numbers, local parameters and
+	 *         constant global parameters
+	 */
+	private static boolean isConstant(Model model, ASTNode node, HashMap<String, Double> localValues)
+	{
+
+		if (node.isNumber())
+		{
+			return true;
+		}
+		else if (node.isName())
+		{
+
+			Parameter parameter = model.getParameter(node.getName());
+
+			return localValues.containsKey(node.getName()) || (parameter != null && parameter.getConstant() == true);
+		}
+
+		switch (node.getType())
+		{
+
+		case PLUS:
+		case MINUS:
+		case TIMES:
+		case DIVIDE:
+
+			for (int i = 0; i < node.getChildCount(); ++i)
+			{
+
+				if (isConstant(model, node.getChild(i), localValues) == false)
+				{
+					return false;
+				}
+			}
+
+			return true;
+
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * evaluates a rate accepted by
+	 * {@link #isConstant(Model, ASTNode, HashMap)}
+	 */
+	private static double evaluateRate(Simulator simulator, ASTNode node, HashMap<String, Double> localValues)
+	{
+
+		if (node.isNumber())
+		{
+			return node.getReal();
+		}
+		else if (node.isName())
+		{
+
+			if (localValues.containsKey(node.getName()))
+			{
+				return localValues.get(node.getName());
+			}
+
+			return simulator.variableToValueMap.get(node.getName());
+		}
+
+		double value = evaluateRate(simulator, node.getChild(0), localValues);
+
+		if (node.getType() == ASTNode.Type.MINUS && node.getChildCount() == 1)
+		{
+			return -value;
+		}
+
+		for (int i = 1; i < node.getChildCount(); ++i)
+		{
+
+			double childValue = evaluateRate(simulator, node.getChild(i), localValues);
+
+			switch (node.getType())
+			{
+
+			case PLUS:
+				value += childValue;
+				break;
+
+			case MINUS:
+				value -= childValue;
+				break;
+
+			case TIMES:
+				value *= childValue;
+				break;
+
+			default:
+				value /= childValue;
+				break;
+			}
+		}
+
+		return value;
+	}
+
+	/**
+	 * @return the ID of an element of an arrayed species
+	 */
+	private String getElementID(int row, int col, int slot)
+	{
+		return "ROW" + row + "_COL" + col + "__" + speciesNames[slot];
+	}
+
+	/**
+	 * @return the index of an element, or -1 if it is outside of the grid
+	 */
+	private int getElementIndex(int row, int col, int slot)
+	{
+
+		if (row < 0 || row >= numRows || col < 0 || col >= numCols)
+		{
+			return -1;
+		}
+
+		return (row * numCols + col) * speciesNames.length + slot;
+	}
+
+	/**
+	 * sets up the elements of the templates for a run and the method that
+	 * simulates them
+	 *
+	 * @param simulator
+	 *            the simulator, after its species and parameters have been set
+	 *            up from the model whose arrayed reactions were not expanded
+	 * @return the method over the elements
+	 */
+	NextSubvolumeMethod instantiate(Simulator simulator)
+	{
+
+		int numSpecies = speciesNames.length;
+		int numVoxels = numRows * numCols;
+		int gridSize = numVoxels * numSpecies;
+		String[] gridSpeciesIDs = new String[gridSize];
+
+		values = new double[gridSize];
+
+		for (int row = 0; row < numRows; ++row)
+		{
+			for (int col = 0; col < numCols; ++col)
+			{
+				for (int slot = 0; slot < numSpecies; ++slot)
+				{
+
+					int index = getElementIndex(row, col, slot);
+
+					gridSpeciesIDs[index] = getElementID(row, col, slot);
+					values[index] = simulator.variableToValueMap.get(gridSpeciesIDs[index]);
+				}
+			}
+		}
+
+		// the rate of each template per molecule, which the kinetic law
+		// applies to the concentration of species that aren't amounts
+		double[] templateRates = new double[templateIDs.length];
+
+		for (int template = 0; template < templateIDs.length; ++template)
+		{
+
+			String reactantID = getElementID(0, 0, reactantSlots[template]);
+
+			templateRates[template] = evaluateRate(simulator, rateNodes[template], localParameterValues.get(template));
+
+			if (simulator.speciesToHasOnlySubstanceUnitsMap.get(reactantID) == false)
+			{
+				templateRates[template] /= simulator.variableToValueMap.get(simulator.speciesToCompartmentNameMap.get(reactantID));
+			}
+		}
+
+		// a species diffuses natively if it has one template to each neighbour
+		// at the same rate
+		double[] diffusionRates = new double[numSpecies];
+		boolean[] isDiffusion = new boolean[templateIDs.length];
+
+		for (int slot = 0; slot < numSpecies; ++slot)
+		{
+
+			int[] directionTemplates = { -1, -1, -1, -1 };
+			boolean isUniform = true;
+
+			for (int template = 0; template < templateIDs.length; ++template)
+			{
+
+				if (reactantSlots[template] != slot || productSlots[template] != slot || reactantRowOffsets[template] != 0 || reactantColOffsets[template] != 0)
+				{
+					continue;
+				}
+
+				int direction = getDirection(productRowOffsets[template], productColOffsets[template]);
+
+				if (direction < 0 || directionTemplates[direction] >= 0)
+				{
+					isUniform = false;
+					continue;
+				}
+
+				directionTemplates[direction] = template;
+			}
+
+			for (int direction = 0; direction < 4; ++direction)
+			{
+
+				if (directionTemplates[direction] < 0 || templateRates[directionTemplates[direction]] != templateRates[directionTemplates[0]])
+				{
+					isUniform = false;
+				}
+			}
+
+			if (isUniform == true && templateRates[directionTemplates[0]] > 0)
+			{
+
+				diffusionRates[slot] = templateRates[directionTemplates[0]];
+
+				for (int direction = 0; direction < 4; ++direction)
+				{
+					isDiffusion[directionTemplates[direction]] = true;
+				}
+			}
+		}
+
+		// the elements of the other templates, skipping the ones whose
+		// product is outside of the grid like the expansion does
+		ArrayList<Integer> elementTemplates = new ArrayList<Integer>();
+		ArrayList<Integer> elementVoxels = new ArrayList<Integer>();
+
+		for (int template = 0; template < templateIDs.length; ++template)
+		{
+
+			if (isDiffusion[template] == true)
+			{
+				continue;
+			}
+
+			for (int row = 0; row < numRows; ++row)
+			{
+				for (int col = 0; col < numCols; ++col)
+				{
+
+					if (getElementIndex(row + reactantRowOffsets[template], col + reactantColOffsets[template], reactantSlots[template]) < 0)
+					{
+						continue;
+					}
+
+					if (productSlots[template] >= 0 && getElementIndex(row + productRowOffsets[template], col + productColOffsets[template], productSlots[template]) < 0)
+					{
+						continue;
+					}
+
+					elementTemplates.add(template);
+					elementVoxels.add(row * numCols + col);
+				}
+			}
+		}
+
+		int numReactions = elementTemplates.size();
+
+		rates = new double[numReactions];
+		reactantIndices = new int[numReactions];
+		productIndices = new int[numReactions];
+
+		int[] reactionToVoxel = new int[numReactions];
+		int[] speciesDependencyPointers = new int[gridSize + 1];
+
+		for (int reaction = 0; reaction < numReactions; ++reaction)
+		{
+
+			int template = elementTemplates.get(reaction);
+			int row = elementVoxels.get(reaction) / numCols;
+			int col = elementVoxels.get(reaction) % numCols;
+
+			rates[reaction] = templateRates[template];
+			reactantIndices[reaction] = getElementIndex(row + reactantRowOffsets[template], col + reactantColOffsets[template], reactantSlots[template]);
+			productIndices[reaction] = productSlots[template] < 0 ? -1 : getElementIndex(row + productRowOffsets[template], col + productColOffsets[template], productSlots[template]);
+			reactionToVoxel[reaction] = reactantIndices[reaction] / numSpecies;
+
+			++speciesDependencyPointers[reactantIndices[reaction] + 1];
+		}
+
+		// the reactions that read each element, which are the ones whose
+		// reactant it is
+		for (int index = 0; index < gridSize; ++index)
+		{
+			speciesDependencyPointers[index + 1] += speciesDependencyPointers[index];
+		}
+
+		int[] speciesDependencies = new int[numReactions];
+		int[] speciesDependencyCounts = new int[gridSize];
+
+		for (int reaction = 0; reaction < numReactions; ++reaction)
+		{
+
+			int index = reactantIndices[reaction];
+
+			speciesDependencies[speciesDependencyPointers[index] + speciesDependencyCounts[index]++] = reaction;
+		}
+
+		// a reaction changes its reactant and product and affects the
+		// reactions that read them
+		stoichiometryPointers = new int[numReactions + 1];
+		stoichiometrySpecies = new int[2 * numReactions];
+		dependencyPointers = new int[numReactions + 1];
+
+		int numStoichiometries = 0;
+		int numDependencies = 0;
+
+		for (int reaction = 0; reaction < numReactions; ++reaction)
+		{
+
+			stoichiometrySpecies[numStoichiometries++] = reactantIndices[reaction];
+			numDependencies += getNumReaders(speciesDependencyPointers, reactantIndices[reaction]);
+
+			if (productIndices[reaction] >= 0)
+			{
+
+				stoichiometrySpecies[numStoichiometries++] = productIndices[reaction];
+				numDependencies += getNumReaders(speciesDependencyPointers, productIndices[reaction]);
+			}
+
+			stoichiometryPointers[reaction + 1] = numStoichiometries;
+		}
+
+		dependencies = new int[numDependencies];
+		numDependencies = 0;
+
+		for (int reaction = 0; reaction < numReactions; ++reaction)
+		{
+
+			dependencyPointers[reaction] = numDependencies;
+
+			for (int k = stoichiometryPointers[reaction]; k < stoichiometryPointers[reaction + 1]; ++k)
+			{
+
+				int index = stoichiometrySpecies[k];
+				int count = getNumReaders(speciesDependencyPointers, index);
+
+				System.arraycopy(speciesDependencies, speciesDependencyPointers[index], dependencies, numDependencies, count);
+				numDependencies += count;
+			}
+		}
+
+		dependencyPointers[numReactions] = numDependencies;
+
+		return new NextSubvolumeMethod(numRows, numCols, numSpecies, diffusionRates, values, gridSpeciesIDs, this, reactionToVoxel, speciesDependencyPointers, speciesDependencies);
+	}
+
+	private static int getNumReaders(int[] speciesDependencyPointers, int index)
+	{
+		return speciesDependencyPointers[index + 1] - speciesDependencyPointers[index];
+	}
+
+	/**
+	 * @return the direction of a neighbour (above, below, left, right), or -1
+	 *         if the offset is not to a neighbour
+	 */
+	private static int getDirection(int rowOffset, int colOffset)
+	{
+
+		if (rowOffset == -1 && colOffset == 0)
+		{
+			return 0;
+		}
+		else if (rowOffset == 1 && colOffset == 0)
+		{
+			return 1;
+		}
+		else if (rowOffset == 0 && colOffset == -1)
+		{
+			return 2;
+		}
+		else if (rowOffset == 0 && colOffset == 1)
+		{
+			return 3;
+		}
+
+		return -1;
+	}
+
+	@Override
+	public int getNumReactions()
+	{
+		return rates.length;
+	}
+
+	@Override
+	public void setTime(double time)
+	{
+	}
+
+	/**
+	 * the rate times the reactant's amount, which is zero below one molecule
+	 * like the expanded reactions
+	 */
+	@Override
+	public double computePropensity(int reaction)
+	{
+
+		double amount = values[reactantIndices[reaction]];
+
+		if (amount < 1)
+		{
+			return 0.0;
+		}
+
+		return rates[reaction] * amount;
+	}
+
+	@Override
+	public void fireReaction(int reaction)
+	{
+
+		values[reactantIndices[reaction]] -= 1;
+
+		if (productIndices[reaction] >= 0)
+		{
+			values[productIndices[reaction]] += 1;
+		}
+	}
+
+	@Override
+	public int[] getDependencyPointers()
+	{
+		return dependencyPointers;
+	}
+
+	@Override
+	public int[] getDependencies()
+	{
+		return dependencies;
+	}
+
+	@Override
+	public int[] getStoichiometryPointers()
+	{
+		return stoichiometryPointers;
+	}
+
+	@Override
+	public int[] getStoichiometrySpecies()
+	{
+		return stoichiometrySpecies;
+	}
+
+	/**
+	 * the reactions only change the elements, which the method writes back
+	 */
+	@Override
+	public void writeValues()
+	{
+	}
+}
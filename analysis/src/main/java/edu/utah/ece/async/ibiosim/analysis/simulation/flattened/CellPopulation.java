@@ -0,0 +1,1807 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.sbml.jsbml.ASTNode;
+import org.sbml.jsbml.EventAssignment;
+import org.sbml.jsbml.Species;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.Simulator.StringDoublePair;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.SumTree;
+import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
+
+/**
+ * Stochastic simulation of a dynamic model whose components are cells that
+ * divide, die and move on a grid.
+ *
+ * Components with the same elements, up to their component ID, are cells of
+ * one type. The reactions and events of a type are compiled once, from its
+ * first component, into closures that read the values of the cell they are
+ * evaluated for, and every cell of the type is a row of one growable value
+ * matrix with its propensities, trigger values and scheduled events next to
+ * it. Division copies the parent's row into a new row, death moves the last
+ * row into the dead cell's row, so neither touches the model, the other cells
+ * or any map keyed by element ID; a division or death costs the number of
+ * elements of one cell, not the size of the population.
+ *
+ * Reactions are selected through a sum tree of the total propensities of the
+ * cells of each type, and events are kept in an indexed binary heap ordered
+ * by fire time. Cells are placed on the grid through an index from location
+ * to cell, so placing a new cell or a moving one only walks the cells it
+ * pushes out of the way.
+ *
+ * Event semantics follow {@link Simulator#handleEvents()} and
+ * {@link Simulator#fireEvents()} with these differences: a scheduled
+ * non-persistent event is cancelled as soon as its trigger turns false,
+ * events due at the same time fire in heap order rather than by priority,
+ * and new cells are named from a counter that only grows.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+class CellPopulation
+{
+
+	// stands for the component ID in the element IDs of a cell type
+	private static final String		COMPONENT				= "%__";
+
+	// what an event does when it fires
+	private static final int		ASSIGNMENT				= 0;
+	private static final int		SYMMETRIC_DIVISION		= 1;
+	private static final int		ASYMMETRIC_DIVISION		= 2;
+	private static final int		DEATH					= 3;
+	private static final int		MOVE					= 4;
+
+	// the row and column steps of the directions of moveComponent: left,
+	// right, above, below and the four diagonals
+	private static final int[]		ROW_STEPS				= { 0, 0, -1, 1, 1, -1, -1, 1 };
+	private static final int[]		COL_STEPS				= { -1, 1, 0, 0, -1, 1, -1, 1 };
+
+	private final Simulator			simulator;
+	private final CellType[]		cellTypes;
+
+	// the cell at each location, as row * number of types + type
+	private final TLongIntHashMap	locationToCell;
+
+	// component names that are taken, and the number tried next for a new one
+	private final HashSet<String>	componentNames;
+	private int						nextComponentNumber;
+
+	// scheduled events ordered by fire time, each one a cell type and a slot
+	// of row * number of events + event
+	private double[]				heapTimes;
+	private int[]					heapTypes;
+	private int[]					heapSlots;
+	private int						heapSize;
+
+	private XORShiftRandom			randomNumberGenerator;
+	private double					currentTime;
+
+	private CellPopulation(Simulator simulator, int numTypes, int numCells)
+	{
+
+		this.simulator = simulator;
+
+		cellTypes = new CellType[numTypes];
+		locationToCell = new TLongIntHashMap(Math.max(16, 2 * numCells), 0.5f, Long.MIN_VALUE, -1);
+		componentNames = new HashSet<String>(simulator.componentIDSet);
+		nextComponentNumber = numCells + 1;
+
+		heapTimes = new double[16];
+		heapTypes = new int[16];
+		heapSlots = new int[16];
+	}
+
+	/**
+	 * compiles the cells of a dynamic model into cell types
+	 *
+	 * @param simulator
+	 *            a simulator whose grid and components are set up
+	 * @return the population, or null if the model has rules, constraints,
+	 *         membrane diffusion, grid species or elements that are shared
+	 *         between cells, or if a cell reads another cell or anything that
+	 *         changes outside of it
+	 */
+	static CellPopulation compile(Simulator simulator)
+	{
+
+		if (simulator.dynamicBoolean == false || simulator.stoichAmpBoolean == true || simulator.numRules > 0 || simulator.numConstraints > 0)
+		{
+			return null;
+		}
+
+		if (simulator.reactionToNonconstantStoichiometriesSetMap.isEmpty() == false || simulator.speciesToConversionFactorMap.isEmpty() == false)
+		{
+			return null;
+		}
+
+		for (String speciesID : simulator.speciesIDSet)
+		{
+			if (speciesID.contains("ROW") && speciesID.contains("COL") && speciesID.contains("__"))
+			{
+				return null;
+			}
+		}
+
+		for (String reactionID : simulator.reactionToPropensityMap.keySet())
+		{
+			if (reactionID.contains("MembraneDiffusion"))
+			{
+				return null;
+			}
+		}
+
+		// the cells are the located components, and every reaction and event
+		// has to belong to one of them
+		TreeSet<String> componentIDs = new TreeSet<String>();
+		HashMap<String, String> variableToComponentMap = new HashMap<String, String>();
+		int numReactions = 0;
+		int numEvents = 0;
+
+		for (String componentID : simulator.componentToVariableSetMap.keySet())
+		{
+			if (simulator.componentToLocationMap.get(componentID) != null)
+			{
+				componentIDs.add(componentID);
+			}
+		}
+
+		if (componentIDs.isEmpty() == true)
+		{
+			return null;
+		}
+
+		for (String componentID : componentIDs)
+		{
+
+			for (String variableID : simulator.componentToVariableSetMap.get(componentID))
+			{
+				variableToComponentMap.put(variableID, componentID);
+			}
+
+			numReactions += getElementIDs(simulator.componentToReactionSetMap, componentID).size();
+			numEvents += getElementIDs(simulator.componentToEventSetMap, componentID).size();
+		}
+
+		if (componentIDs.containsAll(simulator.componentToReactionSetMap.keySet()) == false
+				|| componentIDs.containsAll(simulator.componentToEventSetMap.keySet()) == false)
+		{
+			return null;
+		}
+
+		if (numReactions != simulator.reactionToPropensityMap.size() || numEvents != simulator.eventToTriggerMap.size())
+		{
+			return null;
+		}
+
+		// components with the same elements up to their ID are one type
+		LinkedHashMap<String, ArrayList<String>> signatureToComponentsMap = new LinkedHashMap<String, ArrayList<String>>();
+
+		for (String componentID : componentIDs)
+		{
+
+			String signature = getSignature(simulator, componentID);
+
+			if (signature == null)
+			{
+				return null;
+			}
+
+			if (signatureToComponentsMap.containsKey(signature) == false)
+			{
+				signatureToComponentsMap.put(signature, new ArrayList<String>());
+			}
+
+			signatureToComponentsMap.get(signature).add(componentID);
+		}
+
+		CellPopulation population = new CellPopulation(simulator, signatureToComponentsMap.size(), componentIDs.size());
+		int typeIndex = 0;
+
+		for (ArrayList<String> components : signatureToComponentsMap.values())
+		{
+
+			CellType cellType = new CellType(simulator, typeIndex, components.get(0), components.size(), variableToComponentMap);
+
+			if (cellType.compileReactionsAndEvents() == false)
+			{
+				return null;
+			}
+
+			population.cellTypes[typeIndex] = cellType;
+
+			for (String componentID : components)
+			{
+
+				int row = cellType.addCell(componentID);
+
+				for (int column = 0; column < cellType.numVariables; ++column)
+				{
+					cellType.values[row * cellType.numVariables + column] = simulator.variableToValueMap.get(cellType.cellVariableIDs[row * cellType.numVariables
+							+ column]);
+				}
+
+				Point location = simulator.componentToLocationMap.get(componentID);
+
+				cellType.cellRows[row] = location.x;
+				cellType.cellCols[row] = location.y;
+
+				if (population.locationToCell.containsKey(getLocationKey(location.x, location.y)))
+				{
+					return null;
+				}
+
+				population.locationToCell.put(getLocationKey(location.x, location.y), population.getCell(cellType, row));
+				population.componentNames.add(componentID);
+			}
+
+			++typeIndex;
+		}
+
+		return population;
+	}
+
+	/**
+	 * computes every propensity and schedules the events whose triggers are
+	 * true at the start
+	 *
+	 * @param startTime
+	 *            the current simulation time
+	 * @param randomNumberGenerator
+	 *            the generator for the reaction times and selections and the
+	 *            directions of new and moving cells
+	 */
+	void initialize(double startTime, XORShiftRandom randomNumberGenerator)
+	{
+
+		this.randomNumberGenerator = randomNumberGenerator;
+		currentTime = startTime;
+
+		for (CellType cellType : cellTypes)
+		{
+			for (int row = 0; row < cellType.numCells; ++row)
+			{
+				cellType.updatePropensities(row);
+			}
+		}
+
+		for (CellType cellType : cellTypes)
+		{
+			for (int row = 0; row < cellType.numCells; ++row)
+			{
+				checkEvents(cellType, row);
+			}
+		}
+	}
+
+	/**
+	 * runs reactions and events until the next one would happen after the end
+	 * time
+	 *
+	 * @param endTime
+	 *            the time to simulate to
+	 */
+	void simulate(double endTime)
+	{
+
+		while (step(endTime) == true)
+		{
+		}
+
+		currentTime = Math.max(currentTime, endTime);
+	}
+
+	/**
+	 * runs the next reaction or event if it happens by the end time
+	 *
+	 * @param endTime
+	 *            the latest time to run it at
+	 * @return false if nothing happens by the end time
+	 */
+	boolean step(double endTime)
+	{
+
+		double totalPropensity = 0.0;
+
+		for (CellType cellType : cellTypes)
+		{
+			totalPropensity += cellType.propensityTree.getTotal();
+		}
+
+		double reactionTime = Double.POSITIVE_INFINITY;
+
+		if (totalPropensity > 0.0)
+		{
+			reactionTime = currentTime - Math.log(1.0 - randomNumberGenerator.nextDouble()) / totalPropensity;
+		}
+
+		double eventTime = heapSize > 0 ? heapTimes[0] : Double.POSITIVE_INFINITY;
+
+		if (eventTime <= reactionTime)
+		{
+
+			if (eventTime > endTime)
+			{
+				return false;
+			}
+
+			currentTime = eventTime;
+			fireEvent();
+
+			return true;
+		}
+
+		if (reactionTime > endTime)
+		{
+			return false;
+		}
+
+		currentTime = reactionTime;
+		fireReaction(randomNumberGenerator.nextDouble() * totalPropensity);
+
+		return true;
+	}
+
+	/**
+	 * copies the values and locations of the cells into the simulator's maps
+	 */
+	void writeValues()
+	{
+
+		for (CellType cellType : cellTypes)
+		{
+
+			for (int row = 0; row < cellType.numCells; ++row)
+			{
+
+				for (int index = row * cellType.numVariables; index < (row + 1) * cellType.numVariables; ++index)
+				{
+					simulator.variableToValueMap.put(cellType.cellVariableIDs[index], cellType.values[index]);
+				}
+
+				simulator.componentToLocationMap.get(cellType.componentIDs[row]).setLocation(cellType.cellRows[row], cellType.cellCols[row]);
+			}
+		}
+
+		simulator.variableToValueMap.clearChangedVariables();
+	}
+
+	/**
+	 * @return the current simulation time
+	 */
+	double getTime()
+	{
+		return currentTime;
+	}
+
+	/**
+	 * @return the number of living cells
+	 */
+	int getNumCells()
+	{
+
+		int numCells = 0;
+
+		for (CellType cellType : cellTypes)
+		{
+			numCells += cellType.numCells;
+		}
+
+		return numCells;
+	}
+
+	/**
+	 * @return the number of cell types
+	 */
+	int getNumTypes()
+	{
+		return cellTypes.length;
+	}
+
+	/**
+	 * fires a reaction of the cell whose share of the total propensity
+	 * contains the threshold
+	 */
+	private void fireReaction(double threshold)
+	{
+
+		CellType cellType = null;
+
+		for (CellType candidate : cellTypes)
+		{
+
+			double total = candidate.propensityTree.getTotal();
+
+			if (total <= 0.0)
+			{
+				continue;
+			}
+
+			cellType = candidate;
+
+			if (threshold < total)
+			{
+				break;
+			}
+
+			threshold -= total;
+		}
+
+		int row = cellType.propensityTree.search(threshold);
+		int base = row * cellType.numReactions;
+
+		// the reactions of one cell are few, so they are scanned
+		double reactionThreshold = randomNumberGenerator.nextDouble() * cellType.propensityTree.get(row);
+		int reaction = -1;
+
+		for (int candidate = 0; candidate < cellType.numReactions; ++candidate)
+		{
+
+			double propensity = cellType.propensities[base + candidate];
+
+			if (propensity <= 0.0)
+			{
+				continue;
+			}
+
+			reaction = candidate;
+
+			if (reactionThreshold < propensity)
+			{
+				break;
+			}
+
+			reactionThreshold -= propensity;
+		}
+
+		if (reaction < 0)
+		{
+			return;
+		}
+
+		int offset = row * cellType.numVariables;
+
+		for (int k = cellType.stoichiometryPointers[reaction]; k < cellType.stoichiometryPointers[reaction + 1]; ++k)
+		{
+			cellType.values[offset + cellType.stoichiometryColumns[k]] += cellType.stoichiometries[k];
+		}
+
+		for (int k = cellType.dependencyPointers[reaction]; k < cellType.dependencyPointers[reaction + 1]; ++k)
+		{
+			cellType.propensities[base + cellType.dependencies[k]] = cellType.computePropensity(row, cellType.dependencies[k]);
+		}
+
+		cellType.updateTotal(row);
+
+		for (int k = cellType.eventDependencyPointers[reaction]; k < cellType.eventDependencyPointers[reaction + 1]; ++k)
+		{
+			checkEvent(cellType, row, cellType.eventDependencies[k]);
+		}
+	}
+
+	/**
+	 * fires the earliest scheduled event
+	 */
+	private void fireEvent()
+	{
+
+		CellType cellType = cellTypes[heapTypes[0]];
+		int slot = heapSlots[0];
+		int row = slot / cellType.numEvents;
+		int event = slot % cellType.numEvents;
+
+		unschedule(cellType, slot);
+		cellType.previousTriggerValues[slot] = true;
+
+		switch (cellType.eventKinds[event])
+		{
+
+		case SYMMETRIC_DIVISION:
+		case ASYMMETRIC_DIVISION:
+			divide(cellType, row, event);
+			break;
+
+		case DEATH:
+			die(cellType, row);
+			break;
+
+		case MOVE:
+		{
+
+			int direction = (int) (randomNumberGenerator.nextDouble() * 4.0);
+
+			if (cellType.moveDirections[event] >= 0)
+			{
+				direction = cellType.moveDirections[event];
+			}
+
+			locationToCell.remove(getLocationKey(cellType.cellRows[row], cellType.cellCols[row]));
+			place(cellType, row, cellType.cellRows[row], cellType.cellCols[row], direction);
+			break;
+		}
+
+		default:
+		{
+
+			int[] columns = cellType.assignmentColumns[event];
+			double[] assignedValues = new double[columns.length];
+
+			// every assignment is evaluated before any is made
+			cellType.offset = row * cellType.numVariables;
+
+			for (int i = 0; i < columns.length; ++i)
+			{
+				assignedValues[i] = cellType.assignmentFormulas[event][i].evaluate();
+			}
+
+			for (int i = 0; i < columns.length; ++i)
+			{
+				cellType.values[row * cellType.numVariables + columns[i]] = assignedValues[i] * cellType.assignmentScales[event][i];
+			}
+
+			cellType.updatePropensities(row);
+			checkEvents(cellType, row);
+		}
+		}
+	}
+
+	/**
+	 * adds a copy of a cell next to it and shares the species between them as
+	 * duplicateComponent does
+	 */
+	private void divide(CellType cellType, int row, int event)
+	{
+
+		String parentComponentID = cellType.componentIDs[row];
+		String childComponentID = createComponentID(parentComponentID);
+		int direction = (int) (randomNumberGenerator.nextDouble() * 8.0);
+		int child = cellType.addCell(childComponentID);
+		int numVariables = cellType.numVariables;
+
+		place(cellType, child, cellType.cellRows[row], cellType.cellCols[row], direction);
+
+		for (int column = 0; column < numVariables; ++column)
+		{
+
+			int parentIndex = row * numVariables + column;
+			int childIndex = child * numVariables + column;
+
+			// promoters are DNA, so they are doubled before they are shared
+			if (cellType.isPromoter[column] == true)
+			{
+				cellType.values[parentIndex] *= 2;
+			}
+
+			if (cellType.isSpecies[column] == false || cellType.isFixed[column] == true)
+			{
+
+				cellType.values[childIndex] = cellType.values[parentIndex];
+				continue;
+			}
+
+			int assignment = cellType.findAssignment(event, column);
+
+			// the division event's assignment is what the parent keeps, and
+			// the child gets the rest
+			if (assignment >= 0)
+			{
+
+				cellType.offset = row * numVariables;
+
+				double totalAmount = cellType.values[parentIndex];
+				double afterEventAmount = cellType.assignmentFormulas[event][assignment].evaluate();
+
+				cellType.values[childIndex] = totalAmount - afterEventAmount;
+				cellType.values[parentIndex] = afterEventAmount;
+			}
+			else
+			{
+
+				double halfAmount = (int) ((cellType.values[parentIndex] / 2) + 1);
+
+				cellType.values[childIndex] = halfAmount;
+				cellType.values[parentIndex] = halfAmount;
+			}
+		}
+
+		// after a symmetric division the parent starts over like its child
+		if (cellType.eventKinds[event] == SYMMETRIC_DIVISION)
+		{
+
+			for (int parentEvent = 0; parentEvent < cellType.numEvents; ++parentEvent)
+			{
+
+				int slot = row * cellType.numEvents + parentEvent;
+
+				if (cellType.heapPositions[slot] >= 0)
+				{
+					unschedule(cellType, slot);
+				}
+
+				cellType.previousTriggerValues[slot] = cellType.initiallyTrue[parentEvent];
+			}
+		}
+
+		// the new cell is printed like the cells duplicateComponent makes
+		simulator.componentIDSet.add(childComponentID.split("_of_")[0]);
+		simulator.componentToLocationMap.put(childComponentID, new Point(cellType.cellRows[child], cellType.cellCols[child]));
+
+		for (int column = 0; column < numVariables; ++column)
+		{
+
+			String variableID = cellType.cellVariableIDs[child * numVariables + column];
+
+			if (cellType.isSpecies[column] == true)
+			{
+				simulator.speciesIDSet.add(variableID);
+			}
+			else if (cellType.isCompartment[column] == true)
+			{
+				simulator.compartmentIDSet.add(variableID);
+			}
+		}
+
+		cellType.updatePropensities(row);
+		cellType.updatePropensities(child);
+		checkEvents(cellType, row);
+		checkEvents(cellType, child);
+	}
+
+	/**
+	 * removes a cell, moving the last cell of its type into its row
+	 */
+	private void die(CellType cellType, int row)
+	{
+
+		for (int event = 0; event < cellType.numEvents; ++event)
+		{
+
+			int slot = row * cellType.numEvents + event;
+
+			if (cellType.heapPositions[slot] >= 0)
+			{
+				unschedule(cellType, slot);
+			}
+		}
+
+		for (int index = row * cellType.numVariables; index < (row + 1) * cellType.numVariables; ++index)
+		{
+
+			String variableID = cellType.cellVariableIDs[index];
+
+			simulator.variableToValueMap.remove(variableID);
+			simulator.speciesIDSet.remove(variableID);
+			simulator.compartmentIDSet.remove(variableID);
+		}
+
+		simulator.componentToLocationMap.remove(cellType.componentIDs[row]);
+		locationToCell.remove(getLocationKey(cellType.cellRows[row], cellType.cellCols[row]));
+
+		int last = cellType.numCells - 1;
+
+		if (row != last)
+		{
+
+			cellType.moveRow(last, row);
+
+			for (int event = 0; event < cellType.numEvents; ++event)
+			{
+
+				int position = cellType.heapPositions[row * cellType.numEvents + event];
+
+				if (position >= 0)
+				{
+					heapSlots[position] = row * cellType.numEvents + event;
+				}
+			}
+
+			locationToCell.put(getLocationKey(cellType.cellRows[row], cellType.cellCols[row]), getCell(cellType, row));
+		}
+
+		cellType.removeLastRow();
+	}
+
+	/**
+	 * puts a cell next to a location, pushing the cells in the way one step
+	 * further in the same direction as moveComponent does
+	 */
+	private void place(CellType cellType, int row, int fromRow, int fromCol, int direction)
+	{
+
+		int rowStep = ROW_STEPS[direction];
+		int colStep = COL_STEPS[direction];
+		int targetRow = fromRow + rowStep;
+		int targetCol = fromCol + colStep;
+		int emptyRow = targetRow;
+		int emptyCol = targetCol;
+
+		while (locationToCell.containsKey(getLocationKey(emptyRow, emptyCol)))
+		{
+
+			emptyRow += rowStep;
+			emptyCol += colStep;
+		}
+
+		// the farthest cell moves first, into the empty location
+		while (emptyRow != targetRow || emptyCol != targetCol)
+		{
+
+			int cell = locationToCell.remove(getLocationKey(emptyRow - rowStep, emptyCol - colStep));
+			CellType pushedType = cellTypes[cell % cellTypes.length];
+			int pushedRow = cell / cellTypes.length;
+
+			locationToCell.put(getLocationKey(emptyRow, emptyCol), cell);
+			pushedType.cellRows[pushedRow] = emptyRow;
+			pushedType.cellCols[pushedRow] = emptyCol;
+
+			emptyRow -= rowStep;
+			emptyCol -= colStep;
+		}
+
+		locationToCell.put(getLocationKey(targetRow, targetCol), getCell(cellType, row));
+		cellType.cellRows[row] = targetRow;
+		cellType.cellCols[row] = targetCol;
+	}
+
+	/**
+	 * names a new cell like duplicateComponent does, after its parent
+	 */
+	private String createComponentID(String parentComponentID)
+	{
+
+		String componentName = "C" + nextComponentNumber;
+
+		while (componentNames.contains(componentName) == true)
+		{
+
+			++nextComponentNumber;
+			componentName = "C" + nextComponentNumber;
+		}
+
+		componentNames.add(componentName);
+		++nextComponentNumber;
+
+		return componentName + "_of_" + parentComponentID.split("_of_")[0];
+	}
+
+	/**
+	 * checks the triggers of every event of a cell
+	 */
+	private void checkEvents(CellType cellType, int row)
+	{
+
+		for (int event = 0; event < cellType.numEvents; ++event)
+		{
+			checkEvent(cellType, row, event);
+		}
+	}
+
+	/**
+	 * schedules an event whose trigger turned true and cancels a
+	 * non-persistent one whose trigger turned false
+	 */
+	private void checkEvent(CellType cellType, int row, int event)
+	{
+
+		int slot = row * cellType.numEvents + event;
+
+		cellType.offset = row * cellType.numVariables;
+
+		boolean triggerValue = cellType.triggers[event].evaluate() != 0.0;
+
+		if (cellType.heapPositions[slot] >= 0)
+		{
+
+			if (triggerValue == false && cellType.persistent[event] == false)
+			{
+
+				unschedule(cellType, slot);
+				cellType.previousTriggerValues[slot] = false;
+			}
+
+			return;
+		}
+
+		if (triggerValue == false)
+		{
+
+			cellType.previousTriggerValues[slot] = false;
+			return;
+		}
+
+		if (cellType.previousTriggerValues[slot] == true)
+		{
+			return;
+		}
+
+		double fireTime = currentTime;
+
+		if (cellType.delays[event] != null)
+		{
+			fireTime += cellType.delays[event].evaluate();
+		}
+
+		schedule(cellType, slot, fireTime);
+	}
+
+	private void schedule(CellType cellType, int slot, double fireTime)
+	{
+
+		if (heapSize == heapTimes.length)
+		{
+
+			heapTimes = Arrays.copyOf(heapTimes, 2 * heapSize);
+			heapTypes = Arrays.copyOf(heapTypes, 2 * heapSize);
+			heapSlots = Arrays.copyOf(heapSlots, 2 * heapSize);
+		}
+
+		heapTimes[heapSize] = fireTime;
+		heapTypes[heapSize] = cellType.index;
+		heapSlots[heapSize] = slot;
+		cellType.heapPositions[slot] = heapSize;
+
+		siftUp(heapSize++);
+	}
+
+	private void unschedule(CellType cellType, int slot)
+	{
+
+		int position = cellType.heapPositions[slot];
+
+		cellType.heapPositions[slot] = -1;
+		--heapSize;
+
+		if (position == heapSize)
+		{
+			return;
+		}
+
+		CellType movedType = cellTypes[heapTypes[heapSize]];
+		int movedSlot = heapSlots[heapSize];
+
+		moveHeapEntry(heapSize, position);
+		siftDown(position);
+		siftUp(movedType.heapPositions[movedSlot]);
+	}
+
+	private void moveHeapEntry(int from, int to)
+	{
+
+		heapTimes[to] = heapTimes[from];
+		heapTypes[to] = heapTypes[from];
+		heapSlots[to] = heapSlots[from];
+		cellTypes[heapTypes[to]].heapPositions[heapSlots[to]] = to;
+	}
+
+	private void siftUp(int position)
+	{
+
+		double time = heapTimes[position];
+		int type = heapTypes[position];
+		int slot = heapSlots[position];
+
+		while (position > 0)
+		{
+
+			int parent = (position - 1) / 2;
+
+			if (heapTimes[parent] <= time)
+			{
+				break;
+			}
+
+			moveHeapEntry(parent, position);
+			position = parent;
+		}
+
+		heapTimes[position] = time;
+		heapTypes[position] = type;
+		heapSlots[position] = slot;
+		cellTypes[type].heapPositions[slot] = position;
+	}
+
+	private void siftDown(int position)
+	{
+
+		double time = heapTimes[position];
+		int type = heapTypes[position];
+		int slot = heapSlots[position];
+
+		while (true)
+		{
+
+			int child = 2 * position + 1;
+
+			if (child >= heapSize)
+			{
+				break;
+			}
+			if (child + 1 < heapSize && heapTimes[child + 1] < heapTimes[child])
+			{
+				++child;
+			}
+			if (time <= heapTimes[child])
+			{
+				break;
+			}
+
+			moveHeapEntry(child, position);
+			position = child;
+		}
+
+		heapTimes[position] = time;
+		heapTypes[position] = type;
+		heapSlots[position] = slot;
+		cellTypes[type].heapPositions[slot] = position;
+	}
+
+	private int getCell(CellType cellType, int row)
+	{
+		return row * cellTypes.length + cellType.index;
+	}
+
+	private static long getLocationKey(int row, int col)
+	{
+		return ((long) row << 32) | (col & 0xffffffffL);
+	}
+
+	/**
+	 * @return the elements of a component, or an empty set if it has none
+	 */
+	private static HashSet<String> getElementIDs(HashMap<String, HashSet<String>> componentToElementSetMap, String componentID)
+	{
+
+		HashSet<String> elementIDs = componentToElementSetMap.get(componentID);
+
+		return elementIDs == null ? new HashSet<String>() : elementIDs;
+	}
+
+	/**
+	 * @return an element ID with its component ID replaced by a placeholder,
+	 *         or null if it isn't an element of the component
+	 */
+	private static String localize(String elementID, String componentID)
+	{
+
+		if (elementID.contains(componentID + "__") == false)
+		{
+			return null;
+		}
+
+		return elementID.replace(componentID + "__", COMPONENT);
+	}
+
+	/**
+	 * @return every element of a component and how it is simulated, with the
+	 *         component ID replaced by a placeholder, or null if an element
+	 *         doesn't carry the component ID
+	 */
+	private static String getSignature(Simulator simulator, String componentID)
+	{
+
+		TreeMap<String, String> localizedToElementMap = new TreeMap<String, String>();
+
+		for (String variableID : simulator.componentToVariableSetMap.get(componentID))
+		{
+
+			String localizedID = localize(variableID, componentID);
+
+			if (localizedID == null)
+			{
+				return null;
+			}
+
+			String description = "variable " + simulator.speciesIDSet.contains(variableID) + " " + simulator.compartmentIDSet.contains(variableID) + " "
+					+ simulator.nonconstantParameterIDSet.contains(variableID) + " " + simulator.variableToIsConstantMap.get(variableID) + " "
+					+ simulator.speciesToIsBoundaryConditionMap.get(variableID) + " " + simulator.speciesToHasOnlySubstanceUnitsMap.get(variableID) + " "
+					+ simulator.speciesToCompartmentNameMap.get(variableID) + " " + isPromoter(simulator, variableID);
+
+			localizedToElementMap.put(localizedID, description.replace(componentID + "__", COMPONENT));
+		}
+
+		for (String reactionID : getElementIDs(simulator.componentToReactionSetMap, componentID))
+		{
+
+			String localizedID = localize(reactionID, componentID);
+
+			if (localizedID == null || simulator.reactionToFormulaMap.get(reactionID) == null)
+			{
+				return null;
+			}
+
+			String description = "reaction " + simulator.reactionToFormulaMap.get(reactionID).toFormula() + " "
+					+ getStoichiometries(simulator.reactionToReactantStoichiometrySetMap.get(reactionID)) + " "
+					+ getStoichiometries(simulator.reactionToSpeciesAndStoichiometrySetMap.get(reactionID));
+
+			localizedToElementMap.put(localizedID, description.replace(componentID + "__", COMPONENT));
+		}
+
+		for (String eventID : getElementIDs(simulator.componentToEventSetMap, componentID))
+		{
+
+			String localizedID = localize(eventID, componentID);
+
+			if (localizedID == null)
+			{
+				return null;
+			}
+
+			String description = "event " + simulator.eventToTriggerMap.get(eventID).toFormula() + " " + simulator.eventToHasDelayMap.get(eventID) + " "
+					+ (simulator.eventToHasDelayMap.get(eventID) == true ? simulator.eventToDelayMap.get(eventID).toFormula() : "") + " "
+					+ simulator.eventToTriggerPersistenceMap.get(eventID) + " " + simulator.eventToTriggerInitiallyTrueMap.get(eventID) + " "
+					+ simulator.eventToUseValuesFromTriggerTimeMap.get(eventID) + " " + (simulator.eventToPriorityMap.get(eventID) != null);
+
+			TreeSet<String> assignments = new TreeSet<String>();
+
+			for (Object assignment : simulator.eventToAssignmentSetMap.get(eventID))
+			{
+				assignments.add(((EventAssignment) assignment).getVariable() + "=" + ((EventAssignment) assignment).getMath().toFormula());
+			}
+
+			localizedToElementMap.put(localizedID, (description + " " + assignments).replace(componentID + "__", COMPONENT));
+		}
+
+		return localizedToElementMap.toString();
+	}
+
+	private static String getStoichiometries(HashSet<StringDoublePair> stoichiometries)
+	{
+
+		TreeSet<String> entries = new TreeSet<String>();
+
+		if (stoichiometries != null)
+		{
+			for (StringDoublePair stoichiometry : stoichiometries)
+			{
+				entries.add(stoichiometry.string + ":" + stoichiometry.doub);
+			}
+		}
+
+		return entries.toString();
+	}
+
+	private static boolean isPromoter(Simulator simulator, String variableID)
+	{
+
+		Species species = simulator.model.getSpecies(variableID);
+
+		return species != null && species.isSetSBOTerm() && species.getSBOTerm() == GlobalConstants.SBO_PROMOTER_SPECIES;
+	}
+
+	/**
+	 * The compiled reactions and events of a cell type, and the rows of its
+	 * cells.
+	 */
+	private static class CellType extends FormulaCompiler
+	{
+
+		final int						index;
+
+		// the variables of a cell, by column, with the component ID replaced
+		final String[]					variableIDs;
+		final int						numVariables;
+		final boolean[]					isSpecies;
+		final boolean[]					isFixed;
+		final boolean[]					isPromoter;
+		final boolean[]					isCompartment;
+
+		// reactions, with reactants, stoichiometries and the reactions and
+		// events that depend on them as compressed rows
+		int								numReactions;
+		Formula[]						propensityFormulas;
+		int[]							reactantPointers;
+		int[]							reactantColumns;
+		double[]						reactantStoichiometries;
+		int[]							stoichiometryPointers;
+		int[]							stoichiometryColumns;
+		double[]						stoichiometries;
+		int[]							dependencyPointers;
+		int[]							dependencies;
+		int[]							eventDependencyPointers;
+		int[]							eventDependencies;
+
+		// events
+		int								numEvents;
+		int[]							eventKinds;
+		int[]							moveDirections;
+		Formula[]						triggers;
+		Formula[]						delays;
+		boolean[]						persistent;
+		boolean[]						initiallyTrue;
+		int[][]							assignmentColumns;
+		Formula[][]						assignmentFormulas;
+		double[][]						assignmentScales;
+
+		// the rows of the cells
+		int								numCells;
+		int								capacity;
+		double[]						values;
+		String[]						cellVariableIDs;
+		String[]						componentIDs;
+		int[]							cellRows;
+		int[]							cellCols;
+		double[]						propensities;
+		SumTree							propensityTree;
+		boolean[]						previousTriggerValues;
+		int[]							heapPositions;
+
+		// the start of the row the compiled formulas read
+		int								offset;
+
+		// used while compiling
+		private final Simulator			simulator;
+		private final String			componentID;
+		private final HashMap<String, String>	variableToComponentMap;
+		private final HashMap<String, Integer>	variableToColumnMap;
+		private final TreeSet<Integer>	readColumns	= new TreeSet<Integer>();
+		private boolean[][]				triggerReadsColumn;
+
+		CellType(Simulator simulator, int index, String componentID, int numCells, HashMap<String, String> variableToComponentMap)
+		{
+
+			this.simulator = simulator;
+			this.index = index;
+			this.componentID = componentID;
+			this.variableToComponentMap = variableToComponentMap;
+
+			TreeMap<String, String> localizedToVariableMap = new TreeMap<String, String>();
+
+			for (String variableID : simulator.componentToVariableSetMap.get(componentID))
+			{
+				localizedToVariableMap.put(localize(variableID, componentID), variableID);
+			}
+
+			numVariables = localizedToVariableMap.size();
+			variableIDs = localizedToVariableMap.keySet().toArray(new String[numVariables]);
+			isSpecies = new boolean[numVariables];
+			isFixed = new boolean[numVariables];
+			isPromoter = new boolean[numVariables];
+			isCompartment = new boolean[numVariables];
+			variableToColumnMap = new HashMap<String, Integer>();
+
+			int column = 0;
+
+			for (String variableID : localizedToVariableMap.values())
+			{
+
+				isSpecies[column] = simulator.speciesIDSet.contains(variableID);
+				isFixed[column] = isSpecies[column] == true
+						&& (Boolean.TRUE.equals(simulator.variableToIsConstantMap.get(variableID)) || Boolean.TRUE.equals(simulator.speciesToIsBoundaryConditionMap
+								.get(variableID)));
+				isPromoter[column] = isSpecies[column] == true && isPromoter(simulator, variableID);
+				isCompartment[column] = simulator.compartmentIDSet.contains(variableID);
+				variableToColumnMap.put(variableID, column);
+				++column;
+			}
+
+			capacity = Math.max(numCells, 1);
+			values = new double[capacity * numVariables];
+			cellVariableIDs = new String[capacity * numVariables];
+			componentIDs = new String[capacity];
+			cellRows = new int[capacity];
+			cellCols = new int[capacity];
+		}
+
+		/**
+		 * compiles the reactions and events of the type's first component and
+		 * allocates the rows
+		 *
+		 * @return false if one of them can't be compiled for a cell
+		 */
+		boolean compileReactionsAndEvents()
+		{
+
+			if (compileEvents() == false)
+			{
+				return false;
+			}
+
+			TreeMap<String, String> localizedToReactionMap = new TreeMap<String, String>();
+
+			for (String reactionID : getElementIDs(simulator.componentToReactionSetMap, componentID))
+			{
+				localizedToReactionMap.put(localize(reactionID, componentID), reactionID);
+			}
+
+			numReactions = localizedToReactionMap.size();
+			propensityFormulas = new Formula[numReactions];
+			reactantPointers = new int[numReactions + 1];
+			stoichiometryPointers = new int[numReactions + 1];
+
+			ArrayList<Integer> reactants = new ArrayList<Integer>();
+			ArrayList<Double> reactantAmounts = new ArrayList<Double>();
+			ArrayList<Integer> changes = new ArrayList<Integer>();
+			ArrayList<Double> changeAmounts = new ArrayList<Double>();
+			boolean[][] reactionReadsColumn = new boolean[numReactions][numVariables];
+			int reaction = 0;
+
+			for (String reactionID : localizedToReactionMap.values())
+			{
+
+				readColumns.clear();
+				propensityFormulas[reaction] = compileFormula(simulator.reactionToFormulaMap.get(reactionID));
+
+				if (propensityFormulas[reaction] == null)
+				{
+					return false;
+				}
+
+				reactantPointers[reaction] = reactants.size();
+				stoichiometryPointers[reaction] = changes.size();
+
+				if (simulator.reactionToReactantStoichiometrySetMap.get(reactionID) != null)
+				{
+
+					for (StringDoublePair reactantAndStoichiometry : simulator.reactionToReactantStoichiometrySetMap.get(reactionID))
+					{
+
+						Integer column = variableToColumnMap.get(reactantAndStoichiometry.string);
+
+						if (column == null)
+						{
+							return false;
+						}
+
+						reactants.add(column);
+						reactantAmounts.add(reactantAndStoichiometry.doub);
+						readColumns.add(column);
+					}
+				}
+
+				if (simulator.reactionToSpeciesAndStoichiometrySetMap.get(reactionID) != null)
+				{
+
+					for (StringDoublePair speciesAndStoichiometry : simulator.reactionToSpeciesAndStoichiometrySetMap.get(reactionID))
+					{
+
+						Integer column = variableToColumnMap.get(speciesAndStoichiometry.string);
+
+						if (column == null)
+						{
+							return false;
+						}
+
+						// boundary and constant species don't change
+						if (isFixed[column] == false)
+						{
+
+							changes.add(column);
+							changeAmounts.add(speciesAndStoichiometry.doub);
+						}
+					}
+				}
+
+				for (int readColumn : readColumns)
+				{
+					reactionReadsColumn[reaction][readColumn] = true;
+				}
+
+				++reaction;
+			}
+
+			reactantPointers[numReactions] = reactants.size();
+			stoichiometryPointers[numReactions] = changes.size();
+			reactantColumns = toIntArray(reactants);
+			reactantStoichiometries = toDoubleArray(reactantAmounts);
+			stoichiometryColumns = toIntArray(changes);
+			stoichiometries = toDoubleArray(changeAmounts);
+
+			// the reactions and events that read what each reaction changes
+			dependencyPointers = new int[numReactions + 1];
+			eventDependencyPointers = new int[numReactions + 1];
+
+			ArrayList<Integer> dependents = new ArrayList<Integer>();
+			ArrayList<Integer> eventDependents = new ArrayList<Integer>();
+
+			for (reaction = 0; reaction < numReactions; ++reaction)
+			{
+
+				dependencyPointers[reaction] = dependents.size();
+				eventDependencyPointers[reaction] = eventDependents.size();
+
+				for (int other = 0; other < numReactions; ++other)
+				{
+					if (other == reaction || readsAny(reactionReadsColumn[other], reaction) == true)
+					{
+						dependents.add(other);
+					}
+				}
+
+				for (int event = 0; event < numEvents; ++event)
+				{
+					if (readsAny(triggerReadsColumn[event], reaction) == true)
+					{
+						eventDependents.add(event);
+					}
+				}
+			}
+
+			dependencyPointers[numReactions] = dependents.size();
+			eventDependencyPointers[numReactions] = eventDependents.size();
+			dependencies = toIntArray(dependents);
+			eventDependencies = toIntArray(eventDependents);
+
+			propensities = new double[capacity * numReactions];
+			propensityTree = new SumTree(capacity);
+			previousTriggerValues = new boolean[capacity * numEvents];
+			heapPositions = new int[capacity * numEvents];
+			Arrays.fill(heapPositions, -1);
+
+			return true;
+		}
+
+		private boolean compileEvents()
+		{
+
+			TreeMap<String, String> localizedToEventMap = new TreeMap<String, String>();
+
+			for (String eventID : getElementIDs(simulator.componentToEventSetMap, componentID))
+			{
+				localizedToEventMap.put(localize(eventID, componentID), eventID);
+			}
+
+			numEvents = localizedToEventMap.size();
+			eventKinds = new int[numEvents];
+			moveDirections = new int[numEvents];
+			triggers = new Formula[numEvents];
+			delays = new Formula[numEvents];
+			persistent = new boolean[numEvents];
+			initiallyTrue = new boolean[numEvents];
+			assignmentColumns = new int[numEvents][];
+			assignmentFormulas = new Formula[numEvents][];
+			assignmentScales = new double[numEvents][];
+			triggerReadsColumn = new boolean[numEvents][numVariables];
+
+			int event = 0;
+
+			for (String eventID : localizedToEventMap.values())
+			{
+
+				if (simulator.eventToPriorityMap.get(eventID) != null)
+				{
+					return false;
+				}
+
+				eventKinds[event] = getEventKind(eventID);
+				moveDirections[event] = getMoveDirection(eventID);
+
+				// fireEvents finds the component of a dynamic event from its ID
+				if (eventKinds[event] != ASSIGNMENT && eventID.split("__")[0].equals(componentID) == false)
+				{
+					return false;
+				}
+
+				readColumns.clear();
+				triggers[event] = compileFormula(simulator.eventToTriggerMap.get(eventID));
+
+				if (triggers[event] == null)
+				{
+					return false;
+				}
+
+				for (int readColumn : readColumns)
+				{
+					triggerReadsColumn[event][readColumn] = true;
+				}
+
+				if (simulator.eventToHasDelayMap.get(eventID) == true)
+				{
+
+					delays[event] = compileFormula(simulator.eventToDelayMap.get(eventID));
+
+					if (delays[event] == null)
+					{
+						return false;
+					}
+				}
+
+				persistent[event] = simulator.eventToTriggerPersistenceMap.get(eventID);
+				initiallyTrue[event] = simulator.eventToTriggerInitiallyTrueMap.get(eventID);
+
+				TreeMap<String, EventAssignment> variableToAssignmentMap = new TreeMap<String, EventAssignment>();
+
+				for (Object assignment : simulator.eventToAssignmentSetMap.get(eventID))
+				{
+
+					String variableID = ((EventAssignment) assignment).getVariable();
+
+					// constants aren't assigned, except in a division's split
+					if (eventKinds[event] != ASSIGNMENT || Boolean.TRUE.equals(simulator.variableToIsConstantMap.get(variableID)) == false)
+					{
+						variableToAssignmentMap.put(variableID, (EventAssignment) assignment);
+					}
+				}
+
+				// assignments are made when the event fires
+				if (eventKinds[event] == ASSIGNMENT && variableToAssignmentMap.isEmpty() == false
+						&& Boolean.TRUE.equals(simulator.eventToUseValuesFromTriggerTimeMap.get(eventID)) == true)
+				{
+					return false;
+				}
+
+				assignmentColumns[event] = new int[variableToAssignmentMap.size()];
+				assignmentFormulas[event] = new Formula[variableToAssignmentMap.size()];
+				assignmentScales[event] = new double[variableToAssignmentMap.size()];
+
+				int assignment = 0;
+
+				for (Map.Entry<String, EventAssignment> variableAndAssignment : variableToAssignmentMap.entrySet())
+				{
+
+					String variableID = variableAndAssignment.getKey();
+					Integer column = variableToColumnMap.get(variableID);
+
+					if (column == null)
+					{
+						return false;
+					}
+
+					assignmentColumns[event][assignment] = column;
+					assignmentFormulas[event][assignment] = compileFormula(variableAndAssignment.getValue().getMath());
+					assignmentScales[event][assignment] = 1.0;
+
+					if (assignmentFormulas[event][assignment] == null)
+					{
+						return false;
+					}
+
+					// concentrations are assigned to species in amounts
+					if (isSpecies[column] == true && simulator.speciesToHasOnlySubstanceUnitsMap.get(variableID) == false)
+					{
+						assignmentScales[event][assignment] = simulator.speciesToCompartmentSizeMap.get(variableID);
+					}
+
+					++assignment;
+				}
+
+				++event;
+			}
+
+			return true;
+		}
+
+		@Override
+		Formula compileName(ASTNode node)
+		{
+
+			// time and the propensities of reactions are not kept in a row
+			if (node.getType().equals(ASTNode.Type.NAME_TIME) || simulator.reactionToPropensityMap.containsKey(node.getName()))
+			{
+				return null;
+			}
+
+			String name = node.getName().replace("_negative_", "-");
+			final Formula value = compileVariable(name);
+
+			if (value == null)
+			{
+				return null;
+			}
+
+			if (simulator.speciesToHasOnlySubstanceUnitsMap.containsKey(name) && simulator.speciesToHasOnlySubstanceUnitsMap.get(name) == false)
+			{
+
+				final Formula size = compileVariable(simulator.speciesToCompartmentNameMap.get(name));
+
+				if (size == null)
+				{
+					return null;
+				}
+
+				return () -> value.evaluate() / size.evaluate();
+			}
+
+			return value;
+		}
+
+		/**
+		 * compiles a variable of the cell, read from the row at the offset, or
+		 * a variable outside of every cell, which nothing changes
+		 */
+		private Formula compileVariable(String variableID)
+		{
+
+			if (variableID == null)
+			{
+				return null;
+			}
+
+			Integer column = variableToColumnMap.get(variableID);
+
+			if (column != null)
+			{
+
+				final int readColumn = column;
+
+				readColumns.add(readColumn);
+				return () -> values[offset + readColumn];
+			}
+
+			if (variableToComponentMap.containsKey(variableID) == true || simulator.variableToValueMap.containsKey(variableID) == false)
+			{
+				return null;
+			}
+
+			final double value = simulator.variableToValueMap.get(variableID);
+
+			return () -> value;
+		}
+
+		/**
+		 * @return true if a reaction changes any of the columns
+		 */
+		private boolean readsAny(boolean[] columns, int reaction)
+		{
+
+			for (int k = stoichiometryPointers[reaction]; k < stoichiometryPointers[reaction + 1]; ++k)
+			{
+				if (columns[stoichiometryColumns[k]] == true)
+				{
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		/**
+		 * @return the index of an event's assignment to a column, or -1
+		 */
+		int findAssignment(int event, int column)
+		{
+
+			for (int assignment = 0; assignment < assignmentColumns[event].length; ++assignment)
+			{
+				if (assignmentColumns[event][assignment] == column)
+				{
+					return assignment;
+				}
+			}
+
+			return -1;
+		}
+
+		/**
+		 * adds a row for a cell with no propensities and untriggered events
+		 *
+		 * @return the row
+		 */
+		int addCell(String cellComponentID)
+		{
+
+			if (numCells == capacity)
+			{
+				grow();
+			}
+
+			int row = numCells++;
+
+			componentIDs[row] = cellComponentID;
+
+			for (int column = 0; column < numVariables; ++column)
+			{
+				cellVariableIDs[row * numVariables + column] = variableIDs[column].replace(COMPONENT, cellComponentID + "__");
+			}
+
+			Arrays.fill(propensities, row * numReactions, (row + 1) * numReactions, 0.0);
+			propensityTree.update(row, 0.0);
+
+			for (int event = 0; event < numEvents; ++event)
+			{
+
+				previousTriggerValues[row * numEvents + event] = initiallyTrue[event];
+				heapPositions[row * numEvents + event] = -1;
+			}
+
+			return row;
+		}
+
+		/**
+		 * copies a row over another one, including where its events are in
+		 * the heap
+		 */
+		void moveRow(int from, int to)
+		{
+
+			System.arraycopy(values, from * numVariables, values, to * numVariables, numVariables);
+			System.arraycopy(cellVariableIDs, from * numVariables, cellVariableIDs, to * numVariables, numVariables);
+			System.arraycopy(propensities, from * numReactions, propensities, to * numReactions, numReactions);
+			System.arraycopy(previousTriggerValues, from * numEvents, previousTriggerValues, to * numEvents, numEvents);
+			System.arraycopy(heapPositions, from * numEvents, heapPositions, to * numEvents, numEvents);
+
+			componentIDs[to] = componentIDs[from];
+			cellRows[to] = cellRows[from];
+			cellCols[to] = cellCols[from];
+			propensityTree.update(to, propensityTree.get(from));
+		}
+
+		void removeLastRow()
+		{
+
+			--numCells;
+
+			componentIDs[numCells] = null;
+			Arrays.fill(cellVariableIDs, numCells * numVariables, (numCells + 1) * numVariables, null);
+			Arrays.fill(heapPositions, numCells * numEvents, (numCells + 1) * numEvents, -1);
+			propensityTree.update(numCells, 0.0);
+		}
+
+		/**
+		 * doubles the rows, copying the sum tree since it has a fixed size
+		 */
+		private void grow()
+		{
+
+			int newCapacity = 2 * capacity;
+
+			values = Arrays.copyOf(values, newCapacity * numVariables);
+			cellVariableIDs = Arrays.copyOf(cellVariableIDs, newCapacity * numVariables);
+			componentIDs = Arrays.copyOf(componentIDs, newCapacity);
+			cellRows = Arrays.copyOf(cellRows, newCapacity);
+			cellCols = Arrays.copyOf(cellCols, newCapacity);
+			propensities = Arrays.copyOf(propensities, newCapacity * numReactions);
+			previousTriggerValues = Arrays.copyOf(previousTriggerValues, newCapacity * numEvents);
+			heapPositions = Arrays.copyOf(heapPositions, newCapacity * numEvents);
+			Arrays.fill(heapPositions, capacity * numEvents, newCapacity * numEvents, -1);
+
+			SumTree newPropensityTree = new SumTree(newCapacity);
+
+			for (int row = 0; row < numCells; ++row)
+			{
+				newPropensityTree.update(row, propensityTree.get(row));
+			}
+
+			propensityTree = newPropensityTree;
+
+			capacity = newCapacity;
+		}
+
+		/**
+		 * @return the propensity of a reaction of a cell, or zero if it lacks
+		 *         the reactants
+		 */
+		double computePropensity(int row, int reaction)
+		{
+
+			offset = row * numVariables;
+
+			for (int k = reactantPointers[reaction]; k < reactantPointers[reaction + 1]; ++k)
+			{
+				if (reactantStoichiometries[k] > values[offset + reactantColumns[k]])
+				{
+					return 0.0;
+				}
+			}
+
+			return propensityFormulas[reaction].evaluate();
+		}
+
+		/**
+		 * recomputes every propensity of a cell
+		 */
+		void updatePropensities(int row)
+		{
+
+			for (int reaction = 0; reaction < numReactions; ++reaction)
+			{
+				propensities[row * numReactions + reaction] = computePropensity(row, reaction);
+			}
+
+			updateTotal(row);
+		}
+
+		/**
+		 * sets the sum tree leaf of a cell to the sum of its propensities
+		 */
+		void updateTotal(int row)
+		{
+
+			double total = 0.0;
+
+			for (int reaction = 0; reaction < numReactions; ++reaction)
+			{
+				total += propensities[row * numReactions + reaction];
+			}
+
+			propensityTree.update(row, total);
+		}
+
+		private static int getEventKind(String eventID)
+		{
+
+			if (eventID.contains("__AsymmetricDivision__"))
+			{
+				return ASYMMETRIC_DIVISION;
+			}
+			else if (eventID.contains("__SymmetricDivision__"))
+			{
+				return SYMMETRIC_DIVISION;
+			}
+			else if (eventID.contains("__Death__"))
+			{
+				return DEATH;
+			}
+			else if (eventID.contains("__Move"))
+			{
+				return MOVE;
+			}
+
+			return ASSIGNMENT;
+		}
+
+		/**
+		 * @return the direction of a move event, or -1 for a random one
+		 */
+		private static int getMoveDirection(String eventID)
+		{
+
+			if (eventID.contains("__MoveLeft__"))
+			{
+				return 0;
+			}
+			else if (eventID.contains("__MoveRight__"))
+			{
+				return 1;
+			}
+			else if (eventID.contains("__MoveAbove__"))
+			{
+				return 2;
+			}
+			else if (eventID.contains("__MoveBelow__"))
+			{
+				return 3;
+			}
+
+			return -1;
+		}
+
+		private static int[] toIntArray(ArrayList<Integer> list)
+		{
+
+			int[] array = new int[list.size()];
+
+			for (int i = 0; i < array.length; ++i)
+			{
+				array[i] = list.get(i);
+			}
+
+			return array;
+		}
+
+		private static double[] toDoubleArray(ArrayList<Double> list)
+		{
+
+			double[] array = new double[list.size()];
+
+			for (int i = 0; i < array.length; ++i)
+			{
+				array[i] = list.get(i);
+			}
+
+			return array;
+		}
+	}
+}
@@ -0,0 +1,595 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.TreeSet;
+
+import org.sbml.jsbml.ASTNode;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.FormulaCompiler.Formula;
+import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.Simulator.StringDoublePair;
+
+/**
+ * Index-based representation of a flattened model that only changes through
+ * reaction firings.
+ * 
+ * Species, parameters and reactions are assigned integer ids when the model is
+ * compiled. Values and propensities are kept in double arrays, the
+ * stoichiometry, the reactant requirements and the reaction dependencies are
+ * kept in compressed row arrays, and the kinetic laws are compiled into
+ * closures over the value array. Firing a reaction and updating the affected
+ * propensities does not hash strings or allocate objects.
+ * 
+ * The string-keyed maps of the {@link Simulator} are the source of the model
+ * and are updated from the value array with {@link #writeValues()} before
+ * output is printed.
+ * 
+ * A subset of the reactions can be compiled with a given variable order, which
+ * is how {@link NextSubvolumeMethod} lays the grid species out by location.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class CompiledModel implements IndexedReactions
+{
+
+	private final Simulator					simulator;
+
+	private final String[]					variableIDs;
+	private final TObjectIntHashMap<String>	variableToIndexMap;
+	private final double[]					values;
+	private final int						timeIndex;
+
+	private final String[]					reactionIDs;
+	private final TObjectIntHashMap<String>	reactionToIndexMap;
+	private final double[]					propensities;
+	private final Formula[]					formulas;
+
+	private final int[]						stoichiometryPointers;
+	private final int[]						stoichiometrySpecies;
+	private final double[]					stoichiometries;
+
+	private final int[]						reactantPointers;
+	private final int[]						reactantSpecies;
+	private final double[]					reactantStoichiometries;
+
+	private final int[]						dependencyPointers;
+	private final int[]						dependencies;
+
+	private final int[]						changingSpecies;
+
+	private CompiledModel(Simulator simulator, String[] variableIDs, String[] reactionIDs)
+	{
+
+		this.simulator = simulator;
+		this.variableIDs = variableIDs;
+		this.reactionIDs = reactionIDs;
+
+		variableToIndexMap = new TObjectIntHashMap<String>(variableIDs.length * 2, 0.5f, -1);
+		timeIndex = variableIDs.length;
+		values = new double[variableIDs.length + 1];
+
+		for (int i = 0; i < variableIDs.length; ++i)
+		{
+			variableToIndexMap.put(variableIDs[i], i);
+			values[i] = simulator.variableToValueMap.get(variableIDs[i]);
+		}
+
+		reactionToIndexMap = new TObjectIntHashMap<String>(reactionIDs.length * 2, 0.5f, -1);
+		propensities = new double[reactionIDs.length];
+		formulas = new Formula[reactionIDs.length];
+
+		for (int i = 0; i < reactionIDs.length; ++i)
+		{
+			reactionToIndexMap.put(reactionIDs[i], i);
+			propensities[i] = simulator.reactionToPropensityMap.get(reactionIDs[i]);
+		}
+
+		stoichiometryPointers = new int[reactionIDs.length + 1];
+		reactantPointers = new int[reactionIDs.length + 1];
+		dependencyPointers = new int[reactionIDs.length + 1];
+
+		int numStoichiometries = 0;
+		int numReactants = 0;
+
+		for (int i = 0; i < reactionIDs.length; ++i)
+		{
+			numStoichiometries += simulator.reactionToSpeciesAndStoichiometrySetMap.get(reactionIDs[i]).size();
+			numReactants += simulator.reactionToReactantStoichiometrySetMap.get(reactionIDs[i]).size();
+		}
+
+		int[] speciesBuffer = new int[numStoichiometries];
+		double[] stoichiometryBuffer = new double[numStoichiometries];
+		reactantSpecies = new int[numReactants];
+		reactantStoichiometries = new double[numReactants];
+
+		int stoichiometryCount = 0;
+		int reactantCount = 0;
+		TreeSet<Integer> changing = new TreeSet<Integer>();
+
+		for (int i = 0; i < reactionIDs.length; ++i)
+		{
+
+			stoichiometryPointers[i] = stoichiometryCount;
+
+			// species that are boundary conditions or constant are never
+			// updated by reactions, so they are left out
+			for (StringDoublePair speciesAndStoichiometry : simulator.reactionToSpeciesAndStoichiometrySetMap.get(reactionIDs[i]))
+			{
+
+				String speciesID = speciesAndStoichiometry.string;
+
+				if (simulator.speciesToIsBoundaryConditionMap.get(speciesID) == true || simulator.variableToIsConstantMap.get(speciesID) == true)
+				{
+					continue;
+				}
+
+				double stoichiometry = speciesAndStoichiometry.doub;
+
+				if (simulator.speciesToConversionFactorMap.containsKey(speciesID))
+				{
+					stoichiometry *= simulator.variableToValueMap.get(simulator.speciesToConversionFactorMap.get(speciesID));
+				}
+
+				speciesBuffer[stoichiometryCount] = variableToIndexMap.get(speciesID);
+				stoichiometryBuffer[stoichiometryCount] = stoichiometry;
+				changing.add(speciesBuffer[stoichiometryCount]);
+				++stoichiometryCount;
+			}
+
+			reactantPointers[i] = reactantCount;
+
+			for (StringDoublePair speciesAndStoichiometry : simulator.reactionToReactantStoichiometrySetMap.get(reactionIDs[i]))
+			{
+
+				reactantSpecies[reactantCount] = variableToIndexMap.get(speciesAndStoichiometry.string);
+				reactantStoichiometries[reactantCount] = speciesAndStoichiometry.doub;
+				++reactantCount;
+			}
+		}
+
+		stoichiometryPointers[reactionIDs.length] = stoichiometryCount;
+		reactantPointers[reactionIDs.length] = reactantCount;
+		stoichiometrySpecies = Arrays.copyOf(speciesBuffer, stoichiometryCount);
+		stoichiometries = Arrays.copyOf(stoichiometryBuffer, stoichiometryCount);
+
+		changingSpecies = new int[changing.size()];
+		int changingCount = 0;
+
+		for (int species : changing)
+		{
+			changingSpecies[changingCount++] = species;
+		}
+
+		// a reaction affects itself and every reaction that depends on the
+		// species it changes
+		int[][] affectedReactions = new int[reactionIDs.length][];
+		int numDependencies = 0;
+
+		for (int i = 0; i < reactionIDs.length; ++i)
+		{
+
+			TreeSet<Integer> affected = new TreeSet<Integer>();
+			affected.add(i);
+
+			for (int k = stoichiometryPointers[i]; k < stoichiometryPointers[i + 1]; ++k)
+			{
+
+				HashSet<String> dependents = simulator.speciesToAffectedReactionSetMap.get(variableIDs[stoichiometrySpecies[k]]);
+
+				if (dependents == null)
+				{
+					continue;
+				}
+
+				for (String dependent : dependents)
+				{
+
+					int index = reactionToIndexMap.get(dependent);
+
+					if (index >= 0)
+					{
+						affected.add(index);
+					}
+				}
+			}
+
+			affectedReactions[i] = new int[affected.size()];
+			int count = 0;
+
+			for (int index : affected)
+			{
+				affectedReactions[i][count++] = index;
+			}
+
+			numDependencies += count;
+		}
+
+		dependencies = new int[numDependencies];
+		int dependencyCount = 0;
+
+		for (int i = 0; i < reactionIDs.length; ++i)
+		{
+
+			dependencyPointers[i] = dependencyCount;
+			System.arraycopy(affectedReactions[i], 0, dependencies, dependencyCount, affectedReactions[i].length);
+			dependencyCount += affectedReactions[i].length;
+		}
+
+		dependencyPointers[reactionIDs.length] = dependencyCount;
+	}
+
+	/**
+	 * compiles the current state of a simulator
+	 * 
+	 * @param simulator
+	 *            the simulator, after its reactions have been set up
+	 * @return the compiled model, or null if the model can change in ways
+	 *         other than reaction firings (events, rules, constraints, dynamic
+	 *         components, nonconstant stoichiometries) or has a kinetic law
+	 *         that cannot be compiled
+	 */
+	public static CompiledModel compile(Simulator simulator)
+	{
+
+		if (isCompilable(simulator) == false)
+		{
+			return null;
+		}
+
+		String[] variableIDs = simulator.variableToValueMap.keys(new String[simulator.variableToValueMap.size()]);
+		String[] reactionIDs = simulator.reactionToPropensityMap.keys(new String[simulator.reactionToPropensityMap.size()]);
+
+		return compile(simulator, variableIDs, reactionIDs);
+	}
+
+	/**
+	 * checks that a simulator's model only changes through reaction firings
+	 * and that every reaction has what is needed to compile it
+	 * 
+	 * @param simulator
+	 *            the simulator, after its reactions have been set up
+	 * @return true if {@link #compile(Simulator)} can succeed
+	 */
+	static boolean isCompilable(Simulator simulator)
+	{
+
+		if (simulator.dynamicBoolean == true || simulator.numEvents > 0 || simulator.numAssignmentRules > 0 || simulator.numRateRules > 0 || simulator.numConstraints > 0)
+		{
+			return false;
+		}
+
+		if (simulator.reactionToNonconstantStoichiometriesSetMap != null && simulator.reactionToNonconstantStoichiometriesSetMap.isEmpty() == false)
+		{
+			return false;
+		}
+
+		for (String reactionID : simulator.reactionToPropensityMap.keySet())
+		{
+
+			if (simulator.reactionToFormulaMap.get(reactionID) == null || simulator.reactionToSpeciesAndStoichiometrySetMap.get(reactionID) == null
+					|| simulator.reactionToReactantStoichiometrySetMap.get(reactionID) == null)
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * compiles some of the reactions of a simulator whose model passed
+	 * {@link #isCompilable(Simulator)}
+	 * 
+	 * @param simulator
+	 *            the simulator, after its reactions have been set up
+	 * @param variableIDs
+	 *            every variable of the simulator, in the order of their
+	 *            indices
+	 * @param reactionIDs
+	 *            the reactions to compile, in the order of their indices
+	 * @return the compiled model, or null if a kinetic law cannot be compiled
+	 */
+	static CompiledModel compile(Simulator simulator, String[] variableIDs, String[] reactionIDs)
+	{
+
+		CompiledModel compiledModel = new CompiledModel(simulator, variableIDs, reactionIDs);
+
+		FormulaCompiler formulaCompiler = new FormulaCompiler()
+		{
+
+			@Override
+			Formula compileName(ASTNode node)
+			{
+				return compiledModel.compileName(node);
+			}
+		};
+
+		for (int i = 0; i < compiledModel.reactionIDs.length; ++i)
+		{
+
+			compiledModel.formulas[i] = formulaCompiler.compileFormula(simulator.reactionToFormulaMap.get(compiledModel.reactionIDs[i]));
+
+			if (compiledModel.formulas[i] == null)
+			{
+				return null;
+			}
+		}
+
+		return compiledModel;
+	}
+
+	/**
+	 * @return the number of reactions
+	 */
+	@Override
+	public int getNumReactions()
+	{
+		return reactionIDs.length;
+	}
+
+	/**
+	 * @param reaction
+	 *            the reaction index
+	 * @return the ID of the reaction
+	 */
+	public String getReactionID(int reaction)
+	{
+		return reactionIDs[reaction];
+	}
+
+	/**
+	 * @param reactionID
+	 *            the ID of a reaction
+	 * @return the index of the reaction, or -1 if there is no such reaction
+	 */
+	public int getReactionIndex(String reactionID)
+	{
+		return reactionToIndexMap.get(reactionID);
+	}
+
+	/**
+	 * @param reaction
+	 *            the reaction index
+	 * @return the last computed propensity of the reaction
+	 */
+	public double getPropensity(int reaction)
+	{
+		return propensities[reaction];
+	}
+
+	/**
+	 * @return the start of the affected reactions of each reaction in
+	 *         {@link #getDependencies()}, followed by the number of
+	 *         dependencies
+	 */
+	@Override
+	public int[] getDependencyPointers()
+	{
+		return dependencyPointers;
+	}
+
+	/**
+	 * @return the reactions whose propensity has to be updated after each
+	 *         reaction fires, including the reaction itself
+	 */
+	@Override
+	public int[] getDependencies()
+	{
+		return dependencies;
+	}
+
+	/**
+	 * @param variableID
+	 *            the ID of a variable
+	 * @return the index of the variable, or -1 if there is no such variable
+	 */
+	int getVariableIndex(String variableID)
+	{
+		return variableToIndexMap.get(variableID);
+	}
+
+	/**
+	 * @return the values of the variables by index, which are updated in
+	 *         place as reactions fire
+	 */
+	double[] getValues()
+	{
+		return values;
+	}
+
+	/**
+	 * @return the start of the species changes of each reaction in
+	 *         {@link #getStoichiometrySpecies()}, followed by the number of
+	 *         changes
+	 */
+	@Override
+	public int[] getStoichiometryPointers()
+	{
+		return stoichiometryPointers;
+	}
+
+	/**
+	 * @return the species changed by each reaction
+	 */
+	@Override
+	public int[] getStoichiometrySpecies()
+	{
+		return stoichiometrySpecies;
+	}
+
+	/**
+	 * sets the time used by kinetic laws that depend on time
+	 * 
+	 * @param time
+	 *            the current simulation time
+	 */
+	@Override
+	public void setTime(double time)
+	{
+		values[timeIndex] = time;
+	}
+
+	/**
+	 * updates the species amounts after a reaction fires
+	 * 
+	 * @param reaction
+	 *            the reaction index
+	 */
+	@Override
+	public void fireReaction(int reaction)
+	{
+
+		for (int k = stoichiometryPointers[reaction]; k < stoichiometryPointers[reaction + 1]; ++k)
+		{
+			values[stoichiometrySpecies[k]] += stoichiometries[k];
+		}
+	}
+
+	/**
+	 * computes the propensity of a reaction, which is zero if there aren't
+	 * enough molecules to satisfy the reactant stoichiometries
+	 * 
+	 * @param reaction
+	 *            the reaction index
+	 * @return the propensity
+	 */
+	@Override
+	public double computePropensity(int reaction)
+	{
+
+		for (int k = reactantPointers[reaction]; k < reactantPointers[reaction + 1]; ++k)
+		{
+
+			if (values[reactantSpecies[k]] < reactantStoichiometries[k])
+			{
+				return 0.0;
+			}
+		}
+
+		return formulas[reaction].evaluate();
+	}
+
+	/**
+	 * stores a new propensity for a reaction
+	 * 
+	 * @param reaction
+	 *            the reaction index
+	 * @param propensity
+	 *            the new propensity
+	 */
+	public void setPropensity(int reaction, double propensity)
+	{
+		propensities[reaction] = propensity;
+	}
+
+	/**
+	 * finds the reaction where the running total of propensities first exceeds
+	 * a threshold
+	 * 
+	 * @param randomPropensity
+	 *            a value between zero and the total propensity
+	 * @return the selected reaction index, or -1 if there is none
+	 */
+	public int selectReaction(double randomPropensity)
+	{
+
+		double runningTotalReactionsPropensity = 0.0;
+
+		for (int i = 0; i < propensities.length; ++i)
+		{
+
+			runningTotalReactionsPropensity += propensities[i];
+
+			if (randomPropensity < runningTotalReactionsPropensity)
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * copies the amounts of the species changed by reactions back into the
+	 * simulator's variable map
+	 */
+	@Override
+	public void writeValues()
+	{
+
+		for (int species : changingSpecies)
+		{
+			simulator.variableToValueMap.put(variableIDs[species], values[species]);
+		}
+	}
+
+	/**
+	 * copies the propensities back into the simulator's propensity map
+	 */
+	public void writePropensities()
+	{
+
+		for (int i = 0; i < reactionIDs.length; ++i)
+		{
+			simulator.reactionToPropensityMap.put(reactionIDs[i], propensities[i]);
+		}
+	}
+
+	private Formula compileName(ASTNode node)
+	{
+
+		final double[] values = this.values;
+
+		if (node.getType().equals(ASTNode.Type.NAME_TIME))
+		{
+
+			final int index = timeIndex;
+			return () -> values[index];
+		}
+
+		// propensities of other reactions are not tracked by name
+		if (simulator.reactionToPropensityMap.containsKey(node.getName()))
+		{
+			return null;
+		}
+
+		String name = node.getName().replace("_negative_", "-");
+		final int index = variableToIndexMap.get(name);
+
+		if (index < 0)
+		{
+			return null;
+		}
+
+		if (simulator.speciesToHasOnlySubstanceUnitsMap.containsKey(name) && simulator.speciesToHasOnlySubstanceUnitsMap.get(name) == false)
+		{
+
+			final int compartmentIndex = variableToIndexMap.get(simulator.speciesToCompartmentNameMap.get(name));
+
+			if (compartmentIndex < 0)
+			{
+				return null;
+			}
+
+			return () -> values[index] / values[compartmentIndex];
+		}
+
+		return () -> values[index];
+	}
+}
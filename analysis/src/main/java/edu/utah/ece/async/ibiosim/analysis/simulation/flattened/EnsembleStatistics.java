@@ -0,0 +1,302 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.DataParser;
+
+/**
+ * Accumulates the mean and variance of every printed variable at every print
+ * point across the runs of a simulation.
+ * 
+ * Values are added as they are printed and folded into running sums with
+ * Welford's method, so the statistics never need the run files to be read
+ * back and the memory used does not grow with the number of runs.
+ * 
+ * A variable that is missing from a printed row, such as a species of a
+ * dynamic model that does not exist in a run, counts as zero at that point,
+ * like it does when the run files are parsed.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class EnsembleStatistics
+{
+
+	private final HashMap<String, Column>	variableToColumnMap;
+	private final ArrayList<Column>			columns;
+
+	// number of rows printed at each point over all runs
+	private int[]							rowCounts;
+	private int								numPoints;
+	private int								currentPoint;
+
+	public EnsembleStatistics()
+	{
+
+		variableToColumnMap = new HashMap<String, Column>();
+		columns = new ArrayList<Column>();
+		rowCounts = new int[16];
+		clear();
+	}
+
+	/**
+	 * removes all variables and values
+	 */
+	public void clear()
+	{
+
+		variableToColumnMap.clear();
+		columns.clear();
+		Arrays.fill(rowCounts, 0);
+		numPoints = 0;
+		currentPoint = -1;
+	}
+
+	/**
+	 * starts a new run; the next row is the first print point
+	 */
+	public void startRun()
+	{
+		currentPoint = -1;
+	}
+
+	/**
+	 * starts the next row of the current run
+	 */
+	public void startRow()
+	{
+
+		++currentPoint;
+
+		if (currentPoint >= rowCounts.length)
+		{
+			rowCounts = Arrays.copyOf(rowCounts, 2 * rowCounts.length);
+		}
+
+		++rowCounts[currentPoint];
+		numPoints = Math.max(numPoints, currentPoint + 1);
+	}
+
+	/**
+	 * adds the value of a variable to the current row
+	 * 
+	 * @param variableID
+	 * @param value
+	 */
+	public void addValue(String variableID, double value)
+	{
+
+		Column column = variableToColumnMap.get(variableID);
+
+		if (column == null)
+		{
+			column = new Column(variableID);
+			variableToColumnMap.put(variableID, column);
+			columns.add(column);
+		}
+
+		column.add(currentPoint, value);
+	}
+
+	/**
+	 * @return the number of print points seen so far
+	 */
+	public int getNumPoints()
+	{
+		return numPoints;
+	}
+
+	/**
+	 * @param variableID
+	 * @param point
+	 * @return the mean of the variable at the print point
+	 */
+	public double getMean(String variableID, int point)
+	{
+
+		Column column = variableToColumnMap.get(variableID);
+
+		if (column == null)
+		{
+			return 0;
+		}
+
+		return column.getMean(point, rowCounts[point]);
+	}
+
+	/**
+	 * the variance is the bias-corrected sample variance, which is zero when
+	 * there is a single value
+	 * 
+	 * @param variableID
+	 * @param point
+	 * @return the variance of the variable at the print point
+	 */
+	public double getVariance(String variableID, int point)
+	{
+
+		Column column = variableToColumnMap.get(variableID);
+
+		if (column == null)
+		{
+			return 0;
+		}
+
+		return column.getVariance(point, rowCounts[point]);
+	}
+
+	/**
+	 * prints the mean, standard deviation and variance TSDs
+	 * 
+	 * the time column holds the mean time in every file
+	 * 
+	 * @param meanFile
+	 * @param standardDeviationFile
+	 * @param varianceFile
+	 */
+	public void printToTSD(String meanFile, String standardDeviationFile, String varianceFile)
+	{
+
+		ArrayList<String> allVariables = new ArrayList<String>();
+		ArrayList<ArrayList<Double>> meanTSDData = new ArrayList<ArrayList<Double>>();
+		ArrayList<ArrayList<Double>> standardDeviationTSDData = new ArrayList<ArrayList<Double>>();
+		ArrayList<ArrayList<Double>> varianceTSDData = new ArrayList<ArrayList<Double>>();
+
+		for (Column column : columns)
+		{
+
+			ArrayList<Double> meanData = new ArrayList<Double>(numPoints);
+			ArrayList<Double> standardDeviationData = new ArrayList<Double>(numPoints);
+			ArrayList<Double> varianceData = new ArrayList<Double>(numPoints);
+			boolean isTime = column.variableID.equals("time");
+
+			for (int point = 0; point < numPoints; ++point)
+			{
+
+				double mean = column.getMean(point, rowCounts[point]);
+				double variance = column.getVariance(point, rowCounts[point]);
+
+				meanData.add(mean);
+				standardDeviationData.add(isTime ? mean : Math.sqrt(variance));
+				varianceData.add(isTime ? mean : variance);
+			}
+
+			allVariables.add(column.variableID);
+			meanTSDData.add(meanData);
+			standardDeviationTSDData.add(standardDeviationData);
+			varianceTSDData.add(varianceData);
+		}
+
+		DataParser statsParser = new DataParser(null, null);
+		statsParser.setSpecies(allVariables);
+
+		statsParser.setData(meanTSDData);
+		statsParser.outputTSD(meanFile);
+
+		statsParser.setData(standardDeviationTSDData);
+		statsParser.outputTSD(standardDeviationFile);
+
+		statsParser.setData(varianceTSDData);
+		statsParser.outputTSD(varianceFile);
+	}
+
+	/**
+	 * running count, mean and sum of squared differences from the mean of a
+	 * variable at each print point
+	 */
+	private static class Column
+	{
+
+		private final String	variableID;
+		private int[]			counts;
+		private double[]		means;
+		private double[]		squaredDifferences;
+
+		Column(String variableID)
+		{
+
+			this.variableID = variableID;
+			counts = new int[16];
+			means = new double[16];
+			squaredDifferences = new double[16];
+		}
+
+		void add(int point, double value)
+		{
+
+			if (point >= counts.length)
+			{
+
+				int length = Math.max(2 * counts.length, point + 1);
+				counts = Arrays.copyOf(counts, length);
+				means = Arrays.copyOf(means, length);
+				squaredDifferences = Arrays.copyOf(squaredDifferences, length);
+			}
+
+			int count = ++counts[point];
+			double delta = value - means[point];
+			means[point] += delta / count;
+			squaredDifferences[point] += delta * (value - means[point]);
+		}
+
+		/**
+		 * @param point
+		 * @param rowCount
+		 *            number of rows at the point; missing values are zero
+		 * @return the mean at the point
+		 */
+		double getMean(int point, int rowCount)
+		{
+
+			if (point >= counts.length || rowCount == 0)
+			{
+				return 0;
+			}
+
+			return means[point] * counts[point] / rowCount;
+		}
+
+		/**
+		 * @param point
+		 * @param rowCount
+		 *            number of rows at the point; missing values are zero
+		 * @return the sample variance at the point
+		 */
+		double getVariance(int point, int rowCount)
+		{
+
+			if (point >= counts.length || rowCount <= 1)
+			{
+				return 0;
+			}
+
+			int count = counts[point];
+			int missing = rowCount - count;
+			double squaredDifference = squaredDifferences[point];
+
+			// merge in the missing values as a group of zeros
+			if (missing > 0 && count > 0)
+			{
+				double mean = means[point];
+				squaredDifference += mean * mean * count * missing / rowCount;
+			}
+
+			return squaredDifference / (rowCount - 1);
+		}
+	}
+}
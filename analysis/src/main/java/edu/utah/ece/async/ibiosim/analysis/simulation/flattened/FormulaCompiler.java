@@ -0,0 +1,481 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import org.apache.commons.math3.util.FastMath;
+import org.sbml.jsbml.ASTNode;
+
+/**
+ * Compiles math into closures that follow the semantics of
+ * {@link Simulator#evaluateExpressionRecursive(ASTNode)}.
+ * 
+ * Operators and functions are compiled here; subclasses decide where the
+ * value of a name is read from.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+abstract class FormulaCompiler
+{
+
+	/**
+	 * A formula compiled into a closure.
+	 */
+	interface Formula
+	{
+		double evaluate();
+	}
+
+	/**
+	 * compiles a formula, following the semantics of
+	 * {@link Simulator#evaluateExpressionRecursive(ASTNode)}
+	 * 
+	 * @param node
+	 *            the formula
+	 * @return the compiled formula, or null if the formula uses something that
+	 *         is not supported
+	 */
+	Formula compileFormula(ASTNode node)
+	{
+
+		if (node.isBoolean())
+		{
+
+			switch (node.getType())
+			{
+
+			case CONSTANT_TRUE:
+				return () -> 1.0;
+
+			case CONSTANT_FALSE:
+				return () -> 0.0;
+
+			case LOGICAL_NOT:
+			{
+
+				final Formula child = compileFormula(node.getLeftChild());
+
+				if (child == null)
+				{
+					return null;
+				}
+
+				return () -> child.evaluate() == 0.0 ? 1.0 : 0.0;
+			}
+
+			case LOGICAL_AND:
+			{
+
+				final Formula[] children = compileChildren(node);
+
+				if (children == null)
+				{
+					return null;
+				}
+
+				return () -> {
+
+					for (Formula child : children)
+					{
+
+						if (child.evaluate() == 0.0)
+						{
+							return 0.0;
+						}
+					}
+
+					return 1.0;
+				};
+			}
+
+			case LOGICAL_OR:
+			{
+
+				final Formula[] children = compileChildren(node);
+
+				if (children == null)
+				{
+					return null;
+				}
+
+				return () -> {
+
+					for (Formula child : children)
+					{
+
+						if (child.evaluate() != 0.0)
+						{
+							return 1.0;
+						}
+					}
+
+					return 0.0;
+				};
+			}
+
+			case LOGICAL_XOR:
+			{
+
+				final Formula[] children = compileChildren(node);
+
+				if (children == null || children.length == 0)
+				{
+					return null;
+				}
+
+				return () -> {
+
+					boolean xorResult = false;
+
+					for (Formula child : children)
+					{
+						xorResult = xorResult ^ (child.evaluate() != 0.0);
+					}
+
+					return xorResult ? 1.0 : 0.0;
+				};
+			}
+
+			case RELATIONAL_EQ:
+			case RELATIONAL_NEQ:
+			case RELATIONAL_GEQ:
+			case RELATIONAL_LEQ:
+			case RELATIONAL_GT:
+			case RELATIONAL_LT:
+				return compileRelational(node);
+
+			default:
+				return null;
+			}
+		}
+		else if (node.isConstant())
+		{
+
+			switch (node.getType())
+			{
+
+			case CONSTANT_E:
+				return () -> Math.E;
+
+			case CONSTANT_PI:
+				return () -> Math.PI;
+
+			default:
+				return null;
+			}
+		}
+		else if (node.isNumber())
+		{
+
+			final double number = node.getReal();
+			return () -> number;
+		}
+		else if (node.isName())
+		{
+			return compileName(node);
+		}
+
+		switch (node.getType())
+		{
+
+		case PLUS:
+		{
+
+			final Formula[] children = compileChildren(node);
+
+			if (children == null)
+			{
+				return null;
+			}
+
+			return () -> {
+
+				double sum = 0.0;
+
+				for (Formula child : children)
+				{
+					sum += child.evaluate();
+				}
+
+				return sum;
+			};
+		}
+
+		case MINUS:
+		{
+
+			// the interpreter does not negate unary minus, so it is left to
+			// the interpreter
+			final Formula[] children = compileChildren(node);
+
+			if (children == null || children.length < 2)
+			{
+				return null;
+			}
+
+			return () -> {
+
+				double sum = children[0].evaluate();
+
+				for (int childIter = 1; childIter < children.length; ++childIter)
+				{
+					sum -= children[childIter].evaluate();
+				}
+
+				return sum;
+			};
+		}
+
+		case TIMES:
+		{
+
+			final Formula[] children = compileChildren(node);
+
+			if (children == null)
+			{
+				return null;
+			}
+
+			return () -> {
+
+				double product = 1.0;
+
+				for (Formula child : children)
+				{
+					product *= child.evaluate();
+				}
+
+				return product;
+			};
+		}
+
+		case DIVIDE:
+		{
+
+			final Formula[] children = compileChildren(node);
+
+			if (children == null || children.length != 2)
+			{
+				return null;
+			}
+
+			final Formula left = children[0], right = children[1];
+			return () -> left.evaluate() / right.evaluate();
+		}
+
+		case FUNCTION_POWER:
+		{
+
+			final Formula[] children = compileChildren(node);
+
+			if (children == null || children.length != 2)
+			{
+				return null;
+			}
+
+			final Formula left = children[0], right = children[1];
+			return () -> FastMath.pow(left.evaluate(), right.evaluate());
+		}
+
+		case FUNCTION_ROOT:
+		{
+
+			final Formula[] children = compileChildren(node);
+
+			if (children == null || children.length != 2)
+			{
+				return null;
+			}
+
+			final Formula left = children[0], right = children[1];
+			return () -> FastMath.pow(right.evaluate(), 1 / left.evaluate());
+		}
+
+		case FUNCTION_ABS:
+		case FUNCTION_CEILING:
+		case FUNCTION_COS:
+		case FUNCTION_COSH:
+		case FUNCTION_EXP:
+		case FUNCTION_FLOOR:
+		case FUNCTION_LN:
+		case FUNCTION_LOG:
+		case FUNCTION_SIN:
+		case FUNCTION_SINH:
+		case FUNCTION_TAN:
+		case FUNCTION_TANH:
+			return compileUnary(node);
+
+		case FUNCTION_PIECEWISE:
+		{
+
+			final Formula[] children = compileChildren(node);
+
+			if (children == null)
+			{
+				return null;
+			}
+
+			return () -> {
+
+				for (int childIter = 0; childIter < children.length; childIter += 3)
+				{
+
+					if ((childIter + 1) < children.length && children[childIter + 1].evaluate() != 0.0)
+					{
+						return children[childIter].evaluate();
+					}
+					else if ((childIter + 2) < children.length)
+					{
+						return children[childIter + 2].evaluate();
+					}
+				}
+
+				return 0;
+			};
+		}
+
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * compiles a name that is not time or a number
+	 * 
+	 * @param node
+	 *            the name
+	 * @return the compiled name, or null if the name cannot be compiled
+	 */
+	abstract Formula compileName(ASTNode node);
+
+	private Formula compileRelational(ASTNode node)
+	{
+
+		if (node.getChildCount() < 2)
+		{
+			return null;
+		}
+
+		final Formula left = compileFormula(node.getLeftChild());
+		final Formula right = compileFormula(node.getRightChild());
+
+		if (left == null || right == null)
+		{
+			return null;
+		}
+
+		switch (node.getType())
+		{
+
+		case RELATIONAL_EQ:
+			return () -> left.evaluate() == right.evaluate() ? 1.0 : 0.0;
+
+		case RELATIONAL_NEQ:
+			return () -> left.evaluate() != right.evaluate() ? 1.0 : 0.0;
+
+		case RELATIONAL_GEQ:
+			return () -> left.evaluate() >= right.evaluate() ? 1.0 : 0.0;
+
+		case RELATIONAL_LEQ:
+			return () -> left.evaluate() <= right.evaluate() ? 1.0 : 0.0;
+
+		case RELATIONAL_GT:
+			return () -> left.evaluate() > right.evaluate() ? 1.0 : 0.0;
+
+		case RELATIONAL_LT:
+			return () -> left.evaluate() < right.evaluate() ? 1.0 : 0.0;
+
+		default:
+			return null;
+		}
+	}
+
+	private Formula compileUnary(ASTNode node)
+	{
+
+		if (node.getChildCount() < 1)
+		{
+			return null;
+		}
+
+		final Formula child = compileFormula(node.getChild(0));
+
+		if (child == null)
+		{
+			return null;
+		}
+
+		switch (node.getType())
+		{
+
+		case FUNCTION_ABS:
+			return () -> FastMath.abs(child.evaluate());
+
+		case FUNCTION_CEILING:
+			return () -> FastMath.ceil(child.evaluate());
+
+		case FUNCTION_COS:
+			return () -> FastMath.cos(child.evaluate());
+
+		case FUNCTION_COSH:
+			return () -> FastMath.cosh(child.evaluate());
+
+		case FUNCTION_EXP:
+			return () -> FastMath.exp(child.evaluate());
+
+		case FUNCTION_FLOOR:
+			return () -> FastMath.floor(child.evaluate());
+
+		case FUNCTION_LN:
+			return () -> FastMath.log(child.evaluate());
+
+		case FUNCTION_LOG:
+			return () -> FastMath.log10(child.evaluate());
+
+		case FUNCTION_SIN:
+			return () -> FastMath.sin(child.evaluate());
+
+		case FUNCTION_SINH:
+			return () -> FastMath.sinh(child.evaluate());
+
+		case FUNCTION_TAN:
+			return () -> FastMath.tan(child.evaluate());
+
+		case FUNCTION_TANH:
+			return () -> FastMath.tanh(child.evaluate());
+
+		default:
+			return null;
+		}
+	}
+
+	private Formula[] compileChildren(ASTNode node)
+	{
+
+		Formula[] children = new Formula[node.getChildCount()];
+
+		for (int childIter = 0; childIter < children.length; ++childIter)
+		{
+
+			children[childIter] = compileFormula(node.getChild(childIter));
+
+			if (children[childIter] == null)
+			{
+				return null;
+			}
+		}
+
+		return children;
+	}
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+/**
+ * Reactions that read and update a shared array of variable values by index.
+ *
+ * Dependencies and stoichiometries are given as compressed rows: the entries
+ * of reaction i are at positions pointers[i] to pointers[i + 1] - 1.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+interface IndexedReactions
+{
+
+	/**
+	 * @return the number of reactions
+	 */
+	int getNumReactions();
+
+	/**
+	 * sets the time used by kinetic laws that depend on time
+	 *
+	 * @param time
+	 *            the current simulation time
+	 */
+	void setTime(double time);
+
+	/**
+	 * @param reaction
+	 *            the reaction index
+	 * @return the propensity of the reaction for the current values
+	 */
+	double computePropensity(int reaction);
+
+	/**
+	 * updates the values after a reaction fires
+	 *
+	 * @param reaction
+	 *            the reaction index
+	 */
+	void fireReaction(int reaction);
+
+	/**
+	 * @return the start of the affected reactions of each reaction in
+	 *         {@link #getDependencies()}
+	 */
+	int[] getDependencyPointers();
+
+	/**
+	 * @return the reactions whose propensity changes when each reaction fires,
+	 *         including the reaction itself
+	 */
+	int[] getDependencies();
+
+	/**
+	 * @return the start of the changed variables of each reaction in
+	 *         {@link #getStoichiometrySpecies()}
+	 */
+	int[] getStoichiometryPointers();
+
+	/**
+	 * @return the variables changed by each reaction
+	 */
+	int[] getStoichiometrySpecies();
+
+	/**
+	 * copies the values changed by reactions back into the source of the
+	 * reactions
+	 */
+	void writeValues();
+}
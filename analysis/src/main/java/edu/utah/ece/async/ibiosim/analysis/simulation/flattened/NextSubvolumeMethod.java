@@ -0,0 +1,1124 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.sbml.jsbml.ASTNode;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.Simulator.StringDoublePair;
+
+/**
+ * Stochastic simulation of a grid model with the next-subvolume method.
+ *
+ * The grid species are the first block of the value array, indexed by
+ * (row * numCols + col) * numSpecies + species. Each voxel has a total rate,
+ * made of the propensities of the local reactions assigned to it and the rates
+ * of its molecules jumping to a neighbouring voxel, and the time of its next
+ * event is kept in an indexed binary heap. A step takes the voxel with the
+ * earliest event, picks a local reaction or a diffusion jump inside it and
+ * reschedules only the voxels whose rates changed, so a step does not touch
+ * the rest of the grid beyond the heap update.
+ *
+ * Diffusion is not simulated as reactions: a species that diffuses at one rate
+ * between every pair of neighbouring voxels has its diffusion reactions
+ * replaced by that rate. Every other reaction of the model, including the
+ * diffusion reactions of species that do not fit this pattern, is a local
+ * reaction of the voxel of the grid species it touches.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+class NextSubvolumeMethod
+{
+
+	private static final Pattern	GRID_SPECIES	= Pattern.compile("ROW(\\d+)_COL(\\d+)__(.+)");
+
+	private final int				numRows;
+	private final int				numCols;
+	private final int				numSpecies;
+	private final int				numVoxels;
+
+	// the rate at which a molecule of each species jumps to each neighbour
+	private final double[]			diffusionRates;
+
+	// values of the model, starting with the grid species
+	private final double[]			values;
+	private final String[]			gridSpeciesIDs;
+
+	private final IndexedReactions	localReactions;
+	private final int[]				reactionToVoxel;
+	private final int[]				voxelReactionPointers;
+	private final int[]				voxelReactions;
+
+	// local reactions whose propensity depends on each grid species
+	private final int[]				speciesDependencyPointers;
+	private final int[]				speciesDependencies;
+
+	private final double[]			propensities;
+	private final double[]			localTotals;
+	private final double[]			diffusionTotals;
+
+	// next event time of each voxel, and a heap of voxels ordered by it
+	private final double[]			eventTimes;
+	private final int[]				heap;
+	private final int[]				heapPositions;
+
+	// voxels whose rates changed during the current step
+	private final int[]				dirtyVoxels;
+	private final boolean[]			isDirty;
+	private int						numDirty;
+
+	private XORShiftRandom			randomNumberGenerator;
+	private double					currentTime;
+
+	/**
+	 * creates the method over values that start with the grid species
+	 *
+	 * @param numRows
+	 * @param numCols
+	 * @param numSpecies
+	 *            the number of species in each voxel
+	 * @param diffusionRates
+	 *            the rate at which a molecule of each species jumps to each
+	 *            neighbouring voxel
+	 * @param values
+	 *            the values read and updated by the local reactions
+	 * @param gridSpeciesIDs
+	 *            the IDs of the grid species in the order of their values
+	 * @param localReactions
+	 *            the reactions other than diffusion
+	 * @param reactionToVoxel
+	 *            the voxel of each local reaction
+	 * @param speciesDependencyPointers
+	 *            the start of the dependents of each grid species
+	 * @param speciesDependencies
+	 *            the local reactions whose propensity depends on each grid
+	 *            species
+	 */
+	NextSubvolumeMethod(int numRows, int numCols, int numSpecies, double[] diffusionRates, double[] values, String[] gridSpeciesIDs, IndexedReactions localReactions,
+			int[] reactionToVoxel, int[] speciesDependencyPointers, int[] speciesDependencies)
+	{
+
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.numSpecies = numSpecies;
+		this.diffusionRates = diffusionRates;
+		this.values = values;
+		this.gridSpeciesIDs = gridSpeciesIDs;
+		this.localReactions = localReactions;
+		this.reactionToVoxel = reactionToVoxel;
+		this.speciesDependencyPointers = speciesDependencyPointers;
+		this.speciesDependencies = speciesDependencies;
+
+		numVoxels = numRows * numCols;
+
+		int numReactions = localReactions.getNumReactions();
+
+		// the local reactions of each voxel as compressed rows
+		voxelReactionPointers = new int[numVoxels + 1];
+		voxelReactions = new int[numReactions];
+
+		for (int reaction = 0; reaction < numReactions; ++reaction)
+		{
+			++voxelReactionPointers[reactionToVoxel[reaction] + 1];
+		}
+
+		for (int voxel = 0; voxel < numVoxels; ++voxel)
+		{
+			voxelReactionPointers[voxel + 1] += voxelReactionPointers[voxel];
+		}
+
+		int[] voxelCounts = new int[numVoxels];
+
+		for (int reaction = 0; reaction < numReactions; ++reaction)
+		{
+
+			int voxel = reactionToVoxel[reaction];
+			voxelReactions[voxelReactionPointers[voxel] + voxelCounts[voxel]++] = reaction;
+		}
+
+		propensities = new double[numReactions];
+		localTotals = new double[numVoxels];
+		diffusionTotals = new double[numVoxels];
+		eventTimes = new double[numVoxels];
+		heap = new int[numVoxels];
+		heapPositions = new int[numVoxels];
+		dirtyVoxels = new int[numVoxels];
+		isDirty = new boolean[numVoxels];
+	}
+
+	/**
+	 * translates a grid model into voxels, diffusion rates and local reactions
+	 *
+	 * @param simulator
+	 *            the simulator, after its reactions have been set up
+	 * @return the method, or null if the model cannot be compiled, has no grid
+	 *         or has no species that diffuses over the whole grid
+	 */
+	static NextSubvolumeMethod compile(Simulator simulator)
+	{
+
+		if (CompiledModel.isCompilable(simulator) == false || simulator.stoichAmpBoolean == true)
+		{
+			return null;
+		}
+
+		// find the size of the grid and the species in each voxel
+		LinkedHashMap<String, Integer> speciesToSlotMap = new LinkedHashMap<String, Integer>();
+		int numRows = 0;
+		int numCols = 0;
+
+		for (String speciesID : simulator.speciesIDSet)
+		{
+
+			Matcher matcher = GRID_SPECIES.matcher(speciesID);
+
+			if (matcher.matches() == false)
+			{
+				continue;
+			}
+
+			numRows = Math.max(numRows, Integer.parseInt(matcher.group(1)) + 1);
+			numCols = Math.max(numCols, Integer.parseInt(matcher.group(2)) + 1);
+
+			if (speciesToSlotMap.containsKey(matcher.group(3)) == false)
+			{
+				speciesToSlotMap.put(matcher.group(3), speciesToSlotMap.size());
+			}
+		}
+
+		int numSpecies = speciesToSlotMap.size();
+		int numVoxels = numRows * numCols;
+
+		if (numSpecies == 0 || numVoxels < 2)
+		{
+			return null;
+		}
+
+		// the grid species come first in (row, col, species) order
+		String[] variableIDs = new String[simulator.variableToValueMap.size()];
+		HashSet<String> gridSpeciesIDSet = new HashSet<String>();
+		int variableCount = 0;
+
+		for (int row = 0; row < numRows; ++row)
+		{
+			for (int col = 0; col < numCols; ++col)
+			{
+				for (String speciesName : speciesToSlotMap.keySet())
+				{
+
+					String speciesID = "ROW" + row + "_COL" + col + "__" + speciesName;
+
+					if (simulator.speciesIDSet.contains(speciesID) == false)
+					{
+						return null;
+					}
+
+					gridSpeciesIDSet.add(speciesID);
+					variableIDs[variableCount++] = speciesID;
+				}
+			}
+		}
+
+		for (String variableID : simulator.variableToValueMap.keySet())
+		{
+
+			if (gridSpeciesIDSet.contains(variableID) == false)
+			{
+
+				if (variableCount == variableIDs.length)
+				{
+					return null;
+				}
+
+				variableIDs[variableCount++] = variableID;
+			}
+		}
+
+		if (variableCount != variableIDs.length)
+		{
+			return null;
+		}
+
+		HashMap<String, Integer> gridSpeciesToIndexMap = new HashMap<String, Integer>();
+
+		for (int i = 0; i < gridSpeciesIDSet.size(); ++i)
+		{
+			gridSpeciesToIndexMap.put(variableIDs[i], i);
+		}
+
+		// group the diffusion reactions by species, adding up the rates of
+		// the forward and reverse halves that move molecules the same way
+		ArrayList<ArrayList<String>> slotToJumpReactions = new ArrayList<ArrayList<String>>();
+		ArrayList<HashMap<Integer, Double>> slotToJumpRates = new ArrayList<HashMap<Integer, Double>>();
+		boolean[] slotIsDiffusing = new boolean[numSpecies];
+
+		for (int slot = 0; slot < numSpecies; ++slot)
+		{
+
+			slotToJumpReactions.add(new ArrayList<String>());
+			slotToJumpRates.add(new HashMap<Integer, Double>());
+			slotIsDiffusing[slot] = true;
+		}
+
+		for (String reactionID : simulator.reactionToPropensityMap.keySet())
+		{
+
+			int[] jump = getJump(simulator, reactionID, gridSpeciesToIndexMap, numCols, numSpecies);
+
+			if (jump == null)
+			{
+				continue;
+			}
+
+			int slot = jump[0] % numSpecies;
+			double rate = getJumpRate(simulator, reactionID, variableIDs[jump[0]]);
+
+			if (Double.isNaN(rate) || rate < 0)
+			{
+				slotIsDiffusing[slot] = false;
+				continue;
+			}
+
+			HashMap<Integer, Double> jumpRates = slotToJumpRates.get(slot);
+			int pair = jump[0] / numSpecies * numVoxels + jump[1] / numSpecies;
+
+			if (jumpRates.containsKey(pair))
+			{
+				rate += jumpRates.get(pair);
+			}
+
+			jumpRates.put(pair, rate);
+			slotToJumpReactions.get(slot).add(reactionID);
+		}
+
+		// a species diffuses natively only if it jumps between every pair of
+		// neighbours at one rate
+		int numJumps = 2 * (numRows * (numCols - 1) + numCols * (numRows - 1));
+		double[] diffusionRates = new double[numSpecies];
+		HashSet<String> diffusionReactionIDSet = new HashSet<String>();
+
+		for (int slot = 0; slot < numSpecies; ++slot)
+		{
+
+			HashMap<Integer, Double> jumpRates = slotToJumpRates.get(slot);
+
+			if (slotIsDiffusing[slot] == false || jumpRates.size() != numJumps)
+			{
+				continue;
+			}
+
+			double rate = jumpRates.values().iterator().next();
+
+			for (double jumpRate : jumpRates.values())
+			{
+
+				if (Math.abs(jumpRate - rate) > 1e-12 * Math.max(jumpRate, rate))
+				{
+					slotIsDiffusing[slot] = false;
+				}
+			}
+
+			if (slotIsDiffusing[slot] == true && rate > 0)
+			{
+
+				diffusionRates[slot] = rate;
+				diffusionReactionIDSet.addAll(slotToJumpReactions.get(slot));
+			}
+		}
+
+		if (diffusionReactionIDSet.isEmpty() == true)
+		{
+			return null;
+		}
+
+		String[] reactionIDs = new String[simulator.reactionToPropensityMap.size() - diffusionReactionIDSet.size()];
+		int reactionCount = 0;
+
+		for (String reactionID : simulator.reactionToPropensityMap.keySet())
+		{
+
+			if (diffusionReactionIDSet.contains(reactionID) == false)
+			{
+				reactionIDs[reactionCount++] = reactionID;
+			}
+		}
+
+		CompiledModel compiledModel = CompiledModel.compile(simulator, variableIDs, reactionIDs);
+
+		if (compiledModel == null)
+		{
+			return null;
+		}
+
+		int gridSize = numVoxels * numSpecies;
+		int[] reactionToVoxel = assignVoxels(simulator, compiledModel, variableIDs, reactionIDs, gridSize, numSpecies);
+
+		// the local reactions that depend on each grid species
+		int[] speciesDependencyPointers = new int[gridSize + 1];
+		ArrayList<Integer> speciesDependencyList = new ArrayList<Integer>();
+
+		for (int species = 0; species < gridSize; ++species)
+		{
+
+			speciesDependencyPointers[species] = speciesDependencyList.size();
+
+			HashSet<String> dependents = simulator.speciesToAffectedReactionSetMap.get(variableIDs[species]);
+
+			if (dependents == null)
+			{
+				continue;
+			}
+
+			TreeSet<Integer> dependentIndices = new TreeSet<Integer>();
+
+			for (String dependent : dependents)
+			{
+
+				int index = compiledModel.getReactionIndex(dependent);
+
+				if (index >= 0)
+				{
+					dependentIndices.add(index);
+				}
+			}
+
+			speciesDependencyList.addAll(dependentIndices);
+		}
+
+		speciesDependencyPointers[gridSize] = speciesDependencyList.size();
+
+		int[] speciesDependencies = new int[speciesDependencyList.size()];
+
+		for (int i = 0; i < speciesDependencies.length; ++i)
+		{
+			speciesDependencies[i] = speciesDependencyList.get(i);
+		}
+
+		String[] gridSpeciesIDs = new String[gridSize];
+		System.arraycopy(variableIDs, 0, gridSpeciesIDs, 0, gridSize);
+
+		return new NextSubvolumeMethod(numRows, numCols, numSpecies, diffusionRates, compiledModel.getValues(), gridSpeciesIDs, compiledModel, reactionToVoxel,
+				speciesDependencyPointers, speciesDependencies);
+	}
+
+	/**
+	 * recognizes a reaction that moves one molecule of a grid species to the
+	 * same species in a neighbouring voxel
+	 *
+	 * @return the indices of the source and destination species, or null if
+	 *         the reaction is not a diffusion jump
+	 */
+	private static int[] getJump(Simulator simulator, String reactionID, HashMap<String, Integer> gridSpeciesToIndexMap, int numCols, int numSpecies)
+	{
+
+		HashSet<StringDoublePair> speciesAndStoichiometrySet = simulator.reactionToSpeciesAndStoichiometrySetMap.get(reactionID);
+		HashSet<StringDoublePair> reactantStoichiometrySet = simulator.reactionToReactantStoichiometrySetMap.get(reactionID);
+
+		if (speciesAndStoichiometrySet.size() != 2 || reactantStoichiometrySet.size() != 1)
+		{
+			return null;
+		}
+
+		String sourceID = null;
+		String destinationID = null;
+
+		for (StringDoublePair speciesAndStoichiometry : speciesAndStoichiometrySet)
+		{
+
+			if (speciesAndStoichiometry.doub == -1)
+			{
+				sourceID = speciesAndStoichiometry.string;
+			}
+			else if (speciesAndStoichiometry.doub == 1)
+			{
+				destinationID = speciesAndStoichiometry.string;
+			}
+		}
+
+		if (sourceID == null || destinationID == null || gridSpeciesToIndexMap.containsKey(sourceID) == false || gridSpeciesToIndexMap.containsKey(destinationID) == false)
+		{
+			return null;
+		}
+
+		StringDoublePair reactant = reactantStoichiometrySet.iterator().next();
+
+		if (reactant.string.equals(sourceID) == false || reactant.doub != 1)
+		{
+			return null;
+		}
+
+		if (simulator.speciesToIsBoundaryConditionMap.get(sourceID) == true || simulator.variableToIsConstantMap.get(sourceID) == true
+				|| simulator.speciesToIsBoundaryConditionMap.get(destinationID) == true || simulator.variableToIsConstantMap.get(destinationID) == true
+				|| simulator.speciesToConversionFactorMap.containsKey(sourceID) || simulator.speciesToConversionFactorMap.containsKey(destinationID))
+		{
+			return null;
+		}
+
+		int source = gridSpeciesToIndexMap.get(sourceID);
+		int destination = gridSpeciesToIndexMap.get(destinationID);
+
+		if (source % numSpecies != destination % numSpecies)
+		{
+			return null;
+		}
+
+		int sourceVoxel = source / numSpecies;
+		int destinationVoxel = destination / numSpecies;
+		int rowDistance = Math.abs(sourceVoxel / numCols - destinationVoxel / numCols);
+		int colDistance = Math.abs(sourceVoxel % numCols - destinationVoxel % numCols);
+
+		if (rowDistance + colDistance != 1)
+		{
+			return null;
+		}
+
+		return new int[] { source, destination };
+	}
+
+	/**
+	 * finds the per-molecule rate of a diffusion jump whose kinetic law is a
+	 * constant times the source species
+	 *
+	 * @return the rate, or NaN if the kinetic law has another form
+	 */
+	private static double getJumpRate(Simulator simulator, String reactionID, String sourceID)
+	{
+
+		ASTNode formula = simulator.reactionToFormulaMap.get(reactionID);
+
+		if (formula.getType() != ASTNode.Type.TIMES || formula.getChildCount() != 2)
+		{
+			return Double.NaN;
+		}
+
+		ASTNode rate = null;
+
+		for (int i = 0; i < 2; ++i)
+		{
+
+			ASTNode child = formula.getChild(i);
+			ASTNode other = formula.getChild(1 - i);
+
+			if (child.isName() && child.getName().equals(sourceID) && usesSpecies(simulator, other) == false)
+			{
+				rate = other;
+			}
+		}
+
+		if (rate == null)
+		{
+			return Double.NaN;
+		}
+
+		double jumpRate = simulator.evaluateExpressionRecursive(rate);
+
+		// the kinetic law reads the concentration of the species
+		if (simulator.speciesToHasOnlySubstanceUnitsMap.get(sourceID) == false)
+		{
+			jumpRate /= simulator.variableToValueMap.get(simulator.speciesToCompartmentNameMap.get(sourceID));
+		}
+
+		return jumpRate;
+	}
+
+	/**
+	 * @return true if the formula reads a species, a reaction or the time
+	 */
+	private static boolean usesSpecies(Simulator simulator, ASTNode node)
+	{
+
+		if (node.isName())
+		{
+			return simulator.speciesIDSet.contains(node.getName()) || simulator.reactionToPropensityMap.containsKey(node.getName()) || node.getType() == ASTNode.Type.NAME_TIME;
+		}
+
+		for (int i = 0; i < node.getChildCount(); ++i)
+		{
+
+			if (usesSpecies(simulator, node.getChild(i)))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * assigns each local reaction to the voxel of the nearest grid species in
+	 * the graph of reactions and the species they read or change, so the
+	 * reactions of a cell placed on the grid belong to its voxel
+	 *
+	 * @return the voxel of each local reaction, which is voxel zero for
+	 *         reactions that are not connected to the grid
+	 */
+	private static int[] assignVoxels(Simulator simulator, CompiledModel compiledModel, String[] variableIDs, String[] reactionIDs, int gridSize, int numSpecies)
+	{
+
+		int[] reactionToVoxel = new int[reactionIDs.length];
+		int[] variableToVoxel = new int[variableIDs.length];
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+
+		for (int i = 0; i < reactionIDs.length; ++i)
+		{
+			reactionToVoxel[i] = -1;
+		}
+
+		for (int i = 0; i < variableIDs.length; ++i)
+		{
+
+			variableToVoxel[i] = -1;
+
+			if (i < gridSize)
+			{
+
+				variableToVoxel[i] = i / numSpecies;
+				queue.add(i);
+			}
+		}
+
+		// the species each reaction reads or changes
+		HashMap<String, ArrayList<Integer>> speciesToReactionsMap = new HashMap<String, ArrayList<Integer>>();
+		ArrayList<ArrayList<Integer>> reactionToSpecies = new ArrayList<ArrayList<Integer>>();
+
+		for (int i = 0; i < reactionIDs.length; ++i)
+		{
+
+			ArrayList<Integer> speciesIndices = new ArrayList<Integer>();
+			HashSet<String> speciesIDs = new HashSet<String>();
+
+			for (StringDoublePair speciesAndStoichiometry : simulator.reactionToSpeciesAndStoichiometrySetMap.get(reactionIDs[i]))
+			{
+				speciesIDs.add(speciesAndStoichiometry.string);
+			}
+
+			for (StringDoublePair speciesAndStoichiometry : simulator.reactionToReactantStoichiometrySetMap.get(reactionIDs[i]))
+			{
+				speciesIDs.add(speciesAndStoichiometry.string);
+			}
+
+			for (String speciesID : speciesIDs)
+			{
+
+				int index = compiledModel.getVariableIndex(speciesID);
+
+				if (index < 0)
+				{
+					continue;
+				}
+
+				speciesIndices.add(index);
+
+				if (speciesToReactionsMap.containsKey(speciesID) == false)
+				{
+					speciesToReactionsMap.put(speciesID, new ArrayList<Integer>());
+				}
+
+				speciesToReactionsMap.get(speciesID).add(i);
+			}
+
+			reactionToSpecies.add(speciesIndices);
+		}
+
+		while (queue.isEmpty() == false)
+		{
+
+			int species = queue.poll();
+			ArrayList<Integer> reactions = speciesToReactionsMap.get(variableIDs[species]);
+
+			if (reactions == null)
+			{
+				continue;
+			}
+
+			for (int reaction : reactions)
+			{
+
+				if (reactionToVoxel[reaction] >= 0)
+				{
+					continue;
+				}
+
+				reactionToVoxel[reaction] = variableToVoxel[species];
+
+				for (int other : reactionToSpecies.get(reaction))
+				{
+
+					if (variableToVoxel[other] < 0)
+					{
+
+						variableToVoxel[other] = variableToVoxel[species];
+						queue.add(other);
+					}
+				}
+			}
+		}
+
+		for (int i = 0; i < reactionIDs.length; ++i)
+		{
+
+			if (reactionToVoxel[i] < 0)
+			{
+				reactionToVoxel[i] = 0;
+			}
+		}
+
+		return reactionToVoxel;
+	}
+
+	/**
+	 * computes every propensity and schedules every voxel
+	 *
+	 * @param startTime
+	 *            the current simulation time
+	 * @param randomNumberGenerator
+	 *            the generator for the event times and selections
+	 */
+	void initialize(double startTime, XORShiftRandom randomNumberGenerator)
+	{
+
+		this.randomNumberGenerator = randomNumberGenerator;
+		currentTime = startTime;
+		localReactions.setTime(startTime);
+
+		for (int reaction = 0; reaction < propensities.length; ++reaction)
+		{
+			propensities[reaction] = localReactions.computePropensity(reaction);
+		}
+
+		for (int voxel = 0; voxel < numVoxels; ++voxel)
+		{
+
+			updateTotals(voxel);
+			eventTimes[voxel] = nextEventTime(voxel);
+			heap[voxel] = voxel;
+			heapPositions[voxel] = voxel;
+			isDirty[voxel] = false;
+		}
+
+		numDirty = 0;
+
+		for (int position = numVoxels / 2 - 1; position >= 0; --position)
+		{
+			siftDown(position);
+		}
+	}
+
+	/**
+	 * runs events until the next one would happen after the end time
+	 *
+	 * @param endTime
+	 *            the time to simulate to
+	 */
+	void simulate(double endTime)
+	{
+
+		while (eventTimes[heap[0]] <= endTime)
+		{
+			step();
+		}
+
+		currentTime = Math.max(currentTime, endTime);
+	}
+
+	/**
+	 * runs the earliest event
+	 *
+	 * @return the time of the event, or infinity if no event can happen
+	 */
+	double step()
+	{
+
+		int voxel = heap[0];
+
+		if (eventTimes[voxel] == Double.POSITIVE_INFINITY)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+
+		currentTime = eventTimes[voxel];
+		localReactions.setTime(currentTime);
+
+		double threshold = randomNumberGenerator.nextDouble() * (localTotals[voxel] + diffusionTotals[voxel]);
+
+		if (threshold < localTotals[voxel])
+		{
+
+			int reaction = selectReaction(voxel, threshold);
+
+			localReactions.fireReaction(reaction);
+
+			// grid species changed by the reaction change the diffusion rates
+			// of their voxels
+			int[] stoichiometryPointers = localReactions.getStoichiometryPointers();
+			int[] stoichiometrySpecies = localReactions.getStoichiometrySpecies();
+
+			for (int k = stoichiometryPointers[reaction]; k < stoichiometryPointers[reaction + 1]; ++k)
+			{
+
+				if (stoichiometrySpecies[k] < gridSpeciesIDs.length)
+				{
+					markDirty(stoichiometrySpecies[k] / numSpecies);
+				}
+			}
+
+			int[] dependencyPointers = localReactions.getDependencyPointers();
+			int[] dependencies = localReactions.getDependencies();
+
+			for (int k = dependencyPointers[reaction]; k < dependencyPointers[reaction + 1]; ++k)
+			{
+				updatePropensity(dependencies[k]);
+			}
+		}
+		else
+		{
+
+			int species = selectDiffusingSpecies(voxel, threshold - localTotals[voxel]);
+			int neighbour = selectNeighbour(voxel);
+			int source = voxel * numSpecies + species;
+			int destination = neighbour * numSpecies + species;
+
+			values[source] -= 1;
+			values[destination] += 1;
+
+			for (int k = speciesDependencyPointers[source]; k < speciesDependencyPointers[source + 1]; ++k)
+			{
+				updatePropensity(speciesDependencies[k]);
+			}
+
+			for (int k = speciesDependencyPointers[destination]; k < speciesDependencyPointers[destination + 1]; ++k)
+			{
+				updatePropensity(speciesDependencies[k]);
+			}
+
+			markDirty(neighbour);
+		}
+
+		markDirty(voxel);
+
+		for (int i = 0; i < numDirty; ++i)
+		{
+
+			int dirtyVoxel = dirtyVoxels[i];
+
+			updateTotals(dirtyVoxel);
+			eventTimes[dirtyVoxel] = nextEventTime(dirtyVoxel);
+			siftUp(heapPositions[dirtyVoxel]);
+			siftDown(heapPositions[dirtyVoxel]);
+			isDirty[dirtyVoxel] = false;
+		}
+
+		numDirty = 0;
+
+		return currentTime;
+	}
+
+	/**
+	 * copies the grid species and the values changed by local reactions back
+	 * into the simulator's variable map
+	 *
+	 * @param simulator
+	 *            the simulator the method was compiled from
+	 */
+	void writeValues(Simulator simulator)
+	{
+
+		localReactions.writeValues();
+
+		for (int species = 0; species < gridSpeciesIDs.length; ++species)
+		{
+			simulator.variableToValueMap.put(gridSpeciesIDs[species], values[species]);
+		}
+	}
+
+	/**
+	 * @return the current simulation time
+	 */
+	double getTime()
+	{
+		return currentTime;
+	}
+
+	/**
+	 * @return the amount of a species in a voxel
+	 */
+	double getCount(int row, int col, int species)
+	{
+		return values[(row * numCols + col) * numSpecies + species];
+	}
+
+	/**
+	 * @return the total amount of a species over the grid
+	 */
+	double getTotalCount(int species)
+	{
+
+		double total = 0;
+
+		for (int index = species; index < gridSpeciesIDs.length; index += numSpecies)
+		{
+			total += values[index];
+		}
+
+		return total;
+	}
+
+	/**
+	 * @return the rate at which a molecule of a species jumps to each
+	 *         neighbour
+	 */
+	double getDiffusionRate(int species)
+	{
+		return diffusionRates[species];
+	}
+
+	/**
+	 * @return the voxel a local reaction belongs to
+	 */
+	int getReactionVoxel(int reaction)
+	{
+		return reactionToVoxel[reaction];
+	}
+
+	private void updatePropensity(int reaction)
+	{
+
+		propensities[reaction] = localReactions.computePropensity(reaction);
+		markDirty(reactionToVoxel[reaction]);
+	}
+
+	private void markDirty(int voxel)
+	{
+
+		if (isDirty[voxel] == false)
+		{
+
+			isDirty[voxel] = true;
+			dirtyVoxels[numDirty++] = voxel;
+		}
+	}
+
+	/**
+	 * recomputes the totals of a voxel from scratch so rounding errors don't
+	 * accumulate
+	 */
+	private void updateTotals(int voxel)
+	{
+
+		double localTotal = 0;
+
+		for (int k = voxelReactionPointers[voxel]; k < voxelReactionPointers[voxel + 1]; ++k)
+		{
+			localTotal += propensities[voxelReactions[k]];
+		}
+
+		double diffusionTotal = 0;
+		int offset = voxel * numSpecies;
+
+		for (int species = 0; species < numSpecies; ++species)
+		{
+			diffusionTotal += getJumpPropensity(offset + species, species);
+		}
+
+		localTotals[voxel] = localTotal;
+		diffusionTotals[voxel] = diffusionTotal * getNumNeighbours(voxel);
+	}
+
+	/**
+	 * the rate of one molecule leaving to a given neighbour, which is zero
+	 * below one molecule like the diffusion reactions it replaces
+	 */
+	private double getJumpPropensity(int index, int species)
+	{
+
+		if (values[index] < 1)
+		{
+			return 0;
+		}
+
+		return diffusionRates[species] * values[index];
+	}
+
+	private double nextEventTime(int voxel)
+	{
+
+		double total = localTotals[voxel] + diffusionTotals[voxel];
+
+		if (total <= 0)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+
+		return currentTime - Math.log(1.0 - randomNumberGenerator.nextDouble()) / total;
+	}
+
+	private int selectReaction(int voxel, double threshold)
+	{
+
+		int start = voxelReactionPointers[voxel];
+		int end = voxelReactionPointers[voxel + 1];
+		int position = start;
+		double sum = propensities[voxelReactions[start]];
+
+		while (sum <= threshold && position < end - 1)
+		{
+			sum += propensities[voxelReactions[++position]];
+		}
+
+		// skip reactions that cannot fire if rounding ran past the total
+		while (propensities[voxelReactions[position]] <= 0 && position > start)
+		{
+			--position;
+		}
+
+		return voxelReactions[position];
+	}
+
+	private int selectDiffusingSpecies(int voxel, double threshold)
+	{
+
+		int offset = voxel * numSpecies;
+		double scale = getNumNeighbours(voxel);
+		int species = 0;
+		double sum = scale * getJumpPropensity(offset, 0);
+
+		while (sum <= threshold && species < numSpecies - 1)
+		{
+			++species;
+			sum += scale * getJumpPropensity(offset + species, species);
+		}
+
+		while (getJumpPropensity(offset + species, species) <= 0 && species > 0)
+		{
+			--species;
+		}
+
+		return species;
+	}
+
+	private int selectNeighbour(int voxel)
+	{
+
+		int row = voxel / numCols;
+		int col = voxel % numCols;
+		int choice = (int) (randomNumberGenerator.nextDouble() * getNumNeighbours(voxel));
+
+		if (row > 0 && choice-- == 0)
+		{
+			return voxel - numCols;
+		}
+		if (row < numRows - 1 && choice-- == 0)
+		{
+			return voxel + numCols;
+		}
+		if (col > 0 && choice-- == 0)
+		{
+			return voxel - 1;
+		}
+
+		return voxel + 1;
+	}
+
+	private int getNumNeighbours(int voxel)
+	{
+
+		int row = voxel / numCols;
+		int col = voxel % numCols;
+		int neighbours = 0;
+
+		if (row > 0)
+		{
+			++neighbours;
+		}
+		if (row < numRows - 1)
+		{
+			++neighbours;
+		}
+		if (col > 0)
+		{
+			++neighbours;
+		}
+		if (col < numCols - 1)
+		{
+			++neighbours;
+		}
+
+		return neighbours;
+	}
+
+	private void siftUp(int position)
+	{
+
+		int voxel = heap[position];
+
+		while (position > 0)
+		{
+
+			int parent = (position - 1) / 2;
+
+			if (eventTimes[heap[parent]] <= eventTimes[voxel])
+			{
+				break;
+			}
+
+			heap[position] = heap[parent];
+			heapPositions[heap[position]] = position;
+			position = parent;
+		}
+
+		heap[position] = voxel;
+		heapPositions[voxel] = position;
+	}
+
+	private void siftDown(int position)
+	{
+
+		int voxel = heap[position];
+
+		while (true)
+		{
+
+			int child = 2 * position + 1;
+
+			if (child >= numVoxels)
+			{
+				break;
+			}
+			if (child + 1 < numVoxels && eventTimes[heap[child + 1]] < eventTimes[heap[child]])
+			{
+				++child;
+			}
+			if (eventTimes[voxel] <= eventTimes[heap[child]])
+			{
+				break;
+			}
+
+			heap[position] = heap[child];
+			heapPositions[heap[position]] = position;
+			position = child;
+		}
+
+		heap[position] = voxel;
+		heapPositions[voxel] = position;
+	}
+}
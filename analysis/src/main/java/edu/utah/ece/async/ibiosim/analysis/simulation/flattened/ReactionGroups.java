@@ -0,0 +1,338 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import java.util.Arrays;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.SumTree;
+
+/**
+ * Groups of reaction indices used by the composition and rejection method.
+ *
+ * A reaction's group is the binary exponent of its propensity (shifted to be
+ * non-negative), so group boundaries are fixed powers of two and never move
+ * when the minimum propensity changes. Every propensity in a group is at
+ * least half of the group's ceiling, which bounds the expected number of
+ * rejections when a reaction is drawn from the group.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+class ReactionGroups
+{
+
+	static final int		GROUP_OFFSET	= 1 - Double.MIN_EXPONENT;
+	static final int		NUM_GROUPS		= Double.MAX_EXPONENT + GROUP_OFFSET + 1;
+
+	// group, position within the group, and propensity from a reaction index
+	// reactions with zero propensity are in no group (-1)
+	private int[]			reactionToGroup;
+	private int[]			reactionToPosition;
+	private double[]		reactionToPropensity;
+
+	// dense arrays of the reaction indices in a group from a group ID
+	private final int[][]	groupToReactions;
+	private final int[]		groupToSize;
+
+	// the groups' total propensities, for selecting a group in O(log groups)
+	private final SumTree	groupPropensityTree;
+
+	/**
+	 * creates empty groups
+	 *
+	 * @param numReactions
+	 *            the expected number of reaction indices
+	 */
+	ReactionGroups(int numReactions)
+	{
+
+		numReactions = Math.max(numReactions, 1);
+
+		reactionToGroup = new int[numReactions];
+		reactionToPosition = new int[numReactions];
+		reactionToPropensity = new double[numReactions];
+		groupToReactions = new int[NUM_GROUPS][];
+		groupToSize = new int[NUM_GROUPS];
+		groupPropensityTree = new SumTree(NUM_GROUPS);
+
+		Arrays.fill(reactionToGroup, -1);
+	}
+
+	/**
+	 * gets the group of a propensity
+	 *
+	 * @param propensity
+	 *            the propensity
+	 * @return the group, or -1 if the propensity is zero
+	 */
+	static int getGroup(double propensity)
+	{
+
+		if (propensity > 0.0)
+		{
+			return Math.min(Math.getExponent(propensity), Double.MAX_EXPONENT) + GROUP_OFFSET;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * makes room for a new reaction index, which starts in no group with a
+	 * zero propensity
+	 *
+	 * @param reaction
+	 *            the new reaction index
+	 */
+	void addReaction(int reaction)
+	{
+
+		if (reaction >= reactionToGroup.length)
+		{
+
+			int length = Math.max(2 * reactionToGroup.length, reaction + 1);
+
+			reactionToGroup = Arrays.copyOf(reactionToGroup, length);
+			reactionToPosition = Arrays.copyOf(reactionToPosition, length);
+			reactionToPropensity = Arrays.copyOf(reactionToPropensity, length);
+		}
+
+		reactionToGroup[reaction] = -1;
+		reactionToPropensity[reaction] = 0.0;
+	}
+
+	/**
+	 * updates the propensity of a reaction, moving it to a different group if
+	 * the propensity crossed a power of two
+	 *
+	 * @param reaction
+	 *            the reaction index
+	 * @param newPropensity
+	 *            the new propensity
+	 */
+	void update(int reaction, double newPropensity)
+	{
+
+		int oldGroup = reactionToGroup[reaction];
+
+		if (getGroup(newPropensity) == oldGroup)
+		{
+
+			// maintain current group
+			if (oldGroup >= 0)
+			{
+				groupPropensityTree.update(oldGroup, groupPropensityTree.get(oldGroup) + newPropensity - reactionToPropensity[reaction]);
+			}
+
+			reactionToPropensity[reaction] = newPropensity;
+		}
+		else
+		{
+
+			remove(reaction);
+			add(reaction, newPropensity);
+		}
+	}
+
+	/**
+	 * removes a reaction from its group and sets its propensity to zero
+	 *
+	 * @param reaction
+	 *            the reaction index
+	 */
+	void remove(int reaction)
+	{
+
+		int group = reactionToGroup[reaction];
+
+		if (group >= 0)
+		{
+
+			int[] reactions = groupToReactions[group];
+			int last = groupToSize[group] - 1;
+			int movedReaction = reactions[last];
+
+			// the group's last reaction takes the position of the removed one
+			reactions[reactionToPosition[reaction]] = movedReaction;
+			reactionToPosition[movedReaction] = reactionToPosition[reaction];
+			groupToSize[group] = last;
+			reactionToGroup[reaction] = -1;
+
+			// an empty group is reset exactly so rounding errors can't select
+			// it
+			if (last == 0)
+			{
+				groupPropensityTree.update(group, 0.0);
+			}
+			else
+			{
+				groupPropensityTree.update(group, groupPropensityTree.get(group) - reactionToPropensity[reaction]);
+			}
+		}
+
+		reactionToPropensity[reaction] = 0.0;
+	}
+
+	/**
+	 * appends a reaction that is in no group to the end of its propensity's
+	 * group
+	 *
+	 * @param reaction
+	 *            the reaction index
+	 * @param propensity
+	 *            the reaction's propensity
+	 */
+	private void add(int reaction, double propensity)
+	{
+
+		int group = getGroup(propensity);
+
+		reactionToPropensity[reaction] = propensity;
+		reactionToGroup[reaction] = group;
+
+		if (group < 0)
+		{
+			return;
+		}
+
+		int size = groupToSize[group];
+
+		if (groupToReactions[group] == null)
+		{
+			groupToReactions[group] = new int[8];
+		}
+		else if (size == groupToReactions[group].length)
+		{
+			groupToReactions[group] = Arrays.copyOf(groupToReactions[group], 2 * size);
+		}
+
+		groupToReactions[group][size] = reaction;
+		reactionToPosition[reaction] = size;
+		groupToSize[group] = size + 1;
+		groupPropensityTree.update(group, groupPropensityTree.get(group) + propensity);
+	}
+
+	/**
+	 * chooses a random number between 0 and the total propensity then it finds
+	 * which nonempty group this number belongs to
+	 *
+	 * @param r2
+	 *            random number
+	 * @return the group selected, or -1 if no reaction can fire
+	 */
+	int selectGroup(double r2)
+	{
+
+		return groupPropensityTree.search(r2 * groupPropensityTree.getTotal());
+	}
+
+	/**
+	 * from the selected group, a reaction is chosen randomly/uniformly a random
+	 * number between 0 and the group's ceiling propensity is then chosen if
+	 * this number is not less than the chosen reaction's propensity, the
+	 * reaction is rejected and the process is repeated until success occurs
+	 * since every propensity in the group is at least half the ceiling, the
+	 * expected number of tries is at most two
+	 *
+	 * @param selectedGroup
+	 *            the group to choose a reaction from
+	 * @param r3
+	 * @param r4
+	 * @param randomNumberGenerator
+	 *            the generator for the numbers of the retries
+	 * @return the chosen reaction's index
+	 */
+	int selectReaction(int selectedGroup, double r3, double r4, XORShiftRandom randomNumberGenerator)
+	{
+
+		int[] reactions = groupToReactions[selectedGroup];
+		int size = groupToSize[selectedGroup];
+		double ceiling = Math.scalb(1.0, selectedGroup - GROUP_OFFSET + 1);
+
+		int selectedReaction = reactions[(int) (r3 * size)];
+
+		// loop until there's no reaction rejection
+		// if the random propensity is higher than the selected reaction's
+		// propensity, another random reaction is chosen
+		while (r4 * ceiling > reactionToPropensity[selectedReaction])
+		{
+
+			r3 = randomNumberGenerator.nextDouble();
+			r4 = randomNumberGenerator.nextDouble();
+
+			selectedReaction = reactions[(int) (r3 * size)];
+		}
+
+		return selectedReaction;
+	}
+
+	/**
+	 * @param reaction
+	 *            the reaction index
+	 * @return the reaction's propensity
+	 */
+	double getPropensity(int reaction)
+	{
+		return reactionToPropensity[reaction];
+	}
+
+	/**
+	 * @param reaction
+	 *            the reaction index
+	 * @return the reaction's group, or -1 if it is in no group
+	 */
+	int getReactionGroup(int reaction)
+	{
+		return reactionToGroup[reaction];
+	}
+
+	/**
+	 * @param group
+	 *            the group ID
+	 * @return the number of reactions in the group
+	 */
+	int getGroupSize(int group)
+	{
+		return groupToSize[group];
+	}
+
+	/**
+	 * @param group
+	 *            the group ID
+	 * @param position
+	 *            a position below the group's size
+	 * @return the reaction index at the position of the group
+	 */
+	int getGroupReaction(int group, int position)
+	{
+		return groupToReactions[group][position];
+	}
+
+	/**
+	 * @param group
+	 *            the group ID
+	 * @return the total propensity of the group
+	 */
+	double getGroupPropensity(int group)
+	{
+		return groupPropensityTree.get(group);
+	}
+
+	/**
+	 * @return the total propensity of all the groups
+	 */
+	double getTotalPropensity()
+	{
+		return groupPropensityTree.getTotal();
+	}
+}
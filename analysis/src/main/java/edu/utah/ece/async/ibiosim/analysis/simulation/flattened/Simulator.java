@@ -23,6 +23,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -44,7 +45,6 @@ import org.apache.commons.math3.distribution.LogNormalDistribution;
 import org.apache.commons.math3.distribution.NormalDistribution;
 import org.apache.commons.math3.distribution.PoissonDistribution;
 import org.apache.commons.math3.distribution.UniformRealDistribution;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.apache.commons.math3.util.FastMath;
 import org.sbml.jsbml.ASTNode;
 import org.sbml.jsbml.Annotation;
@@ -76,9 +76,6 @@ import edu.utah.ece.async.ibiosim.analysis.simulation.AbstractSimulator;
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.annotation.AnnotationUtility;
 import edu.utah.ece.async.ibiosim.dataModels.biomodel.util.SBMLutilities;
 import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
-import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.DTSDParser;
-import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.DataParser;
-import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.TSDParser;
 
 /**
  * 
@@ -137,7 +134,7 @@ public abstract class Simulator extends AbstractSimulator
 	protected LinkedHashSet<String>							speciesIDSet								= null;
 
 	// allows for access to species and parameter values from a variable ID
-	protected TObjectDoubleHashMap<String>					variableToValueMap							= null;
+	protected VariableValueMap								variableToValueMap							= null;
 
 	// stores events in order of fire time and priority
 	protected PriorityQueue<EventToFire>					triggeredEventQueue							= null;
@@ -161,6 +158,20 @@ public abstract class Simulator extends AbstractSimulator
 	// allows for access to the set of events that a variable is in
 	protected HashMap<String, HashSet<String>>				variableToEventSetMap						= null;
 
+	// allows for access to the set of events whose trigger reads a variable
+	// triggers that read the time, a reaction or a function are kept apart and
+	// checked every time
+	protected HashMap<String, HashSet<String>>				variableToTriggerEventSetMap				= null;
+	protected HashSet<String>								alwaysCheckedEventSet						= null;
+
+	// the events to check after a step, refilled on every step so that no set
+	// is allocated
+	protected HashSet<String>								eventsToCheck								= null;
+
+	// set when the untriggered events may have changed other than through
+	// variable updates (eg, events firing), so that every trigger is checked
+	protected boolean										checkAllEvents								= true;
+
 	// allows for access to the set of assignment rules that a variable (rhs) in
 	// an assignment rule affects
 	protected HashMap<String, HashSet<AssignmentRule>>		variableToAffectedAssignmentRuleSetMap		= null;
@@ -260,6 +271,13 @@ public abstract class Simulator extends AbstractSimulator
 	protected int											totalCount									= 0;
 	protected int											memCount									= 0;
 
+	// index-based copy of the model used by the step loop when the model only
+	// changes through reactions; null otherwise
+	protected CompiledModel									compiledModel								= null;
+
+	// mean and variance of the printed values over the runs so far
+	protected EnsembleStatistics							statistics									= new EnsembleStatistics();
+
   protected double currProgress, maxProgress;
   
 	/**
@@ -363,7 +381,7 @@ public abstract class Simulator extends AbstractSimulator
 		speciesToCompartmentSizeMap = new TObjectDoubleHashMap<String>((int) numSpecies);
 		speciesIDSet = new LinkedHashSet<String>((int) numSpecies);
 		reactionToNonconstantStoichiometriesSetMap = new HashMap<String, HashSet<StringStringPair>>();
-		variableToValueMap = new TObjectDoubleHashMap<String>((int) numSpecies + (int) numParameters);
+		variableToValueMap = new VariableValueMap((int) numSpecies + (int) numParameters);
 
 		reactionToPropensityMap = new TObjectDoubleHashMap<String>((int) (numReactions * 1.5));
 		reactionToSpeciesAndStoichiometrySetMap = new HashMap<String, HashSet<StringDoublePair>>((int) (numReactions * 1.5));
@@ -393,6 +411,9 @@ public abstract class Simulator extends AbstractSimulator
 			eventToAffectedReactionSetMap = new HashMap<String, HashSet<String>>((int) numEvents);
 			eventToPreviousTriggerValueMap = new HashMap<String, Boolean>((int) numEvents);
 			variableToEventSetMap = new HashMap<String, HashSet<String>>((int) numEvents);
+			variableToTriggerEventSetMap = new HashMap<String, HashSet<String>>((int) numEvents);
+			alwaysCheckedEventSet = new HashSet<String>();
+			eventsToCheck = new HashSet<String>((int) numEvents);
 		}
 
 		if (numRules > 0)
@@ -527,6 +548,19 @@ public abstract class Simulator extends AbstractSimulator
 	 */
 	public abstract void clear();
 
+	/**
+	 * closes the output file of the current run
+	 */
+	public void closeOutput() throws IOException
+	{
+		if (bufferedTSDWriter != null)
+		{
+			bufferedTSDWriter.close();
+			bufferedTSDWriter = null;
+			TSDWriter = null;
+		}
+	}
+
 	/**
 	 * copies parts of the model that may change during a dynamic run
 	 */
@@ -545,6 +579,12 @@ public abstract class Simulator extends AbstractSimulator
 	 * structures and the simulation state this is used for "birth" events in
 	 * dynamic models
 	 * 
+	 * the child's species, reactions, events and formulas are cloned from the
+	 * parent's and renamed, and every per-element map gets new entries, so a
+	 * division costs time proportional to the size of the component; SSA
+	 * Direct runs the models that fit {@link CellPopulation} from per-type
+	 * templates and per-cell rows instead
+	 * 
 	 * @param parentComponentID
 	 * @param eventID
 	 *            the ID of the division event that just fired
@@ -1029,6 +1069,9 @@ public abstract class Simulator extends AbstractSimulator
 	 * parameters, etc) and updates data structures and the simulation state
 	 * used for "death" events in dynamic models
 	 * 
+	 * each of the component's elements is removed from every map keyed by
+	 * element ID, as for duplicateComponent
+	 * 
 	 * @param componentID
 	 */
 	protected HashSet<String> eraseComponent(String componentID)
@@ -1634,8 +1677,8 @@ public abstract class Simulator extends AbstractSimulator
 	}
 
 	/**
-	 * adds species and reactions to the model that are implicit in arrays
-	 * basically, it takes an arrayed model and flattens it
+	 * expands the arrays of an sbml file and writes the result back for tools
+	 * that read the file, such as reb2sac
 	 * 
 	 * this also applies stoichiometry amplification at the end (if needed) i
 	 * did it this way to avoid another read/write of the model, as i have to do
@@ -1657,6 +1700,37 @@ public abstract class Simulator extends AbstractSimulator
 			return;
 		}
 
+		if (expandArrays(document, stoichAmpValue))
+		{
+
+			SBMLWriter writer = new SBMLWriter();
+			PrintStream p;
+
+			try
+			{
+				p = new PrintStream(new FileOutputStream(filename), true, "UTF-8");
+				p.print(writer.writeSBMLToString(document));
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * adds species and reactions to the model that are implicit in arrays
+	 * basically, it takes an arrayed model and flattens it
+	 * 
+	 * the document is changed in place
+	 * 
+	 * @param document
+	 * @param stoichAmpValue
+	 * @return true if the model had arrays and was expanded
+	 */
+	public static boolean expandArrays(SBMLDocument document, double stoichAmpValue)
+	{
+
 		Model model = document.getModel();
 
 		boolean arraysExist = false;
@@ -2239,7 +2313,7 @@ public abstract class Simulator extends AbstractSimulator
 								{
 									// TODO: Is this possible?
 									System.out.println("Could not find product");
-									return;
+									return false;
 								}
 
 								if (productHeadNode.getChild(1).getType().name().equals("PLUS"))
@@ -2385,45 +2459,34 @@ public abstract class Simulator extends AbstractSimulator
 
 			model.setListOfEvents(allEvents);
 
-			ArrayList<String> parametersToRemove = new ArrayList<String>();
-
-			// get rid of the locations parameters
-			for (Parameter parameter : model.getListOfParameters())
-			{
-				if (parameter.getId().contains("_locations"))
-				{
-					parametersToRemove.add(parameter.getId());
-				}
-			}
-
-			for (String parameterID : parametersToRemove)
-			{
-				model.removeParameter(parameterID);
-			}
-
-			applyStoichiometryAmplification(model, stoichAmpValue);
-
 			if (arraysExist)
 			{
 
-				SBMLWriter writer = new SBMLWriter();
-				PrintStream p;
+				ArrayList<String> parametersToRemove = new ArrayList<String>();
 
-				try
+				// get rid of the locations parameters
+				for (Parameter parameter : model.getListOfParameters())
 				{
-					p = new PrintStream(new FileOutputStream(filename), true, "UTF-8");
-					p.print(writer.writeSBMLToString(model.getSBMLDocument()));
+					if (parameter.getId().contains("_locations"))
+					{
+						parametersToRemove.add(parameter.getId());
+					}
 				}
-				catch (Exception e)
+
+				for (String parameterID : parametersToRemove)
 				{
-					e.printStackTrace();
+					model.removeParameter(parameterID);
 				}
+
+				applyStoichiometryAmplification(model, stoichAmpValue);
 			}
 		}
 		catch (XMLStreamException e)
 		{
 			e.printStackTrace();
 		}
+
+		return arraysExist;
 	}
 
 	/**
@@ -2738,6 +2801,7 @@ public abstract class Simulator extends AbstractSimulator
 			triggeredEventQueue = newTriggeredEventQueue;
 
 			// some events might trigger after this
+			checkAllEvents = true;
 			handleEvents();
 		}// end loop through event queue
 
@@ -2777,6 +2841,10 @@ public abstract class Simulator extends AbstractSimulator
 			}
 		}
 
+		// events may have been untriggered or added above, so check them all
+		// next time
+		checkAllEvents = true;
+
 		return affectedReactionSet;
 	}
 
@@ -2959,9 +3027,9 @@ public abstract class Simulator extends AbstractSimulator
 
 		HashSet<String> triggeredEvents = new HashSet<String>();
 
-		// loop through all untriggered events
+		// loop through the untriggered events whose trigger may have changed
 		// if any trigger, evaluate the fire time(s) and add them to the queue
-		for (String untriggeredEventID : untriggeredEventSet)
+		for (String untriggeredEventID : getEventsToCheck())
 		{
 
 			// System.err.println(untriggeredEventID);
@@ -3034,6 +3102,136 @@ public abstract class Simulator extends AbstractSimulator
 		untriggeredEventSet.removeAll(triggeredEvents);
 	}
 
+	/**
+	 * returns the untriggered events whose trigger may have changed since the
+	 * last check, ie, the ones that read a variable written since then and the
+	 * ones that are always checked
+	 * all untriggered events are returned after events fire and in dynamic
+	 * models, where components come and go
+	 * the returned set is reused by the next call
+	 */
+	protected Collection<String> getEventsToCheck()
+	{
+
+		if (checkAllEvents == true || dynamicBoolean == true)
+		{
+			checkAllEvents = false;
+			variableToValueMap.clearChangedVariables();
+			return untriggeredEventSet;
+		}
+
+		eventsToCheck.clear();
+
+		for (String eventID : alwaysCheckedEventSet)
+		{
+			if (untriggeredEventSet.contains(eventID))
+			{
+				eventsToCheck.add(eventID);
+			}
+		}
+
+		for (String variableID : variableToValueMap.getChangedVariables())
+		{
+
+			HashSet<String> eventSet = variableToTriggerEventSetMap.get(variableID);
+
+			if (eventSet == null)
+			{
+				continue;
+			}
+
+			for (String eventID : eventSet)
+			{
+				if (untriggeredEventSet.contains(eventID))
+				{
+					eventsToCheck.add(eventID);
+				}
+			}
+		}
+
+		variableToValueMap.clearChangedVariables();
+
+		return eventsToCheck;
+	}
+
+	/**
+	 * records the variables that an event trigger reads so that the trigger is
+	 * only evaluated again once one of them has changed
+	 * triggers that read the time, a reaction or a function (eg, a random
+	 * distribution or a neighbor quantity) are evaluated every time
+	 * 
+	 * @param eventID
+	 */
+	protected void indexEventTrigger(String eventID)
+	{
+
+		HashSet<String> triggerVariables = new HashSet<String>();
+
+		if (getTriggerVariables(eventToTriggerMap.get(eventID), triggerVariables) == false)
+		{
+			alwaysCheckedEventSet.add(eventID);
+			return;
+		}
+
+		for (String variableID : triggerVariables)
+		{
+
+			if (variableToTriggerEventSetMap.containsKey(variableID) == false)
+			{
+				variableToTriggerEventSetMap.put(variableID, new HashSet<String>());
+			}
+
+			variableToTriggerEventSetMap.get(variableID).add(eventID);
+		}
+	}
+
+	/**
+	 * recursively collects the variables that a trigger reads
+	 * 
+	 * @param node
+	 * @param triggerVariables
+	 * @return false if the value of the trigger can change without any variable
+	 *         changing
+	 */
+	private boolean getTriggerVariables(ASTNode node, HashSet<String> triggerVariables)
+	{
+
+		if (node.isName())
+		{
+
+			if (node.getType() == ASTNode.Type.NAME_TIME || model.getReaction(node.getName()) != null)
+			{
+				return false;
+			}
+
+			String name = node.getName().replace("_negative_", "-");
+			triggerVariables.add(name);
+
+			// concentrations also read the compartment size
+			if (speciesToCompartmentNameMap.containsKey(name))
+			{
+				triggerVariables.add(speciesToCompartmentNameMap.get(name));
+			}
+
+			return true;
+		}
+
+		if (node.getType() == ASTNode.Type.FUNCTION || node.getType() == ASTNode.Type.FUNCTION_DELAY)
+		{
+			return false;
+		}
+
+		for (int childIter = 0; childIter < node.getChildCount(); ++childIter)
+		{
+			if (getTriggerVariables(node.getChild(childIter), triggerVariables) == false)
+			{
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	public void replaceArgument(ASTNode formula, String bvar, ASTNode arg)
 	{
 		int n = 0;
@@ -3122,6 +3320,10 @@ public abstract class Simulator extends AbstractSimulator
 	 * moves a component in a given direction moves components out of the way if
 	 * needed creates grid reactions if the grid expands
 	 * 
+	 * the components in the way are found through an index of the occupied
+	 * locations, so only they are shifted and their membrane diffusion
+	 * reactions rewritten
+	 * 
 	 * @param parentComponentID
 	 * @param direction
 	 */
@@ -3131,10 +3333,17 @@ public abstract class Simulator extends AbstractSimulator
 		HashSet<Integer> newRows = new HashSet<Integer>();
 		HashSet<Integer> newCols = new HashSet<Integer>();
 
+		// index the occupied locations once so the cells in the way can be
+		// found without scanning every component at each step
+		HashMap<Point, String> locationToComponentMap = new HashMap<Point, String>((int) (componentToLocationMap.size() / 0.75) + 1);
+
 		// find the grid bounds
-		for (Point location : componentToLocationMap.values())
+		for (Map.Entry<String, Point> componentAndLocation : componentToLocationMap.entrySet())
 		{
 
+			Point location = componentAndLocation.getValue();
+			locationToComponentMap.put(location, componentAndLocation.getKey());
+
 			if ((int) location.getX() < minRow)
 			{
 				minRow = (int) location.getX();
@@ -3195,24 +3404,26 @@ public abstract class Simulator extends AbstractSimulator
 		}
 		}
 
-		HashSet<Point> locationsToMove = new HashSet<Point>();
+		LinkedHashSet<String> componentsToMove = new LinkedHashSet<String>();
 
 		// if this place is taken, make room by moving the cells in the way
-		if (componentToLocationMap.containsValue(childLocation))
+		if (locationToComponentMap.containsKey(childLocation))
 		{
 
 			// empty location is the location that needs to become empty so the
 			// child can go there
 			Point emptyLocation = (Point) childLocation.clone();
 
-			// find all of the locations that are in the way and put them in the
-			// hashset
+			// find all of the components that are in the way and put them in the
+			// list
 			// this is done my moving in the direction chosen until an empty
 			// space is found
-			while (componentToLocationMap.containsValue(emptyLocation) == true)
+			String componentInTheWay = locationToComponentMap.get(emptyLocation);
+
+			while (componentInTheWay != null)
 			{
 
-				locationsToMove.add((Point) emptyLocation.clone());
+				componentsToMove.add(componentInTheWay);
 
 				switch (direction)
 				{
@@ -3255,83 +3466,77 @@ public abstract class Simulator extends AbstractSimulator
 					break;
 				}
 				}
-			}
 
-			LinkedHashMap<String, Point> componentToLocationMapCopy = (LinkedHashMap<String, Point>) componentToLocationMap.clone();
+				componentInTheWay = locationToComponentMap.get(emptyLocation);
+			}
 
 			// move the cells that are in the way
-			for (Map.Entry<String, Point> componentAndLocation : componentToLocationMapCopy.entrySet())
+			for (String compID : componentsToMove)
 			{
 
-				String compID = componentAndLocation.getKey();
-
-				if (locationsToMove.contains(componentAndLocation.getValue()))
+				switch (direction)
 				{
 
-					switch (direction)
-					{
-
-					case 0:
-						componentToLocationMap.get(compID).y -= 1;
-						break;
-					case 1:
-						componentToLocationMap.get(compID).y += 1;
-						break;
-					case 2:
-						componentToLocationMap.get(compID).x -= 1;
-						break;
-					case 3:
-						componentToLocationMap.get(compID).x += 1;
-						break;
+				case 0:
+					componentToLocationMap.get(compID).y -= 1;
+					break;
+				case 1:
+					componentToLocationMap.get(compID).y += 1;
+					break;
+				case 2:
+					componentToLocationMap.get(compID).x -= 1;
+					break;
+				case 3:
+					componentToLocationMap.get(compID).x += 1;
+					break;
 
-					case 4:
-					{
-						componentToLocationMap.get(compID).x += 1;
-						componentToLocationMap.get(compID).y -= 1;
-						break;
-					}
-					case 5:
-					{
-						componentToLocationMap.get(compID).x -= 1;
-						componentToLocationMap.get(compID).y += 1;
-						break;
-					}
-					case 6:
-					{
-						componentToLocationMap.get(compID).x -= 1;
-						componentToLocationMap.get(compID).y -= 1;
-						break;
-					}
-					case 7:
-					{
-						componentToLocationMap.get(compID).x += 1;
-						componentToLocationMap.get(compID).y += 1;
-						break;
-					}
-					}
+				case 4:
+				{
+					componentToLocationMap.get(compID).x += 1;
+					componentToLocationMap.get(compID).y -= 1;
+					break;
+				}
+				case 5:
+				{
+					componentToLocationMap.get(compID).x -= 1;
+					componentToLocationMap.get(compID).y += 1;
+					break;
+				}
+				case 6:
+				{
+					componentToLocationMap.get(compID).x -= 1;
+					componentToLocationMap.get(compID).y -= 1;
+					break;
+				}
+				case 7:
+				{
+					componentToLocationMap.get(compID).x += 1;
+					componentToLocationMap.get(compID).y += 1;
+					break;
+				}
+				}
 
-					// keep track of min row/col and max row/col so you know the
-					// bounds of the grid
-					if ((int) componentToLocationMap.get(compID).getX() < minRow)
-					{
-						minRow = (int) componentToLocationMap.get(compID).getX();
-						newRows.add(minRow);
-					}
-					else if ((int) componentToLocationMap.get(compID).getX() > maxRow)
-					{
-						maxRow = (int) componentToLocationMap.get(compID).getX();
-						newRows.add(maxRow);
-					}
-					if ((int) componentToLocationMap.get(compID).getY() < minCol)
-					{
-						minCol = (int) componentToLocationMap.get(compID).getY();
-						newCols.add(minCol);
-					}
-					else if ((int) componentToLocationMap.get(compID).getY() > maxCol)
-					{
-						maxCol = (int) componentToLocationMap.get(compID).getY();
-						newCols.add(maxCol);
-					}
+				// keep track of min row/col and max row/col so you know the
+				// bounds of the grid
+				if ((int) componentToLocationMap.get(compID).getX() < minRow)
+				{
+					minRow = (int) componentToLocationMap.get(compID).getX();
+					newRows.add(minRow);
+				}
+				else if ((int) componentToLocationMap.get(compID).getX() > maxRow)
+				{
+					maxRow = (int) componentToLocationMap.get(compID).getX();
+					newRows.add(maxRow);
+				}
+				if ((int) componentToLocationMap.get(compID).getY() < minCol)
+				{
+					minCol = (int) componentToLocationMap.get(compID).getY();
+					newCols.add(minCol);
+				}
+				else if ((int) componentToLocationMap.get(compID).getY() > maxCol)
+				{
+					maxCol = (int) componentToLocationMap.get(compID).getY();
+					newCols.add(maxCol);
 				}
 			}
 		}
@@ -3768,197 +3973,146 @@ public abstract class Simulator extends AbstractSimulator
 		}
 
 		// MOVE MEMBRANE DIFFUSION REACTIONS FOR COMPONENTS THAT HAVE MOVED
-		if (locationsToMove.size() > 0)
+		if (componentsToMove.size() > 0)
 		{
 
-			for (Point locationToMove : locationsToMove)
+			// find the membrane diffusion reactions for these moved components
+			// and alter it
+			for (String compID : componentToLocationMap.keySet())
 			{
 
-				// adjust these locations to their new, moved location
-				switch (direction)
+				if (componentsToMove.contains(compID) == false)
 				{
+					continue;
+				}
 
-				case 0:
-					locationToMove.y -= 1;
-					break;
-				case 1:
-					locationToMove.y += 1;
-					break;
-				case 2:
-					locationToMove.x -= 1;
-					break;
-				case 3:
-					locationToMove.x += 1;
-					break;
+				Point locationToMove = componentToLocationMap.get(compID);
 
-				case 4:
-				{
-					locationToMove.x += 1;
-					locationToMove.y -= 1;
-					break;
-				}
-				case 5:
-				{
-					locationToMove.x -= 1;
-					locationToMove.y += 1;
-					break;
-				}
-				case 6:
-				{
-					locationToMove.x -= 1;
-					locationToMove.y -= 1;
-					break;
-				}
-				case 7:
+				if (componentToReactionSetMap.get(compID) == null)
 				{
-					locationToMove.x += 1;
-					locationToMove.y += 1;
-					break;
-				}
+					continue;
 				}
-			}
 
-			// find the membrane diffusion reactions for these moved components
-			// and alter it
-			for (String compID : componentToLocationMap.keySet())
-			{
-
-				int compX = (int) componentToLocationMap.get(compID).getX();
-				int compY = (int) componentToLocationMap.get(compID).getY();
-
-				for (Point locationToMove : locationsToMove)
+				for (String reactionID : componentToReactionSetMap.get(compID))
 				{
 
-					if (locationToMove.x == compX && locationToMove.y == compY)
+					// only need to change the rv membrane diffusion
+					// reaction
+					if (reactionID.contains("MembraneDiffusion"))
 					{
 
-						if (componentToReactionSetMap.get(compID) == null)
-						{
-							continue;
-						}
+						ASTNode formulaNode = reactionToFormulaMap.get(reactionID);
 
-						for (String reactionID : componentToReactionSetMap.get(compID))
-						{
+						// the right child is the one to alter
+						ASTNode speciesNode = formulaNode.getRightChild();
 
-							// only need to change the rv membrane diffusion
-							// reaction
-							if (reactionID.contains("MembraneDiffusion"))
-							{
+						Point oldLocation = (Point) locationToMove.clone();
 
-								ASTNode formulaNode = reactionToFormulaMap.get(reactionID);
+						switch (direction)
+						{
 
-								// the right child is the one to alter
-								ASTNode speciesNode = formulaNode.getRightChild();
+						case 0:
+							oldLocation.y = locationToMove.y + 1;
+							break;
+						case 1:
+							oldLocation.y = locationToMove.y - 1;
+							break;
+						case 2:
+							oldLocation.x = locationToMove.x + 1;
+							break;
+						case 3:
+							oldLocation.x = locationToMove.x - 1;
+							break;
 
-								Point oldLocation = (Point) locationToMove.clone();
+						case 4:
+						{
+							oldLocation.x = locationToMove.x - 1;
+							oldLocation.y = locationToMove.y + 1;
+							break;
+						}
+						case 5:
+						{
+							oldLocation.x = locationToMove.x + 1;
+							oldLocation.y = locationToMove.y - 1;
+							break;
+						}
+						case 6:
+						{
+							oldLocation.x = locationToMove.x + 1;
+							oldLocation.y = locationToMove.y + 1;
+							break;
+						}
+						case 7:
+						{
+							oldLocation.x = locationToMove.x - 1;
+							oldLocation.y = locationToMove.y - 1;
+							break;
+						}
+						}
 
-								switch (direction)
-								{
+						String oldRowCol = "ROW" + oldLocation.x + "_COL" + oldLocation.y;
+						oldRowCol = oldRowCol.replace("ROW-", "ROW_negative_");
+						oldRowCol = oldRowCol.replace("COL-", "COL_negative_");
 
-								case 0:
-									oldLocation.y = locationToMove.y + 1;
-									break;
-								case 1:
-									oldLocation.y = locationToMove.y - 1;
-									break;
-								case 2:
-									oldLocation.x = locationToMove.x + 1;
-									break;
-								case 3:
-									oldLocation.x = locationToMove.x - 1;
-									break;
+						String newRowCol = "ROW" + locationToMove.x + "_COL" + locationToMove.y;
+						newRowCol = newRowCol.replace("ROW-", "ROW_negative_");
+						newRowCol = newRowCol.replace("COL-", "COL_negative_");
 
-								case 4:
-								{
-									oldLocation.x = locationToMove.x - 1;
-									oldLocation.y = locationToMove.y + 1;
-									break;
-								}
-								case 5:
-								{
-									oldLocation.x = locationToMove.x + 1;
-									oldLocation.y = locationToMove.y - 1;
-									break;
-								}
-								case 6:
-								{
-									oldLocation.x = locationToMove.x + 1;
-									oldLocation.y = locationToMove.y + 1;
-									break;
-								}
-								case 7:
-								{
-									oldLocation.x = locationToMove.x - 1;
-									oldLocation.y = locationToMove.y - 1;
-									break;
-								}
-								}
+						// adjust kinetic law
+						speciesNode.setVariable(model.getSpecies(speciesNode.getName().replace(oldRowCol, newRowCol)));
 
-								String oldRowCol = "ROW" + oldLocation.x + "_COL" + oldLocation.y;
-								oldRowCol = oldRowCol.replace("ROW-", "ROW_negative_");
-								oldRowCol = oldRowCol.replace("COL-", "COL_negative_");
+						newRowCol = newRowCol.replace("ROW_negative_", "ROW-");
+						newRowCol = newRowCol.replace("COL_negative_", "COL-");
+						oldRowCol = oldRowCol.replace("ROW_negative_", "ROW-");
+						oldRowCol = oldRowCol.replace("COL_negative_", "COL-");
 
-								String newRowCol = "ROW" + locationToMove.x + "_COL" + locationToMove.y;
-								newRowCol = newRowCol.replace("ROW-", "ROW_negative_");
-								newRowCol = newRowCol.replace("COL-", "COL_negative_");
+						// adjust reactants/products
+						for (StringDoublePair speciesAndStoichiometry : reactionToSpeciesAndStoichiometrySetMap.get(reactionID))
+						{
 
-								// adjust kinetic law
-								speciesNode.setVariable(model.getSpecies(speciesNode.getName().replace(oldRowCol, newRowCol)));
+							speciesAndStoichiometry.string = speciesAndStoichiometry.string.replace(oldRowCol, newRowCol);
+						}
 
-								newRowCol = newRowCol.replace("ROW_negative_", "ROW-");
-								newRowCol = newRowCol.replace("COL_negative_", "COL-");
-								oldRowCol = oldRowCol.replace("ROW_negative_", "ROW-");
-								oldRowCol = oldRowCol.replace("COL_negative_", "COL-");
+						for (StringDoublePair reactantAndStoichiometry : reactionToReactantStoichiometrySetMap.get(reactionID))
+						{
 
-								// adjust reactants/products
-								for (StringDoublePair speciesAndStoichiometry : reactionToSpeciesAndStoichiometrySetMap.get(reactionID))
-								{
+							reactantAndStoichiometry.string = reactantAndStoichiometry.string.replace(oldRowCol, newRowCol);
+						}
 
-									speciesAndStoichiometry.string = speciesAndStoichiometry.string.replace(oldRowCol, newRowCol);
-								}
+						// remove the old, now out-dated species to
+						// affected reaction pairs
+						// put in the new up-to-date pairs
+						for (String speciesID : speciesToAffectedReactionSetMap.keySet())
+						{
 
-								for (StringDoublePair reactantAndStoichiometry : reactionToReactantStoichiometrySetMap.get(reactionID))
-								{
+							if (speciesID.contains(oldRowCol + "_"))
+							{
 
-									reactantAndStoichiometry.string = reactantAndStoichiometry.string.replace(oldRowCol, newRowCol);
-								}
+								HashSet<String> reactionsToRemove = new HashSet<String>();
 
-								// remove the old, now out-dated species to
-								// affected reaction pairs
-								// put in the new up-to-date pairs
-								for (String speciesID : speciesToAffectedReactionSetMap.keySet())
+								for (String reaction : speciesToAffectedReactionSetMap.get(speciesID))
 								{
-
-									if (speciesID.contains(oldRowCol + "_"))
+									if (reaction.contains("MembraneDiffusion"))
 									{
-
-										HashSet<String> reactionsToRemove = new HashSet<String>();
-
-										for (String reaction : speciesToAffectedReactionSetMap.get(speciesID))
-										{
-											if (reaction.contains("MembraneDiffusion"))
-											{
-												reactionsToRemove.add(reaction);
-											}
-										}
-
-										for (String reactionToRemove : reactionsToRemove)
-										{
-											speciesToAffectedReactionSetMap.get(speciesID).remove(reactionToRemove);
-										}
+										reactionsToRemove.add(reaction);
 									}
+								}
 
-									if (speciesID.contains(newRowCol + "_"))
-									{
-
-										speciesToAffectedReactionSetMap.get(speciesID).add(reactionID);
-									}
+								for (String reactionToRemove : reactionsToRemove)
+								{
+									speciesToAffectedReactionSetMap.get(speciesID).remove(reactionToRemove);
 								}
+							}
+
+							if (speciesID.contains(newRowCol + "_"))
+							{
 
-								// adjust propensity
-								reactionsToAdjust.add(reactionID);
+								speciesToAffectedReactionSetMap.get(speciesID).add(reactionID);
 							}
 						}
+
+						// adjust propensity
+						reactionsToAdjust.add(reactionID);
 					}
 				}
 			}
@@ -4229,6 +4383,11 @@ public abstract class Simulator extends AbstractSimulator
 
 		String commaSpace = "";
 
+		if (compiledModel != null)
+		{
+			compiledModel.writeValues();
+		}
+
     
 		// dynamic printing requires re-printing the species values each time
 		// step
@@ -4315,6 +4474,8 @@ public abstract class Simulator extends AbstractSimulator
 
 		// print the current time
 		bufferedTSDWriter.write(printTime + ",");
+		statistics.startRow();
+		statistics.addValue("time", printTime);
 
 		// if there's an interesting species, only those get printed
 		if (interestingSpecies.size() > 0)
@@ -4323,24 +4484,23 @@ public abstract class Simulator extends AbstractSimulator
 			for (String speciesID : interestingSpecies)
 			{
 
-				if (printConcentrations == true)
-				{
+				double value = variableToValueMap.get(speciesID);
 
-					bufferedTSDWriter.write(commaSpace + (variableToValueMap.get(speciesID) / variableToValueMap.get(speciesToCompartmentNameMap.get(speciesID))));
-				}
-				else
+				if (printConcentrations == true)
 				{
-					bufferedTSDWriter.write(commaSpace + variableToValueMap.get(speciesID));
+					value = value / variableToValueMap.get(speciesToCompartmentNameMap.get(speciesID));
 				}
 
+				bufferedTSDWriter.write(commaSpace + value);
+				statistics.addValue(speciesID, value);
+
 				commaSpace = ",";
 			}
 
 			// always print component location values
 			for (String componentID : componentToLocationMap.keySet())
 			{
-				bufferedTSDWriter.write(commaSpace + (int) componentToLocationMap.get(componentID).getX());
-				bufferedTSDWriter.write(commaSpace + (int) componentToLocationMap.get(componentID).getY());
+				printLocation(componentID, commaSpace);
 			}
 		}
 		else
@@ -4351,29 +4511,28 @@ public abstract class Simulator extends AbstractSimulator
 			for (String speciesID : speciesIDSet)
 			{
 
-				bufferedTSDWriter.write(commaSpace + variableToValueMap.get(speciesID));
+				printValue(speciesID, commaSpace);
 				commaSpace = ",";
 			}
 
 			// print component location values
 			for (String componentID : componentToLocationMap.keySet())
 			{
-				bufferedTSDWriter.write(commaSpace + (int) componentToLocationMap.get(componentID).getX());
+				printLocation(componentID, commaSpace);
 				commaSpace = ",";
-				bufferedTSDWriter.write(commaSpace + (int) componentToLocationMap.get(componentID).getY());
 			}
 
 			// print compartment sizes
 			for (String componentID : compartmentIDSet)
 			{
-				bufferedTSDWriter.write(commaSpace + variableToValueMap.get(componentID));
+				printValue(componentID, commaSpace);
 				commaSpace = ",";
 			}
 
 			// print nonconstant parameter values
 			for (String parameterID : nonconstantParameterIDSet)
 			{
-				bufferedTSDWriter.write(commaSpace + variableToValueMap.get(parameterID));
+				printValue(parameterID, commaSpace);
 				commaSpace = ",";
 			}
 		}
@@ -4389,170 +4548,50 @@ public abstract class Simulator extends AbstractSimulator
 	}
 
 	/**
-	 * parses TSD files for all runs and prints mean and standard deviation TSDs
+	 * prints the current value of a variable and adds it to the statistics
 	 * 
+	 * @param variableID
+	 * @param commaSpace
 	 * @throws IOException
 	 */
-	@Override
-	public void printStatisticsTSD()
+	private void printValue(String variableID, String commaSpace) throws IOException
 	{
 
-		// the last run is the number of runs
-		int numRuns = currentRun;
+		double value = variableToValueMap.get(variableID);
 
-		HashMap<String, ArrayList<DescriptiveStatistics>> speciesStatistics = new HashMap<String, ArrayList<DescriptiveStatistics>>();
-
-		ArrayList<String> allSpecies = new ArrayList<String>();
-		HashSet<String> speciesSet = new HashSet<String>();
-
-		// if it's dynamic, we have to parse every run's file to get the full
-		// list of species
-		if (dynamicBoolean == true)
-		{
-
-			for (int run = 1; run <= numRuns; ++run)
-			{
-
-				DTSDParser dtsdParser = new DTSDParser(outputDirectory + File.separator + "run-" + run + ".dtsd");
-				speciesSet.addAll(dtsdParser.getSpecies());
-			}
-
-			speciesSet.remove("time");
-			allSpecies.add("time");
-			allSpecies.addAll(speciesSet);
-		}
-
-		// store the TSD data for analysis
-		for (int run = 1; run <= numRuns; ++run)
-		{
-
-			DTSDParser dtsdParser = null;
-			TSDParser tsdParser = null;
-			HashMap<String, ArrayList<Double>> runStatistics = null;
-
-			if (dynamicBoolean == true)
-			{
-
-				dtsdParser = new DTSDParser(outputDirectory + File.separator + "run-" + run + ".dtsd");
-				// allSpecies = dtsdParser.getSpecies();
-				runStatistics = dtsdParser.getHashMap(allSpecies);
-			}
-			else
-			{
-				tsdParser = new TSDParser(outputDirectory + File.separator + "run-" + run + ".tsd", false);
-				allSpecies = tsdParser.getSpecies();
-				runStatistics = tsdParser.getHashMap();
-			}
-
-			for (int speciesIndex = 0; speciesIndex < allSpecies.size(); ++speciesIndex)
-			{
-
-				String species = allSpecies.get(speciesIndex);
-
-				for (int index = 0; index < runStatistics.get(species).size(); ++index)
-				{
-
-					Double speciesData = runStatistics.get(species).get(index);
-
-					if (speciesStatistics.size() <= speciesIndex)
-					{
-						speciesStatistics.put(species, new ArrayList<DescriptiveStatistics>());
-					}
-
-					if (speciesStatistics.get(species).size() <= index)
-					{
-						speciesStatistics.get(species).add(new DescriptiveStatistics());
-					}
-
-					speciesStatistics.get(species).get(index).addValue(speciesData.doubleValue());
-				}
-			}
-		}
-
-		DataParser statsParser = new DataParser(null, null);
-		ArrayList<ArrayList<Double>> meanTSDData = new ArrayList<ArrayList<Double>>();
-
-		// calculate and print the mean tsd
-		for (String species : allSpecies)
-		{
-
-			ArrayList<Double> speciesData = new ArrayList<Double>();
-
-			for (int index = 0; index < speciesStatistics.get(species).size(); ++index)
-			{
-				speciesData.add(speciesStatistics.get(species).get(index).getMean());
-			}
-
-			meanTSDData.add(speciesData);
-		}
-
-		statsParser.setData(meanTSDData);
-		statsParser.setSpecies(allSpecies);
-		statsParser.outputTSD(outputDirectory + "mean.tsd");
-
-		// calculate and print the standard deviation tsd
-		ArrayList<ArrayList<Double>> standardDeviationTSDData = new ArrayList<ArrayList<Double>>();
-
-		for (String species : allSpecies)
-		{
-
-			ArrayList<Double> speciesData = new ArrayList<Double>();
-
-			if (species.equals("time"))
-			{
-
-				for (int index = 0; index < speciesStatistics.get(species).size(); ++index)
-				{
-					speciesData.add(speciesStatistics.get(species).get(index).getMean());
-				}
-			}
-			else
-			{
-
-				for (int index = 0; index < speciesStatistics.get(species).size(); ++index)
-				{
-					speciesData.add(speciesStatistics.get(species).get(index).getStandardDeviation());
-				}
-			}
-
-			standardDeviationTSDData.add(speciesData);
-		}
-
-		statsParser.setData(standardDeviationTSDData);
-		statsParser.setSpecies(allSpecies);
-		statsParser.outputTSD(outputDirectory + "standard_deviation.tsd");
-
-		// calculate and print the variance tsd
-		ArrayList<ArrayList<Double>> varianceTSDData = new ArrayList<ArrayList<Double>>();
-
-		for (String species : allSpecies)
-		{
-
-			ArrayList<Double> speciesData = new ArrayList<Double>();
-
-			if (species.equals("time"))
-			{
+		bufferedTSDWriter.write(commaSpace + value);
+		statistics.addValue(variableID, value);
+	}
 
-				for (int index = 0; index < speciesStatistics.get(species).size(); ++index)
-				{
-					speciesData.add(speciesStatistics.get(species).get(index).getMean());
-				}
-			}
-			else
-			{
+	/**
+	 * prints the location of a component and adds it to the statistics
+	 * 
+	 * @param componentID
+	 * @param commaSpace
+	 * @throws IOException
+	 */
+	private void printLocation(String componentID, String commaSpace) throws IOException
+	{
 
-				for (int index = 0; index < speciesStatistics.get(species).size(); ++index)
-				{
-					speciesData.add(speciesStatistics.get(species).get(index).getVariance());
-				}
-			}
+		int locationX = (int) componentToLocationMap.get(componentID).getX();
+		int locationY = (int) componentToLocationMap.get(componentID).getY();
 
-			varianceTSDData.add(speciesData);
-		}
+		bufferedTSDWriter.write(commaSpace + locationX);
+		bufferedTSDWriter.write("," + locationY);
+		statistics.addValue(componentID + "__locationX", locationX);
+		statistics.addValue(componentID + "__locationY", locationY);
+	}
 
-		statsParser.setData(varianceTSDData);
-		statsParser.setSpecies(allSpecies);
-		statsParser.outputTSD(outputDirectory + "variance.tsd");
+	/**
+	 * prints mean, standard deviation and variance TSDs for the runs so far
+	 * 
+	 * the statistics are accumulated as each run is printed, so the run files
+	 * are not read back
+	 */
+	@Override
+	public void printStatisticsTSD()
+	{
+		statistics.printToTSD(outputDirectory + "mean.tsd", outputDirectory + "standard_deviation.tsd", outputDirectory + "variance.tsd");
 	}
 
 	/**
@@ -4574,6 +4613,19 @@ public abstract class Simulator extends AbstractSimulator
 	 * this one doesn't print the model back out, though
 	 */
 	protected void setupArrays()
+	{
+		setupArrays(true);
+	}
+
+	/**
+	 * flattens arrays into the sbml model
+	 * 
+	 * @param expandReactions
+	 *            false if the arrayed reactions are simulated by
+	 *            {@link ArrayedReactions}, in which case they are removed from
+	 *            the model instead of being copied for every element
+	 */
+	protected void setupArrays(boolean expandReactions)
 	{
 
 		boolean arraysExist = false;
@@ -5013,6 +5065,11 @@ public abstract class Simulator extends AbstractSimulator
 
 					reactionsToRemove.add(reaction.getId());
 
+					if (expandReactions == false)
+					{
+						continue;
+					}
+
 					// get the reactant dimensions, which tells us how many new
 					// reactions are going to be created
 					SpeciesDimensions reactantDimensions = arrayedSpeciesToDimensionsMap.get(reaction.getReactant(0).getSpeciesInstance().getId());
@@ -5324,7 +5381,9 @@ public abstract class Simulator extends AbstractSimulator
 		{
 			e.printStackTrace();
 		}
-		if (arraysExist)
+
+		// a model without its arrayed reactions is not written over the file
+		if (arraysExist && expandReactions)
 		{
 
 			SBMLWriter writer = new SBMLWriter();
@@ -5970,6 +6029,7 @@ public abstract class Simulator extends AbstractSimulator
 		}
 
 		eventToTriggerMap.put(eventID, event.getTrigger().getMath());
+		indexEventTrigger(eventID);
 		eventToTriggerInitiallyTrueMap.put(eventID, event.getTrigger().isInitialValue());
 		eventToPreviousTriggerValueMap.put(eventID, event.getTrigger().isInitialValue());
 		eventToTriggerPersistenceMap.put(eventID, event.getTrigger().getPersistent());
@@ -6012,6 +6072,14 @@ public abstract class Simulator extends AbstractSimulator
 	protected void setupEvents()
 	{
 
+		if (variableToTriggerEventSetMap != null)
+		{
+			variableToTriggerEventSetMap.clear();
+			alwaysCheckedEventSet.clear();
+		}
+
+		checkAllEvents = true;
+
 		// add event information to hashmaps for easy/fast access
 		// this needs to happen after calculating initial propensities
 		// so that the speciesToAffectedReactionSetMap is populated
@@ -6040,6 +6108,13 @@ public abstract class Simulator extends AbstractSimulator
 
 		this.currentRun = currentRun;
 
+		if (currentRun == 1)
+		{
+			statistics.clear();
+		}
+
+		statistics.startRun();
+
 		randomNumberGenerator = new XORShiftRandom(randomSeed);
 
 		try
@@ -6812,6 +6887,66 @@ public abstract class Simulator extends AbstractSimulator
 		}
 	}
 
+	// VARIABLE VALUE MAP INNER CLASS
+	/**
+	 * variable-to-value map that remembers which variables have been written
+	 * since the changes were last cleared, so that only the event triggers that
+	 * read them are evaluated again
+	 */
+	protected static class VariableValueMap extends TObjectDoubleHashMap<String>
+	{
+
+		private HashSet<String>	changedVariables	= new HashSet<String>();
+
+		public VariableValueMap(int initialCapacity)
+		{
+
+			super(initialCapacity);
+		}
+
+		@Override
+		public double put(String key, double value)
+		{
+
+			changedVariables.add(key);
+			return super.put(key, value);
+		}
+
+		@Override
+		public double putIfAbsent(String key, double value)
+		{
+
+			changedVariables.add(key);
+			return super.putIfAbsent(key, value);
+		}
+
+		@Override
+		public boolean adjustValue(String key, double amount)
+		{
+
+			changedVariables.add(key);
+			return super.adjustValue(key, amount);
+		}
+
+		@Override
+		public double adjustOrPutValue(String key, double adjustAmount, double putAmount)
+		{
+
+			changedVariables.add(key);
+			return super.adjustOrPutValue(key, adjustAmount, putAmount);
+		}
+
+		public HashSet<String> getChangedVariables()
+		{
+			return changedVariables;
+		}
+
+		public void clearChangedVariables()
+		{
+			changedVariables.clear();
+		}
+	}
+
 	// STRING DOUBLE PAIR INNER CLASS
 	/**
 	 * class to combine a string and a double
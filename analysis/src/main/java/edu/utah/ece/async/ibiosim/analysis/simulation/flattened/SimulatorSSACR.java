@@ -13,14 +13,12 @@
  *******************************************************************************/
 package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
 
-import gnu.trove.map.hash.TIntDoubleHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
-import gnu.trove.set.hash.TIntHashSet;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
-import java.util.Iterator;
 
 import javax.xml.stream.XMLStreamException;
 
@@ -39,28 +37,16 @@ import edu.utah.ece.async.ibiosim.dataModels.util.MutableBoolean;
 public class SimulatorSSACR extends Simulator
 {
 
-	// allows for access to a group number from a reaction ID
-	private TObjectIntHashMap<String>	reactionToGroupMap				= null;
+	// allows for access to a reaction's index from a reaction ID and back
+	// with a compiled model, a reaction has the same index in both
+	private TObjectIntHashMap<String>	reactionToIndexMap				= null;
+	private ArrayList<String>			indexToReactionList				= null;
 
-	// allows for access to a group's min/max propensity from a group ID
-	private TIntDoubleHashMap			groupToMaxValueMap				= null;
+	// whether stoichiometry amplification scales a reaction's propensity
+	private boolean[]					reactionIsAmplified				= null;
 
-	// allows for access to the minimum/maximum possible propensity in the group
-	// from a group ID
-	private TIntDoubleHashMap			groupToPropensityFloorMap		= null;
-	private TIntDoubleHashMap			groupToPropensityCeilingMap		= null;
-
-	// allows for access to the reactionIDs in a group from a group ID
-	private ArrayList<HashSet<String>>	groupToReactionSetList			= null;
-
-	// allows for access to the group's total propensity from a group ID
-	private TIntDoubleHashMap			groupToTotalGroupPropensityMap	= null;
-
-	// stores group numbers that are nonempty
-	private TIntHashSet					nonemptyGroupSet				= null;
-
-	// number of groups including the empty groups and zero-propensity group
-	private int							numGroups						= 0;
+	// the reactions' groups and propensities by reaction index
+	private ReactionGroups				groups							= null;
 
 	private static Long					initializationTime				= new Long(0);
 
@@ -253,25 +239,30 @@ public class SimulatorSSACR extends Simulator
 			{
 
 				// STEP 2B: calculate rate rules using this time step
-				HashSet<String> affectedVariables = performRateRules(delta_t);
-
-				// update stuff based on the rate rules altering values
-				for (String affectedVariable : affectedVariables)
+				// (a compiled model has no rate rules)
+				if (compiledModel == null)
 				{
 
-					if (speciesToAffectedReactionSetMap != null && speciesToAffectedReactionSetMap.containsKey(affectedVariable))
-					{
-						updatePropensities(speciesToAffectedReactionSetMap.get(affectedVariable));
-					}
+					HashSet<String> affectedVariables = performRateRules(delta_t);
 
-					if (variableToAffectedAssignmentRuleSetMap != null && variableToAffectedAssignmentRuleSetMap.containsKey(affectedVariable))
+					// update stuff based on the rate rules altering values
+					for (String affectedVariable : affectedVariables)
 					{
-						performAssignmentRules(variableToAffectedAssignmentRuleSetMap.get(affectedVariable));
-					}
 
-					if (variableToAffectedConstraintSetMap != null && variableToAffectedConstraintSetMap.containsKey(affectedVariable))
-					{
-						testConstraints(variableToAffectedConstraintSetMap.get(affectedVariable));
+						if (speciesToAffectedReactionSetMap != null && speciesToAffectedReactionSetMap.containsKey(affectedVariable))
+						{
+							updatePropensities(speciesToAffectedReactionSetMap.get(affectedVariable));
+						}
+
+						if (variableToAffectedAssignmentRuleSetMap != null && variableToAffectedAssignmentRuleSetMap.containsKey(affectedVariable))
+						{
+							performAssignmentRules(variableToAffectedAssignmentRuleSetMap.get(affectedVariable));
+						}
+
+						if (variableToAffectedConstraintSetMap != null && variableToAffectedConstraintSetMap.containsKey(affectedVariable))
+						{
+							testConstraints(variableToAffectedConstraintSetMap.get(affectedVariable));
+						}
 					}
 				}
 
@@ -279,24 +270,32 @@ public class SimulatorSSACR extends Simulator
 
 				// long step3aInitial = System.nanoTime();
 
-				int selectedGroup = selectGroup(r2);
+				int selectedGroup = groups.selectGroup(r2);
 
 				// step3aTime += System.nanoTime() - step3aInitial;
 
-				// if it's zero that means there aren't any reactions to fire
-				if (selectedGroup != 0)
+				// if it's negative that means there aren't any reactions to fire
+				if (selectedGroup >= 0)
 				{
 
 					// STEP 3B: select a reaction within the group
 
 					// long step3bInitial = System.nanoTime();
 
-					String selectedReactionID = selectReaction(selectedGroup, r3, r4);
+					int selectedReaction = groups.selectReaction(selectedGroup, r3, r4, randomNumberGenerator);
 
 					// step3bTime += System.nanoTime() - step3bInitial;
 
-					// System.err.println(selectedReactionID + "  " +
-					// reactionToPropensityMap.get(selectedReactionID));
+					if (compiledModel != null)
+					{
+						performCompiledReaction(selectedReaction);
+
+						printTime = print(printTime);
+
+						continue;
+					}
+
+					String selectedReactionID = indexToReactionList.get(selectedReaction);
 
 					// STEP 4: perform selected reaction and update species
 					// counts
@@ -307,8 +306,9 @@ public class SimulatorSSACR extends Simulator
 
 					// step4Time += System.nanoTime() - step4Initial;
 
-					// STEP 5: compute affected reactions' new propensities and
-					// update total propensity
+					// STEP 5: compute affected reactions' new propensities,
+					// update total propensity and re-assign them to the
+					// appropriate groups
 
 					// long step5Initial = System.nanoTime();
 
@@ -316,28 +316,9 @@ public class SimulatorSSACR extends Simulator
 					// selected reaction's species affect
 					HashSet<String> affectedReactionSet = getAffectedReactionSet(selectedReactionID, noAssignmentRulesFlag);
 
-					boolean newMinPropensityFlag = updatePropensities(affectedReactionSet);
+					updatePropensities(affectedReactionSet);
 
 					// step5Time += System.nanoTime() - step5Initial;
-
-					// STEP 6: re-assign affected reactions to appropriate
-					// groups
-
-					// long step6Initial = System.nanoTime();
-
-					// if there's a new minPropensity, then the group boundaries
-					// change
-					// so re-calculate all groups
-					if (newMinPropensityFlag == true)
-					{
-						reassignAllReactionsToGroups();
-					}
-					else
-					{
-						updateGroups(affectedReactionSet);
-					}
-
-					// step6Time += System.nanoTime() - step6Initial;
 				}
 
 				if (variableToIsInAssignmentRuleMap != null && variableToIsInAssignmentRuleMap.containsKey("time"))
@@ -359,16 +340,7 @@ public class SimulatorSSACR extends Simulator
 				if (affectedReactionSet.size() > 0)
 				{
 
-					boolean newMinPropensityFlag = updatePropensities(affectedReactionSet);
-
-					if (newMinPropensityFlag == true)
-					{
-						reassignAllReactionsToGroups();
-					}
-					else
-					{
-						updateGroups(affectedReactionSet);
-					}
+					updatePropensities(affectedReactionSet);
 				}
 
 				performRateRules(currentTime - oldTime);
@@ -455,13 +427,8 @@ public class SimulatorSSACR extends Simulator
 	public void initialize(long randomSeed, int runNumber) throws IOException
 	{
 
-		reactionToGroupMap = new TObjectIntHashMap<String>((int) (numReactions * 1.5));
-		groupToMaxValueMap = new TIntDoubleHashMap();
-		groupToPropensityFloorMap = new TIntDoubleHashMap();
-		groupToPropensityCeilingMap = new TIntDoubleHashMap();
-		groupToReactionSetList = new ArrayList<HashSet<String>>();
-		groupToTotalGroupPropensityMap = new TIntDoubleHashMap();
-		nonemptyGroupSet = new TIntHashSet();
+		reactionToIndexMap = new TObjectIntHashMap<String>((int) (numReactions * 1.5));
+		indexToReactionList = new ArrayList<String>((int) numReactions);
 
 		eventsFlag = new MutableBoolean(false);
 		rulesFlag = new MutableBoolean(false);
@@ -504,10 +471,13 @@ public class SimulatorSSACR extends Simulator
 		// STEP 0A: calculate initial propensities (including the total)
 		setupReactions();
 
+		setupEvents();
+
+		compiledModel = CompiledModel.compile(this);
+
 		// STEP OB: create and populate initial groups
 		createAndPopulateInitialGroups();
 
-		setupEvents();
 		setupForOutput(randomSeed, runNumber);
 
 		if (dynamicBoolean == true)
@@ -570,81 +540,39 @@ public class SimulatorSSACR extends Simulator
 	}
 
 	/**
-	 * creates the appropriate number of groups and associates reactions with
-	 * groups
+	 * creates the groups and associates reactions with groups
 	 */
 	private void createAndPopulateInitialGroups()
 	{
 
-		// create groups
-		int currentGroup = 1;
-		double groupPropensityCeiling = 2 * minPropensity;
-
-		groupToPropensityFloorMap.put(1, minPropensity);
-
-		while (groupPropensityCeiling < maxPropensity)
-		{
-
-			groupToPropensityCeilingMap.put(currentGroup, groupPropensityCeiling);
-			groupToPropensityFloorMap.put(currentGroup + 1, groupPropensityCeiling);
-			groupToMaxValueMap.put(currentGroup, 0.0);
-
-			groupPropensityCeiling *= 2;
-			++currentGroup;
-		}
-
-		// if there are no non-zero groups
-		if (minPropensity == 0)
-		{
-
-			numGroups = 1;
-			groupToReactionSetList.add(new HashSet<String>(500));
-		}
-		else
-		{
-
-			numGroups = currentGroup + 1;
-
-			groupToPropensityCeilingMap.put(currentGroup, groupPropensityCeiling);
-			groupToMaxValueMap.put(currentGroup, 0.0);
-
-			// start at 0 to make a group for zero propensities
-			for (int groupNum = 0; groupNum < numGroups; ++groupNum)
-			{
+		int numReactionIndices = Math.max(reactionToPropensityMap.size(), 1);
 
-				groupToReactionSetList.add(new HashSet<String>(500));
-				groupToTotalGroupPropensityMap.put(groupNum, 0.0);
-			}
-		}
+		reactionToIndexMap.clear();
+		indexToReactionList.clear();
+		reactionIsAmplified = new boolean[numReactionIndices];
+		groups = new ReactionGroups(numReactionIndices);
 
 		// assign reactions to groups
-		for (String reaction : reactionToPropensityMap.keySet())
+		// indices are given in the compiled model's order, so the selected
+		// reaction can be fired without looking up its ID
+		if (compiledModel != null)
 		{
 
-			double propensity = reactionToPropensityMap.get(reaction);
-			int group = Math.getExponent((float) (propensity / minPropensity));
+			for (int i = 0; i < compiledModel.getNumReactions(); ++i)
+			{
 
-			groupToTotalGroupPropensityMap.adjustValue(group, propensity);
-			groupToReactionSetList.get(group).add(reaction);
-			reactionToGroupMap.put(reaction, group);
+				String reaction = compiledModel.getReactionID(i);
 
-			if (propensity > groupToMaxValueMap.get(group))
-			{
-				groupToMaxValueMap.put(group, propensity);
+				groups.update(getReactionIndex(reaction), reactionToPropensityMap.get(reaction));
 			}
 		}
-
-		// find out which (if any) groups are empty
-		// this is done so that empty groups are never chosen during simulation
-		for (int groupNum = 1; groupNum < numGroups; ++groupNum)
+		else
 		{
 
-			if (groupToReactionSetList.get(groupNum).isEmpty())
+			for (String reaction : reactionToPropensityMap.keySet())
 			{
-				continue;
+				groups.update(getReactionIndex(reaction), reactionToPropensityMap.get(reaction));
 			}
-
-			nonemptyGroupSet.add(groupNum);
 		}
 	}
 
@@ -665,6 +593,7 @@ public class SimulatorSSACR extends Simulator
 	public void clear()
 	{
 
+		compiledModel = null;
 		variableToValueMap.clear();
 		reactionToPropensityMap.clear();
 
@@ -677,14 +606,9 @@ public class SimulatorSSACR extends Simulator
 			eventToDelayMap.clear();
 		}
 
-		reactionToGroupMap.clear();
+		reactionToIndexMap.clear();
+		indexToReactionList.clear();
 		reactionToFormulaMap.clear();
-		groupToMaxValueMap.clear();
-		groupToPropensityFloorMap.clear();
-		groupToPropensityCeilingMap.clear();
-		groupToReactionSetList.clear();
-		groupToTotalGroupPropensityMap.clear();
-		nonemptyGroupSet.clear();
 		speciesIDSet.clear();
 		componentToLocationMap.clear();
 		componentToReactionSetMap.clear();
@@ -707,8 +631,8 @@ public class SimulatorSSACR extends Simulator
 	}
 
 	/**
-	 * removes a component's reactions from reactionToGroupMap and
-	 * groupToReactionSetList
+	 * removes a component's reactions from reactionToIndexMap and from their
+	 * groups
 	 */
 	@Override
 	protected void eraseComponentFurther(HashSet<String> reactionIDs)
@@ -717,224 +641,28 @@ public class SimulatorSSACR extends Simulator
 		for (String reactionID : reactionIDs)
 		{
 
-			int group = reactionToGroupMap.get(reactionID);
-			reactionToGroupMap.remove(reactionID);
-			groupToReactionSetList.get(group).remove(reactionID);
+			if (reactionToIndexMap.containsKey(reactionID))
+			{
+				groups.remove(reactionToIndexMap.remove(reactionID));
+			}
 		}
 	}
 
 	/**
-	 * assigns all reactions to (possibly new) groups this is called when the
-	 * minPropensity changes, which changes the groups' floor/ceiling propensity
-	 * values
+	 * assigns all reactions to groups from scratch this is called after dynamic
+	 * changes, which add and remove reactions
 	 */
 	private void reassignAllReactionsToGroups()
 	{
 
-		int currentGroup = 1;
-		double groupPropensityCeiling = 2 * minPropensity;
-
-		// re-calulate and store group propensity floors/ceilings
-		groupToPropensityCeilingMap.clear();
-		groupToPropensityFloorMap.clear();
-		groupToPropensityFloorMap.put(1, minPropensity);
-
-		while (groupPropensityCeiling <= maxPropensity)
-		{
-
-			groupToPropensityCeilingMap.put(currentGroup, groupPropensityCeiling);
-			groupToPropensityFloorMap.put(currentGroup + 1, groupPropensityCeiling);
-
-			groupPropensityCeiling *= 2;
-			++currentGroup;
-		}
-
-		groupToPropensityCeilingMap.put(currentGroup, groupPropensityCeiling);
-		int newNumGroups = currentGroup + 1;
-
-		// allocate memory if the number of groups expands
-		if (newNumGroups > numGroups)
-		{
-
-			for (int groupNum = numGroups; groupNum < newNumGroups; ++groupNum)
-			{
-				groupToReactionSetList.add(new HashSet<String>(500));
-			}
-		}
-
-		// clear the reaction set for each group
-		// start at 1, as the zero propensity group isn't going to change
-		for (int groupNum = 1; groupNum < newNumGroups; ++groupNum)
-		{
-
-			groupToReactionSetList.get(groupNum).clear();
-			groupToMaxValueMap.put(groupNum, 0.0);
-			groupToTotalGroupPropensityMap.put(groupNum, 0.0);
-		}
-
-		numGroups = newNumGroups;
 		totalPropensity = 0;
 
-		// assign reactions to groups
 		for (String reaction : reactionToPropensityMap.keySet())
 		{
-
-			double propensity = reactionToPropensityMap.get(reaction);
-
-			totalPropensity += propensity;
-
-			// the zero-propensity group doesn't need altering
-			if (propensity == 0.0)
-			{
-
-				reactionToGroupMap.put(reaction, 0);
-				groupToReactionSetList.get(0).add(reaction);
-			}
-
-			int group = Math.getExponent((float) (propensity / minPropensity));
-
-			groupToReactionSetList.get(group).add(reaction);
-			reactionToGroupMap.put(reaction, group);
-			groupToTotalGroupPropensityMap.adjustValue(group, propensity);
-
-			if (propensity > groupToMaxValueMap.get(group))
-			{
-				groupToMaxValueMap.put(group, propensity);
-			}
-		}
-
-		// find out which (if any) groups are empty
-		// this is done so that empty groups are never chosen during simulation
-
-		nonemptyGroupSet.clear();
-
-		for (int groupNum = 1; groupNum < numGroups; ++groupNum)
-		{
-
-			if (groupToReactionSetList.get(groupNum).isEmpty())
-			{
-				continue;
-			}
-
-			nonemptyGroupSet.add(groupNum);
-		}
-	}
-
-	/**
-	 * chooses a random number between 0 and the total propensity then it finds
-	 * which nonempty group this number belongs to
-	 * 
-	 * @param r2
-	 *            random number
-	 * @return the group selected
-	 */
-	private int selectGroup(double r2)
-	{
-
-		if (nonemptyGroupSet.size() == 0)
-		{
-			return 0;
-		}
-
-		double randomPropensity = r2 * (totalPropensity);
-		double runningTotalGroupsPropensity = 0.0;
-		int selectedGroup = 1;
-
-		// System.err.println(reactionToGroupMap);
-		//
-		// System.err.println(randomPropensity);
-		// System.err.println(totalPropensity);
-		// System.err.println();
-
-		// finds the group that the random propensity lies in
-		// it keeps adding the next group's total propensity to a running total
-		// until the running total is greater than the random propensity
-		for (; selectedGroup < numGroups; ++selectedGroup)
-		{
-
-			runningTotalGroupsPropensity += groupToTotalGroupPropensityMap.get(selectedGroup);
-
-			// System.err.println(selectedGroup + "  " +
-			// nonemptyGroupSet.contains(selectedGroup)
-			// + "   " + groupToTotalGroupPropensityMap.get(selectedGroup));
-			// System.err.println(runningTotalGroupsPropensity);
-
-			if (randomPropensity < runningTotalGroupsPropensity && nonemptyGroupSet.contains(selectedGroup))
-			{
-				break;
-			}
-		}
-
-		// System.err.println(selectedGroup);
-		// System.err.println();
-
-		// if (selectedGroup == 17)
-		// System.err.println(nonemptyGroupSet);
-
-		return selectedGroup;
-	}
-
-	/**
-	 * from the selected group, a reaction is chosen randomly/uniformly a random
-	 * number between 0 and the group's max propensity is then chosen if this
-	 * number is not less than the chosen reaction's propensity, the reaction is
-	 * rejected and the process is repeated until success occurs
-	 * 
-	 * @param selectedGroup
-	 *            the group to choose a reaction from
-	 * @param r3
-	 * @param r4
-	 * @return the chosen reaction's ID
-	 */
-	private String selectReaction(int selectedGroup, double r3, double r4)
-	{
-
-		HashSet<String> reactionSet = groupToReactionSetList.get(selectedGroup);
-
-		double randomIndex = FastMath.floor(r3 * reactionSet.size());
-		int indexIter = 0;
-		Iterator<String> reactionSetIterator = reactionSet.iterator();
-
-		while (reactionSetIterator.hasNext() && indexIter < randomIndex)
-		{
-
-			reactionSetIterator.next();
-			++indexIter;
-		}
-
-		String selectedReactionID = reactionSetIterator.next();
-		double reactionPropensity = reactionToPropensityMap.get(selectedReactionID);
-
-		// this is choosing a value between 0 and the max propensity in the
-		// group
-		double randomPropensity = r4 * groupToMaxValueMap.get(selectedGroup);
-
-		// loop until there's no reaction rejection
-		// if the random propensity is higher than the selected reaction's
-		// propensity, another random reaction is chosen
-		while (randomPropensity > reactionPropensity)
-		{
-
-			r3 = randomNumberGenerator.nextDouble();
-			r4 = randomNumberGenerator.nextDouble();
-
-			randomIndex = (int) FastMath.floor(r3 * reactionSet.size());
-			indexIter = 0;
-			reactionSetIterator = reactionSet.iterator();
-
-			while (reactionSetIterator.hasNext() && (indexIter < randomIndex))
-			{
-
-				reactionSetIterator.next();
-				++indexIter;
-			}
-
-			selectedReactionID = reactionSetIterator.next();
-			reactionPropensity = reactionToPropensityMap.get(selectedReactionID);
-			randomPropensity = r4 * groupToMaxValueMap.get(selectedGroup);
+			totalPropensity += reactionToPropensityMap.get(reaction);
 		}
 
-		return selectedReactionID;
+		createAndPopulateInitialGroups();
 	}
 
 	/**
@@ -959,7 +687,6 @@ public class SimulatorSSACR extends Simulator
 		setupConstraints();
 
 		totalPropensity = 0.0;
-		numGroups = 0;
 		minPropensity = Double.MAX_VALUE;
 		maxPropensity = Double.MIN_VALUE;
 
@@ -993,10 +720,13 @@ public class SimulatorSSACR extends Simulator
 		// STEP 0A: calculate initial propensities (including the total)
 		setupReactions();
 
+		setupEvents();
+
+		compiledModel = CompiledModel.compile(this);
+
 		// STEP OB: create and populate initial groups
 		createAndPopulateInitialGroups();
 
-		setupEvents();
 		setupForOutput(0, newRun);
 
 		if (dynamicBoolean == true)
@@ -1017,150 +747,47 @@ public class SimulatorSSACR extends Simulator
 	}
 
 	/**
-	 * updates the groups of the reactions affected by the recently performed
-	 * reaction ReassignAllReactionsToGroups() is called instead when all
-	 * reactions need changing
+	 * gets the index of a reaction, giving it a new index (in no group) if it
+	 * doesn't have one yet
 	 * 
-	 * @param affectedReactionSet
-	 *            the set of reactions affected by the recently performed
-	 *            reaction
+	 * @param reactionID
+	 *            the reaction
+	 * @return the reaction's index
 	 */
-	private void updateGroups(HashSet<String> affectedReactionSet)
+	private int getReactionIndex(String reactionID)
 	{
 
-		// update the groups for all of the affected reactions
-		// their propensities have changed and they may need to go into a
-		// different group
-		for (String affectedReactionID : affectedReactionSet)
+		if (reactionToIndexMap.containsKey(reactionID))
 		{
+			return reactionToIndexMap.get(reactionID);
+		}
 
-			double newPropensity = reactionToPropensityMap.get(affectedReactionID);
-			int oldGroup = reactionToGroupMap.get(affectedReactionID);
-
-			if (newPropensity == 0.0)
-			{
-
-				HashSet<String> oldReactionSet = groupToReactionSetList.get(oldGroup);
-
-				// update group collections
-				// zero propensities go into group 0
-				oldReactionSet.remove(affectedReactionID);
-				reactionToGroupMap.put(affectedReactionID, 0);
-				groupToReactionSetList.get(0).add(affectedReactionID);
-
-				if (oldReactionSet.size() == 0)
-				{
-					nonemptyGroupSet.remove(oldGroup);
-				}
-			}
-			// if the new propensity != 0.0 (ie, new group != 0)
-			else
-			{
-				// if it's outside of the old group's boundaries
-				if (newPropensity > groupToPropensityCeilingMap.get(oldGroup) || newPropensity < groupToPropensityFloorMap.get(oldGroup))
-				{
-
-					int group = Math.getExponent(newPropensity / minPropensity);
-
-					// if the group is one that currently exists
-					if (group < numGroups)
-					{
-
-						HashSet<String> newGroupReactionSet = groupToReactionSetList.get(group);
-						HashSet<String> oldGroupReactionSet = groupToReactionSetList.get(oldGroup);
-
-						// update group collections
-						oldGroupReactionSet.remove(affectedReactionID);
-						reactionToGroupMap.put(affectedReactionID, group);
-						newGroupReactionSet.add(affectedReactionID);
-						groupToTotalGroupPropensityMap.adjustValue(group, newPropensity);
-
-						// if the group that the reaction was just added to is
-						// now nonempty
-						if (newGroupReactionSet.size() == 1)
-						{
-							nonemptyGroupSet.add(group);
-						}
-
-						if (oldGroupReactionSet.size() == 0)
-						{
-							nonemptyGroupSet.remove(oldGroup);
-						}
-
-						if (newPropensity > groupToMaxValueMap.get(group))
-						{
-							groupToMaxValueMap.put(group, newPropensity);
-						}
-					}
-					// this means the propensity goes into a group that doesn't
-					// currently exist
-					else
-					{
-
-						// groupToReactionSetList is a list, so the group needs
-						// to be the index
-						for (int iter = numGroups; iter <= group; ++iter)
-						{
-
-							if (iter >= groupToReactionSetList.size())
-							{
-								groupToReactionSetList.add(new HashSet<String>(500));
-							}
-
-							groupToTotalGroupPropensityMap.put(iter, 0.0);
-						}
-
-						numGroups = group + 1;
-
-						HashSet<String> oldReactionSet = groupToReactionSetList.get(oldGroup);
-
-						// update group collections
-						groupToTotalGroupPropensityMap.adjustValue(group, newPropensity);
-						groupToReactionSetList.get(oldGroup).remove(affectedReactionID);
-						reactionToGroupMap.put(affectedReactionID, group);
-						groupToReactionSetList.get(group).add(affectedReactionID);
-						nonemptyGroupSet.add(group);
-						groupToMaxValueMap.put(group, newPropensity);
-
-						if (oldReactionSet.size() == 0)
-						{
-							nonemptyGroupSet.remove(oldGroup);
-						}
-					}
-				}
-				// if it's within the old group's boundaries (ie, group isn't
-				// changing)
-				else
-				{
+		int reaction = indexToReactionList.size();
 
-					// maintain current group
+		if (reaction == reactionIsAmplified.length)
+		{
+			reactionIsAmplified = Arrays.copyOf(reactionIsAmplified, 2 * reaction);
+		}
 
-					if (newPropensity > groupToMaxValueMap.get(oldGroup))
-					{
-						groupToMaxValueMap.put(oldGroup, newPropensity);
-					}
+		reactionToIndexMap.put(reactionID, reaction);
+		indexToReactionList.add(reactionID);
+		reactionIsAmplified[reaction] = reactionID.contains("_Diffusion_") && stoichAmpBoolean == true;
+		groups.addReaction(reaction);
 
-					groupToTotalGroupPropensityMap.adjustValue(oldGroup, newPropensity);
-				}
-			}
-		}
+		return reaction;
 	}
 
 	/**
-	 * updates the propensities of the reactions affected by the recently
-	 * performed reaction
+	 * updates the propensities and groups of the reactions affected by the
+	 * recently performed reaction
 	 * 
 	 * @param affectedReactionSet
 	 *            the set of reactions affected by the recently performed
 	 *            reaction
-	 * @return whether or not there's a new minPropensity (if there is, all
-	 *         reaction's groups need to change)
 	 */
-	private boolean updatePropensities(HashSet<String> affectedReactionSet)
+	private void updatePropensities(HashSet<String> affectedReactionSet)
 	{
 
-		boolean newMinPropensityFlag = false;
-
 		// loop through the affected reactions and update the propensities
 		for (String affectedReactionID : affectedReactionSet)
 		{
@@ -1196,54 +823,83 @@ public class SimulatorSSACR extends Simulator
 				newPropensity = evaluateExpressionRecursive(reactionToFormulaMap.get(affectedReactionID));
 			}
 
-			// stoichiometry amplification -- alter the propensity
-			if (affectedReactionID.contains("_Diffusion_") && stoichAmpBoolean == true)
-			{
-				newPropensity *= (1.0 / stoichAmpGridValue);
-			}
+			int reaction = getReactionIndex(affectedReactionID);
 
-			if (newPropensity > 0.0 && newPropensity < minPropensity)
-			{
+			updatePropensity(reaction, newPropensity);
 
-				minPropensity = newPropensity;
-				newMinPropensityFlag = true;
-			}
+			// expressions can refer to a reaction's propensity by its ID
+			reactionToPropensityMap.put(affectedReactionID, groups.getPropensity(reaction));
+		}
+	}
 
-			if (newPropensity > maxPropensity)
-			{
-				maxPropensity = newPropensity;
-			}
+	/**
+	 * stores the new propensity of a reaction, updates the total propensity
+	 * and moves the reaction to a different group if needed
+	 * 
+	 * @param reaction
+	 *            the reaction index
+	 * @param newPropensity
+	 *            the newly computed propensity
+	 */
+	private void updatePropensity(int reaction, double newPropensity)
+	{
 
-			double oldPropensity = reactionToPropensityMap.get(affectedReactionID);
-			int oldGroup = reactionToGroupMap.get(affectedReactionID);
+		// stoichiometry amplification -- alter the propensity
+		if (reactionIsAmplified[reaction] == true)
+		{
+			newPropensity *= (1.0 / stoichAmpGridValue);
+		}
 
-			// if (oldGroup == 15) {
-			//
-			// if (newPropensity == 0)
-			// System.err.println(affectedReactionID + "  NOW IS ZERO");
-			//
-			// if (oldPropensity == 0)
-			// System.err.println(affectedReactionID +
-			// "  still has propensity zero");
-			//
-			// System.err.println("oldgroup: " + oldGroup);
-			// System.err.println(groupToTotalGroupPropensityMap.get(oldGroup) +
-			// " - " + oldPropensity);
-			// }
+		// add the difference of new v. old propensity to the total
+		// propensity
+		totalPropensity += newPropensity - groups.getPropensity(reaction);
+
+		groups.update(reaction, newPropensity);
+	}
+
+	/**
+	 * performs a reaction using the compiled model, then updates the
+	 * propensities and groups of the affected reactions
+	 * 
+	 * @param selectedReaction
+	 *            the index of the reaction to perform
+	 */
+	private void performCompiledReaction(int selectedReaction)
+	{
 
-			// remove the old propensity from the group's total
-			// later on, the new propensity is added to the (possibly new)
-			// group's total
-			groupToTotalGroupPropensityMap.adjustValue(oldGroup, -oldPropensity);
+		compiledModel.fireReaction(selectedReaction);
+		compiledModel.setTime(currentTime);
 
-			// add the difference of new v. old propensity to the total
-			// propensity
-			totalPropensity += newPropensity - oldPropensity;
+		int[] dependencyPointers = compiledModel.getDependencyPointers();
+		int[] dependencies = compiledModel.getDependencies();
 
-			reactionToPropensityMap.put(affectedReactionID, newPropensity);
+		for (int k = dependencyPointers[selectedReaction]; k < dependencyPointers[selectedReaction + 1]; ++k)
+		{
+
+			int affectedReaction = dependencies[k];
+
+			updatePropensity(affectedReaction, compiledModel.computePropensity(affectedReaction));
+		}
+	}
+
+	/**
+	 * copies the propensities of a compiled model's reactions back into the
+	 * propensity map before the species states are printed
+	 */
+	@Override
+	protected void printToTSD(double printTime) throws IOException
+	{
+
+		if (compiledModel != null)
+		{
+
+			for (int reaction = 0; reaction < indexToReactionList.size(); ++reaction)
+			{
+				reactionToPropensityMap.put(indexToReactionList.get(reaction), groups.getPropensity(reaction));
+			}
 		}
 
-		return newMinPropensityFlag;
+		super.printToTSD(printTime);
 	}
 
 	private double print(double printTime)
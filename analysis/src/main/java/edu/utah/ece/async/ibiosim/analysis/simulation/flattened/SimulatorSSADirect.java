@@ -42,6 +42,16 @@ public class SimulatorSSADirect extends Simulator
 	private double		currentStep;
 	private double		numSteps;
 
+	// set instead of the compiled model for grid models with diffusion
+	private NextSubvolumeMethod	nextSubvolumeMethod	= null;
+
+	// the arrayed reactions, if they are simulated without being expanded
+	private ArrayedReactions	arrayedReactions	= null;
+
+	// set for dynamic models whose components are cells that divide, die and
+	// move, which then fire their own events
+	private CellPopulation		cellPopulation		= null;
+
 	public SimulatorSSADirect(String SBMLFileName, String outputDirectory, int runs, double timeLimit, double maxTimeStep, double minTimeStep, long randomSeed, double printInterval, double stoichAmpValue, String[] interestingSpecies, String quantityType)
 			throws IOException
 	{
@@ -62,7 +72,7 @@ public class SimulatorSSADirect extends Simulator
 
 		long initTime2 = System.nanoTime();
 
-		final boolean noEventsFlag = (Boolean) eventsFlag.getValue();
+		final boolean noEventsFlag = cellPopulation != null || (Boolean) eventsFlag.getValue();
 		final boolean noAssignmentRulesFlag = (Boolean) rulesFlag.getValue();
 		final boolean noConstraintsFlag = (Boolean) constraintsFlag.getValue();
 
@@ -76,6 +86,13 @@ public class SimulatorSSADirect extends Simulator
 		numSteps = (int) (timeLimit / printInterval);
 		currentStep = 0;
 
+		if (cellPopulation != null)
+		{
+
+			cellPopulation.initialize(currentTime, randomNumberGenerator);
+			cellPopulation.simulate(currentTime);
+		}
+
 		// add events to queue if they trigger
 		if (noEventsFlag == false)
 		{
@@ -92,6 +109,36 @@ public class SimulatorSSADirect extends Simulator
 
 		printTime = print(printTime);
 
+		// grid models run voxel by voxel until each print time
+		if (nextSubvolumeMethod != null)
+		{
+
+			nextSubvolumeMethod.initialize(currentTime, randomNumberGenerator);
+
+			while (currentTime < timeLimit && cancelFlag == false)
+			{
+
+				currentTime = Math.min(printTime, timeLimit);
+				nextSubvolumeMethod.simulate(currentTime);
+
+				printTime = print(printTime);
+			}
+		}
+
+		// cell populations run cell by cell until each print time
+		if (cellPopulation != null)
+		{
+
+			while (currentTime < timeLimit && cancelFlag == false)
+			{
+
+				currentTime = Math.min(printTime, timeLimit);
+				cellPopulation.simulate(currentTime);
+
+				printTime = print(printTime);
+			}
+		}
+
 		while (currentTime < timeLimit && cancelFlag == false)
 		{
 
@@ -151,9 +198,16 @@ public class SimulatorSSADirect extends Simulator
 
 			if (currentTime == nextReactionTime)
 			{
-				performReaction(r2, noAssignmentRulesFlag, noConstraintsFlag);
+				if (compiledModel != null)
+				{
+					performCompiledReaction(r2);
+				}
+				else
+				{
+					performReaction(r2, noAssignmentRulesFlag, noConstraintsFlag);
 
-				performRateRules(currentTime - oldTime);
+					performRateRules(currentTime - oldTime);
+				}
 
 				printTime = print(printTime);
 			}
@@ -228,7 +282,9 @@ public class SimulatorSSADirect extends Simulator
 	public void initialize(long randomSeed, int runNumber) throws IOException
 	{
 
-		setupArrays();
+		arrayedReactions = ArrayedReactions.parse(this);
+
+		setupArrays(arrayedReactions == null);
 		setupSpecies();
 		setupParameters();
 		setupRules();
@@ -270,6 +326,9 @@ public class SimulatorSSADirect extends Simulator
 		setupReactions();
 		setupEvents();
 
+		nextSubvolumeMethod = arrayedReactions == null ? NextSubvolumeMethod.compile(this) : arrayedReactions.instantiate(this);
+		compiledModel = nextSubvolumeMethod == null ? CompiledModel.compile(this) : null;
+
 		setupForOutput(randomSeed, runNumber);
 
 		if (dynamicBoolean == true)
@@ -277,6 +336,9 @@ public class SimulatorSSADirect extends Simulator
 
 			setupGrid();
 			createModelCopy();
+
+			cellPopulation = CellPopulation.compile(this);
+			compiledModel = cellPopulation == null ? compiledModel : null;
 		}
 
 		if (dynamicBoolean == false)
@@ -384,6 +446,64 @@ public class SimulatorSSADirect extends Simulator
 		}
 	}
 
+	/**
+	 * selects and performs a reaction using the compiled model, then updates
+	 * the propensities of the affected reactions
+	 * 
+	 * @param r2
+	 *            random number
+	 */
+	private void performCompiledReaction(double r2)
+	{
+
+		int selectedReaction = compiledModel.selectReaction(r2 * totalPropensity);
+
+		// if it's negative then there aren't any reactions
+		if (selectedReaction < 0)
+		{
+			return;
+		}
+
+		compiledModel.fireReaction(selectedReaction);
+		compiledModel.setTime(currentTime);
+
+		int[] dependencyPointers = compiledModel.getDependencyPointers();
+		int[] dependencies = compiledModel.getDependencies();
+
+		for (int k = dependencyPointers[selectedReaction]; k < dependencyPointers[selectedReaction + 1]; ++k)
+		{
+
+			int affectedReaction = dependencies[k];
+			double newPropensity = compiledModel.computePropensity(affectedReaction);
+
+			// add the difference of new v. old propensity to the total
+			// propensity
+			totalPropensity += newPropensity - compiledModel.getPropensity(affectedReaction);
+
+			compiledModel.setPropensity(affectedReaction, newPropensity);
+		}
+	}
+
+	/**
+	 * copies the grid species and the cells back into the variable map before
+	 * the species states are printed
+	 */
+	@Override
+	protected void printToTSD(double printTime) throws IOException
+	{
+
+		if (nextSubvolumeMethod != null)
+		{
+			nextSubvolumeMethod.writeValues(this);
+		}
+		if (cellPopulation != null)
+		{
+			cellPopulation.writeValues();
+		}
+
+		super.printToTSD(printTime);
+	}
+
 	private double print(double printTime)
 	{
 		while (currentTime >= printTime && printTime < timeLimit)
@@ -512,6 +632,9 @@ public class SimulatorSSADirect extends Simulator
 	public void clear()
 	{
 
+		compiledModel = null;
+		nextSubvolumeMethod = null;
+		cellPopulation = null;
 		variableToValueMap.clear();
 		reactionToPropensityMap.clear();
 
@@ -600,12 +723,18 @@ public class SimulatorSSADirect extends Simulator
 		// STEP 0A: calculate initial propensities (including the total)
 		setupReactions();
 		setupEvents();
+
+		nextSubvolumeMethod = arrayedReactions == null ? NextSubvolumeMethod.compile(this) : arrayedReactions.instantiate(this);
+		compiledModel = nextSubvolumeMethod == null ? CompiledModel.compile(this) : null;
 		setupForOutput(0, newRun);
 
 		if (dynamicBoolean == true)
 		{
 
 			setupGrid();
+
+			cellPopulation = CellPopulation.compile(this);
+			compiledModel = cellPopulation == null ? compiledModel : null;
 		}
 	}
 
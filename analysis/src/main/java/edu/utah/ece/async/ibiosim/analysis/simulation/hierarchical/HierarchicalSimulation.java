@@ -26,6 +26,8 @@ import javax.xml.stream.XMLStreamException;
 import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
 import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
 import edu.utah.ece.async.ibiosim.analysis.simulation.AbstractSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io.AsyncHierarchicalWriter;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io.HierarchicalBinaryWriter;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io.HierarchicalTSDWriter;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io.HierarchicalWriter;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ConstraintNode;
@@ -35,8 +37,10 @@ import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Hierarch
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState.StateType;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.EventDependencyGraph.EventChannel;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.SpeciesConcentration;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.TriggeredEvent;
+import edu.utah.ece.async.ibiosim.dataModels.graphData.GraphData;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 
 /**
@@ -55,12 +59,18 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     FBA, HODE, HSSA, MIXED, NONE;
   }
 
+  /**
+   * Increment used to derive the seed of each run from the user seed.
+   */
+  private static final long RUN_SEED_INCREMENT = 0x9E3779B97F4A7C15L;
+
   final private StateType atomicType;
   private int currentRun;
   final private StateType parentType;
   private final Random randomNumberGenerator;
   final private SimType type;
   private HierarchicalWriter writer;
+  private String outputExtension;
 
   protected boolean computeRateOfChange;
   protected boolean cancel;
@@ -108,7 +118,13 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     this.hasEvents = false;
     this.currentRun = 1;
     this.randomNumberGenerator = new Random(simProperties.getRndSeed());
-    this.writer = new HierarchicalTSDWriter();
+    if (GraphData.BTSD_DATA_TYPE.equals(simProperties.getPrinter_id())) {
+      this.writer = new AsyncHierarchicalWriter(new HierarchicalBinaryWriter());
+      this.outputExtension = ".btsd";
+    } else {
+      this.writer = new AsyncHierarchicalWriter(new HierarchicalTSDWriter());
+      this.outputExtension = ".tsd";
+    }
     this.computeRateOfChange = false;
   }
 
@@ -205,6 +221,20 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     return this.parentType;
   }
 
+  /**
+   * Gets the random seed of a given run. Each run has its own random stream that only depends on the user seed and
+   * the run index, so a run produces the same results regardless of the order or the thread it is simulated on.
+   *
+   * @param seed
+   *          - the user seed.
+   * @param run
+   *          - the run index.
+   * @return the seed for the run.
+   */
+  public static long getRunSeed(long seed, int run) {
+    return seed + (run - 1) * RUN_SEED_INCREMENT;
+  }
+
   /**
    * Gets the current simulation time.
    *
@@ -348,25 +378,43 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
     for (HierarchicalModel model : modules) {
       int index = model.getIndex();
       for (EventNode event : model.getListOfEvents()) {
-        for (HierarchicalNode subEvent : event) {
-          if (!event.isDeleted(index) && event.isTriggeredAtTime(time, index)) {
-            event.setMaxDisabledTime(index, Double.NEGATIVE_INFINITY);
-            event.setMinEnabledTime(index, Double.POSITIVE_INFINITY);
-            double fireTime = currentTime.getState().getValue() + event.evaluateFireTime(index);
-            TriggeredEvent triggered = new TriggeredEvent(index, fireTime, event);
-            triggered.setPriority(event.evaluatePriority(index));
-            if (event.getState().getChild(index).isUseTriggerValue()) {
-              double[] eventAssignments = event.computeEventAssignmentValues(index);
-              if (eventAssignments != null) {
-                triggered.setAssignmentValues(eventAssignments);
-              }
+        checkEvent(event, index, time);
+      }
+    }
+  }
 
-            }
-            triggeredEventList.add(triggered);
-            if (!event.getState().getChild(index).isPersistent()) {
-              event.addTriggeredEvent(index, triggered);
-            }
+  /**
+   * Checks only the given events. This is enough when the other triggers cannot have changed since they were last
+   * checked.
+   *
+   * @param listOfEvents
+   *          - the events to check.
+   */
+  protected void checkEvents(List<EventChannel> listOfEvents) {
+    double time = currentTime.getState().getValue();
+    for (EventChannel channel : listOfEvents) {
+      checkEvent(channel.getNode(), channel.getModel().getIndex(), time);
+    }
+  }
+
+  private void checkEvent(EventNode event, int index, double time) {
+    for (HierarchicalNode subEvent : event) {
+      if (!event.isDeleted(index) && event.isTriggeredAtTime(time, index)) {
+        event.setMaxDisabledTime(index, Double.NEGATIVE_INFINITY);
+        event.setMinEnabledTime(index, Double.POSITIVE_INFINITY);
+        double fireTime = currentTime.getState().getValue() + event.evaluateFireTime(index);
+        TriggeredEvent triggered = new TriggeredEvent(index, fireTime, event);
+        triggered.setPriority(event.evaluatePriority(index));
+        if (event.getState().getChild(index).isUseTriggerValue()) {
+          double[] eventAssignments = event.computeEventAssignmentValues(index);
+          if (eventAssignments != null) {
+            triggered.setAssignmentValues(eventAssignments);
           }
+
+        }
+        triggeredEventList.add(triggered);
+        if (!event.getState().getChild(index).isPersistent()) {
+          event.addTriggeredEvent(index, triggered);
         }
       }
     }
@@ -556,11 +604,12 @@ public abstract class HierarchicalSimulation extends AbstractSimulator {
 
   protected void setupForOutput(int currentRun) throws IOException {
     setCurrentRun(currentRun);
+    randomNumberGenerator.setSeed(getRunSeed(properties.getSimulationProperties().getRndSeed(), currentRun));
     String outputDirectory = properties.getOutDir();
     if (outputDirectory.equals(".")) {
       outputDirectory = properties.getDirectory();
     }
-    writer.init(outputDirectory + File.separator + "run-" + currentRun + ".tsd");
+    writer.init(outputDirectory + File.separator + "run-" + currentRun + outputExtension);
 
   }
 
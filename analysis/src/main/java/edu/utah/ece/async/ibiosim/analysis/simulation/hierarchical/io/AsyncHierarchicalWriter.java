@@ -0,0 +1,192 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+
+/**
+ * Writer that takes the values to print on the simulation thread and leaves formatting and file output to a
+ * background thread.
+ *
+ * <p>
+ * Each printed row is copied into one of a fixed number of preallocated rows and handed to the background thread,
+ * which writes the rows with the given writer in the order they were printed. When every row is waiting to be
+ * written, printing blocks until the background thread catches up. Closing the writer waits for the pending rows to be
+ * written, so a cancelled simulation still ends with a complete file. Closing a writer that is not open does nothing.
+ *
+ * <p>
+ * An error in the background thread is reported by the next call to print or close.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class AsyncHierarchicalWriter extends HierarchicalWriter {
+
+  private static final int DEFAULT_CAPACITY = 1024;
+  private static final double[] CLOSE = new double[0];
+
+  private final HierarchicalWriter delegate;
+  private final int capacity;
+  private BlockingQueue<double[]> freeRows;
+  private BlockingQueue<double[]> pendingRows;
+  private Thread thread;
+  private boolean isOpen;
+  private volatile IOException error;
+
+  /**
+   * Creates an asynchronous writer with room for 1024 pending rows.
+   *
+   * @param delegate
+   *          - the writer that formats and writes the rows.
+   */
+  public AsyncHierarchicalWriter(HierarchicalWriter delegate) {
+    this(delegate, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates an asynchronous writer.
+   *
+   * @param delegate
+   *          - the writer that formats and writes the rows.
+   * @param capacity
+   *          - the number of rows that can be waiting to be written.
+   */
+  public AsyncHierarchicalWriter(HierarchicalWriter delegate, int capacity) {
+    super();
+    this.delegate = delegate;
+    this.capacity = capacity;
+  }
+
+  @Override
+  public void init(String filename) throws IOException {
+    if (isOpen) {
+      close();
+    }
+    delegate.init(filename);
+    isOpen = true;
+    error = null;
+
+    int numColumns = delegate.getNumColumns();
+    if (freeRows == null || freeRows.peek().length != numColumns) {
+      freeRows = new ArrayBlockingQueue<>(capacity);
+      pendingRows = new ArrayBlockingQueue<>(capacity + 1);
+      for (int i = 0; i < capacity; i++) {
+        freeRows.add(new double[numColumns]);
+      }
+    }
+
+    thread = new Thread(this::writeRows, "iBioSim output writer");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public void print(double currentTime) throws IOException {
+    double[] row = takeFreeRow();
+    delegate.snapshot(currentTime, row);
+    pendingRows.add(row);
+  }
+
+  @Override
+  protected void printRow(double[] values) throws IOException {
+    double[] row = takeFreeRow();
+    System.arraycopy(values, 0, row, 0, row.length);
+    pendingRows.add(row);
+  }
+
+  @Override
+  protected int getNumColumns() {
+    return delegate.getNumColumns();
+  }
+
+  @Override
+  public void addVariable(String id, HierarchicalNode node, HierarchicalNode compartment, int index) {
+    delegate.addVariable(id, node, compartment, index);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!isOpen) {
+      return;
+    }
+    isOpen = false;
+    if (thread != null) {
+      pendingRows.add(CLOSE);
+      boolean interrupted = false;
+      while (thread.isAlive()) {
+        try {
+          thread.join();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      thread = null;
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    IOException failure = error;
+    try {
+      delegate.close();
+    } catch (IOException e) {
+      if (failure == null) {
+        failure = e;
+      }
+    }
+    if (failure != null) { throw failure; }
+  }
+
+  private double[] takeFreeRow() throws IOException {
+    if (error != null) { throw error; }
+    try {
+      return freeRows.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the output writer.");
+    }
+  }
+
+  private void writeRows() {
+    while (true) {
+      double[] row;
+      try {
+        row = pendingRows.take();
+      } catch (InterruptedException e) {
+        // Keep draining so the simulation thread never waits on rows that are not returned
+        continue;
+      }
+
+      if (row == CLOSE) {
+        break;
+      }
+
+      if (error == null) {
+        try {
+          delegate.printRow(row);
+        } catch (IOException e) {
+          error = e;
+        } catch (RuntimeException e) {
+          error = new IOException(e);
+        }
+      }
+      freeRows.add(row);
+    }
+  }
+}
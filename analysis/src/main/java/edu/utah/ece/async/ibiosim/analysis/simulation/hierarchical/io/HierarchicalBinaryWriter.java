@@ -0,0 +1,163 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.BTSDParser;
+
+/**
+ * Writes simulation results to the binary time-series data format read by {@link BTSDParser}.
+ *
+ * <p>
+ * Rows are collected into blocks of fixed size and each block is written one column after the other as raw float64
+ * or float32 values, so no number is formatted as text.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class HierarchicalBinaryWriter extends HierarchicalWriter {
+
+  private static final int ROWS_PER_BLOCK = 1024;
+
+  private final List<String> header;
+  private final int bytesPerValue;
+  private FileOutputStream stream;
+  private FileChannel channel;
+  private ByteBuffer buffer;
+  private double[] block;
+  private int rows;
+
+  /**
+   * Creates a writer that prints float64 values.
+   */
+  public HierarchicalBinaryWriter() {
+    this(false);
+  }
+
+  /**
+   * Creates a writer.
+   *
+   * @param singlePrecision
+   *          - whether to print float32 instead of float64 values.
+   */
+  public HierarchicalBinaryWriter(boolean singlePrecision) {
+    super();
+    this.header = new ArrayList<>();
+    this.header.add("time");
+    this.bytesPerValue = singlePrecision ? 4 : 8;
+  }
+
+  @Override
+  protected void printRow(double[] row) throws IOException {
+    for (int i = 0; i < row.length; ++i) {
+      block[i * ROWS_PER_BLOCK + rows] = row[i];
+    }
+    rows++;
+    if (rows == ROWS_PER_BLOCK) {
+      writeBlock();
+    }
+  }
+
+  @Override
+  public void addVariable(String id, HierarchicalNode node, HierarchicalNode compartment, int index) {
+    header.add(id);
+    HierarchicalState nodeState = node.getRootState(index);
+    HierarchicalState compartmentState = null;
+    if (compartment != null) {
+      compartmentState = compartment.getState().getChild(index);
+    }
+    addNode(nodeState, compartmentState);
+  }
+
+  @Override
+  public void init(String filename) throws IOException {
+    isSet = true;
+    int numColumns = header.size();
+    if (block == null) {
+      block = new double[numColumns * ROWS_PER_BLOCK];
+      buffer = ByteBuffer.allocate(4 + numColumns * ROWS_PER_BLOCK * bytesPerValue);
+    }
+    rows = 0;
+    stream = new FileOutputStream(filename);
+    channel = stream.getChannel();
+
+    List<byte[]> names = new ArrayList<>();
+    int headerSize = 16;
+    for (String id : header) {
+      byte[] name = id.getBytes(StandardCharsets.UTF_8);
+      names.add(name);
+      headerSize += 4 + name.length;
+    }
+    ByteBuffer headerBuffer = ByteBuffer.allocate(headerSize);
+    headerBuffer.putInt(BTSDParser.MAGIC);
+    headerBuffer.putInt(BTSDParser.VERSION);
+    headerBuffer.putInt(bytesPerValue);
+    headerBuffer.putInt(numColumns);
+    for (byte[] name : names) {
+      headerBuffer.putInt(name.length);
+      headerBuffer.put(name);
+    }
+    headerBuffer.flip();
+    write(headerBuffer);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (stream == null) {
+      return;
+    }
+    try {
+      if (rows > 0) {
+        writeBlock();
+      }
+    } finally {
+      stream.close();
+      stream = null;
+      channel = null;
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    buffer.clear();
+    buffer.putInt(rows);
+    for (int column = 0; column < header.size(); column++) {
+      int start = column * ROWS_PER_BLOCK;
+      for (int row = 0; row < rows; row++) {
+        if (bytesPerValue == 4) {
+          buffer.putFloat((float) block[start + row]);
+        } else {
+          buffer.putDouble(block[start + row]);
+        }
+      }
+    }
+    buffer.flip();
+    write(buffer);
+    rows = 0;
+  }
+
+  private void write(ByteBuffer source) throws IOException {
+    while (source.hasRemaining()) {
+      channel.write(source);
+    }
+  }
+}
@@ -40,12 +40,12 @@ public class HierarchicalCSVWriter extends HierarchicalWriter {
   }
 
   @Override
-  public void print(double currentTime) throws IOException {
+  protected void printRow(double[] row) throws IOException {
     bufferedWriter.write("\n");
-    bufferedWriter.write(String.valueOf(bufferedWriter));
+    bufferedWriter.write(String.valueOf(row[0]));
 
-    for (int i = 0; i < this.listOfStates.size(); ++i) {
-      bufferedWriter.write(String.valueOf(separator) + listOfStates.get(i).toString());
+    for (int i = 1; i < row.length; ++i) {
+      bufferedWriter.write(String.valueOf(separator) + String.valueOf(row[i]));
     }
 
     bufferedWriter.flush();
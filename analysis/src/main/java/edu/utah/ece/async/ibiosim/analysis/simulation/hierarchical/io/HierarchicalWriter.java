@@ -35,6 +35,7 @@ public abstract class HierarchicalWriter {
   protected List<WriterNode> listOfStates;
   protected FileWriter writer;
   protected boolean isSet;
+  private double[] row;
 
   public HierarchicalWriter() {
     listOfStates = new ArrayList<>();
@@ -60,7 +61,47 @@ public abstract class HierarchicalWriter {
    * @throws IOException
    *           - if there is any problem with the output file.
    */
-  public abstract void print(double currentTime) throws IOException;
+  public void print(double currentTime) throws IOException {
+    if (row == null || row.length != getNumColumns()) {
+      row = new double[getNumColumns()];
+    }
+    snapshot(currentTime, row);
+    printRow(row);
+  }
+
+  /**
+   * Writes out a row of values taken with {@link #snapshot(double, double[])}.
+   *
+   * @param row
+   *          - the time followed by the values of the variables.
+   * @throws IOException
+   *           - if there is any problem with the output file.
+   */
+  protected abstract void printRow(double[] row) throws IOException;
+
+  /**
+   * Copies the time and the current values of the variables into a row.
+   *
+   * @param currentTime
+   *          - simulation time.
+   * @param row
+   *          - the row with one entry per column.
+   */
+  protected void snapshot(double currentTime, double[] row) {
+    row[0] = currentTime;
+    for (int i = 0; i < listOfStates.size(); ++i) {
+      row[i + 1] = listOfStates.get(i).getValue();
+    }
+  }
+
+  /**
+   * Gets the number of columns in a row, which is the number of variables plus the time.
+   *
+   * @return the number of columns.
+   */
+  protected int getNumColumns() {
+    return listOfStates.size() + 1;
+  }
 
   /**
    * Adds a variable that should have the values printed out.
@@ -123,15 +164,24 @@ public abstract class HierarchicalWriter {
       this.compartmentState = compartmentState;
     }
 
-    @Override
-    public String toString() {
+    /**
+     * Gets the value to print, which is the concentration when the node has a compartment.
+     *
+     * @return the value of the variable.
+     */
+    public double getValue() {
       double value = state.getValue();
 
       if (compartmentState != null) {
         value = value / compartmentState.getValue();
       }
 
-      return String.valueOf(value);
+      return value;
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(getValue());
     }
   }
 
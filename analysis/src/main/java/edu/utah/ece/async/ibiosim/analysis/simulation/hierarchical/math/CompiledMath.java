@@ -1,5 +1,5 @@
 /*******************************************************************************
- *  
+ *
  * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
  * for the latest version of iBioSim.
  *
@@ -9,42 +9,26 @@
  * under the terms of the Apache License. A copy of the license agreement is provided
  * in the file named "LICENSE.txt" included with this software distribution
  * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
- *  
+ *
  *******************************************************************************/
-package edu.utah.ece.async.ibiosim.analysis.markov;
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math;
 
 /**
- * 
+ * Math that has been compiled by the {@link MathCompiler} into a tree of closures.
  *
- * @author 
- * @author Chris Myers
+ * @author Leandro Watanabe
  * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
  * @version %I%
  */
-public class TransientMarkovMatrixMultiplyThread extends Thread {
-
-	private StateGraph sg;
-
-	private double Gamma, timeLimit;
-
-	private int startIndex, endIndex, K;
-
-	public TransientMarkovMatrixMultiplyThread(StateGraph sg) {
-		super(sg);
-		this.sg = sg;
-	}
-
-	public void start(int startIndex, int endIndex, double Gamma, double timeLimit, int K) {
-		this.timeLimit = timeLimit;
-		this.Gamma = Gamma;
-		this.startIndex = startIndex;
-		this.endIndex = endIndex;
-		this.K = K;
-		super.start();
-	}
+@FunctionalInterface
+public interface CompiledMath {
 
-	@Override
-	public void run() {
-		sg.transientMarkovMatrixMultiplication(startIndex, endIndex, Gamma, timeLimit, K);
-	}
+  /**
+   * Evaluates the math in the scope of a given model index.
+   *
+   * @param index
+   *          - the model index.
+   * @return the value of the math.
+   */
+  double evaluate(int index);
 }
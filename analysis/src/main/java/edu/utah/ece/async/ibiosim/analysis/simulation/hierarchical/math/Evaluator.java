@@ -43,6 +43,15 @@ public final class Evaluator {
    * Evaluates math in the scope of a given model index.
    */
   public static double evaluateExpressionRecursive(HierarchicalNode node, int index) {
+    CompiledMath compiledMath = node.getCompiledMath();
+    if (compiledMath != null) { return compiledMath.evaluate(index); }
+    return interpretExpression(node, index);
+  }
+
+  /**
+   * Evaluates math by walking the tree, without using the compiled math of the given node.
+   */
+  static double interpretExpression(HierarchicalNode node, int index) {
     if (node.isBoolean()) {
       return evaluateBoolean(node, index);
     } else if (node.isConstant()) {
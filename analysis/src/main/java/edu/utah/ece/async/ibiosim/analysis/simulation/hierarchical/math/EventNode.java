@@ -55,7 +55,7 @@ public class EventNode extends HierarchicalNode {
    *
    * @return the delay.
    */
-  public HierarchicalNode getDelay() {
+  public FunctionNode getDelay() {
     return delay;
   }
 
@@ -254,6 +254,15 @@ public class EventNode extends HierarchicalNode {
     }
   }
 
+  /**
+   * Gets the event priority.
+   *
+   * @return the event priority node.
+   */
+  public FunctionNode getPriority() {
+    return priority;
+  }
+
   /**
    * Sets the event priority.
    *
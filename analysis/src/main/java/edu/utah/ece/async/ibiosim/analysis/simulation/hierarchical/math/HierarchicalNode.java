@@ -32,6 +32,7 @@ import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.comp.Hie
  */
 public class HierarchicalNode extends AbstractHierarchicalNode implements Iterable<HierarchicalNode> {
   private List<HierarchicalNode> children;
+  private CompiledMath compiledMath;
   protected HierarchicalState state;
 
   public HierarchicalNode(Type type) {
@@ -107,6 +108,25 @@ public class HierarchicalNode extends AbstractHierarchicalNode implements Iterab
     return null;
   }
 
+  /**
+   * Gets the compiled form of the math rooted at this node.
+   *
+   * @return the compiled math, or null if the math has not been compiled.
+   */
+  public CompiledMath getCompiledMath() {
+    return compiledMath;
+  }
+
+  /**
+   * Sets the compiled form of the math rooted at this node.
+   *
+   * @param compiledMath
+   *          - the compiled math.
+   */
+  public void setCompiledMath(CompiledMath compiledMath) {
+    this.compiledMath = compiledMath;
+  }
+
   /**
    * Gets the number of child nodes.
    *
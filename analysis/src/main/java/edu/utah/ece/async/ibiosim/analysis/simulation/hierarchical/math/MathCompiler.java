@@ -0,0 +1,515 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math;
+
+import java.util.List;
+
+import org.apache.commons.math3.util.FastMath;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+
+/**
+ * Compiles math into a tree of closures so that evaluating it does not need to inspect the type of every node.
+ *
+ * <p>
+ * Each closure performs the same operations, in the same order, as the {@link Evaluator}, so compiled math produces
+ * exactly the same values as interpreted math. Nodes that are rarely used or that depend on the evaluation context,
+ * such as random distributions, selectors and rateOf, are left to the interpreter.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public final class MathCompiler {
+
+  private MathCompiler() {
+
+  }
+
+  /**
+   * Compiles the kinetic laws, rules, event triggers, delays, priorities, event assignments and constraints of a
+   * model. {@link Evaluator#evaluateExpressionRecursive(HierarchicalNode, int)} uses the compiled math from then on.
+   *
+   * @param model
+   *          - the hierarchical model.
+   */
+  public static void compileModel(HierarchicalModel model) {
+    if (model.getListOfReactions() != null) {
+      for (ReactionNode reaction : model.getListOfReactions()) {
+        compileRoot(reaction.getForwardRate());
+        compileRoot(reaction.getReverseRate());
+      }
+    }
+    compileFunctions(model.getListOfAssignmentRules());
+    compileFunctions(model.getListOfRateRules());
+    if (model.getListOfEvents() != null) {
+      for (EventNode event : model.getListOfEvents()) {
+        compileRoot(event);
+        compileFunction(event.getDelay());
+        compileFunction(event.getPriority());
+        compileFunctions(event.getEventAssignments());
+      }
+    }
+    if (model.getListOfConstraints() != null) {
+      for (ConstraintNode constraint : model.getListOfConstraints()) {
+        compileRoot(constraint);
+      }
+    }
+  }
+
+  /**
+   * Compiles math.
+   *
+   * @param node
+   *          - the root of the math.
+   * @return the compiled math.
+   */
+  public static CompiledMath compile(HierarchicalNode node) {
+    if (node.isBoolean()) {
+      return compileBoolean(node);
+    } else if (node.isConstant()) {
+      return compileConstant(node);
+    } else if (node.isNumber()) {
+      return compileNumber(node);
+    } else if (node.isName()) {
+      return compileName(node);
+    } else if (node.isOperator()) {
+      return compileOperator(node);
+    } else {
+      return compileFunction(node);
+    }
+  }
+
+  private static void compileFunctions(List<FunctionNode> listOfFunctions) {
+    if (listOfFunctions != null) {
+      for (FunctionNode function : listOfFunctions) {
+        compileFunction(function);
+      }
+    }
+  }
+
+  private static void compileFunction(FunctionNode function) {
+    if (function != null) {
+      compileRoot(function.getMath());
+    }
+  }
+
+  private static void compileRoot(HierarchicalNode node) {
+    // Names are the variable nodes themselves, which are shared by every math that uses them.
+    if (node != null && !node.isName()) {
+      node.setCompiledMath(compile(node));
+    }
+  }
+
+  private static CompiledMath interpret(final HierarchicalNode node) {
+    return index -> Evaluator.interpretExpression(node, index);
+  }
+
+  private static CompiledMath[] compileChildren(HierarchicalNode node) {
+    CompiledMath[] children = new CompiledMath[node.getNumOfChild()];
+    for (int i = 0; i < children.length; i++) {
+      children[i] = compile(node.getChild(i));
+    }
+    return children;
+  }
+
+  private static CompiledMath compileBoolean(HierarchicalNode node) {
+    final CompiledMath[] children = compileChildren(node);
+    switch (node.getType()) {
+
+    case CONSTANT_TRUE: {
+      return index -> 1.0;
+    }
+    case CONSTANT_FALSE: {
+      return index -> 0.0;
+    }
+    case LOGICAL_NOT: {
+      if (children.length < 1) {
+        break;
+      }
+      final CompiledMath child = children[0];
+      return index -> child.evaluate(index) < 1 ? 1 : 0;
+    }
+    case LOGICAL_AND: {
+      return index -> {
+        for (CompiledMath child : children) {
+          if (child.evaluate(index) == 0) { return 0; }
+        }
+        return 1;
+      };
+    }
+    case LOGICAL_IMPLIES: {
+      if (children.length < 2) {
+        break;
+      }
+      final CompiledMath left = children[0];
+      final CompiledMath right = children[1];
+      return index -> {
+        double a = left.evaluate(index);
+        double b = right.evaluate(index);
+        return a < 1 || b > 0 ? 1 : 0;
+      };
+    }
+    case LOGICAL_OR: {
+      return index -> {
+        for (CompiledMath child : children) {
+          if (child.evaluate(index) == 1) { return 1; }
+        }
+        return 0;
+      };
+    }
+    case LOGICAL_XOR: {
+      return index -> {
+        boolean xorResult = (children.length == 0) ? false : children[0].evaluate(index) > 0;
+        for (int i = 1; i < children.length; ++i) {
+          xorResult = xorResult ^ children[i].evaluate(index) > 0;
+        }
+        return xorResult ? 1 : 0;
+      };
+    }
+    case RELATIONAL_EQ:
+    case RELATIONAL_NEQ:
+    case RELATIONAL_GEQ:
+    case RELATIONAL_LEQ:
+    case RELATIONAL_GT:
+    case RELATIONAL_LT: {
+      if (children.length < 1) {
+        break;
+      }
+      return compileRelational(node.getType(), children);
+    }
+    default:
+      break;
+    }
+    return interpret(node);
+  }
+
+  private static CompiledMath compileRelational(final Type type, final CompiledMath[] children) {
+    if (children.length == 2) {
+      final CompiledMath left = children[0];
+      final CompiledMath right = children[1];
+      switch (type) {
+      case RELATIONAL_EQ:
+        return index -> left.evaluate(index) != right.evaluate(index) ? 0 : 1;
+      case RELATIONAL_NEQ:
+        return index -> left.evaluate(index) == right.evaluate(index) ? 0 : 1;
+      case RELATIONAL_GEQ:
+        return index -> left.evaluate(index) < right.evaluate(index) ? 0 : 1;
+      case RELATIONAL_LEQ:
+        return index -> left.evaluate(index) > right.evaluate(index) ? 0 : 1;
+      case RELATIONAL_GT:
+        return index -> left.evaluate(index) <= right.evaluate(index) ? 0 : 1;
+      default:
+        return index -> left.evaluate(index) >= right.evaluate(index) ? 0 : 1;
+      }
+    }
+    return index -> {
+      double lhs = children[0].evaluate(index);
+      for (int i = 1; i < children.length; i++) {
+        double rhs = children[i].evaluate(index);
+        if (isRelationFalse(type, lhs, rhs)) { return 0; }
+        lhs = rhs;
+      }
+      return 1;
+    };
+  }
+
+  private static boolean isRelationFalse(Type type, double lhs, double rhs) {
+    switch (type) {
+    case RELATIONAL_EQ:
+      return lhs != rhs;
+    case RELATIONAL_NEQ:
+      return lhs == rhs;
+    case RELATIONAL_GEQ:
+      return lhs < rhs;
+    case RELATIONAL_LEQ:
+      return lhs > rhs;
+    case RELATIONAL_GT:
+      return lhs <= rhs;
+    default:
+      return lhs >= rhs;
+    }
+  }
+
+  private static CompiledMath compileConstant(HierarchicalNode node) {
+    switch (node.getType()) {
+
+    case CONSTANT_E: {
+      return index -> Math.E;
+    }
+    case CONSTANT_PI: {
+      return index -> Math.PI;
+    }
+    case NAME_AVOGADRO: {
+      return index -> 6.02214179e23;
+    }
+    default:
+      return index -> 0;
+    }
+  }
+
+  private static CompiledMath compileNumber(HierarchicalNode node) {
+    final HierarchicalState state = node.getState();
+    if (state == null) { return interpret(node); }
+    return index -> state.getValue();
+  }
+
+  private static CompiledMath compileName(final HierarchicalNode node) {
+    return index -> node.getValue(index);
+  }
+
+  private static CompiledMath compileOperator(HierarchicalNode node) {
+    final CompiledMath[] children = compileChildren(node);
+    switch (node.getType()) {
+
+    case PLUS: {
+      if (children.length == 2) {
+        final CompiledMath left = children[0];
+        final CompiledMath right = children[1];
+        return index -> 0.0 + left.evaluate(index) + right.evaluate(index);
+      }
+      return index -> {
+        double result = 0.0;
+        for (CompiledMath child : children) {
+          result += child.evaluate(index);
+        }
+        return result;
+      };
+    }
+    case MINUS: {
+      if (children.length == 1) {
+        final CompiledMath child = children[0];
+        return index -> -child.evaluate(index);
+      } else if (children.length == 2) {
+        final CompiledMath left = children[0];
+        final CompiledMath right = children[1];
+        return index -> left.evaluate(index) - right.evaluate(index);
+      } else if (children.length > 2) {
+        return index -> {
+          double result = children[0].evaluate(index);
+          for (int i = 1; i < children.length; ++i) {
+            result -= children[i].evaluate(index);
+          }
+          return result;
+        };
+      }
+      break;
+    }
+    case TIMES: {
+      if (children.length == 2) {
+        final CompiledMath left = children[0];
+        final CompiledMath right = children[1];
+        return index -> 1.0 * left.evaluate(index) * right.evaluate(index);
+      }
+      return index -> {
+        double result = 1.0;
+        for (CompiledMath child : children) {
+          result *= child.evaluate(index);
+        }
+        return result;
+      };
+    }
+    case DIVIDE: {
+      if (children.length < 2) {
+        break;
+      }
+      final CompiledMath left = children[0];
+      final CompiledMath right = children[1];
+      return index -> left.evaluate(index) / right.evaluate(index);
+    }
+    case POWER: {
+      if (children.length < 2) {
+        break;
+      }
+      final CompiledMath left = children[0];
+      final CompiledMath right = children[1];
+      return index -> Math.pow(left.evaluate(index), right.evaluate(index));
+    }
+    default:
+      break;
+    }
+    return interpret(node);
+  }
+
+  private static CompiledMath compileFunction(HierarchicalNode node) {
+    switch (node.getType()) {
+    case FUNCTION:
+    case FUNCTION_DELAY:
+    case FUNCTION_RATEOF:
+    case FUNCTION_SELECTOR:
+      return interpret(node);
+    default:
+      break;
+    }
+
+    final CompiledMath[] children = compileChildren(node);
+    if (children.length == 0) { return interpret(node); }
+    final CompiledMath first = children[0];
+
+    switch (node.getType()) {
+    case FUNCTION_ABS:
+      return index -> Math.abs(first.evaluate(index));
+    case FUNCTION_ARCCOS:
+      return index -> Math.acos(first.evaluate(index));
+    case FUNCTION_ARCSIN:
+      return index -> Math.asin(first.evaluate(index));
+    case FUNCTION_ARCTAN:
+      return index -> Math.atan(first.evaluate(index));
+    case FUNCTION_CEILING:
+      return index -> Math.ceil(first.evaluate(index));
+    case FUNCTION_COS:
+      return index -> Math.cos(first.evaluate(index));
+    case FUNCTION_COSH:
+      return index -> Math.cosh(first.evaluate(index));
+    case FUNCTION_EXP:
+      return index -> Math.exp(first.evaluate(index));
+    case FUNCTION_FLOOR:
+      return index -> Math.floor(first.evaluate(index));
+    case FUNCTION_LN:
+      return index -> Math.log(first.evaluate(index));
+    case FUNCTION_SIN:
+      return index -> Math.sin(first.evaluate(index));
+    case FUNCTION_SINH:
+      return index -> Math.sinh(first.evaluate(index));
+    case FUNCTION_TAN:
+      return index -> Math.tan(first.evaluate(index));
+    case FUNCTION_TANH:
+      return index -> Math.tanh(first.evaluate(index));
+    case FUNCTION_SEC:
+      return index -> 1 / Math.cos(first.evaluate(index));
+    case FUNCTION_SECH:
+      return index -> 1 / Math.cosh(first.evaluate(index));
+    case FUNCTION_COT:
+      return index -> 1 / Math.tan(first.evaluate(index));
+    case FUNCTION_COTH:
+      return index -> {
+        double value = first.evaluate(index);
+        return Math.sinh(value) / Math.cosh(value);
+      };
+    case FUNCTION_CSC:
+      return index -> 1 / Math.sin(first.evaluate(index));
+    case FUNCTION_CSCH:
+      return index -> 1 / Math.sinh(first.evaluate(index));
+    case FUNCTION_ARCTANH:
+      return index -> {
+        double value = first.evaluate(index);
+        return 0.5 * (Math.log(value + 1) - Math.log(1 - value));
+      };
+    case FUNCTION_ARCSINH:
+      return index -> {
+        double value = first.evaluate(index);
+        return Math.log(value + Math.sqrt(value * value + 1));
+      };
+    case FUNCTION_ARCCOSH:
+      return index -> {
+        double value = first.evaluate(index);
+        return Math.log(value + Math.sqrt(value + 1) * Math.sqrt(value - 1));
+      };
+    case FUNCTION_ARCCOT:
+      return index -> Math.atan(1 / first.evaluate(index));
+    case FUNCTION_ARCCOTH:
+      return index -> {
+        double value = first.evaluate(index);
+        return 0.5 * (Math.log(1 + 1 / value) - Math.log(1 - 1 / value));
+      };
+    case FUNCTION_ARCCSC:
+      return index -> Math.asin(1 / first.evaluate(index));
+    case FUNCTION_ARCCSCH:
+      return index -> {
+        double value = first.evaluate(index);
+        return Math.log(1 / value + Math.sqrt(1 / (value * value) + 1));
+      };
+    case FUNCTION_ARCSEC:
+      return index -> Math.acos(1 / first.evaluate(index));
+    case FUNCTION_ARCSECH:
+      return index -> {
+        double value = first.evaluate(index);
+        return Math.log(1 / value + Math.sqrt(1 / value + 1) * Math.sqrt(1 / value - 1));
+      };
+    case FUNCTION_FACTORIAL:
+      return index -> {
+        int value = (int) first.evaluate(index);
+        double result = 1;
+        while (value > 0) {
+          result = result * value;
+          value--;
+        }
+        return result;
+      };
+    case FUNCTION_PIECEWISE:
+      return index -> {
+        for (int i = 0; i < children.length - 1; i += 2) {
+          if (children[i + 1].evaluate(index) > 0) { return children[i].evaluate(index); }
+        }
+        return children[children.length - 1].evaluate(index);
+      };
+    case FUNCTION_MIN:
+      return index -> {
+        double min = first.evaluate(index);
+        for (int i = 1; i < children.length; i++) {
+          double tmp = children[i].evaluate(index);
+          if (tmp < min) {
+            min = tmp;
+          }
+        }
+        return min;
+      };
+    case FUNCTION_MAX:
+      return index -> {
+        double max = first.evaluate(index);
+        for (int i = 1; i < children.length; i++) {
+          double tmp = children[i].evaluate(index);
+          if (tmp > max) {
+            max = tmp;
+          }
+        }
+        return max;
+      };
+    default:
+      break;
+    }
+
+    if (children.length < 2) { return interpret(node); }
+    final CompiledMath second = children[1];
+
+    switch (node.getType()) {
+    case FUNCTION_LOG:
+      return index -> {
+        double base = first.evaluate(index);
+        double var = second.evaluate(index);
+        return Math.log(var) / Math.log(base);
+      };
+    case FUNCTION_REM:
+      return index -> {
+        double d0 = first.evaluate(index);
+        double d1 = second.evaluate(index);
+        int quo = (int) (d0 / d1);
+        return d0 - d1 * quo;
+      };
+    case FUNCTION_ROOT:
+      return index -> FastMath.pow(second.evaluate(index), 1 / first.evaluate(index));
+    case FUNCTION_QUOTIENT:
+      return index -> {
+        double d0 = first.evaluate(index);
+        double d1 = second.evaluate(index);
+        return (int) (d0 / d1);
+      };
+    case FUNCTION_POWER:
+      return index -> Math.pow(first.evaluate(index), second.evaluate(index));
+    default:
+      return interpret(node);
+    }
+  }
+}
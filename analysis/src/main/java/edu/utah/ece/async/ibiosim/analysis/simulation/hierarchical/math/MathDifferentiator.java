@@ -0,0 +1,326 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math;
+
+import java.util.Map;
+import java.util.Set;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+
+/**
+ * Symbolic differentiation of math with respect to the state of a variable.
+ *
+ * <p>
+ * Derivatives are taken with respect to the value that is stored in the state of the variable, so a species that is
+ * not in substance units is differentiated with respect to its amount, and its compartment also gets a derivative.
+ * Variables that are defined by an assignment rule are replaced by the math of the rule. The derivatives are built as
+ * {@link HierarchicalNode} trees that share the nodes of the original math, and null is used when the derivative is
+ * zero.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class MathDifferentiator {
+
+  private final int index;
+  private final Map<HierarchicalNode, HierarchicalNode> assignments;
+
+  /**
+   * Creates a differentiator for math of a given model.
+   *
+   * @param index
+   *          - the model index.
+   * @param assignments
+   *          - the math of each variable that is defined by an assignment rule.
+   */
+  public MathDifferentiator(int index, Map<HierarchicalNode, HierarchicalNode> assignments) {
+    this.index = index;
+    this.assignments = assignments;
+  }
+
+  /**
+   * Checks whether math can be differentiated.
+   *
+   * @param node
+   *          - the math.
+   * @return true if every node of the math is supported.
+   */
+  public boolean isDifferentiable(HierarchicalNode node) {
+    if (node.isName()) {
+      if (node.isArray()) { return false; }
+      HierarchicalNode math = assignments.get(node);
+      return math == null || isDifferentiable(math);
+    }
+    switch (node.getType()) {
+    case FUNCTION:
+    case FUNCTION_DELAY:
+    case FUNCTION_RATEOF:
+    case FUNCTION_SELECTOR:
+    case FUNCTION_REM:
+    case FUNCTION_ARCCOS:
+    case FUNCTION_ARCSIN:
+    case FUNCTION_ARCTAN:
+    case FUNCTION_SEC:
+    case FUNCTION_SECH:
+    case FUNCTION_CSC:
+    case FUNCTION_CSCH:
+    case FUNCTION_COT:
+    case FUNCTION_COTH:
+    case FUNCTION_ARCCOSH:
+    case FUNCTION_ARCCOT:
+    case FUNCTION_ARCCOTH:
+    case FUNCTION_ARCCSC:
+    case FUNCTION_ARCCSCH:
+    case FUNCTION_ARCSEC:
+    case FUNCTION_ARCSECH:
+    case FUNCTION_ARCSINH:
+    case FUNCTION_ARCTANH:
+    case VECTOR:
+      return false;
+    case FUNCTION_MIN:
+    case FUNCTION_MAX:
+      if (node.getNumOfChild() > 2) { return false; }
+      break;
+    case MINUS:
+    case FUNCTION_PIECEWISE:
+      if (node.getNumOfChild() == 0) { return false; }
+      break;
+    default:
+      break;
+    }
+    if (node.isBoolean()) { return true; }
+    for (int i = 0; i < node.getNumOfChild(); i++) {
+      if (!isDifferentiable(node.getChild(i))) { return false; }
+    }
+    return true;
+  }
+
+  /**
+   * Collects the variables whose state the math depends on, looking through assignment rules and adding the
+   * compartment of species that are not in substance units.
+   *
+   * @param node
+   *          - the math.
+   * @param variables
+   *          - the set where the variables are added.
+   */
+  public void collectVariables(HierarchicalNode node, Set<HierarchicalNode> variables) {
+    if (node.isName()) {
+      HierarchicalNode math = assignments.get(node);
+      if (math != null) {
+        collectVariables(math, variables);
+      } else if (!node.isTime() && node.getState() != null) {
+        variables.add(node);
+        if (isConcentration(node)) {
+          variables.add(node.getCompartment());
+        }
+      }
+      return;
+    }
+    for (int i = 0; i < node.getNumOfChild(); i++) {
+      collectVariables(node.getChild(i), variables);
+    }
+  }
+
+  /**
+   * Differentiates math with respect to the state of a variable. The math must be differentiable.
+   *
+   * @param node
+   *          - the math.
+   * @param variable
+   *          - the variable.
+   * @return the derivative, or null if the derivative is zero.
+   */
+  public HierarchicalNode differentiate(HierarchicalNode node, HierarchicalNode variable) {
+    if (node.isName()) { return differentiateName(node, variable); }
+    if (node.isBoolean() || node.isConstant() || node.isNumber()) { return null; }
+
+    switch (node.getType()) {
+    case PLUS: {
+      HierarchicalNode sum = null;
+      for (int i = 0; i < node.getNumOfChild(); i++) {
+        sum = plus(sum, differentiate(node.getChild(i), variable));
+      }
+      return sum;
+    }
+    case MINUS: {
+      if (node.getNumOfChild() == 1) { return negate(differentiate(node.getChild(0), variable)); }
+      HierarchicalNode difference = operator(Type.MINUS);
+      boolean isZero = true;
+      for (int i = 0; i < node.getNumOfChild(); i++) {
+        HierarchicalNode derivative = differentiate(node.getChild(i), variable);
+        isZero = isZero && derivative == null;
+        difference.addChild(orZero(derivative));
+      }
+      return isZero ? null : difference;
+    }
+    case TIMES: {
+      HierarchicalNode sum = null;
+      for (int i = 0; i < node.getNumOfChild(); i++) {
+        HierarchicalNode derivative = differentiate(node.getChild(i), variable);
+        if (derivative != null) {
+          HierarchicalNode product = operator(Type.TIMES);
+          for (int j = 0; j < node.getNumOfChild(); j++) {
+            product.addChild(i == j ? derivative : node.getChild(j));
+          }
+          sum = plus(sum, product);
+        }
+      }
+      return sum;
+    }
+    case DIVIDE: {
+      HierarchicalNode u = node.getChild(0), v = node.getChild(1);
+      HierarchicalNode du = differentiate(u, variable), dv = differentiate(v, variable);
+      HierarchicalNode result = du == null ? null : operator(Type.DIVIDE, du, v);
+      if (dv != null) {
+        result = minus(result, operator(Type.DIVIDE, operator(Type.TIMES, u, dv), operator(Type.TIMES, v, v)));
+      }
+      return result;
+    }
+    case POWER:
+    case FUNCTION_POWER:
+      return differentiatePower(node, node.getChild(0), node.getChild(1), variable);
+    case FUNCTION_ROOT:
+      return differentiatePower(null, node.getChild(1), operator(Type.DIVIDE, new HierarchicalNode(1), node.getChild(0)), variable);
+    case FUNCTION_LOG:
+      return differentiate(operator(Type.DIVIDE, operator(Type.FUNCTION_LN, node.getChild(1)), operator(Type.FUNCTION_LN, node.getChild(0))), variable);
+    case FUNCTION_PIECEWISE: {
+      int n = node.getNumOfChild();
+      HierarchicalNode piecewise = operator(Type.FUNCTION_PIECEWISE);
+      boolean isZero = true;
+      for (int i = 0; i < n; i++) {
+        if (i % 2 == 1 && i < n - 1) {
+          piecewise.addChild(node.getChild(i));
+        } else if (i % 2 == 0) {
+          HierarchicalNode derivative = differentiate(node.getChild(i), variable);
+          isZero = isZero && derivative == null;
+          piecewise.addChild(orZero(derivative));
+        } else {
+          // The interpreter returns the last condition when there is no otherwise.
+          piecewise.addChild(new HierarchicalNode(0));
+        }
+      }
+      return isZero ? null : piecewise;
+    }
+    case FUNCTION_MIN:
+    case FUNCTION_MAX: {
+      HierarchicalNode a = node.getChild(0);
+      HierarchicalNode da = differentiate(a, variable);
+      if (node.getNumOfChild() == 1) { return da; }
+      HierarchicalNode b = node.getChild(1);
+      HierarchicalNode db = differentiate(b, variable);
+      if (da == null && db == null) { return null; }
+      Type relation = node.getType() == Type.FUNCTION_MIN ? Type.RELATIONAL_LT : Type.RELATIONAL_GT;
+      return operator(Type.FUNCTION_PIECEWISE, orZero(db), operator(relation, b, a), orZero(da));
+    }
+    case FUNCTION_ABS: {
+      HierarchicalNode u = node.getChild(0);
+      HierarchicalNode du = differentiate(u, variable);
+      if (du == null) { return null; }
+      return operator(Type.FUNCTION_PIECEWISE, du, operator(Type.RELATIONAL_GEQ, u, new HierarchicalNode(0)), negate(du));
+    }
+    case FUNCTION_EXP:
+      return times(node, differentiate(node.getChild(0), variable));
+    case FUNCTION_LN: {
+      HierarchicalNode du = differentiate(node.getChild(0), variable);
+      return du == null ? null : operator(Type.DIVIDE, du, node.getChild(0));
+    }
+    case FUNCTION_SIN:
+      return times(operator(Type.FUNCTION_COS, node.getChild(0)), differentiate(node.getChild(0), variable));
+    case FUNCTION_COS:
+      return negate(times(operator(Type.FUNCTION_SIN, node.getChild(0)), differentiate(node.getChild(0), variable)));
+    case FUNCTION_TAN: {
+      HierarchicalNode du = differentiate(node.getChild(0), variable);
+      HierarchicalNode cos = operator(Type.FUNCTION_COS, node.getChild(0));
+      return du == null ? null : operator(Type.DIVIDE, du, operator(Type.TIMES, cos, cos));
+    }
+    case FUNCTION_SINH:
+      return times(operator(Type.FUNCTION_COSH, node.getChild(0)), differentiate(node.getChild(0), variable));
+    case FUNCTION_COSH:
+      return times(operator(Type.FUNCTION_SINH, node.getChild(0)), differentiate(node.getChild(0), variable));
+    case FUNCTION_TANH: {
+      HierarchicalNode du = differentiate(node.getChild(0), variable);
+      HierarchicalNode cosh = operator(Type.FUNCTION_COSH, node.getChild(0));
+      return du == null ? null : operator(Type.DIVIDE, du, operator(Type.TIMES, cosh, cosh));
+    }
+    default:
+      // Piecewise constant functions such as floor, ceiling, quotient and factorial.
+      return null;
+    }
+  }
+
+  private HierarchicalNode differentiateName(HierarchicalNode node, HierarchicalNode variable) {
+    HierarchicalNode math = assignments.get(node);
+    if (math != null) { return differentiate(math, variable); }
+    if (isConcentration(node)) {
+      HierarchicalNode compartment = node.getCompartment();
+      if (node == variable) {
+        return operator(Type.DIVIDE, new HierarchicalNode(1), compartment);
+      } else if (compartment == variable) { return negate(operator(Type.DIVIDE, node, compartment)); }
+      return null;
+    }
+    return node == variable ? new HierarchicalNode(1) : null;
+  }
+
+  private HierarchicalNode differentiatePower(HierarchicalNode power, HierarchicalNode u, HierarchicalNode v, HierarchicalNode variable) {
+    HierarchicalNode du = differentiate(u, variable), dv = differentiate(v, variable);
+    if (du == null && dv == null) { return null; }
+    if (power == null) {
+      power = operator(Type.POWER, u, v);
+    }
+    if (dv == null) { return operator(Type.TIMES, v, operator(Type.POWER, u, operator(Type.MINUS, v, new HierarchicalNode(1))), du); }
+    HierarchicalNode exponentTerm = operator(Type.TIMES, dv, operator(Type.FUNCTION_LN, u));
+    if (du == null) { return operator(Type.TIMES, power, exponentTerm); }
+    return operator(Type.TIMES, power, operator(Type.PLUS, exponentTerm, operator(Type.DIVIDE, operator(Type.TIMES, v, du), u)));
+  }
+
+  private boolean isConcentration(HierarchicalNode node) {
+    if (!node.isSpecies() || node.getCompartment() == null) { return false; }
+    HierarchicalState state = node.getState().getChild(index);
+    return !state.hasOnlySubstance();
+  }
+
+  private static HierarchicalNode operator(Type type, HierarchicalNode... children) {
+    HierarchicalNode node = new HierarchicalNode(type);
+    for (HierarchicalNode child : children) {
+      node.addChild(child);
+    }
+    return node;
+  }
+
+  private static HierarchicalNode orZero(HierarchicalNode node) {
+    return node == null ? new HierarchicalNode(0) : node;
+  }
+
+  private static HierarchicalNode plus(HierarchicalNode a, HierarchicalNode b) {
+    if (a == null) { return b; }
+    if (b == null) { return a; }
+    return operator(Type.PLUS, a, b);
+  }
+
+  private static HierarchicalNode minus(HierarchicalNode a, HierarchicalNode b) {
+    if (b == null) { return a; }
+    if (a == null) { return negate(b); }
+    return operator(Type.MINUS, a, b);
+  }
+
+  private static HierarchicalNode negate(HierarchicalNode node) {
+    return node == null ? null : operator(Type.MINUS, node);
+  }
+
+  private static HierarchicalNode times(HierarchicalNode a, HierarchicalNode b) {
+    return a == null || b == null ? null : operator(Type.TIMES, a, b);
+  }
+}
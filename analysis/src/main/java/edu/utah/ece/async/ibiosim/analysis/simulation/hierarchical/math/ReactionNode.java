@@ -114,6 +114,24 @@ public class ReactionNode extends VariableNode {
     return reverseRate;
   }
 
+  /**
+   * Gets the reactants of the reaction.
+   *
+   * @return the reactant references, or null if there are no reactants.
+   */
+  public List<SpeciesReferenceNode> getListOfReactants() {
+    return reactants;
+  }
+
+  /**
+   * Gets the products of the reaction.
+   *
+   * @return the product references, or null if there are no products.
+   */
+  public List<SpeciesReferenceNode> getListOfProducts() {
+    return products;
+  }
+
   /**
    * Computes the reaction propensity.
    *
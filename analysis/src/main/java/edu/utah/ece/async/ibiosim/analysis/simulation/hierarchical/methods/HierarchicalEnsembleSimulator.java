@@ -0,0 +1,152 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.stream.XMLStreamException;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.AbstractSimulator;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * Runs the replicates of a stochastic simulation in parallel.
+ *
+ * <p>
+ * Each worker owns an independent {@link HierarchicalSSADirectSimulator} and pulls the next run index from a shared
+ * counter. Since the random stream of a run is derived from the seed and the run index, the run-N output is the same
+ * as the one produced by the serial simulation.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class HierarchicalEnsembleSimulator extends AbstractSimulator {
+
+  private final AnalysisProperties properties;
+  private final int threads;
+  private final List<HierarchicalSSADirectSimulator> workers;
+  private final AtomicInteger nextRun;
+  private int completedRuns;
+  private volatile boolean cancel;
+
+  /**
+   * Creates an ensemble simulator.
+   *
+   * @param properties
+   *          - the analysis properties.
+   * @param threads
+   *          - the maximum number of workers.
+   */
+  public HierarchicalEnsembleSimulator(AnalysisProperties properties, int threads) {
+    this.properties = properties;
+    this.threads = threads;
+    this.workers = new CopyOnWriteArrayList<>();
+    this.nextRun = new AtomicInteger(1);
+  }
+
+  /**
+   * Simulates every run of the ensemble.
+   */
+  @Override
+  public void simulate() throws IOException, XMLStreamException, BioSimException {
+    final int runs = properties.getSimulationProperties().getRun();
+    int numWorkers = Math.max(1, Math.min(threads, runs));
+    List<Callable<Void>> tasks = new ArrayList<>(numWorkers);
+
+    for (int i = 0; i < numWorkers; ++i) {
+      final HierarchicalSSADirectSimulator worker = new HierarchicalSSADirectSimulator(properties);
+      workers.add(worker);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          runWorker(worker, runs);
+          return null;
+        }
+      });
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(numWorkers);
+    try {
+      for (Future<Void> future : pool.invokeAll(tasks)) {
+        future.get();
+      }
+    }
+    catch (InterruptedException e) {
+      cancel();
+      Thread.currentThread().interrupt();
+    }
+    catch (ExecutionException e) {
+      cancel();
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof XMLStreamException) {
+        throw (XMLStreamException) cause;
+      } else if (cause instanceof BioSimException) { throw (BioSimException) cause; }
+      throw new BioSimException(String.valueOf(cause), "Error in simulation");
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  @Override
+  public void cancel() {
+    this.cancel = true;
+    for (HierarchicalSSADirectSimulator worker : workers) {
+      worker.cancel();
+    }
+  }
+
+  @Override
+  public void setupForNewRun(int newRun) {
+
+  }
+
+  @Override
+  public void printStatisticsTSD() {
+
+  }
+
+  private void runWorker(HierarchicalSSADirectSimulator worker, int runs) throws IOException, XMLStreamException, BioSimException {
+    boolean isInitialized = false;
+    for (int run = nextRun.getAndIncrement(); run <= runs && !cancel; run = nextRun.getAndIncrement()) {
+      if (isInitialized) {
+        worker.setupForNewRun(run);
+      } else {
+        worker.initialize(run);
+        isInitialized = true;
+      }
+      worker.simulate();
+      reportProgress(runs);
+    }
+  }
+
+  private synchronized void reportProgress(int runs) {
+    completedRuns++;
+    if (parent != null) {
+      message.setInteger((int) (Math.ceil(100.0 * completedRuns / runs)));
+      parent.send(RequestType.REQUEST_PROGRESS, message);
+    }
+  }
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * 
+ *
  * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
  * for the latest version of iBioSim.
  *
@@ -9,18 +9,578 @@
  * under the terms of the Apache License. A copy of the license agreement is provided
  * in the file named "LICENSE.txt" included with this software distribution
  * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
- * 
+ *
  *******************************************************************************/
 package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import javax.xml.stream.XMLStreamException;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel.ModelType;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesReferenceNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.DependencyGraph;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.DependencyGraph.ReactionChannel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.PoissonSampler;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.SumTree;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.ModelSetup;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
 /**
  * Hierarchical Hybrid Simulator.
  *
+ * <p>
+ * Advances the models with explicit tau-leaping and falls back to the exact direct method when leaping would not pay
+ * off. The leap size is selected with the method of Cao, Gillespie and Petzold (2006), which bounds the relative
+ * change of every reactant population in a leap by {@link #EPSILON}.
+ *
+ * <p>
+ * A reaction is critical when it is reversible or when it can fire fewer than {@link #CRITICAL_FIRINGS} more times
+ * before one of its reactants runs out. Critical reactions never leap: at most one of them fires per step, selected
+ * exactly as in the direct method. The other reactions fire a Poisson-distributed number of times, and a leap that
+ * would make a population negative is retried with half the size. When the selected leap is shorter than
+ * {@link #EXACT_THRESHOLD} expected reactions, the next {@link #EXACT_STEPS} steps use the direct method.
+ *
  * @author Leandro Watanabe
  * @author Chris Myers
  * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
  * @version %I%
  */
-public final class HierarchicalHybridSimulator {
+public final class HierarchicalHybridSimulator extends HierarchicalSimulation {
+
+  private static final double EPSILON = 0.03;
+  private static final int CRITICAL_FIRINGS = 10;
+  private static final double EXACT_THRESHOLD = 10;
+  private static final int EXACT_STEPS = 100;
+
+  private final boolean print;
+  private double totalPropensity;
+  private DependencyGraph dependencyGraph;
+  private SumTree propensityTree;
+  private boolean updateAll;
+  private int exactSteps;
+
+  private List<ReactionChannel> listOfChannels;
+  private HierarchicalState[] speciesStates;
+  private boolean[] reversible;
+  private boolean[] critical;
+  private long[] firings;
+
+  private int[] reactantPointers;
+  private int[] reactantSpecies;
+  private SpeciesReferenceNode[] reactantReferences;
+  private double[] reactantStoichiometries;
+
+  private int[] changePointers;
+  private int[] changeSpecies;
+  private SpeciesReferenceNode[] changeReferences;
+  private double[] changeStoichiometries;
+  private double[] changeSigns;
+
+  private int[] highestOrder;
+  private double[] highestOrderStoichiometry;
+  private boolean[] isLeapReactant;
+  private double[] meanChange;
+  private double[] changeVariance;
+  private double[] speciesChange;
+
+  /**
+   * Creates an instance of a hybrid simulator.
+   *
+   * @param properties
+   *          - the analysis properties.
+   * @throws IOException
+   *           - if there is a problem with the model file.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occur in the initialization.
+   */
+  public HierarchicalHybridSimulator(AnalysisProperties properties) throws IOException, XMLStreamException, BioSimException {
+    this(properties, true);
+  }
+
+  /**
+   * Creates an instance of a hybrid simulator.
+   *
+   * @param properties
+   *          - the analysis properties.
+   * @param print
+   *          - whether to save the output.
+   * @throws IOException
+   *           - if there is a problem with the model file.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occur in the initialization.
+   */
+  public HierarchicalHybridSimulator(AnalysisProperties properties, boolean print) throws IOException, XMLStreamException, BioSimException {
+    super(properties, SimType.HSSA);
+    this.print = print;
+  }
+
+  /**
+   * Initializes the simulator.
+   *
+   * @param runNumber
+   *          - the run index.
+   * @throws IOException
+   *           - if there is a problem with the model file.
+   * @throws XMLStreamException
+   *           - if there is a problem parsing the SBML file.
+   * @throws BioSimException
+   *           - if an error occur in the initialization.
+   */
+  public void initialize(int runNumber) throws IOException, XMLStreamException, BioSimException {
+    if (!isInitialized) {
+      SimulationProperties simProperties = properties.getSimulationProperties();
+      currProgress = 0;
+
+      setCurrentTime(simProperties.getInitialTime());
+      ModelSetup.setupModels(this, ModelType.HSSA);
+
+      computeFixedPoint();
+
+      if (hasEvents) {
+        triggeredEventList = new PriorityQueue<>(1);
+        computeEvents();
+      }
+
+      dependencyGraph = new DependencyGraph(getListOfHierarchicalModels(), currentTime);
+      propensityTree = new SumTree(dependencyGraph.getListOfChannels().size());
+      setupChannels();
+      setupForOutput(runNumber);
+      isInitialized = true;
+    }
+  }
+
+  @Override
+  public void cancel() {
+    this.cancel = true;
+  }
+
+  @Override
+  public void setupForNewRun(int newRun) throws IOException {
+    SimulationProperties simProperties = properties.getSimulationProperties();
+    setCurrentTime(simProperties.getInitialTime());
+    restoreInitialState();
+    computeFixedPoint();
+    setupForOutput(newRun);
+  }
+
+  @Override
+  public void simulate() throws IOException, XMLStreamException, BioSimException {
+
+    SimulationProperties simProperties = properties.getSimulationProperties();
+    double timeLimit = simProperties.getTimeLimit();
+    double maxTimeStep = simProperties.getMaxTimeStep();
+
+    if (!isInitialized) {
+      this.initialize(1);
+    }
+
+    printTime = simProperties.getOutputStartTime();
+    updateAll = true;
+    exactSteps = 0;
+
+    while (currentTime.getState().getValue() < timeLimit) {
+      if (cancel) {
+        break;
+      }
+
+      double time = currentTime.getState().getValue();
+      computePropensities();
+      double nextEventTime = getNextEventTime();
+      double nextMaxTime = time + maxTimeStep;
+
+      double leapSize = 0;
+      if (exactSteps == 0 && totalPropensity > 0) {
+        updateStoichiometries();
+        classifyReactions();
+        leapSize = selectLeapSize();
+        if (leapSize < EXACT_THRESHOLD / totalPropensity) {
+          exactSteps = EXACT_STEPS;
+        }
+      }
+
+      if (exactSteps > 0 || totalPropensity <= 0) {
+        if (exactSteps > 0) {
+          exactSteps--;
+        }
+        if (!performExactStep(time, nextEventTime, nextMaxTime, timeLimit)) {
+          break;
+        }
+      } else {
+        performLeap(time, leapSize, nextEventTime, Math.min(Math.min(nextEventTime, nextMaxTime), timeLimit));
+      }
+    }
+
+    if (!cancel) {
+      setCurrentTime(timeLimit);
+      computeEvents();
+      computeAssignmentRules();
+      if (print) {
+        printToFile();
+      }
+    }
+    closeWriter();
+  }
+
+  @Override
+  public void printStatisticsTSD() {
+
+  }
+
+  private void setupChannels() {
+    listOfChannels = dependencyGraph.getListOfChannels();
+    int numChannels = listOfChannels.size();
+    Map<HierarchicalState, Integer> speciesIndices = new HashMap<>();
+    List<HierarchicalState> listOfSpecies = new ArrayList<>();
+    List<Integer> reactants = new ArrayList<>();
+    List<SpeciesReferenceNode> reactantRefs = new ArrayList<>();
+    List<Integer> changes = new ArrayList<>();
+    List<SpeciesReferenceNode> changeRefs = new ArrayList<>();
+    List<Double> signs = new ArrayList<>();
+
+    reversible = new boolean[numChannels];
+    critical = new boolean[numChannels];
+    firings = new long[numChannels];
+    reactantPointers = new int[numChannels + 1];
+    changePointers = new int[numChannels + 1];
+
+    for (ReactionChannel channel : listOfChannels) {
+      int id = channel.getId();
+      int index = channel.getModel().getIndex();
+      ReactionNode node = channel.getNode();
+      channel.setArrayIndex();
+      reversible[id] = node.getReverseRate() != null;
+
+      if (node.getListOfReactants() != null) {
+        for (SpeciesReferenceNode specRef : node.getListOfReactants()) {
+          int species = getSpeciesIndex(specRef.getSpeciesState(index), speciesIndices, listOfSpecies);
+          reactants.add(species);
+          reactantRefs.add(specRef);
+          changes.add(species);
+          changeRefs.add(specRef);
+          signs.add(-1.0);
+        }
+      }
+      if (node.getListOfProducts() != null) {
+        for (SpeciesReferenceNode specRef : node.getListOfProducts()) {
+          changes.add(getSpeciesIndex(specRef.getSpeciesState(index), speciesIndices, listOfSpecies));
+          changeRefs.add(specRef);
+          signs.add(1.0);
+        }
+      }
+      reactantPointers[id + 1] = reactants.size();
+      changePointers[id + 1] = changes.size();
+    }
+
+    int numSpecies = listOfSpecies.size();
+    speciesStates = listOfSpecies.toArray(new HierarchicalState[numSpecies]);
+    reactantSpecies = toArray(reactants);
+    reactantReferences = reactantRefs.toArray(new SpeciesReferenceNode[reactantRefs.size()]);
+    reactantStoichiometries = new double[reactantSpecies.length];
+    changeSpecies = toArray(changes);
+    changeReferences = changeRefs.toArray(new SpeciesReferenceNode[changeRefs.size()]);
+    changeStoichiometries = new double[changeSpecies.length];
+    changeSigns = new double[changeSpecies.length];
+    for (int k = 0; k < changeSigns.length; k++) {
+      changeSigns[k] = signs.get(k);
+    }
+    highestOrder = new int[numSpecies];
+    highestOrderStoichiometry = new double[numSpecies];
+    isLeapReactant = new boolean[numSpecies];
+    meanChange = new double[numSpecies];
+    changeVariance = new double[numSpecies];
+    speciesChange = new double[numSpecies];
+
+    // the highest order of the reactions that consume each species gives the bound on its relative change
+    updateStoichiometries();
+    for (int j = 0; j < numChannels; j++) {
+      int order = 0;
+      for (int k = reactantPointers[j]; k < reactantPointers[j + 1]; k++) {
+        order += (int) Math.ceil(reactantStoichiometries[k]);
+      }
+      for (int k = reactantPointers[j]; k < reactantPointers[j + 1]; k++) {
+        int species = reactantSpecies[k];
+        if (order > highestOrder[species]) {
+          highestOrder[species] = order;
+          highestOrderStoichiometry[species] = reactantStoichiometries[k];
+        } else if (order == highestOrder[species]) {
+          highestOrderStoichiometry[species] = Math.max(highestOrderStoichiometry[species], reactantStoichiometries[k]);
+        }
+      }
+    }
+  }
+
+  private void updateStoichiometries() {
+    for (ReactionChannel channel : listOfChannels) {
+      int id = channel.getId();
+      int index = channel.getModel().getIndex();
+      channel.setArrayIndex();
+      for (int k = reactantPointers[id]; k < reactantPointers[id + 1]; k++) {
+        reactantStoichiometries[k] = reactantReferences[k].getValue(index);
+      }
+      for (int k = changePointers[id]; k < changePointers[id + 1]; k++) {
+        changeStoichiometries[k] = changeReferences[k].getValue(index);
+      }
+    }
+  }
+
+  private void classifyReactions() {
+    for (int j = 0; j < critical.length; j++) {
+      boolean isCritical = reversible[j];
+      for (int k = reactantPointers[j]; k < reactantPointers[j + 1] && !isCritical; k++) {
+        HierarchicalState state = speciesStates[reactantSpecies[k]];
+        double stoichiometry = reactantStoichiometries[k];
+        if (stoichiometry > 0 && !state.isBoundaryCondition()) {
+          isCritical = Math.floor(state.getValue() / stoichiometry) < CRITICAL_FIRINGS;
+        }
+      }
+      critical[j] = isCritical;
+    }
+  }
+
+  private double selectLeapSize() {
+    Arrays.fill(isLeapReactant, false);
+    Arrays.fill(meanChange, 0);
+    Arrays.fill(changeVariance, 0);
+
+    for (int j = 0; j < critical.length; j++) {
+      if (critical[j]) {
+        continue;
+      }
+      for (int k = reactantPointers[j]; k < reactantPointers[j + 1]; k++) {
+        isLeapReactant[reactantSpecies[k]] = true;
+      }
+      double propensity = listOfChannels.get(j).getPropensity();
+      for (int k = changePointers[j]; k < changePointers[j + 1]; k++) {
+        double change = changeSigns[k] * changeStoichiometries[k];
+        meanChange[changeSpecies[k]] += change * propensity;
+        changeVariance[changeSpecies[k]] += change * change * propensity;
+      }
+    }
+
+    double leapSize = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < speciesStates.length; i++) {
+      if (!isLeapReactant[i] || speciesStates[i].isBoundaryCondition()) {
+        continue;
+      }
+      double value = speciesStates[i].getValue();
+      double bound = Math.max(EPSILON * value / getRelativeChangeFactor(i, value), 1);
+      if (meanChange[i] != 0) {
+        leapSize = Math.min(leapSize, bound / Math.abs(meanChange[i]));
+      }
+      if (changeVariance[i] != 0) {
+        leapSize = Math.min(leapSize, bound * bound / changeVariance[i]);
+      }
+    }
+    return leapSize;
+  }
+
+  private double getRelativeChangeFactor(int species, double value) {
+    int order = highestOrder[species];
+    double stoichiometry = highestOrderStoichiometry[species];
+    switch (order) {
+    case 1:
+      return 1;
+    case 2:
+      return stoichiometry >= 2 ? 2 + 1 / Math.max(value - 1, 1) : 2;
+    case 3:
+      if (stoichiometry >= 3) { return 3 + 1 / Math.max(value - 1, 1) + 2 / Math.max(value - 2, 1); }
+      if (stoichiometry >= 2) { return 1.5 * (2 + 1 / Math.max(value - 1, 1)); }
+      return 3;
+    default:
+      return Math.max(order, 1);
+    }
+  }
+
+  private boolean performExactStep(double time, double nextEventTime, double nextMaxTime, double timeLimit) {
+    double r1 = getRandom();
+    double r2 = getRandom();
+    double nextReactionTime = time + Math.log(1 / r1) / totalPropensity;
+    double newTime;
+
+    if (nextReactionTime < nextEventTime && nextReactionTime < nextMaxTime) {
+      newTime = nextReactionTime;
+    } else if (nextEventTime <= nextMaxTime) {
+      newTime = nextEventTime;
+    } else {
+      newTime = nextMaxTime;
+    }
+
+    if (newTime > timeLimit) { return false; }
+
+    if (print) {
+      printToFile();
+    }
+
+    setCurrentTime(newTime);
+    if (newTime == nextReactionTime) {
+      selectAndPerformReaction(r2);
+    } else if (newTime == nextEventTime) {
+      computeEvents();
+      updateAll = true;
+    }
+    computeAssignmentRules();
+    return true;
+  }
+
+  private void performLeap(double time, double leapSize, double nextEventTime, double stepLimit) {
+    double criticalPropensity = 0;
+    for (int j = 0; j < critical.length; j++) {
+      if (critical[j]) {
+        criticalPropensity += listOfChannels.get(j).getPropensity();
+      }
+    }
+
+    double remaining = stepLimit - time;
+    double noncriticalLeap = Math.min(leapSize, remaining);
+    double tau;
+    boolean fireCritical;
+    while (true) {
+      double criticalLeap = criticalPropensity > 0 ? Math.log(1 / getRandom()) / criticalPropensity : Double.POSITIVE_INFINITY;
+      if (criticalLeap < noncriticalLeap) {
+        tau = criticalLeap;
+        fireCritical = true;
+      } else {
+        tau = noncriticalLeap;
+        fireCritical = false;
+      }
+      if (sampleFirings(tau)) {
+        break;
+      }
+      noncriticalLeap = noncriticalLeap / 2;
+    }
+
+    double newTime = tau == remaining ? stepLimit : time + tau;
+    if (print) {
+      printToFile();
+    }
+
+    setCurrentTime(newTime);
+    for (int i = 0; i < speciesStates.length; i++) {
+      if (speciesChange[i] != 0 && !speciesStates[i].isBoundaryCondition()) {
+        speciesStates[i].setStateValue(speciesStates[i].getValue() + speciesChange[i]);
+      }
+    }
+    if (fireCritical) {
+      fireCriticalReaction(criticalPropensity);
+    }
+    if (newTime == nextEventTime) {
+      computeEvents();
+    }
+    computeAssignmentRules();
+    updateAll = true;
+  }
+
+  private boolean sampleFirings(double tau) {
+    Arrays.fill(speciesChange, 0);
+    for (int j = 0; j < critical.length; j++) {
+      firings[j] = critical[j] ? 0 : PoissonSampler.sample(this::getRandom, listOfChannels.get(j).getPropensity() * tau);
+      if (firings[j] == 0) {
+        continue;
+      }
+      for (int k = changePointers[j]; k < changePointers[j + 1]; k++) {
+        speciesChange[changeSpecies[k]] += changeSigns[k] * changeStoichiometries[k] * firings[j];
+      }
+    }
+
+    for (int i = 0; i < speciesStates.length; i++) {
+      if (speciesChange[i] < 0 && !speciesStates[i].isBoundaryCondition() && speciesStates[i].getValue() + speciesChange[i] < 0) { return false; }
+    }
+    return true;
+  }
+
+  private void fireCriticalReaction(double criticalPropensity) {
+    double threshold = getRandom() * criticalPropensity;
+    ReactionChannel selected = null;
+    for (int j = 0; j < critical.length; j++) {
+      if (critical[j]) {
+        selected = listOfChannels.get(j);
+        threshold -= selected.getPropensity();
+        if (threshold < 0) {
+          break;
+        }
+      }
+    }
+    if (selected == null) { return; }
+
+    ReactionNode node = selected.getNode();
+    selected.setArrayIndex();
+    double reverseThreshold = node.getReverseRate() != null ? getRandom() * selected.getPropensity() : 0;
+    node.fireReaction(selected.getModel().getIndex(), reverseThreshold);
+  }
+
+  private void computePropensities() {
+    if (updateAll || dependencyGraph.requiresFullUpdate()) {
+      for (HierarchicalModel model : this.getListOfHierarchicalModels()) {
+        model.computePropensities(computeRateOfChange);
+      }
+      for (ReactionChannel channel : listOfChannels) {
+        propensityTree.update(channel.getId(), channel.readPropensity());
+      }
+      updateAll = false;
+    } else {
+      updatePropensities(dependencyGraph.getListOfTimeDependentChannels());
+    }
+    totalPropensity = propensityTree.getTotal();
+  }
+
+  private void updatePropensities(List<ReactionChannel> listOfChannels) {
+    for (ReactionChannel channel : listOfChannels) {
+      propensityTree.update(channel.getId(), channel.updatePropensity(computeRateOfChange));
+    }
+  }
+
+  private void selectAndPerformReaction(double r2) {
+    int selected = propensityTree.search(totalPropensity * r2);
+    if (selected < 0) { return; }
+
+    ReactionChannel channel = listOfChannels.get(selected);
+    ReactionNode node = channel.getNode();
+    channel.setArrayIndex();
+    double threshold = node.getReverseRate() != null ? getRandom() * channel.getPropensity() : 0;
+    List<HierarchicalState> listOfUpdates = node.fireReactionAndUpdatePropensity(channel.getModel().getIndex(), threshold);
+
+    propensityTree.update(selected, channel.updatePropensity(computeRateOfChange));
+    updatePropensities(dependencyGraph.getAffectedChannels(listOfUpdates, channel));
+  }
+
+  private double getNextEventTime() {
+    checkEvents();
+    if (triggeredEventList != null && !triggeredEventList.isEmpty()) { return triggeredEventList.peek().getFireTime(); }
+    return Double.POSITIVE_INFINITY;
+  }
+
+  private static int getSpeciesIndex(HierarchicalState state, Map<HierarchicalState, Integer> speciesIndices, List<HierarchicalState> listOfSpecies) {
+    Integer species = speciesIndices.get(state);
+    if (species == null) {
+      species = listOfSpecies.size();
+      speciesIndices.put(state, species);
+      listOfSpecies.add(state);
+    }
+    return species;
+  }
 
+  private static int[] toArray(List<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
 }
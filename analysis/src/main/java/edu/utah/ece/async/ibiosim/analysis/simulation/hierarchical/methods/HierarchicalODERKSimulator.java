@@ -21,8 +21,8 @@ import javax.xml.stream.XMLStreamException;
 import org.apache.commons.math3.exception.DimensionMismatchException;
 import org.apache.commons.math3.exception.MaxCountExceededException;
 import org.apache.commons.math3.exception.NumberIsTooSmallException;
-import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
 import org.apache.commons.math3.ode.events.EventHandler;
+import org.apache.commons.math3.ode.nonstiff.AdaptiveStepsizeIntegrator;
 import org.apache.commons.math3.ode.nonstiff.HighamHall54Integrator;
 
 import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
@@ -34,22 +34,30 @@ import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.EventNod
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorWrapper;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.RosenbrockIntegrator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.RosenbrockIntegrator.SparseJacobianEquations;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.SymbolicJacobian;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.ModelSetup;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 
 /**
  * Hierarchical ODE simulator.
  *
+ * <p>
+ * Models are integrated with an explicit Runge-Kutta method unless the simulation properties select the Rosenbrock
+ * method, which is meant for stiff models. The Rosenbrock method uses a symbolic Jacobian when the model allows it.
+ *
  * @author Leandro Watanabe
  * @author Chris Myers
  * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
  * @version %I%
  */
-public final class HierarchicalODERKSimulator extends HierarchicalSimulation implements FirstOrderDifferentialEquations {
+public final class HierarchicalODERKSimulator extends HierarchicalSimulation implements SparseJacobianEquations {
 
-  private final HighamHall54Integrator odecalc;
+  private final AdaptiveStepsizeIntegrator odecalc;
   private final VectorWrapper vectorWrapper;
   private final boolean print;
+  private SymbolicJacobian jacobian;
 
   /**
    * Creates an instance of an ODE simulator.
@@ -68,7 +76,7 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
 
     SimulationProperties simProperties = properties.getSimulationProperties();
     this.vectorWrapper = new VectorWrapper();
-    this.odecalc = new HighamHall54Integrator(simProperties.getMinTimeStep(), simProperties.getMaxTimeStep(), simProperties.getAbsError(), simProperties.getRelError());
+    this.odecalc = createIntegrator(simProperties);
     this.isInitialized = false;
     this.print = true;
   }
@@ -92,7 +100,7 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
 
     SimulationProperties simProperties = properties.getSimulationProperties();
     this.vectorWrapper = new VectorWrapper();
-    this.odecalc = new HighamHall54Integrator(simProperties.getMinTimeStep(), simProperties.getMaxTimeStep(), simProperties.getAbsError(), simProperties.getRelError());
+    this.odecalc = createIntegrator(simProperties);
     this.isInitialized = false;
     this.print = print;
   }
@@ -121,6 +129,9 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
       setCurrentTime(simProperties.getInitialTime());
       ModelSetup.setupModels(this, ModelType.HODE, vectorWrapper);
       vectorWrapper.initStateValues();
+      if (odecalc instanceof RosenbrockIntegrator) {
+        jacobian = new SymbolicJacobian(modules, vectorWrapper.getSize(), simProperties.isCompileMath());
+      }
       computeFixedPoint();
       if (hasEvents()) {
         HierarchicalEventHandler handler = new HierarchicalEventHandler();
@@ -181,7 +192,7 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
     }
     if (print) {
       printToFile();
-      // closeWriter();
+      closeWriter();
     }
   }
 
@@ -195,6 +206,11 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
   @Override
   public void printStatisticsTSD() {}
 
+  private static AdaptiveStepsizeIntegrator createIntegrator(SimulationProperties simProperties) {
+    if ("rosenbrock".equals(simProperties.getOdeIntegrator())) { return new RosenbrockIntegrator(simProperties.getMinTimeStep(), simProperties.getMaxTimeStep(), simProperties.getAbsError(), simProperties.getRelError()); }
+    return new HighamHall54Integrator(simProperties.getMinTimeStep(), simProperties.getMaxTimeStep(), simProperties.getAbsError(), simProperties.getRelError());
+  }
+
   private void computeRates() {
     boolean changed = true;
 
@@ -238,6 +254,24 @@ public final class HierarchicalODERKSimulator extends HierarchicalSimulation imp
     System.arraycopy(vectorWrapper.getRates(), 0, yDot, 0, yDot.length);
   }
 
+  @Override
+  public int[] getJacobianRowPointers() {
+    return jacobian != null && jacobian.isSupported() ? jacobian.getRowPointers() : null;
+  }
+
+  @Override
+  public int[] getJacobianColumns() {
+    return jacobian.getColumns();
+  }
+
+  @Override
+  public void computeJacobian(double t, double[] y, double[] values) {
+    setCurrentTime(t);
+    vectorWrapper.setValues(y);
+    computeRates();
+    jacobian.compute(values);
+  }
+
   private class HierarchicalEventHandler implements EventHandler {
 
     private double value = -1;
@@ -14,6 +14,7 @@
 package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.PriorityQueue;
 
 import javax.xml.stream.XMLStreamException;
@@ -23,15 +24,23 @@ import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel.ModelType;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
-import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.DependencyGraph;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.DependencyGraph.ReactionChannel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.EventDependencyGraph;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.SumTree;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.ModelSetup;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 
 /**
  * Hierarchical SSA simulator.
  *
+ * <p>
+ * The propensities of the reactions in every model are kept in a sum tree. After a reaction fires, only the reactions
+ * that depend on the updated species are recomputed, and the next reaction is selected by descending the tree. In the
+ * same way, only the event triggers that read an updated species are checked again after a reaction fires.
+ *
  * @author Leandro Watanabe
  * @author Chris Myers
  * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
@@ -40,6 +49,12 @@ import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
   private final boolean print;
   private double totalPropensity;
+  private DependencyGraph dependencyGraph;
+  private SumTree propensityTree;
+  private boolean updateAll;
+  private EventDependencyGraph eventDependencyGraph;
+  private List<HierarchicalState> lastUpdates;
+  private boolean checkAllEvents;
 
   /**
    * Creates an instance of a SSA simulator.
@@ -106,6 +121,11 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
         computeEvents();
       }
 
+      dependencyGraph = new DependencyGraph(getListOfHierarchicalModels(), currentTime);
+      if (hasEvents) {
+        eventDependencyGraph = new EventDependencyGraph(getListOfHierarchicalModels(), currentTime);
+      }
+      propensityTree = new SumTree(dependencyGraph.getListOfChannels().size());
       setupForOutput(runNumber);
       isInitialized = true;
     }
@@ -140,6 +160,8 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
 
     printTime = simProperties.getOutputStartTime();
     previousTime = 0;
+    updateAll = true;
+    checkAllEvents = true;
 
     while (currentTime.getState().getValue() < timeLimit) {
       // if (!HierarchicalUtilities.evaluateConstraints(constraintList))
@@ -204,74 +226,65 @@ public class HierarchicalSSADirectSimulator extends HierarchicalSimulation {
   private void update(boolean reaction, boolean rateRule, boolean events, double r2, double previousTime) {
     if (reaction) {
       selectAndPerformReaction(r2);
+    } else {
+      checkAllEvents = true;
     }
     if (rateRule) {
       fireRateRules(previousTime);
     }
     if (events) {
       computeEvents();
+      updateAll = true;
     }
     computeAssignmentRules();
   }
 
   private void computePropensities() {
-    totalPropensity = 0;
-    for (HierarchicalModel model : this.getListOfHierarchicalModels()) {
-      double propensity = 0;
-      double reactionPropensity;
-      int index = model.getIndex();
-      for (ReactionNode node : model.getListOfReactions()) {
-        reactionPropensity = 0;
-        HierarchicalState reactionState = node.getState().getChild(index);
-        for (HierarchicalNode subNode : node) {
-          node.computePropensity(index, computeRateOfChange);
-          reactionPropensity += node.getValue(index);
-        }
-        if (node.isArray()) {
-          reactionState.setStateValue(reactionPropensity);
-        }
-        propensity += reactionPropensity;
+    if (updateAll || dependencyGraph.requiresFullUpdate()) {
+      for (HierarchicalModel model : this.getListOfHierarchicalModels()) {
+        model.computePropensities(computeRateOfChange);
+      }
+      for (ReactionChannel channel : dependencyGraph.getListOfChannels()) {
+        propensityTree.update(channel.getId(), channel.readPropensity());
       }
-      model.setPropensity(propensity);
-      totalPropensity += propensity;
+      updateAll = false;
+    } else {
+      updatePropensities(dependencyGraph.getListOfTimeDependentChannels());
     }
+    totalPropensity = propensityTree.getTotal();
   }
 
-  private void fireRateRules(double previousTime) {}
-
-  private void selectAndPerformReaction(double r2) {
-    double sum = 0;
-    double threshold = totalPropensity * r2;
-    HierarchicalModel selectedModel = null;
-    for (HierarchicalModel model : this.getListOfHierarchicalModels()) {
-      sum += model.getPropensity();
-      if (sum >= threshold) {
-        sum = sum - model.getPropensity();
-        selectedModel = model;
-        break;
-      }
+  private void updatePropensities(List<ReactionChannel> listOfChannels) {
+    for (ReactionChannel channel : listOfChannels) {
+      propensityTree.update(channel.getId(), channel.updatePropensity(computeRateOfChange));
     }
+  }
 
-    int index = selectedModel.getIndex();
-    for (ReactionNode node : selectedModel.getListOfReactions()) {
-      double reactionPropensity = node.getState().getChild(index).getValue();
-      sum += reactionPropensity;
-      if (sum >= threshold) {
-        sum = sum - reactionPropensity;
-        for (HierarchicalNode subNode : node) {
-          sum += node.getValue(index);
-          if (sum >= threshold) {
-            node.fireReaction(index, sum - threshold);
-            return;
-          }
-        }
-      }
-    }
+  private void fireRateRules(double previousTime) {}
 
+  private void selectAndPerformReaction(double r2) {
+    int selected = propensityTree.search(totalPropensity * r2);
+    if (selected < 0) { return; }
+
+    ReactionChannel channel = dependencyGraph.getListOfChannels().get(selected);
+    ReactionNode node = channel.getNode();
+    channel.setArrayIndex();
+    double threshold = node.getReverseRate() != null ? getRandom() * channel.getPropensity() : 0;
+    List<HierarchicalState> listOfUpdates = node.fireReactionAndUpdatePropensity(channel.getModel().getIndex(), threshold);
+    lastUpdates = listOfUpdates;
+
+    propensityTree.update(selected, channel.updatePropensity(computeRateOfChange));
+    updatePropensities(dependencyGraph.getAffectedChannels(listOfUpdates, channel));
   }
 
   private double getNextEventTime() {
-    checkEvents();
+    if (checkAllEvents || eventDependencyGraph == null || eventDependencyGraph.requiresFullUpdate()) {
+      checkEvents();
+      checkAllEvents = false;
+    } else {
+      checkEvents(eventDependencyGraph.getAffectedEvents(lastUpdates));
+    }
+    lastUpdates = null;
     if (triggeredEventList != null && !triggeredEventList.isEmpty()) { return triggeredEventList.peek().getFireTime(); }
     return Double.POSITIVE_INFINITY;
   }
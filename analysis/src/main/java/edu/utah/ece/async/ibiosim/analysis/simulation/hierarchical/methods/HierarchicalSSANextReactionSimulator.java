@@ -14,12 +14,7 @@
 package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.PriorityQueue;
 
 import javax.xml.stream.XMLStreamException;
@@ -29,17 +24,22 @@ import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel.ModelType;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
-import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
-import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Evaluator;
-import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.DependencyGraph;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.DependencyGraph.ReactionChannel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.IndexedPriorityQueue;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.setup.ModelSetup;
 import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
 
 /**
  * Hierarchical SSA simulator using Gibson and Bruck method.
  *
+ * <p>
+ * Every reaction (and every element of an arrayed reaction) keeps a putative firing time in an indexed priority queue.
+ * When a reaction fires, only the reactions that depend on the updated species get their propensity recomputed and
+ * their firing time rescaled, so each step takes O(log R) on models with sparse dependencies.
+ *
  * @author Leandro Watanabe
  * @author Chris Myers
  * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
@@ -47,8 +47,8 @@ import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
  */
 public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation {
   private final boolean print;
-  private double totalPropensity;
-  private Map<HierarchicalState, List<DependencyNode>> dependencyGraph;
+  private DependencyGraph dependencyGraph;
+  private IndexedPriorityQueue reactionQueue;
 
   /**
    * Creates an instance of a SSA simulator.
@@ -140,7 +140,7 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
   public void simulate() throws IOException, XMLStreamException, BioSimException {
 
     SimulationProperties simProperties = properties.getSimulationProperties();
-    double r1 = 0, r2 = 0, delta_t = 0, nextReactionTime = 0, previousTime = 0, nextEventTime = 0, nextMaxTime = 0;
+    double nextReactionTime = 0, nextEventTime = 0, nextMaxTime = 0;
     double timeLimit = simProperties.getTimeLimit();
     double maxTimeStep = simProperties.getMaxTimeStep();
 
@@ -149,9 +149,8 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
     }
 
     printTime = simProperties.getOutputStartTime();
-    previousTime = 0;
 
-    computePropensities();
+    initializeReactionTimes(currentTime.getState().getValue());
 
     while (currentTime.getState().getValue() < timeLimit) {
       // if (!HierarchicalUtilities.evaluateConstraints(constraintList))
@@ -164,13 +163,10 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
       }
 
       double currentTime = this.currentTime.getState().getValue();
-      r1 = getRandom();
-      r2 = getRandom();
-      delta_t = Math.log(1 / r1) / totalPropensity;
-      nextReactionTime = currentTime + delta_t;
+      int nextReaction = reactionQueue.peek();
+      nextReactionTime = nextReaction >= 0 ? reactionQueue.getKey(nextReaction) : Double.POSITIVE_INFINITY;
       nextEventTime = getNextEventTime();
       nextMaxTime = currentTime + maxTimeStep;
-      previousTime = currentTime;
 
       if (nextReactionTime < nextEventTime && nextReactionTime < nextMaxTime) {
         currentTime = nextReactionTime;
@@ -190,17 +186,17 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
 
       setCurrentTime(currentTime);
       if (currentTime == nextReactionTime) {
-        update(true, false, false, r2, previousTime);
+        update(nextReaction, false, currentTime);
       } else if (currentTime == nextEventTime) {
-        update(false, false, true, r2, previousTime);
+        update(-1, true, currentTime);
       } else {
-        update(false, true, false, r2, previousTime);
+        update(-1, false, currentTime);
       }
     }
 
     if (!cancel) {
       setCurrentTime(timeLimit);
-      update(false, true, true, r2, previousTime);
+      update(-1, true, timeLimit);
       if (print) {
         printToFile();
       }
@@ -214,203 +210,95 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
   }
 
   private void buildDependencyGraph() {
-    dependencyGraph = new HashMap<>();
-    for (HierarchicalModel model : this.getListOfHierarchicalModels()) {
-      int index = model.getIndex();
-      for (ReactionNode node : model.getListOfReactions()) {
-        getReactionDependency(model, node, index);
-      }
-    }
+    dependencyGraph = new DependencyGraph(getListOfHierarchicalModels(), currentTime);
+    reactionQueue = new IndexedPriorityQueue(dependencyGraph.getListOfChannels().size());
   }
 
-  private void getReactionDependency(HierarchicalModel model, ReactionNode node, int index) {
-    List<HierarchicalNode> dependencies = getDependency(node);
-
-    int[] arrayIndex = null;
-    for (HierarchicalNode subNode : node) {
-      if (node.getListOfDimensions() != null) {
-        int n = node.getListOfDimensions().size();
-        arrayIndex = new int[n];
-        for (int i = 0; i < n; i++) {
-          arrayIndex[i] = (int) node.getListOfDimensions().get(i).getValue(index);
-        }
-      }
-      DependencyNode dependencyNode = new DependencyNode(model, node, arrayIndex);
-      for (HierarchicalNode dependency : dependencies) {
-        HierarchicalState state = null;
-        if (dependency.isName()) {
-          state = dependency.getRootState(index);
-          if (!dependencyGraph.containsKey(state)) {
-            dependencyGraph.put(state, new ArrayList<>());
-          }
-          dependencyGraph.get(state).add(dependencyNode);
-        } else if (dependency.getType() == Type.FUNCTION_SELECTOR) {
-          HierarchicalNode variable = dependency.getChild(0);
-          state = variable.getState().getChild(index);
-          for (int i = 1; i < dependency.getNumOfChild(); i++) {
-            int selectorIndex = (int) Evaluator.evaluateExpressionRecursive(dependency.getChild(i), index);
-            state = state.getChild(selectorIndex);
-          }
-
-        }
-
-        if (state != null) {
-          if (!dependencyGraph.containsKey(state)) {
-            dependencyGraph.put(state, new ArrayList<>());
-          }
-          dependencyGraph.get(state).add(dependencyNode);
-        }
-      }
-    }
-  }
-
-  private List<HierarchicalNode> getDependency(ReactionNode node) {
-
-    List<HierarchicalNode> output = new ArrayList<>();
-    LinkedList<HierarchicalNode> unprocessed = new LinkedList<>();
-    unprocessed.add(node.getForwardRate());
-
-    if (node.getReverseRate() != null) {
-      unprocessed.add(node.getReverseRate());
-    }
-
-    while (!unprocessed.isEmpty()) {
-      HierarchicalNode currentNode = unprocessed.remove();
-
-      if (currentNode.isName()) {
-        output.add(currentNode);
-      } else if (currentNode.getType() == Type.FUNCTION_SELECTOR) {
-        if (currentNode.getChild(0).isName()) {
-          output.add(currentNode);
-        }
-      } else {
-        if (currentNode.getNumOfChild() > 0) {
-          for (int i = 0; i < currentNode.getNumOfChild(); i++) {
-            unprocessed.add(currentNode.getChild(i));
-          }
-        }
-      }
-
-    }
-
-    return output;
-  }
-
-  private void update(boolean reaction, boolean rateRule, boolean events, double r2, double previousTime) {
-    if (reaction) {
-      selectAndPerformReaction(r2);
-    }
-    if (rateRule) {
-      fireRateRules(previousTime);
+  private void update(int reaction, boolean events, double time) {
+    if (reaction >= 0) {
+      performReaction(dependencyGraph.getListOfChannels().get(reaction), time);
     }
     if (events) {
       computeEvents();
     }
     computeAssignmentRules();
+    if (events || dependencyGraph.requiresFullUpdate()) {
+      // Variables may have changed outside of the reaction dependencies
+      updateReactionTimes(time, dependencyGraph.getListOfChannels());
+    } else {
+      updateReactionTimes(time, dependencyGraph.getListOfTimeDependentChannels());
+    }
   }
 
   private void computePropensities() {
-    totalPropensity = 0;
     for (HierarchicalModel modelstate : this.getListOfHierarchicalModels()) {
       modelstate.computePropensities(computeRateOfChange);
-      totalPropensity += modelstate.getPropensity();
     }
   }
 
-  private void fireRateRules(double previousTime) {}
-
-  private void selectAndPerformReaction(double r2) {
-    double sum = 0;
-    double threshold = totalPropensity * r2;
-    HierarchicalModel selectedModel = null;
-    ReactionNode selectedReaction = null;
-    for (HierarchicalModel model : this.getListOfHierarchicalModels()) {
-      sum += model.getPropensity();
-      if (sum >= threshold) {
-        threshold = sum - threshold;
-        selectedModel = model;
-        break;
-      }
-    }
-    if (selectedModel == null) { return; }
-
-    int index = selectedModel.getIndex();
-    sum = 0;
-    for (ReactionNode node : selectedModel.getListOfReactions()) {
-      sum += node.getState().getChild(index).getValue();
-      if (sum >= threshold) {
-        threshold = sum - threshold;
-        sum = 0;
-        selectedReaction = node;
-        break;
-      }
+  /**
+   * Computes every propensity and draws a new firing time for every reaction.
+   */
+  private void initializeReactionTimes(double time) {
+    computePropensities();
+    for (ReactionChannel reaction : dependencyGraph.getListOfChannels()) {
+      reactionQueue.update(reaction.getId(), getFiringTime(reaction.readPropensity(), time));
     }
+  }
 
-    if (selectedReaction != null) {
-      for (HierarchicalNode subNode : selectedReaction) {
-        sum += selectedReaction.getValue(index);
-        if (sum >= threshold) {
-          performReaction(selectedModel, selectedReaction, sum - threshold, index);
-          break;
-        }
-      }
+  /**
+   * Recomputes the given propensities and rescales the firing time of the reactions whose propensity changed.
+   */
+  private void updateReactionTimes(double time, List<ReactionChannel> listOfChannels) {
+    for (ReactionChannel reaction : listOfChannels) {
+      double oldPropensity = reaction.getPropensity();
+      reaction.updatePropensity(computeRateOfChange);
+      updateFiringTime(reaction, oldPropensity, time);
     }
   }
 
-  private void performReaction(HierarchicalModel model, ReactionNode reactionNode, double threshold, int index) {
-    double oldValue = reactionNode.getValue(index);
+  private void performReaction(ReactionChannel reaction, double time) {
+    ReactionNode reactionNode = reaction.getNode();
+    int index = reaction.getModel().getIndex();
+    reaction.setArrayIndex();
+
+    double threshold = reactionNode.getReverseRate() != null ? getRandom() * reaction.getPropensity() : 0;
     List<HierarchicalState> listOfUpdates = reactionNode.fireReactionAndUpdatePropensity(index, threshold);
-    double newValue = reactionNode.getValue(index);
-
-    double change = (newValue - oldValue);
-    totalPropensity += change;
-    model.updateModelPropensity(change);
-    if (reactionNode.isArray()) {
-      double totalReactionPropensity = reactionNode.getState().getChild(index).getValue();
-      reactionNode.getState().getChild(index).setStateValue(totalReactionPropensity + change);
+
+    reaction.updatePropensity(computeRateOfChange);
+    reactionQueue.update(reaction.getId(), getFiringTime(reaction.getPropensity(), time));
+
+    for (ReactionChannel dependency : dependencyGraph.getAffectedChannels(listOfUpdates, reaction)) {
+      double oldPropensity = dependency.getPropensity();
+      dependency.updatePropensity(computeRateOfChange);
+      updateFiringTime(dependency, oldPropensity, time);
     }
-    updateDependencies(listOfUpdates);
-    return;
   }
 
-  private void updateDependencies(List<HierarchicalState> listOfUpdates) {
-    HashSet<DependencyNode> updatedNodes = new HashSet<>();
-    for (HierarchicalState update : listOfUpdates) {
-
-      if (!dependencyGraph.containsKey(update)) {
-        continue;
-      }
+  /**
+   * Rescales the firing time of a reaction that did not fire after its propensity changed, which reuses the random
+   * number drawn for it. A reaction that was disabled gets a new firing time.
+   */
+  private void updateFiringTime(ReactionChannel reaction, double oldPropensity, double time) {
+    double newPropensity = reaction.getPropensity();
+    if (newPropensity == oldPropensity) {
+      return;
+    }
 
-      List<DependencyNode> dependencies = dependencyGraph.get(update);
-
-      for (DependencyNode dependency : dependencies) {
-        if (!updatedNodes.contains(dependency)) {
-          updatedNodes.add(dependency);
-        } else {
-          continue;
-        }
-
-        HierarchicalModel model = dependency.model;
-        ReactionNode reactionNode = dependency.node;
-        int index = model.getIndex();
-
-        if (dependency.arrayIndex != null) {
-          for (int i = 0; i < dependency.arrayIndex.length; i++) {
-            reactionNode.getListOfDimensions().get(i).setValue(index, dependency.arrayIndex[i]);
-          }
-        }
-        double oldValue = reactionNode.getValue(index);
-        reactionNode.computePropensity(index, computeRateOfChange);
-        double newValue = reactionNode.getValue(index);
-        double change = (newValue - oldValue);
-        totalPropensity += change;
-        model.updateModelPropensity(change);
-        if (reactionNode.isArray()) {
-          double totalReactionPropensity = reactionNode.getState().getChild(index).getValue();
-          reactionNode.getState().getChild(index).setStateValue(totalReactionPropensity + change);
-        }
-      }
+    double firingTime = reactionQueue.getKey(reaction.getId());
+    if (newPropensity <= 0) {
+      firingTime = Double.POSITIVE_INFINITY;
+    } else if (oldPropensity > 0 && firingTime != Double.POSITIVE_INFINITY) {
+      firingTime = time + (oldPropensity / newPropensity) * (firingTime - time);
+    } else {
+      firingTime = getFiringTime(newPropensity, time);
     }
+    reactionQueue.update(reaction.getId(), firingTime);
+  }
+
+  private double getFiringTime(double propensity, double time) {
+    if (propensity <= 0) { return Double.POSITIVE_INFINITY; }
+    return time + Math.log(1 / getRandom()) / propensity;
   }
 
   private double getNextEventTime() {
@@ -418,16 +306,4 @@ public class HierarchicalSSANextReactionSimulator extends HierarchicalSimulation
     if (triggeredEventList != null && !triggeredEventList.isEmpty()) { return triggeredEventList.peek().getFireTime(); }
     return Double.POSITIVE_INFINITY;
   }
-
-  private class DependencyNode {
-    ReactionNode node;
-    int[] arrayIndex;
-    HierarchicalModel model;
-
-    public DependencyNode(HierarchicalModel model, ReactionNode node, int[] arrayIndex) {
-      this.node = node;
-      this.arrayIndex = arrayIndex;
-      this.model = model;
-    }
-  }
 }
@@ -0,0 +1,313 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Evaluator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+
+/**
+ * Maps the state of each variable to the reactions whose propensity depends on it.
+ *
+ * <p>
+ * Every reaction, and every element of an arrayed reaction, is a {@link ReactionChannel} with a unique id, so
+ * simulators can index their data structures by channel.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class DependencyGraph {
+
+  private final Map<HierarchicalState, List<ReactionChannel>> dependencyGraph;
+  private final List<ReactionChannel> listOfChannels;
+  private final List<ReactionChannel> listOfTimeDependentChannels;
+  private final List<ReactionChannel> affectedChannels;
+  private final HierarchicalNode currentTime;
+  private boolean requiresFullUpdate;
+  private int step;
+
+  /**
+   * Creates the dependency graph of the reactions in the given models.
+   *
+   * @param listOfModels
+   *          - the hierarchical models.
+   * @param currentTime
+   *          - the simulation time node.
+   */
+  public DependencyGraph(List<HierarchicalModel> listOfModels, HierarchicalNode currentTime) {
+    this.dependencyGraph = new HashMap<>();
+    this.listOfChannels = new ArrayList<>();
+    this.listOfTimeDependentChannels = new ArrayList<>();
+    this.affectedChannels = new ArrayList<>();
+    this.currentTime = currentTime;
+    this.requiresFullUpdate = false;
+
+    for (HierarchicalModel model : listOfModels) {
+      int index = model.getIndex();
+      if (model.getListOfAssignmentRules() != null && !model.getListOfAssignmentRules().isEmpty()) {
+        requiresFullUpdate = true;
+      }
+      for (ReactionNode node : model.getListOfReactions()) {
+        addReactionDependency(model, node, index);
+      }
+    }
+  }
+
+  /**
+   * Gets the list of reaction channels.
+   *
+   * @return the reaction channels.
+   */
+  public List<ReactionChannel> getListOfChannels() {
+    return listOfChannels;
+  }
+
+  /**
+   * Gets the list of reaction channels whose propensity depends on the simulation time.
+   *
+   * @return the time-dependent reaction channels.
+   */
+  public List<ReactionChannel> getListOfTimeDependentChannels() {
+    return listOfTimeDependentChannels;
+  }
+
+  /**
+   * Checks whether variables can change outside of reaction firings, such as by assignment rules. When that is the
+   * case, updating the dependencies of fired reactions is not enough and every propensity needs to be recomputed.
+   *
+   * @return true if every propensity should be recomputed at each step.
+   */
+  public boolean requiresFullUpdate() {
+    return requiresFullUpdate;
+  }
+
+  /**
+   * Gets the reaction channels whose propensity depends on any of the given states. Each channel appears once. The
+   * returned list is reused by the next call.
+   *
+   * @param listOfUpdates
+   *          - the states that have changed.
+   * @param exclude
+   *          - a channel to leave out of the result or null.
+   * @return the affected reaction channels.
+   */
+  public List<ReactionChannel> getAffectedChannels(List<HierarchicalState> listOfUpdates, ReactionChannel exclude) {
+    affectedChannels.clear();
+    step++;
+    if (exclude != null) {
+      exclude.step = step;
+    }
+    for (HierarchicalState update : listOfUpdates) {
+      List<ReactionChannel> dependencies = dependencyGraph.get(update);
+
+      if (dependencies == null) {
+        continue;
+      }
+
+      for (ReactionChannel dependency : dependencies) {
+        if (dependency.step != step) {
+          dependency.step = step;
+          affectedChannels.add(dependency);
+        }
+      }
+    }
+    return affectedChannels;
+  }
+
+  private void addReactionDependency(HierarchicalModel model, ReactionNode node, int index) {
+    List<HierarchicalNode> dependencies = getDependency(node);
+
+    int[] arrayIndex = null;
+    for (HierarchicalNode subNode : node) {
+      if (node.getListOfDimensions() != null) {
+        int n = node.getListOfDimensions().size();
+        arrayIndex = new int[n];
+        for (int i = 0; i < n; i++) {
+          arrayIndex[i] = (int) node.getListOfDimensions().get(i).getValue(index);
+        }
+      }
+      ReactionChannel channel = new ReactionChannel(listOfChannels.size(), model, node, arrayIndex);
+      listOfChannels.add(channel);
+      boolean isTimeDependent = false;
+      for (HierarchicalNode dependency : dependencies) {
+        HierarchicalState state = null;
+        if (dependency == currentTime || dependency.isTime()) {
+          isTimeDependent = true;
+        } else if (dependency.isName()) {
+          state = dependency.getRootState(index);
+        } else if (dependency.getType() == Type.FUNCTION_SELECTOR) {
+          HierarchicalNode variable = dependency.getChild(0);
+          state = variable.getState().getChild(index);
+          for (int i = 1; i < dependency.getNumOfChild(); i++) {
+            int selectorIndex = (int) Evaluator.evaluateExpressionRecursive(dependency.getChild(i), index);
+            state = state.getChild(selectorIndex);
+          }
+
+        }
+
+        if (state != null) {
+          if (!dependencyGraph.containsKey(state)) {
+            dependencyGraph.put(state, new ArrayList<>());
+          }
+          dependencyGraph.get(state).add(channel);
+        }
+      }
+      if (isTimeDependent) {
+        listOfTimeDependentChannels.add(channel);
+      }
+    }
+  }
+
+  private List<HierarchicalNode> getDependency(ReactionNode node) {
+
+    List<HierarchicalNode> output = new ArrayList<>();
+    LinkedList<HierarchicalNode> unprocessed = new LinkedList<>();
+    unprocessed.add(node.getForwardRate());
+
+    if (node.getReverseRate() != null) {
+      unprocessed.add(node.getReverseRate());
+    }
+
+    while (!unprocessed.isEmpty()) {
+      HierarchicalNode currentNode = unprocessed.remove();
+
+      if (currentNode.isName()) {
+        output.add(currentNode);
+      } else if (currentNode.getType() == Type.FUNCTION_SELECTOR) {
+        if (currentNode.getChild(0).isName()) {
+          output.add(currentNode);
+        }
+      } else {
+        if (currentNode.getNumOfChild() > 0) {
+          for (int i = 0; i < currentNode.getNumOfChild(); i++) {
+            unprocessed.add(currentNode.getChild(i));
+          }
+        }
+      }
+
+    }
+
+    return output;
+  }
+
+  /**
+   * A reaction, or an element of an arrayed reaction, in a given model.
+   */
+  public static class ReactionChannel {
+    private final int id;
+    private final ReactionNode node;
+    private final int[] arrayIndex;
+    private final HierarchicalModel model;
+    private double propensity;
+    private int step;
+
+    ReactionChannel(int id, HierarchicalModel model, ReactionNode node, int[] arrayIndex) {
+      this.id = id;
+      this.node = node;
+      this.arrayIndex = arrayIndex;
+      this.model = model;
+    }
+
+    /**
+     * Gets the channel id.
+     *
+     * @return the id of the channel.
+     */
+    public int getId() {
+      return id;
+    }
+
+    /**
+     * Gets the reaction node.
+     *
+     * @return the reaction node.
+     */
+    public ReactionNode getNode() {
+      return node;
+    }
+
+    /**
+     * Gets the model the reaction belongs to.
+     *
+     * @return the model.
+     */
+    public HierarchicalModel getModel() {
+      return model;
+    }
+
+    /**
+     * Gets the last computed propensity of the channel.
+     *
+     * @return the propensity.
+     */
+    public double getPropensity() {
+      return propensity;
+    }
+
+    /**
+     * Sets the array dimensions of the reaction to the element of this channel.
+     */
+    public void setArrayIndex() {
+      if (arrayIndex != null) {
+        int index = model.getIndex();
+        for (int i = 0; i < arrayIndex.length; i++) {
+          node.getListOfDimensions().get(i).setValue(index, arrayIndex[i]);
+        }
+      }
+    }
+
+    /**
+     * Reads the propensity of the channel, assuming the reaction propensity has already been computed.
+     *
+     * @return the propensity.
+     */
+    public double readPropensity() {
+      setArrayIndex();
+      propensity = node.getValue(model.getIndex());
+      return propensity;
+    }
+
+    /**
+     * Recomputes the propensity of the channel and keeps the model and array propensities consistent.
+     *
+     * @param computeRateOfChange
+     *          - whether to update the species rates.
+     * @return the new propensity.
+     */
+    public double updatePropensity(boolean computeRateOfChange) {
+      int index = model.getIndex();
+
+      setArrayIndex();
+      node.computePropensity(index, computeRateOfChange);
+      double newValue = node.getValue(index);
+      double change = (newValue - propensity);
+      propensity = newValue;
+      model.updateModelPropensity(change);
+      if (node.isArray()) {
+        double totalReactionPropensity = node.getState().getChild(index).getValue();
+        node.getState().getChild(index).setStateValue(totalReactionPropensity + change);
+      }
+      return newValue;
+    }
+  }
+}
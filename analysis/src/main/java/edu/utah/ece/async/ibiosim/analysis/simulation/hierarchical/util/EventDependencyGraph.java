@@ -0,0 +1,252 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.EventNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Evaluator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+
+/**
+ * Maps the state of each variable to the events whose trigger depends on it.
+ *
+ * <p>
+ * A trigger can only change value when a variable it reads changes, so after a reaction fires only the events that
+ * read one of the updated states need to be checked. Events whose trigger reads the time, a reaction, an arrayed
+ * variable, an array element selected by an index that is not constant, or a function such as a random distribution
+ * are checked every time.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class EventDependencyGraph {
+
+  private final Map<HierarchicalState, List<EventChannel>> dependencyGraph;
+  private final List<EventChannel> listOfEvents;
+  private final List<EventChannel> listOfAlwaysCheckedEvents;
+  private final List<EventChannel> affectedEvents;
+  private final HierarchicalNode currentTime;
+  private boolean requiresFullUpdate;
+  private int step;
+
+  /**
+   * Creates the dependency graph of the event triggers in the given models.
+   *
+   * @param listOfModels
+   *          - the hierarchical models.
+   * @param currentTime
+   *          - the simulation time node.
+   */
+  public EventDependencyGraph(List<HierarchicalModel> listOfModels, HierarchicalNode currentTime) {
+    this.dependencyGraph = new HashMap<>();
+    this.listOfEvents = new ArrayList<>();
+    this.listOfAlwaysCheckedEvents = new ArrayList<>();
+    this.affectedEvents = new ArrayList<>();
+    this.currentTime = currentTime;
+    this.requiresFullUpdate = false;
+
+    for (HierarchicalModel model : listOfModels) {
+      if (model.getListOfAssignmentRules() != null && !model.getListOfAssignmentRules().isEmpty()) {
+        requiresFullUpdate = true;
+      }
+      if (model.getListOfRateRules() != null && !model.getListOfRateRules().isEmpty()) {
+        requiresFullUpdate = true;
+      }
+      if (model.getListOfEvents() != null) {
+        for (EventNode node : model.getListOfEvents()) {
+          addEventDependency(model, node);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the list of event channels.
+   *
+   * @return the event channels.
+   */
+  public List<EventChannel> getListOfEvents() {
+    return listOfEvents;
+  }
+
+  /**
+   * Checks whether variables can change outside of reaction firings, such as by assignment or rate rules. When that is
+   * the case, every trigger needs to be checked at each step.
+   *
+   * @return true if every trigger should be checked at each step.
+   */
+  public boolean requiresFullUpdate() {
+    return requiresFullUpdate;
+  }
+
+  /**
+   * Gets the events whose trigger depends on any of the given states, followed by the events that are checked every
+   * time. Each event appears once. The returned list is reused by the next call.
+   *
+   * @param listOfUpdates
+   *          - the states that have changed, or null if none.
+   * @return the affected events.
+   */
+  public List<EventChannel> getAffectedEvents(List<HierarchicalState> listOfUpdates) {
+    affectedEvents.clear();
+    step++;
+    if (listOfUpdates != null) {
+      for (HierarchicalState update : listOfUpdates) {
+        List<EventChannel> dependencies = dependencyGraph.get(update);
+
+        if (dependencies == null) {
+          continue;
+        }
+
+        for (EventChannel dependency : dependencies) {
+          if (dependency.step != step) {
+            dependency.step = step;
+            affectedEvents.add(dependency);
+          }
+        }
+      }
+    }
+    for (EventChannel event : listOfAlwaysCheckedEvents) {
+      if (event.step != step) {
+        event.step = step;
+        affectedEvents.add(event);
+      }
+    }
+    return affectedEvents;
+  }
+
+  private void addEventDependency(HierarchicalModel model, EventNode node) {
+    int index = model.getIndex();
+    EventChannel channel = new EventChannel(model, node);
+    listOfEvents.add(channel);
+
+    List<HierarchicalState> states = new ArrayList<>();
+    boolean isAlwaysChecked = node.isArray();
+    LinkedList<HierarchicalNode> unprocessed = new LinkedList<>();
+    unprocessed.add(node);
+
+    while (!isAlwaysChecked && !unprocessed.isEmpty()) {
+      HierarchicalNode currentNode = unprocessed.remove();
+
+      if (currentNode == currentTime || currentNode.isTime() || currentNode.isReaction()) {
+        isAlwaysChecked = true;
+      } else if (currentNode.getType() == Type.NAME_AVOGADRO) {
+        continue;
+      } else if (currentNode.isName()) {
+        if (currentNode.getState() == null || currentNode.getListOfDimensions() != null) {
+          isAlwaysChecked = true;
+        } else {
+          states.add(currentNode.getRootState(index));
+          HierarchicalNode compartment = currentNode.isSpecies() ? currentNode.getCompartment() : null;
+          if (compartment != null && compartment.getState() != null) {
+            states.add(compartment.getRootState(index));
+          }
+        }
+      } else if (currentNode.getType() == Type.FUNCTION_SELECTOR) {
+        HierarchicalNode variable = currentNode.getChild(0);
+        boolean hasConstantIndices = true;
+        for (int i = 1; i < currentNode.getNumOfChild(); i++) {
+          hasConstantIndices = hasConstantIndices && isConstantExpression(currentNode.getChild(i));
+        }
+        // The element read by a variable index can change with the index, so the trigger depends on the whole array
+        if (!variable.isName() || variable.getState() == null || !hasConstantIndices) {
+          isAlwaysChecked = true;
+        } else {
+          HierarchicalState state = variable.getState().getChild(index);
+          for (int i = 1; i < currentNode.getNumOfChild(); i++) {
+            int selectorIndex = (int) Evaluator.evaluateExpressionRecursive(currentNode.getChild(i), index);
+            state = state.getChild(selectorIndex);
+          }
+          states.add(state);
+        }
+      } else if (currentNode.getType() == Type.FUNCTION || currentNode.getType() == Type.FUNCTION_DELAY || currentNode.getType() == Type.FUNCTION_RATEOF) {
+        isAlwaysChecked = true;
+      } else if (currentNode.getNumOfChild() > 0) {
+        for (int i = 0; i < currentNode.getNumOfChild(); i++) {
+          unprocessed.add(currentNode.getChild(i));
+        }
+      }
+    }
+
+    if (isAlwaysChecked) {
+      listOfAlwaysCheckedEvents.add(channel);
+      return;
+    }
+
+    for (HierarchicalState state : states) {
+      if (!dependencyGraph.containsKey(state)) {
+        dependencyGraph.put(state, new ArrayList<>());
+      }
+      dependencyGraph.get(state).add(channel);
+    }
+  }
+
+  /**
+   * Checks whether an expression only reads numbers and constants, so it has the same value throughout the simulation.
+   */
+  private static boolean isConstantExpression(HierarchicalNode node) {
+    if (node.isNumber() || node.isConstant()) {
+      return true;
+    }
+    if (node.isName() || node.getNumOfChild() == 0 || node.getType() == Type.FUNCTION || node.getType() == Type.FUNCTION_DELAY || node.getType() == Type.FUNCTION_RATEOF || node.getType() == Type.FUNCTION_SELECTOR) {
+      return false;
+    }
+    for (int i = 0; i < node.getNumOfChild(); i++) {
+      if (!isConstantExpression(node.getChild(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * An event in a given model.
+   */
+  public static class EventChannel {
+    private final EventNode node;
+    private final HierarchicalModel model;
+    private int step;
+
+    EventChannel(HierarchicalModel model, EventNode node) {
+      this.node = node;
+      this.model = model;
+    }
+
+    /**
+     * Gets the event node.
+     *
+     * @return the event node.
+     */
+    public EventNode getNode() {
+      return node;
+    }
+
+    /**
+     * Gets the model the event belongs to.
+     *
+     * @return the model.
+     */
+    public HierarchicalModel getModel() {
+      return model;
+    }
+  }
+}
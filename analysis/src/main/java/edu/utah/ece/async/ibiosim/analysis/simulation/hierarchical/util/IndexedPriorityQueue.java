@@ -0,0 +1,135 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over a fixed set of elements 0..n-1, each with a double key. The position of every element in the
+ * heap is tracked, so the key of any element can be changed in O(log n).
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class IndexedPriorityQueue {
+
+  private final double[] keys;
+  private final int[] heap;
+  private final int[] position;
+
+  /**
+   * Creates a queue with the given number of elements, all with an infinite key.
+   *
+   * @param size
+   *          - the number of elements.
+   */
+  public IndexedPriorityQueue(int size) {
+    keys = new double[size];
+    heap = new int[size];
+    position = new int[size];
+    Arrays.fill(keys, Double.POSITIVE_INFINITY);
+    for (int i = 0; i < size; i++) {
+      heap[i] = i;
+      position[i] = i;
+    }
+  }
+
+  /**
+   * Gets the number of elements.
+   *
+   * @return the number of elements.
+   */
+  public int size() {
+    return heap.length;
+  }
+
+  /**
+   * Gets the element with the smallest key.
+   *
+   * @return the element with the smallest key, or -1 if the queue is empty.
+   */
+  public int peek() {
+    return heap.length > 0 ? heap[0] : -1;
+  }
+
+  /**
+   * Gets the key of an element.
+   *
+   * @param element
+   *          - the element.
+   * @return the key of the element.
+   */
+  public double getKey(int element) {
+    return keys[element];
+  }
+
+  /**
+   * Changes the key of an element and restores the heap order.
+   *
+   * @param element
+   *          - the element.
+   * @param key
+   *          - the new key.
+   */
+  public void update(int element, double key) {
+    double oldKey = keys[element];
+    keys[element] = key;
+    if (key < oldKey) {
+      siftUp(position[element]);
+    } else if (key > oldKey) {
+      siftDown(position[element]);
+    }
+  }
+
+  private void siftUp(int pos) {
+    int element = heap[pos];
+    double key = keys[element];
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      int parentElement = heap[parent];
+      if (keys[parentElement] <= key) {
+        break;
+      }
+      heap[pos] = parentElement;
+      position[parentElement] = pos;
+      pos = parent;
+    }
+    heap[pos] = element;
+    position[element] = pos;
+  }
+
+  private void siftDown(int pos) {
+    int element = heap[pos];
+    double key = keys[element];
+    int n = heap.length;
+    while (true) {
+      int child = 2 * pos + 1;
+      if (child >= n) {
+        break;
+      }
+      if (child + 1 < n && keys[heap[child + 1]] < keys[heap[child]]) {
+        child++;
+      }
+      int childElement = heap[child];
+      if (key <= keys[childElement]) {
+        break;
+      }
+      heap[pos] = childElement;
+      position[childElement] = pos;
+      pos = child;
+    }
+    heap[pos] = element;
+    position[element] = pos;
+  }
+}
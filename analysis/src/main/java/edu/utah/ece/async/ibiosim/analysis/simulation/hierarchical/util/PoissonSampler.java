@@ -0,0 +1,105 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import java.util.function.DoubleSupplier;
+
+/**
+ * Draws Poisson-distributed numbers from a stream of uniform random numbers, so simulators can keep every draw on
+ * their own seeded generator.
+ *
+ * <p>
+ * Small means use inversion by sequential search. Means of 10 or more use the transformed rejection method with
+ * squeeze (PTRS) of Hormann, which takes a constant expected number of uniforms regardless of the mean.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class PoissonSampler {
+
+  private static final double SMALL_MEAN = 10;
+  private static final double[] LOG_FACTORIALS = new double[10];
+
+  static {
+    for (int k = 1; k < LOG_FACTORIALS.length; k++) {
+      LOG_FACTORIALS[k] = LOG_FACTORIALS[k - 1] + Math.log(k);
+    }
+  }
+
+  private PoissonSampler() {}
+
+  /**
+   * Draws a Poisson-distributed number.
+   *
+   * @param uniform
+   *          - a source of uniform random numbers in [0, 1).
+   * @param mean
+   *          - the mean of the distribution.
+   * @return the number drawn, or 0 if the mean is not positive.
+   */
+  public static long sample(DoubleSupplier uniform, double mean) {
+    if (!(mean > 0)) { return 0; }
+    if (mean < SMALL_MEAN) { return sampleByInversion(uniform, mean); }
+    return sampleByRejection(uniform, mean);
+  }
+
+  private static long sampleByInversion(DoubleSupplier uniform, double mean) {
+    double u = uniform.getAsDouble();
+    double p = Math.exp(-mean);
+    double cumulative = p;
+    long k = 0;
+    while (u > cumulative && p > 0) {
+      k++;
+      p *= mean / k;
+      cumulative += p;
+    }
+    return k;
+  }
+
+  private static long sampleByRejection(DoubleSupplier uniform, double mean) {
+    double logMean = Math.log(mean);
+    double b = 0.931 + 2.53 * Math.sqrt(mean);
+    double a = -0.059 + 0.02483 * b;
+    double logInvAlpha = Math.log(1.1239 + 1.1328 / (b - 3.4));
+    double vr = 0.9277 - 3.6224 / (b - 2);
+
+    while (true) {
+      double u = uniform.getAsDouble() - 0.5;
+      double v = uniform.getAsDouble();
+      double us = 0.5 - Math.abs(u);
+      long k = (long) Math.floor((2 * a / us + b) * u + mean + 0.43);
+      if (us >= 0.07 && v <= vr) { return k; }
+      if (k < 0 || (us < 0.013 && v > us)) {
+        continue;
+      }
+      if (Math.log(v) + logInvAlpha - Math.log(a / (us * us) + b) <= -mean + k * logMean - logFactorial(k)) { return k; }
+    }
+  }
+
+  /**
+   * Computes log(k!) from a table for small k and from the Stirling series otherwise.
+   *
+   * @param k
+   *          - a non-negative number.
+   * @return the logarithm of the factorial of k.
+   */
+  static double logFactorial(long k) {
+    if (k < LOG_FACTORIALS.length) { return LOG_FACTORIALS[(int) k]; }
+    double n = k + 1;
+    double inverse = 1 / n;
+    double inverse2 = inverse * inverse;
+    return (n - 0.5) * Math.log(n) - n + 0.5 * Math.log(2 * Math.PI)
+        + inverse * (1.0 / 12 - inverse2 * (1.0 / 360 - inverse2 * (1.0 / 1260 - inverse2 / 1680)));
+  }
+}
@@ -0,0 +1,402 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.exception.MaxCountExceededException;
+import org.apache.commons.math3.exception.NoBracketingException;
+import org.apache.commons.math3.exception.NumberIsTooSmallException;
+import org.apache.commons.math3.ode.EquationsMapper;
+import org.apache.commons.math3.ode.ExpandableStatefulODE;
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.apache.commons.math3.ode.nonstiff.AdaptiveStepsizeIntegrator;
+import org.apache.commons.math3.ode.sampling.AbstractStepInterpolator;
+import org.apache.commons.math3.ode.sampling.StepInterpolator;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Linearly implicit integrator for stiff ODEs, using the second order Rosenbrock formula with third order error
+ * estimate of Shampine and Reichelt (the formula of MATLAB's ode23s).
+ *
+ * <p>
+ * Each step solves three linear systems with the iteration matrix <code>I - h d J</code>, where J is the Jacobian
+ * of the equations. If the equations implement {@link SparseJacobianEquations}, the Jacobian is computed by them and
+ * stored sparse, otherwise it is approximated by finite differences. The symbolic {@link SparseLU} factorization is
+ * computed once per integration and only the numeric factorization is repeated when the step size or the Jacobian
+ * change. A rejected step keeps the Jacobian and only refactorizes the iteration matrix.
+ *
+ * <p>
+ * Events and step handlers are supported through a continuous extension of the formula.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class RosenbrockIntegrator extends AdaptiveStepsizeIntegrator {
+
+  private static final String METHOD_NAME = "Rosenbrock 2(3)";
+  private static final double D = 1.0 / (2.0 + FastMath.sqrt(2.0));
+  private static final double E32 = 6.0 + FastMath.sqrt(2.0);
+  private static final double SAFETY = 0.9;
+  private static final double MIN_REDUCTION = 0.2;
+  private static final double MAX_GROWTH = 5.0;
+  private static final double EXPONENT = -1.0 / 3.0;
+  private static final double SQRT_EPSILON = FastMath.sqrt(FastMath.ulp(1.0));
+
+  private int[] rowPointers;
+  private int[] columns;
+  private double[] jacobian;
+  private double[] timeDerivative;
+  private SparseLU lu;
+  private SparseJacobianEquations sparseEquations;
+
+  /**
+   * Equations that provide their Jacobian in compressed sparse row format.
+   */
+  public interface SparseJacobianEquations extends FirstOrderDifferentialEquations {
+
+    /**
+     * Gets the start of each row of the Jacobian in the column indices, followed by the number of non-zeros.
+     *
+     * @return the row pointers, or null if the equations cannot compute their Jacobian.
+     */
+    int[] getJacobianRowPointers();
+
+    /**
+     * Gets the column of each non-zero of the Jacobian.
+     *
+     * @return the column indices.
+     */
+    int[] getJacobianColumns();
+
+    /**
+     * Computes the Jacobian of the equations.
+     *
+     * @param t
+     *          - the current time.
+     * @param y
+     *          - the current state.
+     * @param values
+     *          - the array where the value of each non-zero is stored.
+     */
+    void computeJacobian(double t, double[] y, double[] values);
+  }
+
+  /**
+   * Creates a Rosenbrock integrator.
+   *
+   * @param minStep
+   *          - the minimal step.
+   * @param maxStep
+   *          - the maximal step.
+   * @param scalAbsoluteTolerance
+   *          - the allowed absolute error.
+   * @param scalRelativeTolerance
+   *          - the allowed relative error.
+   */
+  public RosenbrockIntegrator(double minStep, double maxStep, double scalAbsoluteTolerance, double scalRelativeTolerance) {
+    super(METHOD_NAME, minStep, maxStep, scalAbsoluteTolerance, scalRelativeTolerance);
+  }
+
+  @Override
+  public void integrate(final ExpandableStatefulODE equations, final double t) throws NumberIsTooSmallException, DimensionMismatchException, MaxCountExceededException, NoBracketingException {
+
+    sanityChecks(equations, t);
+    setEquations(equations);
+    final boolean forward = t > equations.getTime();
+
+    final double[] y0 = equations.getCompleteState();
+    final double[] y = y0.clone();
+    final int n = y.length;
+    final double[] yTmp = new double[n];
+    final double[] yPrevious = new double[n];
+    final double[] f0 = new double[n];
+    final double[] f1 = new double[n];
+    final double[] f2 = new double[n];
+    final double[] k1 = new double[n];
+    final double[] k2 = new double[n];
+    final double[] k3 = new double[n];
+    setupJacobian(equations, n);
+
+    final RosenbrockStepInterpolator interpolator = new RosenbrockStepInterpolator(yPrevious, k1, k2);
+    interpolator.reinitialize(y, forward, equations.getPrimaryMapper(), equations.getSecondaryMappers());
+    interpolator.storeTime(equations.getTime());
+
+    stepStart = equations.getTime();
+    double hNew = 0;
+    boolean firstTime = true;
+    initIntegration(equations.getTime(), y0, t);
+
+    isLastStep = false;
+    do {
+
+      interpolator.shift();
+
+      double error = 10;
+      boolean updateJacobian = true;
+      while (error >= 1.0) {
+
+        if (firstTime) {
+          computeDerivatives(stepStart, y, f0);
+          final double[] scale = new double[mainSetDimension];
+          if (vecAbsoluteTolerance == null) {
+            for (int i = 0; i < scale.length; ++i) {
+              scale[i] = scalAbsoluteTolerance + scalRelativeTolerance * FastMath.abs(y[i]);
+            }
+          } else {
+            for (int i = 0; i < scale.length; ++i) {
+              scale[i] = vecAbsoluteTolerance[i] + vecRelativeTolerance[i] * FastMath.abs(y[i]);
+            }
+          }
+          hNew = initializeStep(forward, 2, scale, stepStart, y, f0, yTmp, f1);
+          firstTime = false;
+        }
+
+        stepSize = hNew;
+        if (forward ? stepStart + stepSize >= t : stepStart + stepSize <= t) {
+          stepSize = t - stepStart;
+        }
+
+        if (updateJacobian) {
+          computeJacobian(stepStart, y, f0, yTmp, f1);
+          updateJacobian = false;
+        }
+
+        if (!lu.factor(1.0, -stepSize * D, jacobian)) {
+          hNew = filterStep(stepSize * MIN_REDUCTION, forward, false);
+          continue;
+        }
+
+        for (int i = 0; i < n; ++i) {
+          k1[i] = f0[i] + stepSize * D * timeDerivative[i];
+        }
+        lu.solve(k1);
+
+        for (int i = 0; i < n; ++i) {
+          yTmp[i] = y[i] + 0.5 * stepSize * k1[i];
+        }
+        computeDerivatives(stepStart + 0.5 * stepSize, yTmp, f1);
+
+        for (int i = 0; i < n; ++i) {
+          k2[i] = f1[i] - k1[i];
+        }
+        lu.solve(k2);
+        for (int i = 0; i < n; ++i) {
+          k2[i] += k1[i];
+          yTmp[i] = y[i] + stepSize * k2[i];
+        }
+        computeDerivatives(stepStart + stepSize, yTmp, f2);
+
+        for (int i = 0; i < n; ++i) {
+          k3[i] = f2[i] - E32 * (k2[i] - f1[i]) - 2.0 * (k1[i] - f0[i]) + stepSize * D * timeDerivative[i];
+        }
+        lu.solve(k3);
+
+        error = estimateError(y, yTmp, k1, k2, k3, stepSize);
+        if (error >= 1.0) {
+          final double factor = FastMath.min(MAX_GROWTH, FastMath.max(MIN_REDUCTION, SAFETY * FastMath.pow(error, EXPONENT)));
+          hNew = filterStep(stepSize * factor, forward, false);
+        }
+      }
+
+      interpolator.storeTime(stepStart + stepSize);
+      System.arraycopy(y, 0, yPrevious, 0, n);
+      System.arraycopy(yTmp, 0, y, 0, n);
+      stepStart = acceptStep(interpolator, y, f2, t);
+
+      if (!isLastStep) {
+
+        interpolator.storeTime(stepStart);
+        System.arraycopy(f2, 0, f0, 0, n);
+
+        final double factor = FastMath.min(MAX_GROWTH, FastMath.max(MIN_REDUCTION, SAFETY * FastMath.pow(error, EXPONENT)));
+        final double scaledH = stepSize * factor;
+        final double nextT = stepStart + scaledH;
+        final boolean nextIsLast = forward ? (nextT >= t) : (nextT <= t);
+        hNew = filterStep(scaledH, forward, nextIsLast);
+
+        final double filteredNextT = stepStart + hNew;
+        final boolean filteredNextIsLast = forward ? (filteredNextT >= t) : (filteredNextT <= t);
+        if (filteredNextIsLast) {
+          hNew = t - stepStart;
+        }
+      }
+
+    } while (!isLastStep);
+
+    equations.setTime(stepStart);
+    equations.setCompleteState(y);
+
+    resetInternalState();
+  }
+
+  private void setupJacobian(ExpandableStatefulODE equations, int n) {
+    sparseEquations = null;
+    int[] sparseRowPointers = null;
+    if (equations.getPrimary() instanceof SparseJacobianEquations && equations.getPrimary().getDimension() == n) {
+      sparseEquations = (SparseJacobianEquations) equations.getPrimary();
+      sparseRowPointers = sparseEquations.getJacobianRowPointers();
+    }
+
+    if (sparseRowPointers != null) {
+      if (sparseRowPointers != rowPointers) {
+        rowPointers = sparseRowPointers;
+        columns = sparseEquations.getJacobianColumns();
+        lu = new SparseLU(n, rowPointers, columns);
+        jacobian = new double[rowPointers[n]];
+      }
+    } else {
+      sparseEquations = null;
+      if (lu == null || lu.size() != n || rowPointers.length != n + 1 || rowPointers[n] != n * n) {
+        rowPointers = new int[n + 1];
+        columns = new int[n * n];
+        for (int i = 0; i < n; ++i) {
+          rowPointers[i] = i * n;
+          for (int j = 0; j < n; ++j) {
+            columns[i * n + j] = j;
+          }
+        }
+        rowPointers[n] = n * n;
+        lu = new SparseLU(n, rowPointers, columns);
+        jacobian = new double[n * n];
+      }
+    }
+    timeDerivative = new double[n];
+  }
+
+  private void computeJacobian(double time, double[] y, double[] f0, double[] yTmp, double[] fTmp) throws MaxCountExceededException, DimensionMismatchException {
+    final int n = y.length;
+    System.arraycopy(y, 0, yTmp, 0, n);
+
+    if (sparseEquations != null) {
+      sparseEquations.computeJacobian(time, yTmp, jacobian);
+    } else {
+      for (int j = 0; j < n; ++j) {
+        final double delta = FastMath.sqrt(1e-16 * FastMath.max(1e-5, FastMath.abs(y[j])));
+        yTmp[j] = y[j] + delta;
+        computeDerivatives(time, yTmp, fTmp);
+        yTmp[j] = y[j];
+        for (int i = 0; i < n; ++i) {
+          jacobian[i * n + j] = (fTmp[i] - f0[i]) / delta;
+        }
+      }
+    }
+
+    final double delta = SQRT_EPSILON * FastMath.max(FastMath.abs(time), FastMath.abs(stepSize));
+    if (delta > 0) {
+      computeDerivatives(time + delta, yTmp, fTmp);
+      for (int i = 0; i < n; ++i) {
+        timeDerivative[i] = (fTmp[i] - f0[i]) / delta;
+      }
+    }
+  }
+
+  private double estimateError(double[] y0, double[] y1, double[] k1, double[] k2, double[] k3, double h) {
+    double error = 0;
+    for (int i = 0; i < mainSetDimension; ++i) {
+      final double yScale = FastMath.max(FastMath.abs(y0[i]), FastMath.abs(y1[i]));
+      final double tol = (vecAbsoluteTolerance == null) ? (scalAbsoluteTolerance + scalRelativeTolerance * yScale) : (vecAbsoluteTolerance[i] + vecRelativeTolerance[i] * yScale);
+      final double ratio = h * (k1[i] - 2.0 * k2[i] + k3[i]) / (6.0 * tol);
+      error += ratio * ratio;
+    }
+    return mainSetDimension == 0 ? 0 : FastMath.sqrt(error / mainSetDimension);
+  }
+
+  /**
+   * Continuous extension of the Rosenbrock formula, which interpolates between the previous state and the current
+   * state using the first two stages of the step.
+   */
+  static class RosenbrockStepInterpolator extends AbstractStepInterpolator {
+
+    private static final long serialVersionUID = 1L;
+    private double[] previousState;
+    private double[] k1;
+    private double[] k2;
+
+    /**
+     * Constructor used for deserialization.
+     */
+    public RosenbrockStepInterpolator() {
+      super();
+    }
+
+    RosenbrockStepInterpolator(double[] previousState, double[] k1, double[] k2) {
+      super();
+      this.previousState = previousState;
+      this.k1 = k1;
+      this.k2 = k2;
+    }
+
+    RosenbrockStepInterpolator(RosenbrockStepInterpolator interpolator) {
+      super(interpolator);
+      this.previousState = interpolator.previousState == null ? null : interpolator.previousState.clone();
+      this.k1 = interpolator.k1 == null ? null : interpolator.k1.clone();
+      this.k2 = interpolator.k2 == null ? null : interpolator.k2.clone();
+    }
+
+    @Override
+    protected void reinitialize(double[] y, boolean isForward, EquationsMapper primaryMapper, EquationsMapper[] secondaryMappers) {
+      super.reinitialize(y, isForward, primaryMapper, secondaryMappers);
+    }
+
+    @Override
+    protected StepInterpolator doCopy() {
+      return new RosenbrockStepInterpolator(this);
+    }
+
+    @Override
+    protected void computeInterpolatedStateAndDerivatives(double theta, double oneMinusThetaH) {
+      final double c1 = theta * (1 - theta) / (1 - 2 * D);
+      final double c2 = theta * (theta - 2 * D) / (1 - 2 * D);
+      final double d1 = (1 - 2 * theta) / (1 - 2 * D);
+      final double d2 = (2 * theta - 2 * D) / (1 - 2 * D);
+      for (int i = 0; i < interpolatedState.length; ++i) {
+        interpolatedState[i] = previousState[i] + h * (c1 * k1[i] + c2 * k2[i]);
+        interpolatedDerivatives[i] = d1 * k1[i] + d2 * k2[i];
+      }
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      writeBaseExternal(out);
+      int n = previousState == null ? -1 : previousState.length;
+      out.writeInt(n);
+      for (int i = 0; i < n; ++i) {
+        out.writeDouble(previousState[i]);
+        out.writeDouble(k1[i]);
+        out.writeDouble(k2[i]);
+      }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      final double t = readBaseExternal(in);
+      int n = in.readInt();
+      if (n >= 0) {
+        previousState = new double[n];
+        k1 = new double[n];
+        k2 = new double[n];
+        for (int i = 0; i < n; ++i) {
+          previousState[i] = in.readDouble();
+          k1[i] = in.readDouble();
+          k2[i] = in.readDouble();
+        }
+      }
+      setInterpolatedTime(t);
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * LU factorization of sparse matrices of the form <code>diagonal * I + scale * A</code>, where the sparsity pattern
+ * of A is fixed.
+ *
+ * <p>
+ * The pattern of the factors, including fill-in, is computed once when the factorization is created, so factorizing
+ * new values of A or a new scale only performs the numeric elimination. Rows are eliminated in their natural order
+ * without pivoting, which is suitable for the iteration matrices of stiff integrators where the diagonal dominates
+ * for small steps.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SparseLU {
+
+  private final int size;
+  private final int[] rowPointers;
+  private final int[] columns;
+  private final int[] diagonalPositions;
+  private final int[] matrixPositions;
+  private final int[] positionOfColumn;
+  private final double[] values;
+
+  /**
+   * Creates the factorization for the given sparsity pattern, in compressed sparse row format.
+   *
+   * @param size
+   *          - the number of rows and columns.
+   * @param matrixRowPointers
+   *          - the start of each row in the column indices, followed by the number of non-zeros.
+   * @param matrixColumns
+   *          - the column of each non-zero.
+   */
+  public SparseLU(int size, int[] matrixRowPointers, int[] matrixColumns) {
+    this.size = size;
+    this.rowPointers = new int[size + 1];
+    this.diagonalPositions = new int[size];
+    this.positionOfColumn = new int[size];
+
+    int[][] rows = new int[size][];
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      TreeSet<Integer> pattern = new TreeSet<>();
+      pattern.add(i);
+      for (int p = matrixRowPointers[i]; p < matrixRowPointers[i + 1]; p++) {
+        pattern.add(matrixColumns[p]);
+      }
+      Integer k = pattern.first();
+      while (k != null && k < i) {
+        int[] upper = rows[k];
+        for (int q = upper.length - 1; q >= 0 && upper[q] > k; q--) {
+          pattern.add(upper[q]);
+        }
+        k = pattern.higher(k);
+      }
+      rows[i] = new int[pattern.size()];
+      int j = 0;
+      for (int column : pattern) {
+        rows[i][j++] = column;
+      }
+      count += rows[i].length;
+    }
+
+    this.columns = new int[count];
+    this.values = new double[count];
+    int position = 0;
+    for (int i = 0; i < size; i++) {
+      rowPointers[i] = position;
+      for (int column : rows[i]) {
+        if (column == i) {
+          diagonalPositions[i] = position;
+        }
+        columns[position++] = column;
+      }
+    }
+    rowPointers[size] = position;
+
+    this.matrixPositions = new int[matrixRowPointers[size]];
+    for (int i = 0; i < size; i++) {
+      for (int p = matrixRowPointers[i]; p < matrixRowPointers[i + 1]; p++) {
+        matrixPositions[p] = rowPointers[i] + Arrays.binarySearch(rows[i], matrixColumns[p]);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of rows and columns.
+   *
+   * @return the size of the matrix.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the number of non-zeros in the factors, including fill-in.
+   *
+   * @return the number of non-zeros.
+   */
+  public int getNumberOfNonZeros() {
+    return columns.length;
+  }
+
+  /**
+   * Factorizes <code>diagonal * I + scale * A</code>.
+   *
+   * @param diagonal
+   *          - the value added to the diagonal.
+   * @param scale
+   *          - the factor multiplying A.
+   * @param matrixValues
+   *          - the values of A, in the order of the pattern given to the constructor.
+   * @return false if a pivot is zero or not finite, in which case the factorization cannot be used.
+   */
+  public boolean factor(double diagonal, double scale, double[] matrixValues) {
+    Arrays.fill(values, 0);
+    for (int i = 0; i < size; i++) {
+      values[diagonalPositions[i]] = diagonal;
+    }
+    for (int p = 0; p < matrixPositions.length; p++) {
+      values[matrixPositions[p]] += scale * matrixValues[p];
+    }
+
+    Arrays.fill(positionOfColumn, -1);
+    for (int i = 0; i < size; i++) {
+      int start = rowPointers[i], end = rowPointers[i + 1];
+      for (int p = start; p < end; p++) {
+        positionOfColumn[columns[p]] = p;
+      }
+      for (int p = start; p < diagonalPositions[i]; p++) {
+        int k = columns[p];
+        double multiplier = values[p] / values[diagonalPositions[k]];
+        values[p] = multiplier;
+        if (multiplier != 0) {
+          for (int q = diagonalPositions[k] + 1; q < rowPointers[k + 1]; q++) {
+            values[positionOfColumn[columns[q]]] -= multiplier * values[q];
+          }
+        }
+      }
+      for (int p = start; p < end; p++) {
+        positionOfColumn[columns[p]] = -1;
+      }
+      double pivot = values[diagonalPositions[i]];
+      if (pivot == 0 || Double.isNaN(pivot) || Double.isInfinite(pivot)) { return false; }
+    }
+    return true;
+  }
+
+  /**
+   * Solves the factorized system in place.
+   *
+   * @param b
+   *          - the right-hand side, which is replaced by the solution.
+   */
+  public void solve(double[] b) {
+    for (int i = 0; i < size; i++) {
+      double sum = b[i];
+      for (int p = rowPointers[i]; p < diagonalPositions[i]; p++) {
+        sum -= values[p] * b[columns[p]];
+      }
+      b[i] = sum;
+    }
+    for (int i = size - 1; i >= 0; i--) {
+      double sum = b[i];
+      for (int p = diagonalPositions[i] + 1; p < rowPointers[i + 1]; p++) {
+        sum -= values[p] * b[columns[p]];
+      }
+      b[i] = sum / values[diagonalPositions[i]];
+    }
+  }
+}
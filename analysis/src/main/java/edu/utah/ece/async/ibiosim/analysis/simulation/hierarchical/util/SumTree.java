@@ -0,0 +1,117 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+/**
+ * Complete binary tree where each leaf holds a non-negative weight and each inner node holds the sum of its children.
+ * Updating a weight and selecting a leaf proportionally to its weight both take O(log n).
+ *
+ * <p>
+ * Inner nodes are recomputed from their children on every update instead of accumulating differences, so the total
+ * does not drift over long simulations.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SumTree {
+
+  private final double[] tree;
+  private final int capacity;
+  private final int size;
+
+  /**
+   * Creates a tree with the given number of leaves, all with weight zero.
+   *
+   * @param size
+   *          - the number of leaves.
+   */
+  public SumTree(int size) {
+    int capacity = 1;
+    while (capacity < size) {
+      capacity <<= 1;
+    }
+    this.capacity = capacity;
+    this.size = size;
+    this.tree = new double[2 * capacity];
+  }
+
+  /**
+   * Gets the number of leaves.
+   *
+   * @return the number of leaves.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Gets the sum of all weights.
+   *
+   * @return the total weight.
+   */
+  public double getTotal() {
+    return tree[1];
+  }
+
+  /**
+   * Gets the weight of a leaf.
+   *
+   * @param leaf
+   *          - the leaf index.
+   * @return the weight of the leaf.
+   */
+  public double get(int leaf) {
+    return tree[capacity + leaf];
+  }
+
+  /**
+   * Sets the weight of a leaf and updates the sums up to the root.
+   *
+   * @param leaf
+   *          - the leaf index.
+   * @param weight
+   *          - the new weight.
+   */
+  public void update(int leaf, double weight) {
+    int node = capacity + leaf;
+    tree[node] = weight;
+    node >>>= 1;
+    while (node > 0) {
+      tree[node] = tree[2 * node] + tree[2 * node + 1];
+      node >>>= 1;
+    }
+  }
+
+  /**
+   * Finds the leaf where the cumulative weight first exceeds the given threshold.
+   *
+   * @param threshold
+   *          - a value between zero and the total weight.
+   * @return the selected leaf, or -1 if the tree has no weight.
+   */
+  public int search(double threshold) {
+    if (size == 0 || tree[1] <= 0) { return -1; }
+    int node = 1;
+    while (node < capacity) {
+      int left = 2 * node;
+      if (threshold < tree[left] || tree[left + 1] <= 0) {
+        node = left;
+      } else {
+        threshold -= tree[left];
+        node = left + 1;
+      }
+    }
+    return node - capacity;
+  }
+}
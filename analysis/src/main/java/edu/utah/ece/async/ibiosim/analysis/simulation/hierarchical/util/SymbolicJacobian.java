@@ -0,0 +1,299 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.CompiledMath;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Evaluator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.FunctionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.MathCompiler;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.MathDifferentiator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.SpeciesReferenceNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.VectorState;
+
+/**
+ * Jacobian of the ODE system of hierarchical models in compressed sparse row format.
+ *
+ * <p>
+ * The partial derivatives of every kinetic law and rate rule are built once with a {@link MathDifferentiator} and the
+ * sparsity pattern is fixed, so computing the Jacobian only evaluates the derivative math. The stoichiometry of the
+ * species references is treated as a coefficient. Models with arrays or math that cannot be differentiated are not
+ * supported, and in that case the integrator should fall back to finite differences.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class SymbolicJacobian {
+
+  private final List<Entry> entries;
+  private final Map<Long, Integer> positions;
+  private int[] rowPointers;
+  private int[] columns;
+  private boolean isSupported;
+
+  /**
+   * Builds the Jacobian of the given models.
+   *
+   * @param listOfModels
+   *          - the hierarchical models.
+   * @param size
+   *          - the number of variables in the ODE system.
+   * @param compile
+   *          - whether to compile the derivative math into closures.
+   */
+  public SymbolicJacobian(List<HierarchicalModel> listOfModels, int size, boolean compile) {
+    this.entries = new ArrayList<>();
+    this.positions = new HashMap<>();
+    this.isSupported = true;
+
+    for (HierarchicalModel model : listOfModels) {
+      if (!addModel(model)) {
+        isSupported = false;
+        return;
+      }
+    }
+    buildPattern(size);
+    for (Entry entry : entries) {
+      entry.position = positions.get(key(entry.row, entry.column));
+      if (compile) {
+        entry.compiledDerivative = MathCompiler.compile(entry.derivative);
+      }
+    }
+  }
+
+  /**
+   * Checks whether the Jacobian of the models could be built.
+   *
+   * @return true if the Jacobian is supported.
+   */
+  public boolean isSupported() {
+    return isSupported;
+  }
+
+  /**
+   * Gets the start of each row in the column indices, followed by the number of non-zeros.
+   *
+   * @return the row pointers, or null if the Jacobian is not supported.
+   */
+  public int[] getRowPointers() {
+    return rowPointers;
+  }
+
+  /**
+   * Gets the column of each non-zero.
+   *
+   * @return the column indices, or null if the Jacobian is not supported.
+   */
+  public int[] getColumns() {
+    return columns;
+  }
+
+  /**
+   * Computes the value of each non-zero using the current state of the models.
+   *
+   * @param values
+   *          - the array where the values are stored.
+   */
+  public void compute(double[] values) {
+    Arrays.fill(values, 0, columns.length, 0);
+    for (Entry entry : entries) {
+      double derivative = entry.compiledDerivative != null ? entry.compiledDerivative.evaluate(entry.index) : Evaluator.evaluateExpressionRecursive(entry.derivative, entry.index);
+      double coefficient = entry.coefficient != null ? entry.coefficient.getValue(entry.index) : 1;
+      values[entry.position] += entry.sign * coefficient * derivative;
+    }
+  }
+
+  private boolean addModel(HierarchicalModel model) {
+    if (model.getListOfArrays() != null && !model.getListOfArrays().isEmpty()) { return false; }
+    int index = model.getIndex();
+    Map<HierarchicalNode, HierarchicalNode> assignments = new HashMap<>();
+    if (model.getListOfAssignmentRules() != null) {
+      for (FunctionNode rule : model.getListOfAssignmentRules()) {
+        if (!rule.isDeleted(index)) {
+          assignments.put(rule.getVariable(), rule.getMath());
+        }
+      }
+    }
+    MathDifferentiator differentiator = new MathDifferentiator(index, assignments);
+
+    if (model.getListOfReactions() != null) {
+      for (ReactionNode reaction : model.getListOfReactions()) {
+        if (reaction.isDeleted(index)) {
+          continue;
+        }
+        if (!addReaction(differentiator, reaction, index)) { return false; }
+      }
+    }
+
+    if (model.getListOfRateRules() != null) {
+      for (FunctionNode rateRule : model.getListOfRateRules()) {
+        if (rateRule.isDeleted(index)) {
+          continue;
+        }
+        if (!addRateRule(differentiator, rateRule, index)) { return false; }
+      }
+    }
+    return true;
+  }
+
+  private boolean addReaction(MathDifferentiator differentiator, ReactionNode reaction, int index) {
+    HierarchicalNode forwardRate = reaction.getForwardRate();
+    HierarchicalNode reverseRate = reaction.getReverseRate();
+    if (forwardRate == null || !differentiator.isDifferentiable(forwardRate)) { return false; }
+    if (reverseRate != null && !differentiator.isDifferentiable(reverseRate)) { return false; }
+
+    Set<HierarchicalNode> variables = new LinkedHashSet<>();
+    differentiator.collectVariables(forwardRate, variables);
+    if (reverseRate != null) {
+      differentiator.collectVariables(reverseRate, variables);
+    }
+
+    for (HierarchicalNode variable : variables) {
+      int column = getVectorIndex(variable, index);
+      if (column < 0) {
+        continue;
+      }
+      HierarchicalNode derivative = differentiator.differentiate(forwardRate, variable);
+      if (reverseRate != null) {
+        HierarchicalNode reverseDerivative = differentiator.differentiate(reverseRate, variable);
+        if (reverseDerivative != null) {
+          derivative = derivative == null ? reverseDerivative : operator(Type.PLUS, derivative, reverseDerivative);
+        }
+      }
+      if (derivative == null) {
+        continue;
+      }
+      addSpeciesReferences(reaction.getListOfReactants(), derivative, column, -1, index);
+      addSpeciesReferences(reaction.getListOfProducts(), derivative, column, 1, index);
+    }
+    return true;
+  }
+
+  private void addSpeciesReferences(List<SpeciesReferenceNode> specRefs, HierarchicalNode derivative, int column, int sign, int index) {
+    if (specRefs == null) { return; }
+    for (SpeciesReferenceNode specRef : specRefs) {
+      HierarchicalState speciesState = specRef.getSpecies().getState().getChild(index);
+      if (speciesState.isBoundaryCondition() || !(speciesState instanceof VectorState)) {
+        continue;
+      }
+      addEntry(((VectorState) speciesState).getIndex(), column, sign, specRef, derivative, index);
+    }
+  }
+
+  private boolean addRateRule(MathDifferentiator differentiator, FunctionNode rateRule, int index) {
+    HierarchicalNode variable = rateRule.getVariable();
+    HierarchicalNode math = rateRule.getMath();
+    int row = getVectorIndex(variable, index);
+    if (row < 0) { return true; }
+    if (!differentiator.isDifferentiable(math)) { return false; }
+
+    if (!variable.getState().getChild(index).hasOnlySubstance() && variable.getCompartment() != null) {
+      // The rate of a concentration is scaled by the compartment size, and a changing compartment adds a term that
+      // is not part of the rule math.
+      if (getVectorIndex(variable.getCompartment(), index) >= 0) { return false; }
+      math = operator(Type.TIMES, math, variable.getCompartment());
+    }
+
+    Set<HierarchicalNode> variables = new LinkedHashSet<>();
+    differentiator.collectVariables(math, variables);
+    for (HierarchicalNode dependency : variables) {
+      int column = getVectorIndex(dependency, index);
+      if (column < 0) {
+        continue;
+      }
+      HierarchicalNode derivative = differentiator.differentiate(math, dependency);
+      if (derivative != null) {
+        addEntry(row, column, 1, null, derivative, index);
+      }
+    }
+    return true;
+  }
+
+  private void addEntry(int row, int column, int sign, HierarchicalNode coefficient, HierarchicalNode derivative, int index) {
+    Entry entry = new Entry();
+    entry.row = row;
+    entry.column = column;
+    entry.sign = sign;
+    entry.coefficient = coefficient;
+    entry.derivative = derivative;
+    entry.index = index;
+    entries.add(entry);
+    positions.put(key(row, column), -1);
+  }
+
+  private void buildPattern(int size) {
+    int[] counts = new int[size];
+    for (long key : positions.keySet()) {
+      counts[(int) (key >>> 32)]++;
+    }
+    rowPointers = new int[size + 1];
+    for (int i = 0; i < size; i++) {
+      rowPointers[i + 1] = rowPointers[i] + counts[i];
+    }
+    columns = new int[rowPointers[size]];
+    int[] next = new int[size];
+    System.arraycopy(rowPointers, 0, next, 0, size);
+    for (long key : positions.keySet()) {
+      columns[next[(int) (key >>> 32)]++] = (int) key;
+    }
+    for (int i = 0; i < size; i++) {
+      Arrays.sort(columns, rowPointers[i], rowPointers[i + 1]);
+      for (int k = rowPointers[i]; k < rowPointers[i + 1]; k++) {
+        positions.put(key(i, columns[k]), k);
+      }
+    }
+  }
+
+  private static int getVectorIndex(HierarchicalNode variable, int index) {
+    if (variable == null || variable.getState() == null) { return -1; }
+    HierarchicalState state = variable.getState().getChild(index);
+    if (!(state instanceof VectorState)) { return -1; }
+    return ((VectorState) state).getIndex();
+  }
+
+  private static long key(int row, int column) {
+    return ((long) row << 32) | (column & 0xffffffffL);
+  }
+
+  private static HierarchicalNode operator(Type type, HierarchicalNode... children) {
+    HierarchicalNode node = new HierarchicalNode(type);
+    for (HierarchicalNode child : children) {
+      node.addChild(child);
+    }
+    return node;
+  }
+
+  private static class Entry {
+    private int row;
+    private int column;
+    private int sign;
+    private int position;
+    private int index;
+    private HierarchicalNode coefficient;
+    private HierarchicalNode derivative;
+    private CompiledMath compiledDerivative;
+  }
+}
@@ -37,6 +37,7 @@ import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalM
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel.ModelType;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalSimulation;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.MathCompiler;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.ReactionNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
 import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalMixedSimulator;
@@ -155,6 +156,10 @@ public class ModelSetup {
     ArraysSetup.initializeArrays(listOfContainers, sim.getAtomicType(), wrapper);
     setupOutputVariables(sim, listOfContainers);
 
+    if (properties.getSimulationProperties().isCompileMath()) {
+      compileMath(listOfContainers);
+    }
+
     sim.computeRateOfChange(mathInterpreter.hasRateOf());
 
     if (sim instanceof HierarchicalMixedSimulator) {
@@ -190,6 +195,12 @@ public class ModelSetup {
     return extDoc;
   }
 
+  private static void compileMath(List<ModelContainer> listOfContainers) {
+    for (ModelContainer container : listOfContainers) {
+      MathCompiler.compileModel(container.getHierarchicalModel());
+    }
+  }
+
   private static void setupOutputVariables(HierarchicalSimulation sim, List<ModelContainer> listOfContainers) {
     for (ModelContainer container : listOfContainers) {
       setupPrintableVariables(sim, container);
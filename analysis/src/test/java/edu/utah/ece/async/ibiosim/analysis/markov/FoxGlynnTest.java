@@ -0,0 +1,49 @@
+package edu.utah.ece.async.ibiosim.analysis.markov;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FoxGlynnTest {
+
+  private static double poisson(double rate, int k) {
+    double logWeight = -rate + k * Math.log(rate);
+    for (int i = 2; i <= k; i++) {
+      logWeight -= Math.log(i);
+    }
+    return Math.exp(logWeight);
+  }
+
+  @Test
+  public void test_zero_rate() {
+    FoxGlynn foxGlynn = FoxGlynn.compute(0, 1e-6);
+    assertEquals(0, foxGlynn.getLeft());
+    assertEquals(0, foxGlynn.getRight());
+    assertEquals(1, foxGlynn.getWeight(0), 0);
+  }
+
+  @Test
+  public void test_weights() {
+    double[] rates = { 0.5, 3, 40, 1000 };
+    for (double rate : rates) {
+      FoxGlynn foxGlynn = FoxGlynn.compute(rate, 1e-8);
+      double total = 0;
+      for (int k = foxGlynn.getLeft(); k <= foxGlynn.getRight(); k++) {
+        total += foxGlynn.getWeight(k);
+        assertEquals(poisson(rate, k), foxGlynn.getWeight(k), 1e-8);
+      }
+      assertEquals(1, total, 1e-12);
+      assertTrue(foxGlynn.getLeft() <= rate && rate <= foxGlynn.getRight());
+    }
+  }
+
+  @Test
+  public void test_large_rate() {
+    // e^-rate underflows, which the weights must not depend on
+    FoxGlynn foxGlynn = FoxGlynn.compute(1e6, 1e-6);
+    assertTrue(foxGlynn.getLeft() > 990000);
+    assertTrue(foxGlynn.getRight() < 1010000);
+    assertEquals(poisson(1e6, 1000000), foxGlynn.getWeight(1000000), 1e-9);
+  }
+}
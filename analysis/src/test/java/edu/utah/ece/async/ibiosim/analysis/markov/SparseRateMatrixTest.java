@@ -0,0 +1,74 @@
+package edu.utah.ece.async.ibiosim.analysis.markov;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SparseRateMatrixTest {
+
+  /**
+   * Two states with rates a from 0 to 1 and b from 1 to 0.
+   */
+  private static SparseRateMatrix twoStates(double a, double b) {
+    return new SparseRateMatrix(new int[] { 0, 1, 2 }, new int[] { 1, 0 }, new double[] { b, a }, new double[] { a, b });
+  }
+
+  @Test
+  public void test_uniformized_product() {
+    SparseRateMatrix matrix = twoStates(1, 3);
+    assertEquals(3, matrix.getMaxExitRate(), 0);
+    double[] y = new double[2];
+    matrix.multiplyUniformized(new double[] { 1, 0 }, y, 4);
+    assertEquals(0.75, y[0], 1e-15);
+    assertEquals(0.25, y[1], 1e-15);
+  }
+
+  @Test
+  public void test_transient() {
+    double a = 2;
+    double b = 5;
+    double t = 0.7;
+    SparseRateMatrix matrix = twoStates(a, b);
+    double gamma = matrix.getMaxExitRate();
+    FoxGlynn foxGlynn = FoxGlynn.compute(gamma * t, 1e-10);
+    double[] current = { 1, 0 };
+    double[] next = new double[2];
+    double[] pi = new double[2];
+    for (int k = 0; k <= foxGlynn.getRight(); k++) {
+      pi[0] += foxGlynn.getWeight(k) * current[0];
+      pi[1] += foxGlynn.getWeight(k) * current[1];
+      matrix.multiplyUniformized(current, next, gamma);
+      double[] temp = current;
+      current = next;
+      next = temp;
+    }
+    double expected = b / (a + b) + a / (a + b) * Math.exp(-(a + b) * t);
+    assertEquals(expected, pi[0], 1e-9);
+    assertEquals(1 - expected, pi[1], 1e-9);
+  }
+
+  @Test
+  public void test_parallel_product() {
+    // a ring large enough to be split across blocks
+    int n = 100000;
+    int[] rowPointers = new int[n + 1];
+    int[] sources = new int[n];
+    double[] rates = new double[n];
+    double[] exitRates = new double[n];
+    double[] x = new double[n];
+    for (int i = 0; i < n; i++) {
+      rowPointers[i + 1] = i + 1;
+      sources[i] = (i + n - 1) % n;
+      rates[i] = 1 + (sources[i] % 7);
+      exitRates[i] = 1 + (i % 7);
+      x[i] = (i % 13) / 13.0;
+    }
+    SparseRateMatrix matrix = new SparseRateMatrix(rowPointers, sources, rates, exitRates);
+    double[] y = new double[n];
+    matrix.multiplyUniformized(x, y, 8);
+    for (int i = 0; i < n; i++) {
+      double expected = x[i] * (1 - exitRates[i] / 8) + x[sources[i]] * rates[i] / 8;
+      assertEquals(expected, y[i], 1e-15);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package edu.utah.ece.async.ibiosim.analysis.markov;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import edu.utah.ece.async.lema.verification.lpn.LPN;
+
+public class StateGraphTest {
+
+  /**
+   * Two components that interleave, a counter that ends one of them, and a
+   * persistent transition that stays enabled after its enabling turns false.
+   */
+  private static LPN createLPN() {
+    LPN lpn = new LPN();
+    lpn.addInteger("x", "0");
+    lpn.addInteger("y", "0");
+    lpn.addPlace("a0", true);
+    lpn.addPlace("a1", false);
+    lpn.addPlace("b0", true);
+    lpn.addPlace("b1", false);
+    lpn.addPlace("c0", true);
+    lpn.addPlace("c1", false);
+    lpn.addTransition("ta");
+    lpn.addMovement("a0", "ta");
+    lpn.addMovement("ta", "a1");
+    lpn.addEnabling("ta", "x<3");
+    lpn.addIntAssign("ta", "x", "x+1");
+    lpn.addTransitionRate("ta", "1");
+    lpn.addTransition("tab");
+    lpn.addMovement("a1", "tab");
+    lpn.addMovement("tab", "a0");
+    lpn.addTransitionRate("tab", "2");
+    lpn.addTransition("tb");
+    lpn.addMovement("b0", "tb");
+    lpn.addMovement("tb", "b1");
+    lpn.addIntAssign("tb", "y", "1-y");
+    lpn.addTransitionRate("tb", "3");
+    lpn.addTransition("tbb");
+    lpn.addMovement("b1", "tbb");
+    lpn.addMovement("tbb", "b0");
+    lpn.addTransitionRate("tbb", "4");
+    lpn.addTransition("tc");
+    lpn.addMovement("c0", "tc");
+    lpn.addMovement("tc", "c1");
+    lpn.addEnabling("tc", "x<2");
+    lpn.addTransitionRate("tc", "5");
+    lpn.getTransition("tc").setPersistent(true);
+    return lpn;
+  }
+
+  /**
+   * Writes a graph as a dot file and renumbers its states breadth first from
+   * the initial state, following the transitions of each state in name order,
+   * so graphs that differ only in the numbering of their states are equal.
+   */
+  private static List<String> canonicalGraph(StateGraph graph, File file) throws IOException {
+    graph.outputStateGraph(file.getPath(), false);
+    HashMap<String, String> vectors = new HashMap<String, String>();
+    HashMap<String, TreeMap<String, String>> edges = new HashMap<String, TreeMap<String, String>>();
+    for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+      if (line.contains(" -> ")) {
+        String source = line.substring(0, line.indexOf(' '));
+        String target = line.substring(line.indexOf(" -> ") + 4, line.indexOf(" ["));
+        String label = line.substring(line.indexOf("label=\"") + 7, line.lastIndexOf('"'));
+        edges.get(source).put(label, target);
+      }
+      else if (line.contains("[shape")) {
+        String id = line.substring(0, line.indexOf(' '));
+        vectors.put(id, line.substring(line.indexOf('<') + 1, line.indexOf('>')));
+        edges.put(id, new TreeMap<String, String>());
+      }
+    }
+    HashMap<String, Integer> numbers = new HashMap<String, Integer>();
+    ArrayDeque<String> queue = new ArrayDeque<String>();
+    numbers.put("S0", 0);
+    queue.add("S0");
+    while (!queue.isEmpty()) {
+      for (String target : edges.get(queue.poll()).values()) {
+        if (!numbers.containsKey(target)) {
+          numbers.put(target, numbers.size());
+          queue.add(target);
+        }
+      }
+    }
+    assertEquals(vectors.size(), numbers.size());
+    List<String> canonical = new ArrayList<String>();
+    for (String id : vectors.keySet()) {
+      StringBuilder state = new StringBuilder();
+      state.append(numbers.get(id)).append(" <").append(vectors.get(id)).append(">");
+      for (String label : edges.get(id).keySet()) {
+        state.append(' ').append(label).append(" -> ").append(numbers.get(edges.get(id).get(label)));
+      }
+      canonical.add(state.toString());
+    }
+    Collections.sort(canonical);
+    return canonical;
+  }
+
+  private static List<String> buildGraph(int threads) throws IOException {
+    StateGraph graph = new StateGraph(createLPN());
+    graph.setThreads(threads);
+    graph.buildStateGraph(null);
+    File file = File.createTempFile("stateGraph", ".dot");
+    try {
+      List<String> canonical = canonicalGraph(graph, file);
+      assertEquals(graph.getNumberOfStates(), canonical.size());
+      return canonical;
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void test_threads_build_same_graph() throws IOException {
+    List<String> sequential = buildGraph(1);
+    assertTrue(sequential.size() > 1);
+    for (int threads : new int[] { 2, 4 }) {
+      assertEquals(sequential, buildGraph(threads));
+    }
+  }
+}
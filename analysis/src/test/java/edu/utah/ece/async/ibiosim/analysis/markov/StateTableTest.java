@@ -0,0 +1,48 @@
+package edu.utah.ece.async.ibiosim.analysis.markov;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StateTableTest {
+
+  @Test
+  public void test_ids_survive_growth() {
+    StateTable table = new StateTable(3);
+    Random random = new Random(7);
+    long[][] keys = new long[10000][];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = new long[] { random.nextLong(), i, random.nextInt(4) };
+      assertEquals(-1, table.get(keys[i]));
+      assertEquals(i, table.add(keys[i]));
+    }
+    assertEquals(keys.length, table.size());
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(i, table.get(keys[i].clone()));
+    }
+    assertEquals(-1, table.get(new long[] { 0, -1, 0 }));
+  }
+
+  @Test
+  public void test_first_duplicate_wins() {
+    StateTable table = new StateTable(1);
+    table.add(new long[] { 5 });
+    table.add(new long[] { 9 });
+    table.add(new long[] { 5 });
+    for (int i = 0; i < 100; i++) {
+      table.add(new long[] { 100 + i });
+    }
+    assertEquals(0, table.get(new long[] { 5 }));
+    assertEquals(1, table.get(new long[] { 9 }));
+  }
+
+  @Test
+  public void test_empty_key() {
+    StateTable table = new StateTable(0);
+    assertEquals(-1, table.get(new long[0]));
+    assertEquals(0, table.add(new long[0]));
+    assertEquals(0, table.get(new long[0]));
+  }
+}
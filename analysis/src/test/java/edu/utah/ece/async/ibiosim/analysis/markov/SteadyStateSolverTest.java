@@ -0,0 +1,92 @@
+package edu.utah.ece.async.ibiosim.analysis.markov;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SteadyStateSolverTest {
+
+  /**
+   * Builds a rate matrix from transitions given as { from, to, rate }.
+   */
+  private static SparseRateMatrix matrix(int numStates, double[][] transitions) {
+    int[] rowPointers = new int[numStates + 1];
+    double[] exitRates = new double[numStates];
+    for (double[] t : transitions) {
+      rowPointers[(int) t[1] + 1]++;
+      exitRates[(int) t[0]] += t[2];
+    }
+    for (int i = 0; i < numStates; i++) {
+      rowPointers[i + 1] += rowPointers[i];
+    }
+    int[] next = rowPointers.clone();
+    int[] sources = new int[transitions.length];
+    double[] rates = new double[transitions.length];
+    for (double[] t : transitions) {
+      int k = next[(int) t[1]]++;
+      sources[k] = (int) t[0];
+      rates[k] = t[2];
+    }
+    return new SparseRateMatrix(rowPointers, sources, rates, exitRates);
+  }
+
+  private static double[] solve(SteadyStateSolver.Method method, SparseRateMatrix matrix, double[] initial) {
+    return new SteadyStateSolver(method, 1e-12).solve(matrix, initial, () -> false);
+  }
+
+  @Test
+  public void test_birth_death() {
+    int n = 20;
+    double birth = 2;
+    double death = 3;
+    double[][] transitions = new double[2 * n][];
+    for (int i = 0; i < n; i++) {
+      transitions[2 * i] = new double[] { i, i + 1, birth };
+      transitions[2 * i + 1] = new double[] { i + 1, i, death };
+    }
+    SparseRateMatrix matrix = matrix(n + 1, transitions);
+    double[] expected = new double[n + 1];
+    double total = 0;
+    for (int i = 0; i <= n; i++) {
+      expected[i] = Math.pow(birth / death, i);
+      total += expected[i];
+    }
+    double[] initial = new double[n + 1];
+    initial[n / 2] = 1;
+    for (SteadyStateSolver.Method method : SteadyStateSolver.Method.values()) {
+      double[] result = solve(method, matrix, initial);
+      for (int i = 0; i <= n; i++) {
+        assertEquals(method.toString(), expected[i] / total, result[i], 1e-9);
+      }
+    }
+  }
+
+  @Test
+  public void test_absorbing_split() {
+    // State 0 leaves to the absorbing state 1 or to the cycle 2 <-> 3
+    SparseRateMatrix matrix = matrix(4, new double[][] { { 0, 1, 1 }, { 0, 2, 1 }, { 2, 3, 1 }, { 3, 2, 2 } });
+    for (SteadyStateSolver.Method method : SteadyStateSolver.Method.values()) {
+      SteadyStateSolver solver = new SteadyStateSolver(method, 1e-12);
+      double[] result = solver.solve(matrix, new double[] { 1, 0, 0, 0 }, () -> false);
+      assertEquals(method.toString(), 0, result[0], 1e-12);
+      assertEquals(method.toString(), 0.5, result[1], 1e-9);
+      assertEquals(method.toString(), 1.0 / 3, result[2], 1e-9);
+      assertEquals(method.toString(), 1.0 / 6, result[3], 1e-9);
+      assertEquals(method.toString(), 0, solver.getResidual(), 1e-9);
+    }
+  }
+
+  @Test
+  public void test_cancel() {
+    SparseRateMatrix matrix = matrix(2, new double[][] { { 0, 1, 1 }, { 1, 0, 1 } });
+    assertEquals(null, new SteadyStateSolver(SteadyStateSolver.Method.JACOBI, 1e-12).solve(matrix, new double[] { 1, 0 }, () -> true));
+  }
+
+  @Test
+  public void test_method_names() {
+    assertEquals(SteadyStateSolver.Method.GAUSS_SEIDEL, SteadyStateSolver.Method.fromString("gauss-seidel"));
+    assertEquals(SteadyStateSolver.Method.BICGSTAB, SteadyStateSolver.Method.fromString("bicgstab"));
+    assertEquals(SteadyStateSolver.Method.SOR, SteadyStateSolver.Method.fromString("SOR"));
+    assertEquals(SteadyStateSolver.Method.GAUSS_SEIDEL, SteadyStateSolver.Method.fromString(null));
+  }
+}
@@ -0,0 +1,87 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class ArrayedReactionsTest {
+
+  private static final int ROWS = 3;
+  private static final int COLS = 4;
+
+  /**
+   * Copies the arrayed grid model into a new directory, since the simulator
+   * would write an expanded model over its input.
+   */
+  private static File copyModel() throws IOException {
+    File dir = Files.createTempDirectory("arrayed").toFile();
+    dir.deleteOnExit();
+    File model = new File(dir, "arrayed-grid.xml");
+    model.deleteOnExit();
+    try (InputStream in = ArrayedReactionsTest.class.getResourceAsStream("arrayed-grid.xml")) {
+      Files.copy(in, model.toPath());
+    }
+    new File(dir, "run-1.tsd").deleteOnExit();
+    return model;
+  }
+
+  private static Simulator createSimulator(File model, long seed) throws IOException {
+    return new SimulatorSSADirect(model.getPath(), model.getParent(), 1, 10, Double.POSITIVE_INFINITY, 0, seed, 1, 1, new String[0], "amount");
+  }
+
+  private static double[] getElements(Simulator simulator) {
+    double[] elements = new double[ROWS * COLS];
+    for (int row = 0; row < ROWS; row++) {
+      for (int col = 0; col < COLS; col++) {
+        elements[row * COLS + col] = simulator.variableToValueMap.get("ROW" + row + "_COL" + col + "__A");
+      }
+    }
+    return elements;
+  }
+
+  @Test
+  public void test_elements_start_from_the_array() throws IOException {
+    Simulator simulator = createSimulator(copyModel(), 1);
+    for (double element : getElements(simulator)) {
+      assertEquals(50, element, 0);
+    }
+  }
+
+  @Test
+  public void test_grid_decays_and_diffuses() throws IOException {
+    Simulator simulator = createSimulator(copyModel(), 7);
+    simulator.simulate();
+    // 600 molecules decaying at 0.05 for 10 time units, give or take five
+    // standard deviations
+    double total = 0;
+    for (double element : getElements(simulator)) {
+      assertTrue(element >= 0);
+      total += element;
+    }
+    assertEquals(600 * Math.exp(-0.5), total, 60);
+  }
+
+  @Test
+  public void test_model_is_not_written_over() throws IOException {
+    File model = copyModel();
+    byte[] before = Files.readAllBytes(model.toPath());
+    createSimulator(model, 1).simulate();
+    assertArrayEquals(before, Files.readAllBytes(model.toPath()));
+  }
+
+  @Test
+  public void test_same_seed_same_trajectory() throws IOException {
+    Simulator first = createSimulator(copyModel(), 42);
+    Simulator second = createSimulator(copyModel(), 42);
+    first.simulate();
+    second.simulate();
+    assertArrayEquals(getElements(first), getElements(second), 0);
+  }
+}
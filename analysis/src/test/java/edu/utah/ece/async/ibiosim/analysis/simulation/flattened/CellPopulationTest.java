@@ -0,0 +1,104 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.awt.Point;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class CellPopulationTest {
+
+  private static final String DEATH_DELAY = "<cn type=\"integer\"> 15 </cn>";
+
+  /**
+   * Copies the cell population model into a new directory, with the delay of
+   * the death event replaced, since the simulator writes its output next to
+   * the model.
+   */
+  private static File copyModel(String deathDelay) throws IOException {
+    File dir = Files.createTempDirectory("population").toFile();
+    dir.deleteOnExit();
+    File model = new File(dir, "cell-population.xml");
+    model.deleteOnExit();
+    try (InputStream in = CellPopulationTest.class.getResourceAsStream("cell-population.xml")) {
+      Files.copy(in, model.toPath());
+    }
+    String text = new String(Files.readAllBytes(model.toPath()), StandardCharsets.UTF_8);
+    Files.write(model.toPath(), text.replace(DEATH_DELAY, "<cn type=\"integer\"> " + deathDelay + " </cn>").getBytes(StandardCharsets.UTF_8));
+    new File(dir, "run-1.tsd").deleteOnExit();
+    return model;
+  }
+
+  private static Simulator createSimulator(File model, long seed) throws IOException {
+    return new SimulatorSSADirect(model.getPath(), model.getParent(), 1, 35, Double.POSITIVE_INFINITY, 0, seed, 1, 1, new String[0], "amount");
+  }
+
+  private static TreeSet<String> getSpecies(Simulator simulator, String suffix) {
+    TreeSet<String> species = new TreeSet<String>();
+    for (String speciesID : simulator.speciesIDSet) {
+      if (speciesID.endsWith(suffix)) {
+        species.add(speciesID);
+      }
+    }
+    return species;
+  }
+
+  @Test
+  public void test_population_is_compiled() throws IOException {
+    CellPopulation population = CellPopulation.compile(createSimulator(copyModel("15"), 1));
+    assertNotNull(population);
+    assertEquals(1, population.getNumTypes());
+    assertEquals(1, population.getNumCells());
+  }
+
+  @Test
+  public void test_cells_divide_every_period() throws IOException {
+    Simulator simulator = createSimulator(copyModel("15"), 3);
+    simulator.simulate();
+    // divisions at 10, 20 and 30 each halve S0: 64, 33, 17, 9
+    TreeSet<String> species = getSpecies(simulator, "__S0");
+    assertEquals(8, species.size());
+    for (String speciesID : species) {
+      assertEquals(9, simulator.variableToValueMap.get(speciesID), 0);
+    }
+    HashSet<Point> locations = new HashSet<Point>(simulator.componentToLocationMap.values());
+    assertEquals(8, simulator.componentToLocationMap.size());
+    assertEquals(8, locations.size());
+  }
+
+  @Test
+  public void test_cells_die_before_dividing() throws IOException {
+    Simulator simulator = createSimulator(copyModel("5"), 3);
+    simulator.simulate();
+    assertEquals(0, getSpecies(simulator, "__S0").size());
+    assertEquals(0, getSpecies(simulator, "__P").size());
+  }
+
+  @Test
+  public void test_same_seed_same_trajectory() throws IOException {
+    double[][] results = new double[2][];
+    for (int run = 0; run < 2; run++) {
+      Simulator simulator = createSimulator(copyModel("15"), 42);
+      simulator.simulate();
+      TreeSet<String> species = getSpecies(simulator, "__P");
+      results[run] = new double[3 * species.size()];
+      int i = 0;
+      for (String speciesID : species) {
+        Point location = simulator.componentToLocationMap.get(speciesID.split("__")[0]);
+        results[run][i++] = simulator.variableToValueMap.get(speciesID);
+        results[run][i++] = location.x;
+        results[run][i++] = location.y;
+      }
+    }
+    assertArrayEquals(results[0], results[1], 0);
+  }
+}
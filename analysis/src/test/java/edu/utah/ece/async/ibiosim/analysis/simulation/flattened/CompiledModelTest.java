@@ -0,0 +1,91 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.Simulator.StringDoublePair;
+
+public class CompiledModelTest {
+
+  private static final int FIRINGS = 500;
+
+  private static Simulator createSimulator() throws IOException {
+    String model = CompiledModelTest.class.getResource("compiled-model.xml").getPath();
+    File outDir = Files.createTempDirectory("compiled").toFile();
+    outDir.deleteOnExit();
+    new File(outDir, "run-1.tsd").deleteOnExit();
+    return new SimulatorSSADirect(model, outDir.getPath(), 1, 10, Double.POSITIVE_INFINITY, 0, 1, 1, 1, new String[0], "amount");
+  }
+
+  /**
+   * The propensity of a reaction as the interpreted simulators compute it.
+   */
+  private static double interpretedPropensity(Simulator simulator, String reactionID) {
+    for (StringDoublePair reactant : simulator.reactionToReactantStoichiometrySetMap.get(reactionID)) {
+      if (simulator.variableToValueMap.get(reactant.string) < reactant.doub) { return 0; }
+    }
+    return simulator.evaluateExpressionRecursive(simulator.reactionToFormulaMap.get(reactionID));
+  }
+
+  private static void assertSameState(Simulator compiledSimulator, Simulator interpreted) {
+    CompiledModel compiled = compiledSimulator.compiledModel;
+    for (int reaction = 0; reaction < compiled.getNumReactions(); reaction++) {
+      String reactionID = compiled.getReactionID(reaction);
+      double expected = interpretedPropensity(interpreted, reactionID);
+      assertEquals(reactionID, expected, compiled.getPropensity(reaction), 1e-12 * Math.max(1, Math.abs(expected)));
+    }
+    compiled.writeValues();
+    for (String speciesID : interpreted.speciesIDSet) {
+      assertEquals(speciesID, interpreted.variableToValueMap.get(speciesID), compiledSimulator.variableToValueMap.get(speciesID), 0);
+    }
+  }
+
+  @Test
+  public void test_firings_match_interpreter() throws IOException {
+    Simulator compiledSimulator = createSimulator();
+    Simulator interpreted = createSimulator();
+    CompiledModel compiled = compiledSimulator.compiledModel;
+    assertNotNull(compiled);
+
+    // the reversible reaction is split in two and every law compiled
+    assertTrue(compiled.getReactionIndex("Binding_fd") >= 0);
+    assertTrue(compiled.getReactionIndex("Binding_rv") >= 0);
+    assertEquals(5, compiled.getNumReactions());
+    assertSameState(compiledSimulator, interpreted);
+
+    int[] dependencyPointers = compiled.getDependencyPointers();
+    int[] dependencies = compiled.getDependencies();
+    Random random = new Random(11);
+    List<Integer> enabled = new ArrayList<>();
+    for (int firing = 0; firing < FIRINGS; firing++) {
+      enabled.clear();
+      for (int reaction = 0; reaction < compiled.getNumReactions(); reaction++) {
+        if (compiled.getPropensity(reaction) > 0) {
+          enabled.add(reaction);
+        }
+      }
+      assertTrue(!enabled.isEmpty());
+      int selected = enabled.get(random.nextInt(enabled.size()));
+
+      // only the propensities of the dependent reactions are recomputed, so
+      // a missing dependency shows up as a stale propensity
+      compiled.fireReaction(selected);
+      for (int k = dependencyPointers[selected]; k < dependencyPointers[selected + 1]; k++) {
+        compiled.setPropensity(dependencies[k], compiled.computePropensity(dependencies[k]));
+      }
+      interpreted.performReaction(compiled.getReactionID(selected), true, true);
+
+      assertSameState(compiledSimulator, interpreted);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class EnsembleStatisticsTest {
+
+  private static double mean(double... values) {
+    double sum = 0;
+    for (double value : values) {
+      sum += value;
+    }
+    return sum / values.length;
+  }
+
+  private static double variance(double... values) {
+    if (values.length < 2) { return 0; }
+    double mean = mean(values);
+    double sum = 0;
+    for (double value : values) {
+      sum += (value - mean) * (value - mean);
+    }
+    return sum / (values.length - 1);
+  }
+
+  @Test
+  public void test_mean_and_variance() {
+    double[][] runs = { { 1, 4, 9 }, { 2, 8, 1e6 }, { 3, 0, -5 }, { 10, 4, 1e6 + 1 } };
+    EnsembleStatistics statistics = new EnsembleStatistics();
+    for (double[] run : runs) {
+      statistics.startRun();
+      for (int point = 0; point < run.length; point++) {
+        statistics.startRow();
+        statistics.addValue("time", point);
+        statistics.addValue("S", run[point]);
+      }
+    }
+    assertEquals(3, statistics.getNumPoints());
+    for (int point = 0; point < 3; point++) {
+      double[] column = new double[runs.length];
+      for (int run = 0; run < runs.length; run++) {
+        column[run] = runs[run][point];
+      }
+      assertEquals(point, statistics.getMean("time", point), 0);
+      assertEquals(0, statistics.getVariance("time", point), 0);
+      assertEquals(mean(column), statistics.getMean("S", point), 1e-9);
+      assertEquals(variance(column), statistics.getVariance("S", point), 1e-6);
+    }
+  }
+
+  @Test
+  public void test_single_run() {
+    EnsembleStatistics statistics = new EnsembleStatistics();
+    statistics.startRun();
+    statistics.startRow();
+    statistics.addValue("S", 5);
+    assertEquals(5, statistics.getMean("S", 0), 0);
+    assertEquals(0, statistics.getVariance("S", 0), 0);
+  }
+
+  @Test
+  public void test_missing_values_are_zero() {
+    EnsembleStatistics statistics = new EnsembleStatistics();
+    statistics.startRun();
+    statistics.startRow();
+    statistics.addValue("A", 2);
+    statistics.startRow();
+    statistics.addValue("A", 3);
+
+    statistics.startRun();
+    statistics.startRow();
+    statistics.addValue("A", 4);
+    statistics.addValue("B", 6);
+
+    statistics.startRun();
+    statistics.startRow();
+    statistics.addValue("B", 3);
+    statistics.startRow();
+    statistics.addValue("B", 1);
+
+    assertEquals(mean(2, 4, 0), statistics.getMean("A", 0), 1e-12);
+    assertEquals(variance(2, 4, 0), statistics.getVariance("A", 0), 1e-12);
+    assertEquals(mean(0, 6, 3), statistics.getMean("B", 0), 1e-12);
+    assertEquals(variance(0, 6, 3), statistics.getVariance("B", 0), 1e-12);
+    assertEquals(mean(3, 0), statistics.getMean("A", 1), 1e-12);
+    assertEquals(variance(3, 0), statistics.getVariance("A", 1), 1e-12);
+    assertEquals(mean(0, 1), statistics.getMean("B", 1), 1e-12);
+    assertEquals(0, statistics.getMean("C", 0), 0);
+  }
+
+  @Test
+  public void test_clear() {
+    EnsembleStatistics statistics = new EnsembleStatistics();
+    statistics.startRun();
+    for (int point = 0; point < 100; point++) {
+      statistics.startRow();
+      statistics.addValue("S", point);
+    }
+    statistics.clear();
+    statistics.startRun();
+    statistics.startRow();
+    statistics.addValue("S", 7);
+    assertEquals(1, statistics.getNumPoints());
+    assertEquals(7, statistics.getMean("S", 0), 0);
+  }
+}
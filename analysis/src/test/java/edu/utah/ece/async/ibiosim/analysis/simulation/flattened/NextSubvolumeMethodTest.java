@@ -0,0 +1,251 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class NextSubvolumeMethodTest {
+
+  /**
+   * Mass-action reactions over the values of a grid, each one in a single
+   * voxel.
+   */
+  private static class MassActionReactions implements IndexedReactions {
+
+    private final double[] values;
+    private final ArrayList<Double> rates = new ArrayList<Double>();
+    private final ArrayList<int[]> reactants = new ArrayList<int[]>();
+    private final ArrayList<int[]> changes = new ArrayList<int[]>();
+    private final ArrayList<Integer> voxels = new ArrayList<Integer>();
+    private int[] stoichiometryPointers;
+    private int[] stoichiometrySpecies;
+    private int[] dependencyPointers;
+    private int[] dependencies;
+
+    MassActionReactions(double[] values) {
+      this.values = values;
+    }
+
+    /**
+     * Adds a reaction that consumes one of each reactant and produces one of
+     * each product.
+     */
+    void addReaction(int voxel, double rate, int[] reactantIndices, int[] productIndices) {
+      int[] change = new int[reactantIndices.length + productIndices.length];
+      for (int i = 0; i < reactantIndices.length; i++) {
+        change[i] = -1 - reactantIndices[i];
+      }
+      for (int i = 0; i < productIndices.length; i++) {
+        change[reactantIndices.length + i] = productIndices[i];
+      }
+      voxels.add(voxel);
+      rates.add(rate);
+      reactants.add(reactantIndices);
+      changes.add(change);
+    }
+
+    void build() {
+      int numReactions = rates.size();
+      stoichiometryPointers = new int[numReactions + 1];
+      dependencyPointers = new int[numReactions + 1];
+      ArrayList<Integer> species = new ArrayList<Integer>();
+      ArrayList<Integer> affected = new ArrayList<Integer>();
+      for (int reaction = 0; reaction < numReactions; reaction++) {
+        stoichiometryPointers[reaction] = species.size();
+        dependencyPointers[reaction] = affected.size();
+        TreeSet<Integer> dependents = new TreeSet<Integer>();
+        dependents.add(reaction);
+        for (int change : changes.get(reaction)) {
+          int index = change < 0 ? -1 - change : change;
+          species.add(index);
+          dependents.addAll(getDependents(index));
+        }
+        affected.addAll(dependents);
+      }
+      stoichiometryPointers[numReactions] = species.size();
+      dependencyPointers[numReactions] = affected.size();
+      stoichiometrySpecies = toArray(species);
+      dependencies = toArray(affected);
+    }
+
+    TreeSet<Integer> getDependents(int index) {
+      TreeSet<Integer> dependents = new TreeSet<Integer>();
+      for (int reaction = 0; reaction < rates.size(); reaction++) {
+        for (int reactant : reactants.get(reaction)) {
+          if (reactant == index) {
+            dependents.add(reaction);
+          }
+        }
+      }
+      return dependents;
+    }
+
+    int[] getVoxels() {
+      return toArray(voxels);
+    }
+
+    @Override
+    public int getNumReactions() {
+      return rates.size();
+    }
+
+    @Override
+    public void setTime(double time) {
+    }
+
+    @Override
+    public double computePropensity(int reaction) {
+      double propensity = rates.get(reaction);
+      for (int reactant : reactants.get(reaction)) {
+        propensity *= values[reactant];
+      }
+      return propensity;
+    }
+
+    @Override
+    public void fireReaction(int reaction) {
+      for (int change : changes.get(reaction)) {
+        if (change < 0) {
+          values[-1 - change] -= 1;
+        } else {
+          values[change] += 1;
+        }
+      }
+    }
+
+    @Override
+    public int[] getDependencyPointers() {
+      return dependencyPointers;
+    }
+
+    @Override
+    public int[] getDependencies() {
+      return dependencies;
+    }
+
+    @Override
+    public int[] getStoichiometryPointers() {
+      return stoichiometryPointers;
+    }
+
+    @Override
+    public int[] getStoichiometrySpecies() {
+      return stoichiometrySpecies;
+    }
+
+    @Override
+    public void writeValues() {
+    }
+  }
+
+  private static int[] toArray(ArrayList<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+  private static NextSubvolumeMethod createGrid(int numRows, int numCols, double[] diffusionRates, double[] values, MassActionReactions reactions) {
+    reactions.build();
+    int numSpecies = diffusionRates.length;
+    int gridSize = numRows * numCols * numSpecies;
+    String[] gridSpeciesIDs = new String[gridSize];
+    int[] speciesDependencyPointers = new int[gridSize + 1];
+    ArrayList<Integer> speciesDependencies = new ArrayList<Integer>();
+    for (int index = 0; index < gridSize; index++) {
+      int voxel = index / numSpecies;
+      gridSpeciesIDs[index] = "ROW" + voxel / numCols + "_COL" + voxel % numCols + "__S" + index % numSpecies;
+      speciesDependencyPointers[index] = speciesDependencies.size();
+      speciesDependencies.addAll(reactions.getDependents(index));
+    }
+    speciesDependencyPointers[gridSize] = speciesDependencies.size();
+    return new NextSubvolumeMethod(numRows, numCols, numSpecies, diffusionRates, values, gridSpeciesIDs, reactions, reactions.getVoxels(), speciesDependencyPointers,
+        toArray(speciesDependencies));
+  }
+
+  @Test
+  public void test_diffusion_spreads_evenly() {
+    double[] values = new double[9];
+    values[4] = 900;
+    NextSubvolumeMethod grid = createGrid(3, 3, new double[] { 1 }, values, new MassActionReactions(values));
+    grid.initialize(0, new XORShiftRandom(11));
+    grid.simulate(50);
+    assertEquals(900, grid.getTotalCount(0), 0);
+    for (int row = 0; row < 3; row++) {
+      for (int col = 0; col < 3; col++) {
+        assertEquals(100, grid.getCount(row, col, 0), 50);
+      }
+    }
+    assertEquals(50, grid.getTime(), 0);
+  }
+
+  @Test
+  public void test_birth_death_in_every_voxel() {
+    double[] values = new double[100];
+    MassActionReactions reactions = new MassActionReactions(values);
+    for (int voxel = 0; voxel < 100; voxel++) {
+      reactions.addReaction(voxel, 10, new int[0], new int[] { voxel });
+      reactions.addReaction(voxel, 1, new int[] { voxel }, new int[0]);
+    }
+    NextSubvolumeMethod grid = createGrid(10, 10, new double[] { 0.5 }, values, reactions);
+    grid.initialize(0, new XORShiftRandom(3));
+    grid.simulate(20);
+    assertEquals(10, grid.getTotalCount(0) / 100, 1.5);
+    for (double count : values) {
+      assertTrue(count >= 0);
+    }
+  }
+
+  @Test
+  public void test_local_reactions_follow_diffusion() {
+    // A diffuses out of one corner and turns into B, which stays where it is
+    // made
+    double[] values = new double[2 * 16];
+    values[0] = 400;
+    MassActionReactions reactions = new MassActionReactions(values);
+    for (int voxel = 0; voxel < 16; voxel++) {
+      reactions.addReaction(voxel, 0.1, new int[] { 2 * voxel }, new int[] { 2 * voxel + 1 });
+    }
+    NextSubvolumeMethod grid = createGrid(4, 4, new double[] { 2, 0 }, values, reactions);
+    grid.initialize(0, new XORShiftRandom(5));
+    grid.simulate(200);
+    assertEquals(0, grid.getTotalCount(0), 0);
+    assertEquals(400, grid.getTotalCount(1), 0);
+    for (int voxel = 1; voxel < 16; voxel++) {
+      assertTrue(values[2 * voxel + 1] > 0);
+    }
+  }
+
+  @Test
+  public void test_same_seed_same_trajectory() {
+    double[][] results = new double[2][];
+    for (int run = 0; run < 2; run++) {
+      double[] values = new double[2 * 20];
+      values[0] = 200;
+      values[2 * 19] = 200;
+      MassActionReactions reactions = new MassActionReactions(values);
+      for (int voxel = 0; voxel < 20; voxel++) {
+        reactions.addReaction(voxel, 0.1, new int[] { 2 * voxel }, new int[] { 2 * voxel + 1 });
+      }
+      NextSubvolumeMethod grid = createGrid(4, 5, new double[] { 1, 0.1 }, values, reactions);
+      grid.initialize(0, new XORShiftRandom(42));
+      grid.simulate(5);
+      results[run] = values;
+    }
+    assertArrayEquals(results[0], results[1], 0);
+  }
+
+  @Test
+  public void test_nothing_to_do() {
+    double[] values = new double[4];
+    NextSubvolumeMethod grid = createGrid(2, 2, new double[] { 1 }, values, new MassActionReactions(values));
+    grid.initialize(0, new XORShiftRandom(1));
+    assertEquals(Double.POSITIVE_INFINITY, grid.step(), 0);
+  }
+}
@@ -0,0 +1,127 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.flattened;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReactionGroupsTest {
+
+  private static final int NUM_REACTIONS = 200;
+
+  /**
+   * A propensity around a random power of two, which is sometimes exactly a
+   * power of two and sometimes zero.
+   */
+  private static double randomPropensity(Random random) {
+    int choice = random.nextInt(10);
+    if (choice == 0) { return 0.0; }
+    double power = Math.scalb(1.0, random.nextInt(41) - 20);
+    if (choice == 1) { return power; }
+    return power * (1 + random.nextDouble());
+  }
+
+  /**
+   * Checks the groups against groups rebuilt from scratch from the
+   * propensities.
+   */
+  private static void assertMatchesRebuild(ReactionGroups groups, double[] propensities) {
+    int[] expectedSizes = new int[ReactionGroups.NUM_GROUPS];
+    double[] expectedTotals = new double[ReactionGroups.NUM_GROUPS];
+    double expectedTotal = 0;
+    for (int reaction = 0; reaction < propensities.length; reaction++) {
+      double propensity = propensities[reaction];
+      assertEquals(propensity, groups.getPropensity(reaction), 0);
+      if (propensity == 0) {
+        assertEquals(-1, groups.getReactionGroup(reaction));
+        continue;
+      }
+      int group = groups.getReactionGroup(reaction);
+      double ceiling = Math.scalb(1.0, group - ReactionGroups.GROUP_OFFSET + 1);
+      assertTrue(propensity + " not in group " + group, propensity >= ceiling / 2 && propensity < ceiling);
+      expectedSizes[group]++;
+      expectedTotals[group] += propensity;
+      expectedTotal += propensity;
+    }
+    for (int group = 0; group < ReactionGroups.NUM_GROUPS; group++) {
+      assertEquals(expectedSizes[group], groups.getGroupSize(group));
+      boolean[] seen = new boolean[propensities.length];
+      for (int position = 0; position < groups.getGroupSize(group); position++) {
+        int reaction = groups.getGroupReaction(group, position);
+        assertEquals(group, groups.getReactionGroup(reaction));
+        assertTrue(!seen[reaction]);
+        seen[reaction] = true;
+      }
+      assertEquals(expectedTotals[group], groups.getGroupPropensity(group), 1e-9 * expectedTotal);
+    }
+    assertEquals(expectedTotal, groups.getTotalPropensity(), 1e-9 * expectedTotal);
+  }
+
+  @Test
+  public void test_updates_match_rebuild() {
+    Random random = new Random(42);
+    ReactionGroups groups = new ReactionGroups(1);
+    double[] propensities = new double[NUM_REACTIONS];
+    for (int reaction = 0; reaction < NUM_REACTIONS; reaction++) {
+      groups.addReaction(reaction);
+      propensities[reaction] = randomPropensity(random);
+      groups.update(reaction, propensities[reaction]);
+    }
+    assertMatchesRebuild(groups, propensities);
+
+    for (int step = 0; step < 100; step++) {
+      for (int change = 0; change < 50; change++) {
+        int reaction = random.nextInt(NUM_REACTIONS);
+        if (random.nextBoolean()) {
+          // stay close to the current value so some changes stay in the group
+          propensities[reaction] *= random.nextBoolean() ? 1.5 : 0.75;
+        } else {
+          propensities[reaction] = randomPropensity(random);
+        }
+        groups.update(reaction, propensities[reaction]);
+      }
+      assertMatchesRebuild(groups, propensities);
+    }
+  }
+
+  @Test
+  public void test_remove() {
+    ReactionGroups groups = new ReactionGroups(4);
+    double[] propensities = { 1.5, 1.25, 3, 0.5 };
+    for (int reaction = 0; reaction < propensities.length; reaction++) {
+      groups.addReaction(reaction);
+      groups.update(reaction, propensities[reaction]);
+    }
+    groups.remove(0);
+    propensities[0] = 0;
+    assertMatchesRebuild(groups, propensities);
+    assertEquals(1, groups.getGroupSize(ReactionGroups.getGroup(1.25)));
+    assertEquals(3, groups.getGroupPropensity(ReactionGroups.getGroup(3)), 0);
+    groups.remove(1);
+    propensities[1] = 0;
+    assertMatchesRebuild(groups, propensities);
+    assertEquals(0.0, groups.getGroupPropensity(ReactionGroups.getGroup(1.25)), 0);
+  }
+
+  @Test
+  public void test_selection_follows_propensities() {
+    ReactionGroups groups = new ReactionGroups(3);
+    double[] propensities = { 1, 1.5, 0 };
+    for (int reaction = 0; reaction < propensities.length; reaction++) {
+      groups.addReaction(reaction);
+      groups.update(reaction, propensities[reaction]);
+    }
+    XORShiftRandom random = new XORShiftRandom(7);
+    int[] counts = new int[propensities.length];
+    int samples = 100000;
+    for (int i = 0; i < samples; i++) {
+      int group = groups.selectGroup(random.nextDouble());
+      counts[groups.selectReaction(group, random.nextDouble(), random.nextDouble(), random)]++;
+    }
+    assertEquals(0, counts[2]);
+    assertEquals(0.4, counts[0] / (double) samples, 0.01);
+    assertEquals(0.6, counts[1] / (double) samples, 0.01);
+  }
+}
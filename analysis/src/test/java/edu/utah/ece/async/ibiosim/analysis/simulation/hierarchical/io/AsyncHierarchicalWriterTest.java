@@ -0,0 +1,128 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.ValueState;
+
+public class AsyncHierarchicalWriterTest {
+
+  private VariableNode species;
+
+  @Before
+  public void setUp() {
+    species = new VariableNode("S");
+    species.setState(new ValueState());
+  }
+
+  private static class RecordingWriter extends HierarchicalWriter {
+    private final List<double[]> rows = new ArrayList<>();
+    private int failAt = -1;
+    private boolean closed;
+
+    @Override
+    public void init(String filename) {
+      rows.clear();
+      closed = false;
+    }
+
+    @Override
+    protected void printRow(double[] row) throws IOException {
+      if (rows.size() == failAt) { throw new IOException("disk full"); }
+      if (rows.size() % 100 == 0) {
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      rows.add(row.clone());
+    }
+
+    @Override
+    public void addVariable(String id, HierarchicalNode node, HierarchicalNode compartment, int index) {
+      addNode(node.getRootState(index));
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  @Test
+  public void test_order() throws IOException {
+    RecordingWriter recorder = new RecordingWriter();
+    AsyncHierarchicalWriter writer = new AsyncHierarchicalWriter(recorder, 4);
+    writer.addVariable("S", species, null, 0);
+    for (int run = 0; run < 2; run++) {
+      writer.init("run");
+      for (int i = 0; i < 1000; i++) {
+        species.getState().setStateValue(i * 2);
+        writer.print(i);
+      }
+      writer.close();
+      assertTrue(recorder.closed);
+      assertEquals(1000, recorder.rows.size());
+      for (int i = 0; i < 1000; i++) {
+        assertEquals(i, recorder.rows.get(i)[0], 0);
+        assertEquals(i * 2, recorder.rows.get(i)[1], 0);
+      }
+    }
+  }
+
+  @Test
+  public void test_error() throws IOException {
+    RecordingWriter recorder = new RecordingWriter();
+    recorder.failAt = 10;
+    AsyncHierarchicalWriter writer = new AsyncHierarchicalWriter(recorder, 2);
+    writer.addVariable("S", species, null, 0);
+    writer.init("run");
+    try {
+      for (int i = 0; i < 1000; i++) {
+        writer.print(i);
+      }
+      writer.close();
+      fail("The write error was not reported.");
+    } catch (IOException e) {
+      assertEquals("disk full", e.getMessage());
+    }
+    assertTrue(recorder.closed);
+    assertEquals(10, recorder.rows.size());
+  }
+
+  @Test
+  public void test_same_output_as_synchronous() throws IOException {
+    File syncFile = File.createTempFile("sync", ".tsd");
+    File asyncFile = File.createTempFile("async", ".tsd");
+    syncFile.deleteOnExit();
+    asyncFile.deleteOnExit();
+
+    HierarchicalWriter sync = new HierarchicalTSDWriter();
+    HierarchicalWriter async = new AsyncHierarchicalWriter(new HierarchicalTSDWriter());
+    sync.addVariable("S", species, null, 0);
+    async.addVariable("S", species, null, 0);
+    sync.init(syncFile.getPath());
+    async.init(asyncFile.getPath());
+    for (int i = 0; i < 50; i++) {
+      species.getState().setStateValue(i / 3.0);
+      sync.print(i * 0.1);
+      async.print(i * 0.1);
+    }
+    sync.close();
+    async.close();
+    assertEquals(new String(Files.readAllBytes(syncFile.toPath())), new String(Files.readAllBytes(asyncFile.toPath())));
+  }
+}
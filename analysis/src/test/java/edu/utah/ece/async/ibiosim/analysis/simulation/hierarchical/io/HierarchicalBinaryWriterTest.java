@@ -0,0 +1,123 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchyTest;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.ValueState;
+import edu.utah.ece.async.ibiosim.dataModels.graphData.GraphData;
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.BTSDParser;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class HierarchicalBinaryWriterTest {
+
+  private VariableNode species;
+  private VariableNode compartment;
+
+  @Before
+  public void setUp() {
+    species = new VariableNode("S");
+    species.setState(new ValueState());
+    compartment = new VariableNode("C");
+    compartment.setState(new ValueState());
+    compartment.getState().setStateValue(2);
+  }
+
+  private File write(HierarchicalBinaryWriter writer, int rows) throws IOException {
+    File file = File.createTempFile("run-1", ".btsd");
+    file.deleteOnExit();
+    writer.addVariable("S", species, null, 0);
+    writer.addVariable("S_conc", species, compartment, 0);
+    writer.init(file.getPath());
+    for (int i = 0; i < rows; i++) {
+      species.getState().setStateValue(i * 3);
+      writer.print(i * 0.5);
+    }
+    writer.close();
+    return file;
+  }
+
+  @Test
+  public void test_round_trip() throws IOException {
+    int rows = 2500;
+    File file = write(new HierarchicalBinaryWriter(), rows);
+    BTSDParser parser = new BTSDParser(file.getPath(), false);
+    assertEquals(Arrays.asList("time", "S", "S_conc"), parser.getSpecies());
+    assertEquals(rows, parser.getNumSamples());
+    double[] time = new double[rows];
+    double[] values = new double[rows];
+    double[] concentrations = new double[rows];
+    for (int i = 0; i < rows; i++) {
+      time[i] = i * 0.5;
+      values[i] = i * 3;
+      concentrations[i] = i * 1.5;
+    }
+    assertArrayEquals(time, parser.getSeries(0), 0);
+    assertArrayEquals(values, parser.getSeries("S"), 0);
+    assertArrayEquals(concentrations, parser.getSeries("S_conc"), 0);
+    assertEquals(rows, parser.getData().get(1).size());
+    assertEquals(values[rows - 1], parser.getData().get(1).get(rows - 1), 0);
+  }
+
+  @Test
+  public void test_single_precision() throws IOException {
+    File file = write(new HierarchicalBinaryWriter(true), 10);
+    BTSDParser parser = new BTSDParser(file.getPath(), false);
+    assertEquals(10, parser.getNumSamples());
+    assertEquals(27, parser.getSeries("S")[9], 0);
+    assertEquals(13.5, parser.getSeries("S_conc")[9], 0);
+  }
+
+  @Test
+  public void test_truncated_block() throws IOException {
+    File file = write(new HierarchicalBinaryWriter(), 1100);
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 8);
+    }
+    BTSDParser parser = new BTSDParser(file.getPath(), false);
+    assertEquals(1024, parser.getNumSamples());
+    assertEquals(1023 * 3, parser.getSeries("S")[1023], 0);
+  }
+
+  @Test
+  public void test_simulator_run_shorter_than_block() throws IOException, XMLStreamException, BioSimException {
+    String root = HierarchyTest.class.getResource(".").getPath();
+    AnalysisProperties properties = new AnalysisProperties("", "00001-sbml-l3v2.xml", root, false);
+    File outDir = Files.createTempDirectory("btsd").toFile();
+    outDir.deleteOnExit();
+    properties.setOutDir(outDir.getPath());
+    properties.getSimulationProperties().setPrinter_id(GraphData.BTSD_DATA_TYPE);
+    properties.getSimulationProperties().setTimeLimit(5);
+    properties.getSimulationProperties().setPrintInterval(1);
+    new HierarchicalODERKSimulator(properties).simulate();
+
+    File file = new File(outDir, "run-1.btsd");
+    file.deleteOnExit();
+    BTSDParser parser = new BTSDParser(file.getPath(), false);
+    assertEquals(6, parser.getNumSamples());
+    assertArrayEquals(new double[] { 0, 1, 2, 3, 4, 5 }, parser.getSeries(0), 0);
+    assertEquals(0.00015, parser.getSeries("S1")[0], 1e-12);
+  }
+
+  @Test
+  public void test_close_twice() throws IOException {
+    HierarchicalBinaryWriter writer = new HierarchicalBinaryWriter();
+    File file = write(writer, 10);
+    writer.close();
+    assertEquals(10, new BTSDParser(file.getPath(), false).getNumSamples());
+  }
+}
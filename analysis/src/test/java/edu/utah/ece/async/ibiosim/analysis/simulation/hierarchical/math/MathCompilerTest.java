@@ -0,0 +1,104 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.ValueState;
+
+public class MathCompilerTest {
+
+  private static final double[] values = { -2.5, -1, -0.0, 0, 0.5, 1, 3, Double.NaN, Double.POSITIVE_INFINITY };
+
+  private VariableNode x;
+  private VariableNode y;
+
+  @Before
+  public void setUp() {
+    x = new VariableNode("x");
+    x.setState(new ValueState());
+    y = new VariableNode("y");
+    y.setState(new ValueState());
+  }
+
+  private static HierarchicalNode node(Type type, HierarchicalNode... children) {
+    HierarchicalNode node = new HierarchicalNode(type);
+    for (HierarchicalNode child : children) {
+      node.addChild(child);
+    }
+    return node;
+  }
+
+  private void assertSameAsInterpreter(HierarchicalNode math) {
+    CompiledMath compiled = MathCompiler.compile(math);
+    for (double xValue : values) {
+      for (double yValue : values) {
+        x.getState().setStateValue(xValue);
+        y.getState().setStateValue(yValue);
+        double expected = Evaluator.evaluateExpressionRecursive(math, 0);
+        assertEquals(math.toString(), Double.doubleToLongBits(expected), Double.doubleToLongBits(compiled.evaluate(0)));
+      }
+    }
+  }
+
+  @Test
+  public void test_operators() {
+    assertSameAsInterpreter(node(Type.PLUS, x, y));
+    assertSameAsInterpreter(node(Type.PLUS, x, y, new HierarchicalNode(2)));
+    assertSameAsInterpreter(node(Type.MINUS, x));
+    assertSameAsInterpreter(node(Type.MINUS, x, y));
+    assertSameAsInterpreter(node(Type.MINUS, x, y, y));
+    assertSameAsInterpreter(node(Type.TIMES, x, y));
+    assertSameAsInterpreter(node(Type.TIMES, new HierarchicalNode(0.1), x, y));
+    assertSameAsInterpreter(node(Type.DIVIDE, x, y));
+    assertSameAsInterpreter(node(Type.POWER, x, y));
+  }
+
+  @Test
+  public void test_relational() {
+    Type[] types = { Type.RELATIONAL_EQ, Type.RELATIONAL_NEQ, Type.RELATIONAL_GEQ, Type.RELATIONAL_LEQ, Type.RELATIONAL_GT, Type.RELATIONAL_LT };
+    for (Type type : types) {
+      assertSameAsInterpreter(node(type, x, y));
+      assertSameAsInterpreter(node(type, x, y, new HierarchicalNode(1)));
+    }
+  }
+
+  @Test
+  public void test_logical() {
+    HierarchicalNode greater = node(Type.RELATIONAL_GT, x, y);
+    assertSameAsInterpreter(node(Type.LOGICAL_NOT, x));
+    assertSameAsInterpreter(node(Type.LOGICAL_AND, greater, y));
+    assertSameAsInterpreter(node(Type.LOGICAL_OR, x, greater));
+    assertSameAsInterpreter(node(Type.LOGICAL_XOR, x, y, greater));
+    assertSameAsInterpreter(node(Type.LOGICAL_IMPLIES, x, y));
+    assertSameAsInterpreter(node(Type.CONSTANT_TRUE));
+  }
+
+  @Test
+  public void test_functions() {
+    Type[] unary = { Type.FUNCTION_ABS, Type.FUNCTION_ARCCOS, Type.FUNCTION_ARCSIN, Type.FUNCTION_ARCTAN, Type.FUNCTION_CEILING, Type.FUNCTION_COS, Type.FUNCTION_COSH, Type.FUNCTION_EXP, Type.FUNCTION_FLOOR, Type.FUNCTION_LN, Type.FUNCTION_SIN, Type.FUNCTION_SINH, Type.FUNCTION_TAN, Type.FUNCTION_TANH, Type.FUNCTION_SEC, Type.FUNCTION_SECH, Type.FUNCTION_COT, Type.FUNCTION_COTH, Type.FUNCTION_CSC, Type.FUNCTION_CSCH, Type.FUNCTION_ARCTANH, Type.FUNCTION_ARCSINH, Type.FUNCTION_ARCCOSH, Type.FUNCTION_ARCCOT, Type.FUNCTION_ARCCOTH, Type.FUNCTION_ARCCSC, Type.FUNCTION_ARCCSCH, Type.FUNCTION_ARCSEC, Type.FUNCTION_ARCSECH, Type.FUNCTION_FACTORIAL };
+    for (Type type : unary) {
+      assertSameAsInterpreter(node(type, x));
+    }
+    Type[] binary = { Type.FUNCTION_LOG, Type.FUNCTION_REM, Type.FUNCTION_ROOT, Type.FUNCTION_QUOTIENT, Type.FUNCTION_POWER, Type.FUNCTION_MIN, Type.FUNCTION_MAX };
+    for (Type type : binary) {
+      assertSameAsInterpreter(node(type, x, y));
+    }
+    assertSameAsInterpreter(node(Type.FUNCTION_MIN));
+    assertSameAsInterpreter(node(Type.FUNCTION_PIECEWISE, x, node(Type.RELATIONAL_GT, x, y), y));
+    assertSameAsInterpreter(node(Type.FUNCTION_PIECEWISE, x, node(Type.RELATIONAL_GT, x, y), y, node(Type.RELATIONAL_LT, x, y), new HierarchicalNode(4)));
+  }
+
+  @Test
+  public void test_evaluator_uses_compiled_math() {
+    HierarchicalNode math = node(Type.PLUS, x, y);
+    math.setCompiledMath(index -> 42);
+    assertEquals(42, Evaluator.evaluateExpressionRecursive(math, 0), 0);
+    math.setCompiledMath(null);
+    x.getState().setStateValue(1);
+    y.getState().setStateValue(2);
+    assertEquals(3, Evaluator.evaluateExpressionRecursive(math, 0), 0);
+  }
+}
@@ -0,0 +1,126 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.ValueState;
+
+public class MathDifferentiatorTest {
+
+  private static final double[][] points = { { 0.7, 1.3 }, { 2.1, 0.4 }, { 1.5, 2.5 } };
+
+  private VariableNode x;
+  private VariableNode y;
+  private Map<HierarchicalNode, HierarchicalNode> assignments;
+  private MathDifferentiator differentiator;
+
+  @Before
+  public void setUp() {
+    x = new VariableNode("x");
+    x.setState(new ValueState());
+    y = new VariableNode("y");
+    y.setState(new ValueState());
+    assignments = new HashMap<>();
+    differentiator = new MathDifferentiator(0, assignments);
+  }
+
+  private static HierarchicalNode node(Type type, HierarchicalNode... children) {
+    HierarchicalNode node = new HierarchicalNode(type);
+    for (HierarchicalNode child : children) {
+      node.addChild(child);
+    }
+    return node;
+  }
+
+  private double evaluate(HierarchicalNode math, double xValue, double yValue) {
+    x.getState().setStateValue(xValue);
+    y.getState().setStateValue(yValue);
+    return Evaluator.evaluateExpressionRecursive(math, 0);
+  }
+
+  private void assertDerivatives(HierarchicalNode math) {
+    assertTrue(differentiator.isDifferentiable(math));
+    HierarchicalNode dx = differentiator.differentiate(math, x);
+    HierarchicalNode dy = differentiator.differentiate(math, y);
+    double h = 1e-6;
+    for (double[] point : points) {
+      double expectedX = (evaluate(math, point[0] + h, point[1]) - evaluate(math, point[0] - h, point[1])) / (2 * h);
+      double expectedY = (evaluate(math, point[0], point[1] + h) - evaluate(math, point[0], point[1] - h)) / (2 * h);
+      double actualX = dx == null ? 0 : evaluate(dx, point[0], point[1]);
+      double actualY = dy == null ? 0 : evaluate(dy, point[0], point[1]);
+      assertEquals(math.toString(), expectedX, actualX, 1e-6 * Math.max(1, Math.abs(expectedX)));
+      assertEquals(math.toString(), expectedY, actualY, 1e-6 * Math.max(1, Math.abs(expectedY)));
+    }
+  }
+
+  @Test
+  public void test_operators() {
+    assertDerivatives(node(Type.PLUS, x, y, new HierarchicalNode(2)));
+    assertDerivatives(node(Type.MINUS, x));
+    assertDerivatives(node(Type.MINUS, x, y));
+    assertDerivatives(node(Type.TIMES, new HierarchicalNode(0.1), x, y, x));
+    assertDerivatives(node(Type.DIVIDE, x, y));
+    assertDerivatives(node(Type.POWER, x, new HierarchicalNode(3)));
+    assertDerivatives(node(Type.POWER, x, y));
+    assertDerivatives(node(Type.POWER, new HierarchicalNode(2), y));
+  }
+
+  @Test
+  public void test_functions() {
+    Type[] unary = { Type.FUNCTION_EXP, Type.FUNCTION_LN, Type.FUNCTION_ABS, Type.FUNCTION_SIN, Type.FUNCTION_COS, Type.FUNCTION_TAN, Type.FUNCTION_SINH, Type.FUNCTION_COSH, Type.FUNCTION_TANH };
+    for (Type type : unary) {
+      assertDerivatives(node(type, node(Type.TIMES, x, y)));
+    }
+    assertDerivatives(node(Type.FUNCTION_ROOT, new HierarchicalNode(2), node(Type.PLUS, x, y)));
+    assertDerivatives(node(Type.FUNCTION_LOG, new HierarchicalNode(10), node(Type.TIMES, x, y)));
+    assertDerivatives(node(Type.FUNCTION_MIN, x, y));
+    assertDerivatives(node(Type.FUNCTION_MAX, x, y));
+    assertDerivatives(node(Type.FUNCTION_PIECEWISE, node(Type.TIMES, x, x), node(Type.RELATIONAL_GT, x, y), y));
+  }
+
+  @Test
+  public void test_hill_function() {
+    HierarchicalNode xn = node(Type.POWER, x, new HierarchicalNode(2));
+    assertDerivatives(node(Type.DIVIDE, node(Type.TIMES, new HierarchicalNode(5), xn), node(Type.PLUS, y, xn)));
+  }
+
+  @Test
+  public void test_assignment_rule() {
+    VariableNode z = new VariableNode("z");
+    z.setState(new ValueState());
+    assignments.put(z, node(Type.TIMES, x, y));
+    HierarchicalNode math = node(Type.TIMES, z, x);
+
+    Set<HierarchicalNode> variables = new HashSet<>();
+    differentiator.collectVariables(math, variables);
+    assertEquals(2, variables.size());
+    assertTrue(variables.contains(x));
+    assertTrue(variables.contains(y));
+
+    // The rule is substituted, so evaluate with the assignment applied.
+    HierarchicalNode dx = differentiator.differentiate(math, x);
+    x.getState().setStateValue(1.5);
+    y.getState().setStateValue(2);
+    z.getState().setStateValue(3);
+    assertEquals(2 * 1.5 * 2, Evaluator.evaluateExpressionRecursive(dx, 0), 1e-12);
+  }
+
+  @Test
+  public void test_unsupported() {
+    assertFalse(differentiator.isDifferentiable(node(Type.FUNCTION_DELAY, x, y)));
+    assertFalse(differentiator.isDifferentiable(node(Type.PLUS, x, node(Type.FUNCTION_ARCSIN, y))));
+    assertNull(differentiator.differentiate(node(Type.FUNCTION_FLOOR, x), x));
+    assertNull(differentiator.differentiate(node(Type.TIMES, y, y), x));
+  }
+}
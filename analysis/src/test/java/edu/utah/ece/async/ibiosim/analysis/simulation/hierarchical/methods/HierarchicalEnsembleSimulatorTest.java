@@ -0,0 +1,67 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchyTest;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class HierarchicalEnsembleSimulatorTest {
+
+  private static final int RUNS = 4;
+
+  private static AnalysisProperties createProperties(String prefix) throws IOException {
+    String root = HierarchyTest.class.getResource(".").getPath();
+    AnalysisProperties properties = new AnalysisProperties("", "birth-death.xml", root, false);
+    File outDir = Files.createTempDirectory(prefix).toFile();
+    outDir.deleteOnExit();
+    properties.setOutDir(outDir.getPath());
+    properties.getSimulationProperties().setTimeLimit(20);
+    properties.getSimulationProperties().setPrintInterval(1);
+    properties.getSimulationProperties().setRndSeed(314159);
+    properties.getSimulationProperties().setRun(RUNS);
+    return properties;
+  }
+
+  private static byte[] readRun(AnalysisProperties properties, int run) throws IOException {
+    File output = new File(properties.getOutDir(), "run-" + run + ".tsd");
+    output.deleteOnExit();
+    return Files.readAllBytes(output.toPath());
+  }
+
+  @Test
+  public void test_parallel_runs_match_serial_runs() throws IOException, XMLStreamException, BioSimException {
+    // Same loop as DynamicSimulation when a single thread is used
+    AnalysisProperties serialProperties = createProperties("serial");
+    HierarchicalSSADirectSimulator simulator = new HierarchicalSSADirectSimulator(serialProperties);
+    for (int run = 1; run <= RUNS; run++) {
+      simulator.simulate();
+      if (run < RUNS) {
+        simulator.setupForNewRun(run + 1);
+      }
+    }
+
+    AnalysisProperties parallelProperties = createProperties("parallel");
+    parallelProperties.getSimulationProperties().setThreads(3);
+    new HierarchicalEnsembleSimulator(parallelProperties, 3).simulate();
+
+    byte[] first = readRun(serialProperties, 1);
+    for (int run = 1; run <= RUNS; run++) {
+      byte[] serial = readRun(serialProperties, run);
+      assertArrayEquals("run-" + run + ".tsd", serial, readRun(parallelProperties, run));
+      if (run > 1) {
+        assertFalse("run-" + run + ".tsd repeats run-1.tsd", Arrays.equals(first, serial));
+      }
+    }
+  }
+}
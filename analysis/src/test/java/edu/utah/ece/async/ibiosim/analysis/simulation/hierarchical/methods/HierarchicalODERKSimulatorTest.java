@@ -0,0 +1,51 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchyTest;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+public class HierarchicalODERKSimulatorTest {
+
+  private AnalysisProperties properties;
+  private File outDir;
+
+  @Before
+  public void setUp() throws IOException {
+    String root = HierarchyTest.class.getResource(".").getPath();
+    properties = new AnalysisProperties("", "00001-sbml-l3v2.xml", root, false);
+    outDir = Files.createTempDirectory("ode").toFile();
+    outDir.deleteOnExit();
+    properties.setOutDir(outDir.getPath());
+    properties.getSimulationProperties().setTimeLimit(5);
+    properties.getSimulationProperties().setPrintInterval(1);
+  }
+
+  @Test
+  public void test_output_complete_after_simulate() throws IOException, XMLStreamException, BioSimException {
+    HierarchicalODERKSimulator simulator = new HierarchicalODERKSimulator(properties);
+    simulator.simulate();
+
+    File output = new File(outDir, "run-1.tsd");
+    output.deleteOnExit();
+    List<String> lines = Files.readAllLines(output.toPath());
+    assertTrue(lines.get(0).startsWith("((\"time\","));
+    assertEquals(7, lines.size());
+    for (int i = 1; i < lines.size(); i++) {
+      assertTrue(lines.get(i).startsWith("(" + (double) (i - 1) + ","));
+    }
+    assertTrue(lines.get(6).endsWith("))"));
+  }
+}
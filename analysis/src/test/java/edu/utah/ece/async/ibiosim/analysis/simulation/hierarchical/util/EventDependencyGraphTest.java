@@ -0,0 +1,139 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.HierarchicalModel;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.EventNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.DenseState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.HierarchicalState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.ValueState;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util.EventDependencyGraph.EventChannel;
+
+public class EventDependencyGraphTest {
+
+  private HierarchicalModel model;
+  private VariableNode time;
+  private VariableNode x;
+  private VariableNode y;
+  private VariableNode z;
+
+  @Before
+  public void setUp() {
+    model = new HierarchicalModel("topmodel", 0);
+    time = new VariableNode("_time");
+    time.setState(new ValueState());
+    x = variable("x");
+    y = variable("y");
+    z = variable("z");
+  }
+
+  private static VariableNode variable(String name) {
+    VariableNode node = new VariableNode(name);
+    node.setState(new ValueState());
+    return node;
+  }
+
+  private static HierarchicalNode node(Type type, HierarchicalNode... children) {
+    HierarchicalNode node = new HierarchicalNode(type);
+    for (HierarchicalNode child : children) {
+      node.addChild(child);
+    }
+    return node;
+  }
+
+  private EventNode event(HierarchicalNode trigger) {
+    EventNode event = model.createEvent();
+    event.setTrigger(trigger);
+    return event;
+  }
+
+  private static boolean contains(List<EventChannel> channels, EventNode event) {
+    for (EventChannel channel : channels) {
+      if (channel.getNode() == event) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void test_affected_events() {
+    EventNode xy = event(node(Type.RELATIONAL_GT, x, y));
+    EventNode yz = event(node(Type.LOGICAL_AND, node(Type.RELATIONAL_LT, y, new HierarchicalNode(3)), z));
+    EventNode timed = event(node(Type.RELATIONAL_GEQ, time, new HierarchicalNode(10)));
+    EventNode random = event(node(Type.RELATIONAL_GT, node(Type.FUNCTION, x), new HierarchicalNode(0.5)));
+
+    EventDependencyGraph graph = new EventDependencyGraph(Collections.singletonList(model), time);
+    assertEquals(4, graph.getListOfEvents().size());
+    assertFalse(graph.requiresFullUpdate());
+
+    List<EventChannel> affected = graph.getAffectedEvents(Collections.<HierarchicalState> singletonList(x.getState()));
+    assertEquals(3, affected.size());
+    assertTrue(contains(affected, xy));
+    assertTrue(contains(affected, timed));
+    assertTrue(contains(affected, random));
+
+    affected = graph.getAffectedEvents(Arrays.asList(y.getState(), z.getState(), y.getState()));
+    assertEquals(4, affected.size());
+    assertSame(xy, affected.get(0).getNode());
+    assertSame(yz, affected.get(1).getNode());
+
+    affected = graph.getAffectedEvents(null);
+    assertEquals(2, affected.size());
+    assertTrue(contains(affected, timed));
+    assertTrue(contains(affected, random));
+  }
+
+  @Test
+  public void test_selector_with_variable_index_is_always_checked() {
+    ValueState first = new ValueState();
+    ValueState second = new ValueState();
+    DenseState elements = new DenseState(2);
+    elements.addState(0, first);
+    elements.addState(1, second);
+    DenseState root = new DenseState();
+    root.addState(0, elements);
+    VariableNode array = new VariableNode("array");
+    array.setState(root);
+
+    EventNode constant = event(node(Type.RELATIONAL_GT, node(Type.FUNCTION_SELECTOR, array, node(Type.PLUS, new HierarchicalNode(0), new HierarchicalNode(1))), new HierarchicalNode(2)));
+    EventNode variable = event(node(Type.RELATIONAL_GT, node(Type.FUNCTION_SELECTOR, array, x), new HierarchicalNode(2)));
+
+    EventDependencyGraph graph = new EventDependencyGraph(Collections.singletonList(model), time);
+    assertEquals(2, graph.getListOfEvents().size());
+
+    List<EventChannel> affected = graph.getAffectedEvents(null);
+    assertEquals(1, affected.size());
+    assertSame(variable, affected.get(0).getNode());
+
+    affected = graph.getAffectedEvents(Collections.<HierarchicalState> singletonList(first));
+    assertEquals(1, affected.size());
+    assertSame(variable, affected.get(0).getNode());
+
+    affected = graph.getAffectedEvents(Collections.<HierarchicalState> singletonList(second));
+    assertEquals(2, affected.size());
+    assertTrue(contains(affected, constant));
+    assertTrue(contains(affected, variable));
+  }
+
+  @Test
+  public void test_assignment_rules_require_full_update() {
+    event(node(Type.RELATIONAL_GT, x, y));
+    model.addAssignRule(null);
+    EventDependencyGraph graph = new EventDependencyGraph(Collections.singletonList(model), time);
+    assertTrue(graph.requiresFullUpdate());
+  }
+}
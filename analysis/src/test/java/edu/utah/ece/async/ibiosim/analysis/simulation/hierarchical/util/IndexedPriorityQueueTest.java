@@ -0,0 +1,54 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IndexedPriorityQueueTest {
+
+  @Test
+  public void test_empty() {
+    IndexedPriorityQueue queue = new IndexedPriorityQueue(0);
+    assertEquals(-1, queue.peek());
+  }
+
+  @Test
+  public void test_update() {
+    IndexedPriorityQueue queue = new IndexedPriorityQueue(4);
+    queue.update(2, 5);
+    assertEquals(2, queue.peek());
+    queue.update(0, 3);
+    assertEquals(0, queue.peek());
+    queue.update(0, Double.POSITIVE_INFINITY);
+    assertEquals(2, queue.peek());
+    queue.update(3, 1);
+    queue.update(2, 0.5);
+    assertEquals(2, queue.peek());
+    assertEquals(0.5, queue.getKey(2), 0);
+  }
+
+  @Test
+  public void test_random_updates() {
+    int size = 100;
+    IndexedPriorityQueue queue = new IndexedPriorityQueue(size);
+    double[] keys = new double[size];
+    Arrays.fill(keys, Double.POSITIVE_INFINITY);
+    Random random = new Random(314159);
+    for (int i = 0; i < 10000; i++) {
+      int element = random.nextInt(size);
+      keys[element] = random.nextDouble();
+      queue.update(element, keys[element]);
+
+      int min = 0;
+      for (int j = 1; j < size; j++) {
+        if (keys[j] < keys[min]) {
+          min = j;
+        }
+      }
+      assertEquals(keys[min], queue.getKey(queue.peek()), 0);
+    }
+  }
+}
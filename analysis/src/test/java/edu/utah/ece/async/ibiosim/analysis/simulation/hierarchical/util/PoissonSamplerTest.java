@@ -0,0 +1,55 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PoissonSamplerTest {
+
+  private static void assertMoments(double mean) {
+    Random random = new Random(42);
+    int samples = 200000;
+    double sum = 0;
+    double sumOfSquares = 0;
+    for (int i = 0; i < samples; i++) {
+      long k = PoissonSampler.sample(random::nextDouble, mean);
+      sum += k;
+      sumOfSquares += (double) k * k;
+    }
+    double sampleMean = sum / samples;
+    double sampleVariance = sumOfSquares / samples - sampleMean * sampleMean;
+    assertEquals(mean, sampleMean, 5 * Math.sqrt(mean / samples));
+    assertEquals(mean, sampleVariance, 0.02 * mean + 0.01);
+  }
+
+  @Test
+  public void test_small_mean() {
+    assertMoments(0.3);
+    assertMoments(4);
+  }
+
+  @Test
+  public void test_large_mean() {
+    assertMoments(10);
+    assertMoments(250);
+    assertMoments(1e5);
+  }
+
+  @Test
+  public void test_non_positive_mean() {
+    Random random = new Random(1);
+    assertEquals(0, PoissonSampler.sample(random::nextDouble, 0));
+    assertEquals(0, PoissonSampler.sample(random::nextDouble, -1));
+  }
+
+  @Test
+  public void test_log_factorial() {
+    double expected = 0;
+    for (int k = 1; k <= 200; k++) {
+      expected += Math.log(k);
+      assertEquals(expected, PoissonSampler.logFactorial(k), 1e-9 * Math.max(1, expected));
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.apache.commons.math3.ode.FirstOrderDifferentialEquations;
+import org.junit.Test;
+
+public class RosenbrockIntegratorTest {
+
+  /**
+   * Robertson's chemical kinetics problem, a classic stiff test case.
+   */
+  private static class Robertson implements FirstOrderDifferentialEquations {
+
+    @Override
+    public int getDimension() {
+      return 3;
+    }
+
+    @Override
+    public void computeDerivatives(double t, double[] y, double[] yDot) {
+      yDot[0] = -0.04 * y[0] + 1e4 * y[1] * y[2];
+      yDot[1] = 0.04 * y[0] - 1e4 * y[1] * y[2] - 3e7 * y[1] * y[1];
+      yDot[2] = 3e7 * y[1] * y[1];
+    }
+  }
+
+  private static class SparseRobertson extends Robertson implements RosenbrockIntegrator.SparseJacobianEquations {
+
+    private final int[] rowPointers = { 0, 3, 6, 7 };
+    private final int[] columns = { 0, 1, 2, 0, 1, 2, 1 };
+
+    @Override
+    public int[] getJacobianRowPointers() {
+      return rowPointers;
+    }
+
+    @Override
+    public int[] getJacobianColumns() {
+      return columns;
+    }
+
+    @Override
+    public void computeJacobian(double t, double[] y, double[] values) {
+      values[0] = -0.04;
+      values[1] = 1e4 * y[2];
+      values[2] = 1e4 * y[1];
+      values[3] = 0.04;
+      values[4] = -1e4 * y[2] - 6e7 * y[1];
+      values[5] = -1e4 * y[1];
+      values[6] = 6e7 * y[1];
+    }
+  }
+
+  private static void assertRobertson(FirstOrderDifferentialEquations equations) {
+    RosenbrockIntegrator integrator = new RosenbrockIntegrator(1e-12, 100, 1e-10, 1e-6);
+    double[] y = { 1, 0, 0 };
+    integrator.integrate(equations, 0, y, 40, y);
+    assertEquals(0.7158271, y[0], 1e-4);
+    assertEquals(9.185535e-6, y[1], 1e-8);
+    assertEquals(0.2841637, y[2], 1e-4);
+    assertEquals(1, y[0] + y[1] + y[2], 1e-9);
+  }
+
+  @Test
+  public void test_finite_difference_jacobian() {
+    assertRobertson(new Robertson());
+  }
+
+  @Test
+  public void test_sparse_jacobian() {
+    assertRobertson(new SparseRobertson());
+  }
+
+  @Test
+  public void test_time_dependent() {
+    FirstOrderDifferentialEquations equations = new FirstOrderDifferentialEquations() {
+      @Override
+      public int getDimension() {
+        return 1;
+      }
+
+      @Override
+      public void computeDerivatives(double t, double[] y, double[] yDot) {
+        yDot[0] = -1000 * (y[0] - Math.cos(t));
+      }
+    };
+    RosenbrockIntegrator integrator = new RosenbrockIntegrator(1e-12, 1, 1e-9, 1e-7);
+    double[] y = { 0 };
+    integrator.integrate(equations, 0, y, 2, y);
+    double expected = Math.cos(2) + Math.sin(2) / 1000;
+    assertEquals(expected, y[0], 1e-5);
+  }
+}
@@ -0,0 +1,101 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SparseLUTest {
+
+  private static double[] multiply(int n, int[] rowPointers, int[] columns, double[] values, double diagonal, double scale, double[] x) {
+    double[] b = new double[n];
+    for (int i = 0; i < n; i++) {
+      b[i] = diagonal * x[i];
+      for (int p = rowPointers[i]; p < rowPointers[i + 1]; p++) {
+        b[i] += scale * values[p] * x[columns[p]];
+      }
+    }
+    return b;
+  }
+
+  private static void assertSolves(int n, int[] rowPointers, int[] columns, double[] values, double diagonal, double scale) {
+    SparseLU lu = new SparseLU(n, rowPointers, columns);
+    assertTrue(lu.factor(diagonal, scale, values));
+    double[] x = new double[n];
+    for (int i = 0; i < n; i++) {
+      x[i] = i + 1;
+    }
+    double[] b = multiply(n, rowPointers, columns, values, diagonal, scale, x);
+    lu.solve(b);
+    for (int i = 0; i < n; i++) {
+      assertEquals(x[i], b[i], 1e-9);
+    }
+  }
+
+  @Test
+  public void test_arrow_fill_in() {
+    // First row and column are full, so eliminating the first row fills the whole matrix.
+    int n = 4;
+    int[] rowPointers = { 0, 4, 6, 8, 10 };
+    int[] columns = { 0, 1, 2, 3, 0, 1, 0, 2, 0, 3 };
+    double[] values = { 4, 1, 1, 1, 1, 3, 2, 5, -1, 2 };
+    SparseLU lu = new SparseLU(n, rowPointers, columns);
+    assertEquals(16, lu.getNumberOfNonZeros());
+    assertSolves(n, rowPointers, columns, values, 0, 1);
+  }
+
+  @Test
+  public void test_missing_diagonal_and_duplicates() {
+    int n = 3;
+    int[] rowPointers = { 0, 2, 3, 5 };
+    int[] columns = { 1, 1, 2, 0, 0 };
+    double[] values = { 1, 2, -1, 0.5, 0.5 };
+    assertSolves(n, rowPointers, columns, values, 1, -0.1);
+  }
+
+  @Test
+  public void test_random_reuse() {
+    Random random = new Random(7);
+    int n = 30;
+    int[] rowPointers = new int[n + 1];
+    int[] columns = new int[n * 4];
+    int count = 0;
+    for (int i = 0; i < n; i++) {
+      rowPointers[i] = count;
+      for (int k = 0; k < 4; k++) {
+        columns[count++] = random.nextInt(n);
+      }
+    }
+    rowPointers[n] = count;
+    SparseLU lu = new SparseLU(n, rowPointers, columns);
+    for (int trial = 0; trial < 5; trial++) {
+      double[] values = new double[count];
+      for (int p = 0; p < count; p++) {
+        values[p] = random.nextDouble() - 0.5;
+      }
+      double scale = -0.1 * (trial + 1);
+      assertTrue(lu.factor(1, scale, values));
+      double[] x = new double[n];
+      for (int i = 0; i < n; i++) {
+        x[i] = random.nextDouble();
+      }
+      double[] b = multiply(n, rowPointers, columns, values, 1, scale, x);
+      lu.solve(b);
+      for (int i = 0; i < n; i++) {
+        assertEquals(x[i], b[i], 1e-9);
+      }
+    }
+  }
+
+  @Test
+  public void test_singular() {
+    int[] rowPointers = { 0, 1, 2 };
+    int[] columns = { 0, 1 };
+    double[] values = { 1, 0 };
+    SparseLU lu = new SparseLU(2, rowPointers, columns);
+    assertFalse(lu.factor(0, 1, values));
+  }
+}
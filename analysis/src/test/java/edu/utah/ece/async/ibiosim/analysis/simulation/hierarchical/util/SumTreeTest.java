@@ -0,0 +1,51 @@
+package edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.util;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SumTreeTest {
+
+  @Test
+  public void test_empty() {
+    SumTree tree = new SumTree(0);
+    assertEquals(-1, tree.search(0));
+    tree = new SumTree(3);
+    assertEquals(0, tree.getTotal(), 0);
+    assertEquals(-1, tree.search(0));
+  }
+
+  @Test
+  public void test_update() {
+    SumTree tree = new SumTree(5);
+    tree.update(0, 1);
+    tree.update(2, 2);
+    tree.update(4, 3);
+    assertEquals(6, tree.getTotal(), 0);
+    tree.update(2, 0.5);
+    assertEquals(4.5, tree.getTotal(), 0);
+    assertEquals(0.5, tree.get(2), 0);
+  }
+
+  @Test
+  public void test_search() {
+    SumTree tree = new SumTree(5);
+    tree.update(0, 1);
+    tree.update(2, 2);
+    tree.update(4, 3);
+    assertEquals(0, tree.search(0));
+    assertEquals(0, tree.search(0.99));
+    assertEquals(2, tree.search(1));
+    assertEquals(2, tree.search(2.99));
+    assertEquals(4, tree.search(3));
+    assertEquals(4, tree.search(5.99));
+  }
+
+  @Test
+  public void test_search_skips_empty_leaves() {
+    SumTree tree = new SumTree(4);
+    tree.update(1, 1);
+    assertEquals(1, tree.search(0));
+    assertEquals(1, tree.search(1));
+  }
+}
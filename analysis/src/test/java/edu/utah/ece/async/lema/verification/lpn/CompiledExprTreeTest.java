@@ -0,0 +1,166 @@
+package edu.utah.ece.async.lema.verification.lpn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
+
+public class CompiledExprTreeTest {
+
+	private static final String[] BOOLEAN_VALUES = { "true", "false", "unknown", null };
+	private static final String[] INTEGER_VALUES = { "3", "-2", "0", "unknown", null };
+	private static final String[] RATE_VALUES = { "2", "0.5" };
+
+	private static final String RATE = "x_" + GlobalConstants.RATE;
+
+	private static LPN createLPN() {
+		LPN lpn = new LPN();
+		lpn.addBoolean("b", "false");
+		lpn.addBoolean("c", "false");
+		lpn.addInteger("x", "0");
+		lpn.addInteger("y", "0");
+		return lpn;
+	}
+
+	private static ExprTree parse(String expression) {
+		ExprTree tree = new ExprTree(createLPN());
+		tree.token = tree.intexpr_gettok(expression);
+		tree.intexpr_L(expression);
+		return tree;
+	}
+
+	/**
+	 * Every assignment of the test values to the variables, with the
+	 * variables that have no value left out of the map.
+	 */
+	private static List<HashMap<String, String>> assignments() {
+		List<HashMap<String, String>> assignments = new ArrayList<HashMap<String, String>>();
+		for (String b : BOOLEAN_VALUES) {
+			for (String c : BOOLEAN_VALUES) {
+				for (String x : INTEGER_VALUES) {
+					for (String y : INTEGER_VALUES) {
+						for (String rate : RATE_VALUES) {
+							HashMap<String, String> values = new HashMap<String, String>();
+							put(values, "b", b);
+							put(values, "c", c);
+							put(values, "x", x);
+							put(values, "y", y);
+							put(values, RATE, rate);
+							assignments.add(values);
+						}
+					}
+				}
+			}
+		}
+		return assignments;
+	}
+
+	private static void put(HashMap<String, String> values, String variable, String value) {
+		if (value != null) {
+			values.put(variable, value);
+		}
+	}
+
+	/**
+	 * Checks that the compiled form of an expression gives the same value as
+	 * the interpreter for every assignment, NaN included.
+	 */
+	private static void assertEquivalent(String expression) {
+		ExprTree tree = parse(expression);
+		HashMap<String, Integer> slots = new HashMap<String, Integer>();
+		slots.put("b", 0);
+		slots.put("c", 1);
+		slots.put("x", 2);
+		slots.put("y", 3);
+		slots.put(RATE, 4);
+		CompiledExprTree compiled = tree.compile(slots);
+		for (HashMap<String, String> values : assignments()) {
+			double[] vector = new double[slots.size()];
+			for (String variable : slots.keySet()) {
+				vector[slots.get(variable)] = CompiledExprTree.valueOf(values.get(variable));
+			}
+			assertEquals(expression + " with " + values, tree.evaluateExpr(values), compiled.evaluate(vector), 0.0);
+		}
+	}
+
+	@Test
+	public void test_logical_operators_with_unknown_values() {
+		assertEquivalent("b");
+		assertEquivalent("~b");
+		assertEquivalent("b&c");
+		assertEquivalent("b|c");
+		assertEquivalent("b->c");
+		assertEquivalent("~(b&c)|b");
+		assertEquivalent("b&unknown");
+		assertEquivalent("b|true");
+	}
+
+	@Test
+	public void test_equality_with_nan() {
+		assertEquivalent("x=y");
+		assertEquivalent("x=x");
+		assertEquivalent("x=3");
+		assertEquivalent("b=c");
+		assertEquivalent("(x+y)=1");
+	}
+
+	@Test
+	public void test_relational_and_arithmetic_operators() {
+		assertEquivalent("x<y");
+		assertEquivalent("x>=y");
+		assertEquivalent("x<=3");
+		assertEquivalent("x>y&b");
+		assertEquivalent("x+y*2-1");
+		assertEquivalent("x/2");
+		assertEquivalent("x%3");
+		assertEquivalent("x^2");
+		assertEquivalent("floor(x/2)");
+		assertEquivalent("ceil(x/2)");
+		assertEquivalent("min(x,y)");
+		assertEquivalent("max(x,y)");
+		assertEquivalent("int(x/2)");
+	}
+
+	@Test
+	public void test_rate() {
+		assertEquivalent("rate(x)");
+		assertEquivalent("rate(x)>1");
+		assertEquivalent("rate(x)*y");
+	}
+
+	@Test
+	public void test_bitwise_operators() {
+		assertEquivalent("and(x,y)");
+		assertEquivalent("or(x,y)");
+		assertEquivalent("xor(x,y)");
+		assertEquivalent("not(x)");
+		assertEquivalent("bit(x,1)");
+		assertEquivalent("and(x,5)=1");
+	}
+
+	@Test
+	public void test_ranged_constants() {
+		ExprTree range = new ExprTree('n', 1, 3, null);
+		ExprTree sum = new ExprTree(range, new ExprTree('n', 10, 10, null), "+", 'a');
+		CompiledExprTree compiledRange = range.compile(new HashMap<String, Integer>());
+		CompiledExprTree compiledSum = sum.compile(new HashMap<String, Integer>());
+		for (int i = 0; i < 100; i++) {
+			assertInRange(1, 3, range.evaluateExpr(null));
+			assertInRange(1, 3, compiledRange.evaluate(new double[0]));
+			assertInRange(11, 13, sum.evaluateExpr(null));
+			assertInRange(11, 13, compiledSum.evaluate(new double[0]));
+		}
+		ExprTree point = new ExprTree('n', 2, 2, null);
+		assertEquals(point.evaluateExpr(null), point.compile(new HashMap<String, Integer>()).evaluate(new double[0]), 0.0);
+	}
+
+	private static void assertInRange(double lower, double upper, double value) {
+		assertTrue(value + " not in [" + lower + ", " + upper + "]", value >= lower && value <= upper);
+	}
+}
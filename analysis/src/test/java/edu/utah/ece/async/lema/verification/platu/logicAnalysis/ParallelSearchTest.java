@@ -0,0 +1,147 @@
+package edu.utah.ece.async.lema.verification.platu.logicAnalysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import edu.utah.ece.async.lema.verification.lpn.LPN;
+import edu.utah.ece.async.lema.verification.lpn.Transition;
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+import edu.utah.ece.async.lema.verification.platu.stategraph.State;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+public class ParallelSearchTest {
+
+	private static final int THREADS = 4;
+
+	/**
+	 * A component that counts to 3 before it stops firing, next to one that
+	 * keeps toggling, so the system never deadlocks.
+	 */
+	private static LPN[] createLiveLPNs() {
+		LPN counter = new LPN();
+		counter.addInteger("x", "0");
+		counter.addPlace("a0", true);
+		counter.addPlace("a1", false);
+		counter.addTransition("ta");
+		counter.addMovement("a0", "ta");
+		counter.addMovement("ta", "a1");
+		counter.addEnabling("ta", "x<3");
+		counter.addIntAssign("ta", "x", "x+1");
+		counter.addTransition("tab");
+		counter.addMovement("a1", "tab");
+		counter.addMovement("tab", "a0");
+		LPN toggle = new LPN();
+		toggle.addPlace("b0", true);
+		toggle.addPlace("b1", false);
+		toggle.addTransition("tb");
+		toggle.addMovement("b0", "tb");
+		toggle.addMovement("tb", "b1");
+		toggle.addTransition("tbb");
+		toggle.addMovement("b1", "tbb");
+		toggle.addMovement("tbb", "b0");
+		return new LPN[] { counter, toggle };
+	}
+
+	/**
+	 * Two components that each fire a bounded sequence of transitions and
+	 * then stop.
+	 */
+	private static LPN[] createDeadlockingLPNs() {
+		LPN sequence = new LPN();
+		sequence.addPlace("a0", true);
+		sequence.addPlace("a1", false);
+		sequence.addPlace("a2", false);
+		sequence.addTransition("ta");
+		sequence.addMovement("a0", "ta");
+		sequence.addMovement("ta", "a1");
+		sequence.addTransition("tb");
+		sequence.addMovement("a1", "tb");
+		sequence.addMovement("tb", "a2");
+		LPN single = new LPN();
+		single.addPlace("b0", true);
+		single.addPlace("b1", false);
+		single.addTransition("tc");
+		single.addMovement("b0", "tc");
+		single.addMovement("tc", "b1");
+		return new LPN[] { sequence, single };
+	}
+
+	/**
+	 * Creates the state graphs of the LPNs and their initial states the same
+	 * way Project.search does.
+	 */
+	private static StateGraph[] createStateGraphs(LPN[] lpns) {
+		StateGraph[] sgArray = new StateGraph[lpns.length];
+		for (int i = 0; i < lpns.length; i++) {
+			lpns[i].setLpnIndex(i);
+			sgArray[i] = new StateGraph(lpns[i]);
+			lpns[i].addStateGraph(sgArray[i]);
+		}
+		for (LPN lpn : lpns) {
+			for (Transition tran : lpn.getAllTransitions()) {
+				for (StateGraph sg : sgArray) {
+					tran.setDstLpnList(sg.getLpn());
+				}
+			}
+		}
+		return sgArray;
+	}
+
+	private static State[] createInitialStates(StateGraph[] sgArray) {
+		State[] initStateArray = new State[sgArray.length];
+		for (int i = 0; i < sgArray.length; i++) {
+			LPN lpn = sgArray[i].getLpn();
+			State initState = sgArray[i].genInitialState();
+			HashMap<String, Integer> varValMap = lpn.getAllVarsWithValuesAsInt(initState.getVariableVector());
+			initState.update(sgArray[i], varValMap, lpn.getVarIndexMap());
+			initStateArray[i] = sgArray[i].addState(initState);
+		}
+		return initStateArray;
+	}
+
+	@Test
+	public void test_reaches_same_states_as_dfs() {
+		StateGraph[] dfsGraphs = createStateGraphs(createLiveLPNs());
+		int dfsStates = new Analysis(dfsGraphs).search_dfs(dfsGraphs, createInitialStates(dfsGraphs)).size();
+
+		StateGraph[] parallelGraphs = createStateGraphs(createLiveLPNs());
+		ParallelSearch search = new ParallelSearch(parallelGraphs, THREADS);
+		int parallelStates = search.search(new PrjState(createInitialStates(parallelGraphs))).size();
+
+		assertEquals(14, dfsStates);
+		assertEquals(dfsStates, parallelStates);
+		assertNull(search.getFailureReason());
+		assertNull(search.getTraceCex());
+	}
+
+	@Test
+	public void test_reports_deadlock_with_trace() {
+		StateGraph[] sgArray = createStateGraphs(createDeadlockingLPNs());
+		State[] initStateArray = createInitialStates(sgArray);
+		ParallelSearch search = new ParallelSearch(sgArray, THREADS);
+		search.search(new PrjState(initStateArray));
+
+		assertEquals("The system deadlocked.", search.getFailureReason());
+		LinkedList<Transition> trace = search.getTraceCex();
+		assertNotNull(trace);
+		assertEquals(3, trace.size());
+
+		// Replaying the trace from the initial state fires only enabled transitions and ends in the deadlock
+		State[] stateArray = initStateArray;
+		for (Transition tran : trace) {
+			int lpnIndex = tran.getLpn().getLpnIndex();
+			assertFalse(Analysis.deadLock(sgArray, stateArray));
+			assertTrue(tran.getLabel(), StateGraph.getEnabledFromTranVector(stateArray[lpnIndex]).contains(tran));
+			stateArray = sgArray[lpnIndex].fire(sgArray, stateArray, tran);
+		}
+		assertTrue(Analysis.deadLock(sgArray, stateArray));
+	}
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.benchmarks;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Access to the SBML models bundled with the benchmarks.
+ *
+ * <p>
+ * Each model is a production and degradation chain S0 -> S1 -> ... -> Sn with mass-action kinetics, so the models only
+ * differ in their number of species and reactions. The simulators read their model from the file system, so the
+ * bundled models are copied to a temporary directory before a trial.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+final class BenchmarkModels {
+
+  /**
+   * Chain of 10 species and 20 reactions.
+   */
+  static final String SMALL = "chain10";
+
+  /**
+   * Chain of 50 species and 100 reactions.
+   */
+  static final String MEDIUM = "chain50";
+
+  /**
+   * Chain of 250 species and 500 reactions.
+   */
+  static final String LARGE = "chain250";
+
+  private BenchmarkModels() {
+  }
+
+  /**
+   * Creates a temporary directory for the models and the simulation output.
+   *
+   * @return the new directory.
+   * @throws IOException
+   *           - if the directory cannot be created.
+   */
+  static File createDirectory() throws IOException {
+    return Files.createTempDirectory("ibiosim-benchmarks").toFile();
+  }
+
+  /**
+   * Copies a bundled model to the given directory.
+   *
+   * @param model
+   *          - the model name.
+   * @param directory
+   *          - the destination directory.
+   * @return the model file.
+   * @throws IOException
+   *           - if the model does not exist or cannot be copied.
+   */
+  static File extract(String model, File directory) throws IOException {
+    File file = new File(directory, model + ".xml");
+    try (InputStream input = BenchmarkModels.class.getResourceAsStream("models/" + model + ".xml")) {
+      if (input == null) {
+        throw new FileNotFoundException("Unknown benchmark model " + model);
+      }
+      Files.copy(input, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    return file;
+  }
+
+  /**
+   * Deletes a directory created by {@link #createDirectory()} along with its content.
+   *
+   * @param directory
+   *          - the directory to delete.
+   */
+  static void delete(File directory) {
+    if (directory == null) {
+      return;
+    }
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        if (file.isDirectory()) {
+          delete(file);
+        } else {
+          file.delete();
+        }
+      }
+    }
+    directory.delete();
+  }
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.AbstractHierarchicalNode.Type;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.CompiledMath;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.Evaluator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.HierarchicalNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.MathCompiler;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.math.VariableNode;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.states.ValueState;
+
+/**
+ * Measures the evaluation of hierarchical math, both interpreted by {@link Evaluator} and compiled by
+ * {@link MathCompiler}.
+ *
+ * <p>
+ * The expressions are the kinetic law of a Hill repression, which is typical of genetic circuit models, and a sum of
+ * mass-action terms whose width is given by the number of terms.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluatorBenchmark {
+
+  @Param({ "10", "100" })
+  public int terms;
+
+  private HierarchicalNode hill;
+  private HierarchicalNode sum;
+  private CompiledMath compiledHill;
+  private CompiledMath compiledSum;
+
+  @Setup
+  public void setUp() {
+    VariableNode repressor = variable("R", 20);
+    VariableNode protein = variable("P", 5);
+    HierarchicalNode power = node(Type.POWER, node(Type.DIVIDE, repressor, variable("K", 10)), variable("n", 2));
+    HierarchicalNode production = node(Type.DIVIDE, variable("ko", 0.05), node(Type.PLUS, new HierarchicalNode(1), power));
+    hill = node(Type.MINUS, production, node(Type.TIMES, variable("kd", 0.0075), protein));
+
+    VariableNode rate = variable("kc", 1);
+    sum = new HierarchicalNode(Type.PLUS);
+    for (int i = 0; i < terms; i++) {
+      sum.addChild(node(Type.TIMES, rate, variable("S" + i, i)));
+    }
+
+    compiledHill = MathCompiler.compile(hill);
+    compiledSum = MathCompiler.compile(sum);
+  }
+
+  private static VariableNode variable(String name, double value) {
+    VariableNode node = new VariableNode(name);
+    node.setState(new ValueState());
+    node.getState().setStateValue(value);
+    return node;
+  }
+
+  private static HierarchicalNode node(Type type, HierarchicalNode... children) {
+    HierarchicalNode node = new HierarchicalNode(type);
+    for (HierarchicalNode child : children) {
+      node.addChild(child);
+    }
+    return node;
+  }
+
+  @Benchmark
+  public double evaluateHill() {
+    return Evaluator.evaluateExpressionRecursive(hill, 0);
+  }
+
+  @Benchmark
+  public double evaluateSum() {
+    return Evaluator.evaluateExpressionRecursive(sum, 0);
+  }
+
+  @Benchmark
+  public double evaluateCompiledHill() {
+    return compiledHill.evaluate(0);
+  }
+
+  @Benchmark
+  public double evaluateCompiledSum() {
+    return compiledSum.evaluate(0);
+  }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.utah.ece.async.lema.verification.lpn.ExprTree;
+
+/**
+ * Measures the evaluation of LPN expressions by {@link ExprTree#evaluateExpr(HashMap)} over integer variables.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class ExprTreeBenchmark {
+
+  private static final String ARITHMETIC = "((a+(b*c))-(d/(e+1)))*(a-b)";
+  private static final String LOGICAL = "(((a+(2*b))>(c-1))&((d<=((e*3)-a))|~(a=b)))";
+
+  private ExprTree arithmetic;
+  private ExprTree logical;
+  private HashMap<String, String> variables;
+
+  @Setup
+  public void setUp() {
+    ArrayList<String> names = new ArrayList<>(Arrays.asList("a", "b", "c", "d", "e"));
+    variables = new HashMap<>();
+    for (int i = 0; i < names.size(); i++) {
+      variables.put(names.get(i), String.valueOf(i + 3));
+    }
+    arithmetic = parse(names, ARITHMETIC);
+    logical = parse(names, LOGICAL);
+  }
+
+  private ExprTree parse(ArrayList<String> names, String expression) {
+    ExprTree tree = new ExprTree(names);
+    tree.token = tree.intexpr_gettok(expression);
+    tree.intexpr_L(expression);
+    if (Double.isNaN(tree.evaluateExpr(variables))) {
+      throw new IllegalStateException("Could not parse " + expression);
+    }
+    return tree;
+  }
+
+  @Benchmark
+  public double evaluateArithmetic() {
+    return arithmetic.evaluateExpr(variables);
+  }
+
+  @Benchmark
+  public double evaluateLogical() {
+    return logical.evaluateExpr(variables);
+  }
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.utah.ece.async.ibiosim.analysis.properties.AnalysisProperties;
+import edu.utah.ece.async.ibiosim.analysis.properties.SimulationProperties;
+import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorSSACR;
+import edu.utah.ece.async.ibiosim.analysis.simulation.flattened.SimulatorSSADirect;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalODERKSimulator;
+import edu.utah.ece.async.ibiosim.analysis.simulation.hierarchical.methods.HierarchicalSSADirectSimulator;
+import edu.utah.ece.async.ibiosim.dataModels.util.exceptions.BioSimException;
+
+/**
+ * Measures a single run of the flattened and hierarchical simulators on the bundled models.
+ *
+ * <p>
+ * Every invocation simulates a freshly initialized simulator, so parsing and setting up the model is left out of the
+ * measurement. The hierarchical simulators do not print their results and the flattened simulators print to a
+ * temporary directory, closing the output of each invocation once it is done.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SimulatorBenchmark {
+
+  private static final double TIME_LIMIT = 10;
+  private static final double PRINT_INTERVAL = 1;
+  private static final long SEED = 314159;
+
+  /**
+   * A bundled model copied to a temporary directory for the whole trial.
+   */
+  @State(Scope.Thread)
+  public static abstract class ModelState {
+
+    @Param({ BenchmarkModels.SMALL, BenchmarkModels.MEDIUM, BenchmarkModels.LARGE })
+    public String model;
+
+    File directory;
+    File modelFile;
+
+    @Setup(Level.Trial)
+    public void setUpModel() throws IOException {
+      directory = BenchmarkModels.createDirectory();
+      modelFile = BenchmarkModels.extract(model, directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownModel() {
+      BenchmarkModels.delete(directory);
+    }
+
+    String getOutputDirectory() {
+      return directory.getAbsolutePath() + File.separator;
+    }
+
+    AnalysisProperties createProperties() {
+      AnalysisProperties properties = new AnalysisProperties("", modelFile.getName(), directory.getAbsolutePath(), false);
+      properties.setOutDir(getOutputDirectory());
+      SimulationProperties simProperties = properties.getSimulationProperties();
+      simProperties.setTimeLimit(TIME_LIMIT);
+      simProperties.setPrintInterval(PRINT_INTERVAL);
+      simProperties.setRndSeed(SEED);
+      simProperties.setRun(1);
+      return properties;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class SSACRState extends ModelState {
+
+    SimulatorSSACR simulator;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+      simulator = new SimulatorSSACR(modelFile.getAbsolutePath(), getOutputDirectory(), 1, TIME_LIMIT, Double.POSITIVE_INFINITY, 0, SEED, PRINT_INTERVAL, 1, new String[0], "amount");
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+      simulator.closeOutput();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class SSADirectState extends ModelState {
+
+    SimulatorSSADirect simulator;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+      simulator = new SimulatorSSADirect(modelFile.getAbsolutePath(), getOutputDirectory(), 1, TIME_LIMIT, Double.POSITIVE_INFINITY, 0, SEED, PRINT_INTERVAL, 1, new String[0], "amount");
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException {
+      simulator.closeOutput();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class HierarchicalSSAState extends ModelState {
+
+    HierarchicalSSADirectSimulator simulator;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException, XMLStreamException, BioSimException {
+      simulator = new HierarchicalSSADirectSimulator(createProperties(), false);
+      simulator.initialize(1);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class HierarchicalODEState extends ModelState {
+
+    HierarchicalODERKSimulator simulator;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException, XMLStreamException, BioSimException {
+      simulator = new HierarchicalODERKSimulator(createProperties(), false);
+      simulator.initialize(1);
+    }
+  }
+
+  @Benchmark
+  public void ssaCR(SSACRState state) {
+    state.simulator.simulate();
+  }
+
+  @Benchmark
+  public void ssaDirect(SSADirectState state) {
+    state.simulator.simulate();
+  }
+
+  @Benchmark
+  public void hierarchicalSSADirect(HierarchicalSSAState state) throws IOException, XMLStreamException, BioSimException {
+    state.simulator.simulate();
+  }
+
+  @Benchmark
+  public void hierarchicalODERK(HierarchicalODEState state) throws IOException, XMLStreamException, BioSimException {
+    state.simulator.simulate();
+  }
+}
@@ -0,0 +1,97 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.TSDParser;
+
+/**
+ * Measures loading a TSD file with {@link TSDParser}.
+ *
+ * <p>
+ * The file is written once per trial in the same format as the simulators output, with a time column and one column
+ * per species of the medium benchmark model.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class TSDParserBenchmark {
+
+  private static final int SPECIES = 50;
+
+  @Param({ "100", "10000" })
+  public int rows;
+
+  private File directory;
+  private String filename;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = BenchmarkModels.createDirectory();
+    filename = new File(directory, "run-1.tsd").getAbsolutePath();
+    Random random = new Random(314159);
+
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
+      writer.write("((\"time\"");
+      for (int i = 0; i < SPECIES; i++) {
+        writer.write(",\"S" + i + "\"");
+      }
+      writer.write(")");
+      for (int row = 0; row < rows; row++) {
+        writer.write(",\n(");
+        writer.write(String.valueOf((double) row));
+        for (int i = 0; i < SPECIES; i++) {
+          writer.write("," + String.valueOf((double) random.nextInt(1000)));
+        }
+        writer.write(")");
+      }
+      writer.write(")");
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    BenchmarkModels.delete(directory);
+  }
+
+  @Benchmark
+  public TSDParser load() {
+    return new TSDParser(filename, true);
+  }
+}
@@ -69,6 +69,7 @@ import de.erichseifert.vectorgraphics2d.util.PageSize;
 import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
 import edu.utah.ece.async.ibiosim.dataModels.util.Message;
 import edu.utah.ece.async.ibiosim.dataModels.util.SEDMLutilities;
+import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.BTSDParser;
 import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.CSVParser;
 import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.DTSDParser;
 import edu.utah.ece.async.ibiosim.dataModels.util.dataparser.DataParser;
@@ -122,6 +123,8 @@ public class GraphData extends CoreObservable {
 	public final static String CSV_DATA_TYPE = "csv.printer";
 
 	public final static String DAT_DATA_TYPE = "dat.printer";
+
+	public final static String BTSD_DATA_TYPE = "btsd.printer";
 	
 	public final static int JPG_FILE_TYPE = 0;
 	
@@ -773,6 +776,13 @@ public class GraphData extends CoreObservable {
       graphSpecies = c.getSpecies();
       data = c.getData();
 		}
+		else if (file.endsWith(".btsd"))
+		{
+			BTSDParser b = new BTSDParser(file, warn);
+			warn = b.getWarning();
+			graphSpecies = b.getSpecies();
+			data = b.getData();
+		}
 		else {
 			p = new TSDParser(file, warn);
 			warn = p.getWarning();
@@ -1033,6 +1043,10 @@ public class GraphData extends CoreObservable {
     {
       graphSpecies = new CSVParser(file, true).getSpecies();
     }
+		else if (file.endsWith(".btsd"))
+		{
+			graphSpecies = new BTSDParser(file, true).getSpecies();
+		}
 		else
 		{
       graphSpecies = new TSDParser(file, true).getSpecies();
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.ibiosim.dataModels.util.dataparser;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import javax.swing.*;
+
+/**
+ * Reads binary time-series data (btsd) files through a memory mapping.
+ * 
+ * A btsd file starts with a header holding {@link #MAGIC}, the format
+ * {@link #VERSION}, the number of bytes per value (8 for float64 or 4 for
+ * float32), the number of columns, and the column names, each as its UTF-8
+ * length followed by its bytes. The first column is time. The rest of the
+ * file is a sequence of blocks, each made of the number of rows in the block
+ * followed by the values of every column for those rows, one column after
+ * the other. All numbers are big-endian.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class BTSDParser extends DataParser {
+
+	public final static int MAGIC = 0x42545344;
+
+	public final static int VERSION = 1;
+
+	// a mapping cannot be larger than this, so bigger files are mapped in
+	// several segments, each holding whole blocks
+	private final static long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+	private ArrayList<MappedByteBuffer> segments;
+
+	private int bytesPerValue;
+
+	private int numSamples;
+
+	private int[] blockSegments;
+
+	private int[] blockPositions;
+
+	private int[] blockRows;
+
+	public BTSDParser(String filename, boolean warn) {
+		super(new ArrayList<String>(), new ArrayList<ArrayList<Double>>());
+		warning = warn;
+		segments = new ArrayList<MappedByteBuffer>();
+		blockSegments = new int[0];
+		blockPositions = new int[0];
+		blockRows = new int[0];
+		try {
+			RandomAccessFile file = new RandomAccessFile(filename, "r");
+			try {
+				FileChannel channel = file.getChannel();
+				long offset = readHeader(channel);
+				readBlocks(channel, offset);
+			}
+			finally {
+				file.close();
+			}
+			for (int column = 0; column < species.size(); column++) {
+				double[] series = getSeries(column);
+				ArrayList<Double> values = new ArrayList<Double>(series.length);
+				for (double value : series) {
+					values.add(value);
+				}
+				data.add(values);
+			}
+		}
+		catch (IOException e) {
+			e.printStackTrace();
+			JOptionPane.showMessageDialog(component, "Error Reading Data!" + "\nThere was an error reading the simulation output data.",
+					"Error Reading Data", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
+	/**
+	 * returns the number of rows in the file.
+	 * 
+	 * @return
+	 */
+	@Override
+	public int getNumSamples() {
+		return numSamples;
+	}
+
+	/**
+	 * reads one column straight from the mapped file without boxing the
+	 * values.
+	 * 
+	 * @param column
+	 *            : the index of the column, 0 being time
+	 * @return
+	 */
+	public double[] getSeries(int column) {
+		double[] series = new double[numSamples];
+		int sample = 0;
+		for (int block = 0; block < blockRows.length; block++) {
+			MappedByteBuffer segment = segments.get(blockSegments[block]);
+			int rows = blockRows[block];
+			int position = blockPositions[block] + column * rows * bytesPerValue;
+			for (int row = 0; row < rows; row++, position += bytesPerValue) {
+				series[sample++] = bytesPerValue == 4 ? segment.getFloat(position) : segment.getDouble(position);
+			}
+		}
+		return series;
+	}
+
+	/**
+	 * reads the column of a variable straight from the mapped file.
+	 * 
+	 * @param id
+	 *            : the name of the column
+	 * @return the values or null if there is no such column
+	 */
+	public double[] getSeries(String id) {
+		int column = species.indexOf(id);
+		if (column < 0) {
+			return null;
+		}
+		return getSeries(column);
+	}
+
+	private MappedByteBuffer map(FileChannel channel, long offset) throws IOException {
+		MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(channel.size() - offset, MAX_SEGMENT_SIZE));
+		segments.add(segment);
+		return segment;
+	}
+
+	private long readHeader(FileChannel channel) throws IOException {
+		MappedByteBuffer header = map(channel, 0);
+		if (header.remaining() < 16 || header.getInt() != MAGIC) {
+			throw new IOException("Not a btsd file.");
+		}
+		int version = header.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported btsd version " + version + ".");
+		}
+		bytesPerValue = header.getInt();
+		if (bytesPerValue != 4 && bytesPerValue != 8) {
+			throw new IOException("Unsupported btsd value width " + bytesPerValue + ".");
+		}
+		int numColumns = header.getInt();
+		for (int column = 0; column < numColumns; column++) {
+			byte[] name = new byte[header.getInt()];
+			header.get(name);
+			species.add(new String(name, StandardCharsets.UTF_8));
+		}
+		return header.position();
+	}
+
+	private void readBlocks(FileChannel channel, long offset) throws IOException {
+		ArrayList<int[]> blocks = new ArrayList<int[]>();
+		long size = channel.size();
+		long segmentStart = 0;
+		MappedByteBuffer segment = segments.get(0);
+		numSamples = 0;
+		while (offset + 4 <= size) {
+			if (offset + 4 > segmentStart + segment.limit()) {
+				segmentStart = offset;
+				segment = map(channel, offset);
+			}
+			int rows = segment.getInt((int) (offset - segmentStart));
+			long length = 4 + (long) rows * species.size() * bytesPerValue;
+			// a block cut short by an interrupted simulation is left out
+			if (rows <= 0 || offset + length > size || length > MAX_SEGMENT_SIZE) {
+				break;
+			}
+			if (offset + length > segmentStart + segment.limit()) {
+				segmentStart = offset;
+				segment = map(channel, offset);
+			}
+			blocks.add(new int[] { segments.size() - 1, (int) (offset - segmentStart) + 4, rows });
+			numSamples += rows;
+			offset += length;
+		}
+		blockSegments = new int[blocks.size()];
+		blockPositions = new int[blocks.size()];
+		blockRows = new int[blocks.size()];
+		for (int block = 0; block < blocks.size(); block++) {
+			blockSegments[block] = blocks.get(block)[0];
+			blockPositions[block] = blocks.get(block)[1];
+			blockRows[block] = blocks.get(block)[2];
+		}
+	}
+}
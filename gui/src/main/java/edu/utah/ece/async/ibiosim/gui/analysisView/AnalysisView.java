@@ -2742,6 +2742,7 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
     simulators.addItem("SSA-Direct (Dynamic)");
     simulators.addItem("SSA-CR (Dynamic)");
     simulators.addItem("SSA-Direct (Hierarchical)");
+    simulators.addItem("SSA-Next Reaction (Hierarchical)");
     simulators.addItem("SSA-Direct (Flatten)");
     simulators.addItem("Hybrid-Hierarchical");
 
@@ -3552,9 +3553,9 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
         description.setText("Runge-Kutta-Fehlberg Method on Flattened Models (java)");
         enableODESimulator();
       }
-      else if (((String) simulators.getSelectedItem()).equals("Hierarchical-Hybrid"))
+      else if (((String) simulators.getSelectedItem()).equals("Hybrid-Hierarchical"))
       {
-        description.setText("Hybrid SSA/ODE on Hierarchical Models (java)");
+        description.setText("Tau-Leaping with Exact SSA Fallback on Hierarchical Models (java)");
         enableSSASimulator();
       }
       else if (((String) simulators.getSelectedItem()).contains("gillespie"))
@@ -3572,6 +3573,11 @@ public class AnalysisView extends PanelObservable implements ActionListener, Run
         description.setText("SSA-Direct Method on Hierarchical Models (java)");
         enableSSASimulator();
       }
+      else if (((String) simulators.getSelectedItem()).contains("SSA-Next Reaction (Hierarchical)"))
+      {
+        description.setText("Gibson-Bruck Next Reaction Method on Hierarchical Models (java)");
+        enableSSASimulator();
+      }
       else if (((String) simulators.getSelectedItem()).contains("interactive"))
       {
         description.setText("Interactive SSA-Direct Method (java)");
@@ -0,0 +1,389 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.lpn;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
+
+/**
+ * An {@link ExprTree} compiled for repeated evaluation.
+ * 
+ * Variables are bound to slots of a value vector when the tree is compiled,
+ * so evaluating it does not look up or parse any strings. Each node carries
+ * an integer opcode, and the operators share their semantics with
+ * {@link ExprTree#evaluateExpr(java.util.HashMap)}, which gives the same
+ * result for a map holding the same values.
+ * 
+ * The compiled tree is a snapshot: an expression tree that is modified after
+ * it was compiled needs to be compiled again. It holds no mutable state, so
+ * it can be evaluated by several threads at once.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public final class CompiledExprTree {
+
+	static final int NAN = 0;
+	static final int CONSTANT = 1;
+	static final int RANDOM = 2;
+	static final int LOAD = 3;
+	static final int LOAD_BOOLEAN = 4;
+	static final int RATE = 5;
+	static final int NOT = 6;
+	static final int AND = 7;
+	static final int OR = 8;
+	static final int EQ = 9;
+	static final int IMPLIES = 10;
+	static final int PLUS = 11;
+	static final int MINUS = 12;
+	static final int TIMES = 13;
+	static final int DIVIDE = 14;
+	static final int MOD = 15;
+	static final int POW = 16;
+	static final int BIT = 17;
+	static final int FLOOR = 18;
+	static final int CEIL = 19;
+	static final int MIN = 20;
+	static final int MAX = 21;
+	static final int IDIV = 22;
+	static final int INT = 23;
+	static final int LT = 24;
+	static final int GT = 25;
+	static final int LEQ = 26;
+	static final int GEQ = 27;
+	static final int BIT_AND = 28;
+	static final int BIT_OR = 29;
+	static final int BIT_NOT = 30;
+	static final int BIT_XOR = 31;
+
+	private final Node root;
+
+	private CompiledExprTree(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Compiles an expression tree.
+	 * @param tree
+	 * 			The tree to compile.
+	 * @param slots
+	 * 			The slot of each variable in the value vector. Variables without
+	 * 			a slot are unknown and evaluate to NaN.
+	 * @return
+	 * 			The compiled tree.
+	 */
+	public static CompiledExprTree compile(ExprTree tree, Map<String, Integer> slots) {
+		return new CompiledExprTree(compileNode(tree, slots));
+	}
+
+	/**
+	 * Evaluates the tree.
+	 * @param values
+	 * 			The value of each variable, in the slots the tree was compiled
+	 * 			with. Boolean variables are 1 when true, 0 when false and NaN
+	 * 			when unknown.
+	 * @return
+	 * 			The value of the expression.
+	 */
+	public double evaluate(double[] values) {
+		return evaluate(root, values);
+	}
+
+	/**
+	 * Converts a variable value as stored in the string maps of the analyses
+	 * to its value in a value vector.
+	 * @param value
+	 * 			The value of the variable, or null if it has none.
+	 * @return
+	 * 			1 for true, 0 for false, the number for numeric values and NaN
+	 * 			for unknown values.
+	 */
+	public static double valueOf(String value) {
+		if (value == null || value.equalsIgnoreCase("unknown")) {
+			return Double.NaN;
+		}
+		if (value.equalsIgnoreCase("true")) {
+			return 1.0;
+		}
+		if (value.equalsIgnoreCase("false")) {
+			return 0.0;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Returns the opcode of an operator node.
+	 */
+	static int getOpcode(char isit, String op) {
+		if (op == null) {
+			return NAN;
+		}
+		if (isit == 'w') {
+			switch (op) {
+			case "&":
+				return BIT_AND;
+			case "|":
+				return BIT_OR;
+			case "!":
+				return BIT_NOT;
+			case "X":
+				return BIT_XOR;
+			default:
+				return NAN;
+			}
+		}
+		if (isit != 'a' && isit != 'r' && isit != 'l') {
+			return NAN;
+		}
+		switch (op) {
+		case "!":
+			return NOT;
+		case "&&":
+			return AND;
+		case "||":
+			return OR;
+		case "==":
+			return EQ;
+		case "->":
+			return IMPLIES;
+		case "+":
+			return PLUS;
+		case "-":
+			return MINUS;
+		case "*":
+			return TIMES;
+		case "/":
+			return DIVIDE;
+		case "%":
+			return MOD;
+		case "^":
+			return POW;
+		case "[]":
+			return BIT;
+		case "f":
+			return FLOOR;
+		case "c":
+			return CEIL;
+		case "m":
+			return MIN;
+		case "M":
+			return MAX;
+		case "i":
+			return IDIV;
+		case "rate":
+			return RATE;
+		case "INT":
+			return INT;
+		case "<":
+			return LT;
+		case ">":
+			return GT;
+		case "<=":
+			return LEQ;
+		case ">=":
+			return GEQ;
+		default:
+			// Random distributions and unknown operators
+			return NAN;
+		}
+	}
+
+	/**
+	 * Applies an operator to the values of its children, which are NaN for
+	 * missing children.
+	 */
+	static double apply(int opcode, double left, double right) {
+		switch (opcode) {
+		case NOT:
+			if (left == 1.0) {
+				return 0.0;
+			} else if (left == 0.0) {
+				return 1.0;
+			}
+			return Double.NaN;
+		case AND:
+			if (left == 1.0 && right == 1.0) {
+				return 1.0;
+			} else if (left == 0.0 || right == 0.0) {
+				return 0.0;
+			}
+			return Double.NaN;
+		case OR:
+			if (left == 1.0 || right == 1.0) {
+				return 1.0;
+			} else if (left == 0.0 && right == 0.0) {
+				return 0.0;
+			}
+			return Double.NaN;
+		case EQ:
+			return left == right ? 1.0 : 0.0;
+		case IMPLIES:
+			if (left == 0.0 && (right == 1.0 || right == 0.0)) {
+				return 1.0;
+			} else if (left == 1.0 && right == 1.0) {
+				return 1.0;
+			} else if (left == 1.0 && right == 0.0) {
+				return 0.0;
+			}
+			return Double.NaN;
+		case PLUS:
+			return left + right;
+		case MINUS:
+			return left - right;
+		case TIMES:
+			return left * right;
+		case DIVIDE:
+			return left / right;
+		case MOD:
+			return left % right;
+		case POW:
+			return Math.pow(left, right);
+		case BIT:
+			return (((int) left) >> ((int) right)) & 1;
+		case FLOOR:
+			return Math.floor(left);
+		case CEIL:
+			return Math.ceil(left);
+		case MIN:
+			return Math.min(left, right);
+		case MAX:
+			return Math.max(left, right);
+		case IDIV:
+			return ((int) left) / ((int) right);
+		case INT:
+			return ((int) left);
+		case LT:
+			return left < right ? 1.0 : left >= right ? 0.0 : Double.NaN;
+		case GT:
+			return left > right ? 1.0 : left <= right ? 0.0 : Double.NaN;
+		case LEQ:
+			return left <= right ? 1.0 : left > right ? 0.0 : Double.NaN;
+		case GEQ:
+			return left >= right ? 1.0 : left < right ? 0.0 : Double.NaN;
+		case BIT_AND:
+			return ((int) left) & ((int) right);
+		case BIT_OR:
+			return ((int) left) | ((int) right);
+		case BIT_NOT:
+			return ~((int) left);
+		case BIT_XOR:
+			return ((int) left) ^ ((int) right);
+		default:
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * Returns a value drawn uniformly from a range.
+	 */
+	static double random(double lower, double upper) {
+		return ((upper - lower) * ThreadLocalRandom.current().nextDouble()) + lower;
+	}
+
+	private static Node compileNode(ExprTree tree, Map<String, Integer> slots) {
+		switch (tree.isit) {
+		case 'b':
+			return load(LOAD_BOOLEAN, tree.variable, slots);
+		case 'i':
+			return load(LOAD, tree.variable, slots);
+		case 'n':
+			if (tree.uvalue == tree.lvalue) {
+				return new Node(CONSTANT, -1, tree.uvalue, tree.uvalue, null, null);
+			}
+			return new Node(RANDOM, -1, tree.lvalue, tree.uvalue, null, null);
+		case 't':
+			double value = Double.NaN;
+			if (tree.uvalue == 1 && tree.lvalue == 1) {
+				value = 1.0;
+			} else if (tree.uvalue == 0 && tree.lvalue == 0) {
+				value = 0.0;
+			}
+			return new Node(CONSTANT, -1, value, value, null, null);
+		case 'w':
+		case 'a':
+		case 'r':
+		case 'l':
+			int opcode = getOpcode(tree.isit, tree.op);
+			if (opcode == RATE) {
+				if (tree.r1 == null) {
+					return new Node(NAN, -1, 0, 0, null, null);
+				}
+				return load(LOAD, tree.r1.variable + "_" + GlobalConstants.RATE, slots);
+			}
+			if (opcode == NOT) {
+				ExprTree operand = tree.r1 != null ? tree.r1 : tree.r2;
+				return new Node(NOT, -1, 0, 0, operand != null ? compileNode(operand, slots) : null, null);
+			}
+			return new Node(opcode, -1, 0, 0, tree.r1 != null ? compileNode(tree.r1, slots) : null,
+					tree.r2 != null ? compileNode(tree.r2, slots) : null);
+		default:
+			// Continuous variables are not evaluated
+			return new Node(NAN, -1, 0, 0, null, null);
+		}
+	}
+
+	private static Node load(int opcode, String variable, Map<String, Integer> slots) {
+		Integer slot = slots.get(variable);
+		if (slot == null) {
+			return new Node(NAN, -1, 0, 0, null, null);
+		}
+		return new Node(opcode, slot, 0, 0, null, null);
+	}
+
+	private static double evaluate(Node node, double[] values) {
+		switch (node.opcode) {
+		case NAN:
+			return Double.NaN;
+		case CONSTANT:
+			return node.lower;
+		case RANDOM:
+			return random(node.lower, node.upper);
+		case LOAD:
+			return values[node.slot];
+		case LOAD_BOOLEAN:
+			double value = values[node.slot];
+			if (Double.isNaN(value)) {
+				return Double.NaN;
+			}
+			return value == 1.0 ? 1.0 : 0.0;
+		default:
+			double left = node.left != null ? evaluate(node.left, values) : Double.NaN;
+			double right = node.right != null ? evaluate(node.right, values) : Double.NaN;
+			return apply(node.opcode, left, right);
+		}
+	}
+
+	private static final class Node {
+
+		final int opcode;
+		final int slot;
+		final double lower, upper;
+		final Node left, right;
+
+		Node(int opcode, int slot, double lower, double upper, Node left, Node right) {
+			this.opcode = opcode;
+			this.slot = slot;
+			this.lower = lower;
+			this.upper = upper;
+			this.left = left;
+			this.right = right;
+		}
+	}
+}
@@ -15,6 +15,7 @@ package edu.utah.ece.async.lema.verification.lpn;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import edu.utah.ece.async.ibiosim.dataModels.util.GlobalConstants;
@@ -4236,18 +4237,26 @@ public class ExprTree {
 		}
 	}
 
+	/**
+	 * Evaluates the expression with the values of the variables given as
+	 * strings. Expressions that are evaluated many times should rather be
+	 * compiled with {@link #compile(Map)}, which gives the same result
+	 * without looking up or parsing the values.
+	 * @param variables
+	 * 			The values of the variables, or null if there are none.
+	 * @return
+	 * 			The value of the expression.
+	 */
 	public double evaluateExpr(HashMap<String, String> variables) {
 		double left;
 		double right;
 		switch (isit) {
 		case 'b': // Boolean
 			if (variables != null) {
-				if (!variables.containsKey(variable)
-						|| variables.get(variable).toLowerCase().equals(
-								"unknown"))
+				String value = variables.get(variable);
+				if (value == null || value.equalsIgnoreCase("unknown"))
 					return Double.NaN;
-				if (variables.get(variable).toLowerCase().equals("true") ||
-					variables.get(variable).equals("1")) {
+				if (value.equalsIgnoreCase("true") || value.equals("1")) {
 					return 1.0;
 				}
 				return 0.0;
@@ -4268,8 +4277,7 @@ public class ExprTree {
 			if (uvalue == lvalue) {
 				return uvalue;
 			}
-			return ((uvalue - lvalue) * new java.util.Random().nextDouble())
-					+ lvalue;
+			return CompiledExprTree.random(lvalue, uvalue);
 		case 't': // Truth value
 			if (uvalue == 1 && lvalue == 1) {
 				return 1.0;
@@ -4279,49 +4287,20 @@ public class ExprTree {
 				return Double.NaN;
 			}
 		case 'w': // bitWise
-			if (r1 != null) {
-				left = r1.evaluateExpr(variables);
-			} else {
-				left = Double.NaN;
-			}
-			if (r2 != null) {
-				right = r2.evaluateExpr(variables);
-			} else {
-				right = Double.NaN;
-			}
-			if (op.equals("&")) {
-				return ((int) left) & ((int) right);
-			} else if (op.equals("|")) {
-				return ((int) left) | ((int) right);
-			} else if (op.equals("!")) {
-				return ~((int) left);
-			} else if (op.equals("X")) {
-				return ((int) left) ^ ((int) right);
-			}
-			break;
 		case 'a': // Arithmetic
 		case 'r': // Relational
 		case 'l': // Logical
-			if (op.equals("!")) {
+			int opcode = CompiledExprTree.getOpcode(isit, op);
+			if (opcode == CompiledExprTree.NOT) {
 				if (r1 != null) {
-					if (r1.evaluateExpr(variables) == 1.0) {
-						return 0.0;
-					} else if (r1.evaluateExpr(variables) == 0.0) {
-						return 1.0;
-					} else {
-						return Double.NaN;
-					}
+					return CompiledExprTree.apply(opcode, r1.evaluateExpr(variables), Double.NaN);
 				} else if (r2 != null) {
-					if (r2.evaluateExpr(variables) == 1.0) {
-						return 0.0;
-					} else if (r2.evaluateExpr(variables) == 0.0) {
-						return 1.0;
-					} else {
-						return Double.NaN;
-					}
-				} else {
-					return Double.NaN;
+					return CompiledExprTree.apply(opcode, r2.evaluateExpr(variables), Double.NaN);
 				}
+				return Double.NaN;
+			}
+			if (opcode == CompiledExprTree.RATE) {
+				return Double.parseDouble(variables.get(r1.variable+"_" + GlobalConstants.RATE));
 			}
 			if (r1 != null) {
 				left = r1.evaluateExpr(variables);
@@ -4333,131 +4312,23 @@ public class ExprTree {
 			} else {
 				right = Double.NaN;
 			}
-			if (op.equals("&&")) {
-				if (left == 1.0 && right == 1.0) {
-					return 1.0;
-				} else if (left == 0.0 || right == 0.0) {
-					return 0.0;
-				} else
-					return Double.NaN;
-			} else if (op.equals("||")) {
-				if (left == 1.0 || right == 1.0) {
-					return 1.0;
-				} else if (left == 0.0 && right == 0.0) {
-					return 0.0;
-				} else
-					return Double.NaN;
-			} else if (op.equals("==")) {
-				if (left == Double.NaN || right == Double.NaN) {
-					return Double.NaN;
-				} else if (left == right) {
-					return 1.0;
-				} else if (left != right) {
-					return 0.0;
-				} else {
-					return Double.NaN;
-				}
-			} else if (op.equals("->")) {
-				if (left == 0.0 && (right == 1.0 || right == 0.0)) {
-					return 1.0;
-				} else if (left == 1.0 && right == 1.0) {
-					return 1.0;
-				} else if (left == 1.0 && right == 0.0) {
-					return 0.0;
-				} else {
-					return Double.NaN;
-				}
-			} else if (op.equals("+")) {
-				return left + right;
-			} else if (op.equals("-")) {
-				return left - right;
-			} else if (op.equals("*")) {
-				return left * right;
-			} else if (op.equals("/")) {
-				return left / right;
-			} else if (op.equals("%")) {
-				return left % right;
-			} else if (op.equals("^")) {
-				return Math.pow(left, right);
-			} else if (op.equals("[]")) {
-				return (((int) left) >> ((int) right)) & 1;
-			} else if (op.equals("f")) {
-				return Math.floor(left);
-			} else if (op.equals("c")) {
-				return Math.ceil(left);
-			} else if (op.equals("m")) {
-				return Math.min(left, right);
-			} else if (op.equals("M")) {
-				return Math.max(left, right);
-			} else if (op.equals("i")) {
-				return ((int) left) / ((int) right);
-			} else if (op.equals("uniform")) {
-				return Double.NaN;
-			} else if (op.equals("normal")) {
-				return Double.NaN;
-			} else if (op.equals("gamma")) {
-				return Double.NaN;
-			} else if (op.equals("lognormal")) {
-				return Double.NaN;
-			} else if (op.equals("binomial")) {
-				return Double.NaN;
-			} else if (op.equals("exponential")) {
-				return Double.NaN;
-			} else if (op.equals("chisq")) {
-				return Double.NaN;
-			} else if (op.equals("laplace")) {
-				return Double.NaN;
-			} else if (op.equals("cauchy")) {
-				return Double.NaN;
-			} else if (op.equals("rayleigh")) {
-				return Double.NaN;
-			} else if (op.equals("poisson")) {
-				return Double.NaN;
-			} else if (op.equals("bernoulli")) {
-				return Double.NaN;
-			} else if (op.equals("rate")) {
-				return Double.parseDouble(variables.get(r1.variable+"_" + GlobalConstants.RATE));
-			} else if (op.equals("INT")) {
-				return ((int) left);
-			} else if (op.equals("<")) {
-				if (left < right) {
-					return 1.0;
-				} else if (left >= right) {
-					return 0.0;
-				} else {
-					return Double.NaN;
-				}
-			} else if (op.equals(">")) {
-				if (left > right) {
-					return 1.0;
-				} else if (left <= right) {
-					return 0.0;
-				} else {
-					return Double.NaN;
-				}
-			} else if (op.equals("<=")) {
-				if (left <= right) {
-					return 1.0;
-				} else if (left > right) {
-					return 0.0;
-				} else {
-					return Double.NaN;
-				}
-			} else if (op.equals(">=")) {
-				if (left >= right) {
-					return 1.0;
-				} else if (left < right) {
-					return 0.0;
-				} else {
-					return Double.NaN;
-				}
-			} else {
-				return Double.NaN;
-			}
+			return CompiledExprTree.apply(opcode, left, right);
 		}
 		return Double.NaN;
 	}
 
+	/**
+	 * Compiles the expression for repeated evaluation against a value vector.
+	 * The compiled tree does not follow later changes to this tree.
+	 * @param slots
+	 * 			The slot of each variable in the value vector.
+	 * @return
+	 * 			The compiled expression.
+	 */
+	public CompiledExprTree compile(Map<String, Integer> slots) {
+		return CompiledExprTree.compile(this, slots);
+	}
+
 	private static final int WORD = 1;
 
 	private static final int IMPLIES = 7;
@@ -80,9 +80,10 @@ public class LPN extends CoreObservable {
 	/* 
 	 * Cached value of the map that associates a variable name with its
 	 * index. This field is initialized when a call to getVarIndexMap
-	 * is made.
+	 * is made. It is volatile so that threads firing transitions at the
+	 * same time only see a complete map.
 	 */
-	protected DualHashMap<String, Integer> _varIndexMap;
+	protected volatile DualHashMap<String, Integer> _varIndexMap;
 
 	/*
 	 * Cached value of the map that associates a continuous variable with
@@ -91,17 +92,12 @@ public class LPN extends CoreObservable {
 	 */
 	DualHashMap<String, Integer> _continuousIndexMap;
 	
-	/* 
-	 * Cached value of the array of all the places in this LPN. This field is 
-	 * initialized when a call to getPlaceList is made.
-	 */
-	protected String[] placeList;
-	
 	/* 
 	 * Cached value of all the transition in this LPN. This field is 
-	 * initialized when a call to getAllTransitions is made.
+	 * initialized when a call to getAllTransitions is made. The array is
+	 * filled before it is published through this volatile field.
 	 */
-	protected Transition[] allTransitions;
+	protected volatile Transition[] allTransitions;
 	
 	/*
 	 * The i-th array in this list stores THIS Lpn's variable indices of the shared variables 
@@ -1362,14 +1358,15 @@ public class LPN extends CoreObservable {
 	 * @return
 	 */
 	public Transition[] getAllTransitions() {
-		if (allTransitions == null) {
-			allTransitions = new Transition[transitions.size()];
+		Transition[] all = allTransitions;
+		if (all == null) {
+			all = new Transition[transitions.size()];
 			for (String t: transitions.keySet()) {
-				allTransitions[transitions.get(t).getIndex()] = transitions.get(t);
+				all[transitions.get(t).getIndex()] = transitions.get(t);
 			}
-			return allTransitions;
+			allTransitions = all;
 		}
-		return allTransitions;
+		return all;
 	}
 	
 	public Transition getTransition(int index) {
@@ -1457,7 +1454,7 @@ public class LPN extends CoreObservable {
 	}
 
 	public String[] getPlaceList() {
-		placeList = new String[places.size()];
+		String[] placeList = new String[places.size()];
 		int i = 0;
 		for (String t : places.keySet()) {
 			placeList[i++] = t;
@@ -1465,19 +1462,6 @@ public class LPN extends CoreObservable {
 		return placeList;
 	}
 	
-//	public ArrayList<String> getAllPlaces() {
-//		if(placeList == null) {
-//			int i = 0;
-//			for (String t: places.keySet()) {
-//				placeList.add(i++, t);
-//			}
-//			return placeList;
-//		}
-//		else
-//			return placeList;
-//
-//	}
-	
 	public Place getPlace(String place) {
 		return places.get(place);
 	}
@@ -1506,9 +1490,10 @@ public class LPN extends CoreObservable {
 		if (isTransition(name)) {
 			int[] preset = new int[transitions.get(name).getPreset().length];
 			Place[] presetPlaces = transitions.get(name).getPreset();
+			String[] placeList = this.getPlaceList();
 			for (int i=0; i<presetPlaces.length; i++) {
-				for (int placeIndex=0; placeIndex<this.getPlaceList().length; placeIndex++) {
-					if (this.getPlaceList()[placeIndex] == presetPlaces[i].getName()) {
+				for (int placeIndex=0; placeIndex<placeList.length; placeIndex++) {
+					if (placeList[placeIndex] == presetPlaces[i].getName()) {
 						preset[i] = placeIndex;
 					}
 				}
@@ -1551,9 +1536,10 @@ public class LPN extends CoreObservable {
 		if (isTransition(name)) {
 			int[] postset = new int[transitions.get(name).getPostset().length];
 			Place[] postPlaces = transitions.get(name).getPostset();
+			String[] placeList = this.getPlaceList();
 			for (int i=0; i<postPlaces.length; i++) {
-				for (int placeIndex=0; placeIndex<this.getPlaceList().length; placeIndex++) {
-					if (this.getPlaceList()[placeIndex] == postPlaces[i].getName()) {
+				for (int placeIndex=0; placeIndex<placeList.length; placeIndex++) {
+					if (placeList[placeIndex] == postPlaces[i].getName()) {
 						postset[i] = placeIndex;
 					}
 				}
@@ -2491,7 +2477,6 @@ public class LPN extends CoreObservable {
 	}
 
 	private void parsePlaces(StringBuffer data) {
-		placeList = null;
 		Pattern linePattern = Pattern.compile(PLACES_LINE);
 		Matcher lineMatcher = linePattern.matcher(data.toString());
 		if (lineMatcher.find()) {
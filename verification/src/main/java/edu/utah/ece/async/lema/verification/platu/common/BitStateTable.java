@@ -0,0 +1,123 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.common;
+
+/**
+ * Stores tuples of local state indices as bits in a Bloom filter (bitstate hashing).
+ * Each tuple sets a few bits chosen by hash functions, so a state takes a few bits no
+ * matter how many LPNs there are. A tuple that was never added is reported as contained
+ * when all of its bits happen to be set, so a search using this table may miss states.
+ * The table is sized so that this happens with at most the given probability once the
+ * expected number of states has been added.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class BitStateTable extends SetIntTuple {
+	
+	private final long[] bits;
+	private final long numBits;
+	private final int numHashes;
+	private final long expectedStates;
+	private final double falsePositiveRate;
+	private int size;
+	
+	/**
+	 * @param expectedStates
+	 * 			The number of states the table is sized for.
+	 * @param falsePositiveRate
+	 * 			The probability that a new state is taken for a stored one once
+	 * 			expectedStates states have been added. Must be between 0 and 1.
+	 */
+	public BitStateTable(long expectedStates, double falsePositiveRate) {
+		if (expectedStates <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1)
+			throw new IllegalArgumentException("Invalid bitstate table size " + expectedStates
+					+ " or false positive rate " + falsePositiveRate + ".");
+		double ln2 = Math.log(2);
+		long words = (long) Math.ceil(-expectedStates * Math.log(falsePositiveRate) / (ln2 * ln2) / 64);
+		if (words > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("A bitstate table for " + expectedStates
+					+ " states with false positive rate " + falsePositiveRate + " is too large.");
+		this.bits = new long[(int) Math.max(words, 1)];
+		this.numBits = this.bits.length * 64L;
+		this.numHashes = (int) Math.max(1, Math.round((double) this.numBits / expectedStates * ln2));
+		this.expectedStates = expectedStates;
+		this.falsePositiveRate = falsePositiveRate;
+		this.size = 0;
+	}
+	
+	/**
+	 * @return
+	 * 		1 if some bit of IntArray was not set yet, 0 if the tuple is taken as stored.
+	 */
+	@Override
+	public int add(int[] IntArray) {
+		long h1 = hash(IntArray, 0);
+		long h2 = hash(IntArray, h1) | 1;
+		boolean isNew = false;
+		for (int i = 0; i < this.numHashes; i++) {
+			long bit = Long.remainderUnsigned(h1 + i * h2, this.numBits);
+			int word = (int) (bit >>> 6);
+			long mask = 1L << bit;
+			if ((this.bits[word] & mask) == 0) {
+				this.bits[word] |= mask;
+				isNew = true;
+			}
+		}
+		if (isNew)
+			this.size++;
+		return isNew ? 1 : 0;
+	}
+	
+	@Override
+	public boolean contains(int[] IntArray) {
+		long h1 = hash(IntArray, 0);
+		long h2 = hash(IntArray, h1) | 1;
+		for (int i = 0; i < this.numHashes; i++) {
+			long bit = Long.remainderUnsigned(h1 + i * h2, this.numBits);
+			if ((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+				return false;
+		}
+		return true;
+	}
+	
+	private static long hash(int[] IntArray, long seed) {
+		long h = seed ^ IntArray.length;
+		for (int value : IntArray)
+			h = Common.mix64(h ^ (value & 0xffffffffL));
+		return h;
+	}
+	
+	/**
+	 * @return
+	 * 		The number of tuples that were added as new. States wrongly taken as stored
+	 * 		are not counted.
+	 */
+	@Override
+	public int size() {
+		return this.size;
+	}
+	
+	@Override
+	public String stats() {
+		double fill = 0;
+		for (long word : this.bits)
+			fill += Long.bitCount(word);
+		fill /= this.numBits;
+		return "States in state table: " + this.size() + ", bits: " + this.numBits
+				+ " (" + (float) this.numBits / 8000000 + " MB), hash functions: " + this.numHashes
+				+ ", sized for " + this.expectedStates + " states at false positive rate " + this.falsePositiveRate
+				+ ", current false positive rate: " + Math.pow(fill, this.numHashes);
+	}
+}
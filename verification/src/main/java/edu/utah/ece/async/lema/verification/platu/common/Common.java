@@ -156,4 +156,17 @@ public class Common {
         
         return tot;
     }
+
+    /**
+     * Scrambles the bits of a long so that every bit of the result depends on every bit
+     * of the argument. Used to hash the tuples of local state indices.
+     */
+    public static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
 }
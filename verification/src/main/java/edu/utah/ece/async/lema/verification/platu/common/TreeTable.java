@@ -0,0 +1,190 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.common;
+
+import java.util.Arrays;
+
+/**
+ * Stores tuples of local state indices with tree compression. Neighbouring entries of a
+ * tuple are paired, each distinct pair is stored once and given an index, and the indices
+ * are paired again level by level until one pair is left for the whole tuple. Tuples that
+ * share parts share the entries for those parts, so a new tuple usually only adds one or
+ * two pairs of 12 bytes each.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class TreeTable extends SetIntTuple {
+	
+	/*
+	 * One table of pairs for each internal node of the tree, level by level. A tuple
+	 * of length one is paired with 0.
+	 */
+	private final PairTable[] tables;
+	private final int tupleLength;
+	
+	public TreeTable(int tupleLength) {
+		this.tupleLength = tupleLength;
+		this.tables = new PairTable[Math.max(tupleLength - 1, 1)];
+		for (int i = 0; i < this.tables.length; i++)
+			this.tables[i] = new PairTable();
+	}
+	
+	/**
+	 * @return
+	 * 		1 if IntArray was added, 0 if it was already stored.
+	 */
+	@Override
+	public int add(int[] IntArray) {
+		PairTable root = this.tables[this.tables.length - 1];
+		int size = root.size();
+		reduce(IntArray, true);
+		return root.size() > size ? 1 : 0;
+	}
+	
+	@Override
+	public boolean contains(int[] IntArray) {
+		return reduce(IntArray, false) >= 0;
+	}
+	
+	/**
+	 * Pairs up the entries of a tuple level by level.
+	 * @return
+	 * 		The index of the tuple in the root table, or -1 if insert is false and a pair
+	 * 		on the way is not stored.
+	 */
+	private int reduce(int[] IntArray, boolean insert) {
+		if (IntArray.length != this.tupleLength)
+			throw new IllegalArgumentException("Expected a tuple of length " + this.tupleLength
+					+ " but got " + IntArray.length + ".");
+		if (this.tupleLength == 1)
+			return insert ? this.tables[0].put(IntArray[0], 0) : this.tables[0].get(IntArray[0], 0);
+		int[] ids = IntArray.clone();
+		int count = ids.length;
+		int table = 0;
+		while (count > 1) {
+			int next = 0;
+			for (int i = 0; i + 1 < count; i += 2) {
+				int id = insert ? this.tables[table].put(ids[i], ids[i + 1]) : this.tables[table].get(ids[i], ids[i + 1]);
+				if (id < 0)
+					return -1;
+				ids[next++] = id;
+				table++;
+			}
+			if (count % 2 == 1)
+				ids[next++] = ids[count - 1];
+			count = next;
+		}
+		return ids[0];
+	}
+	
+	@Override
+	public int size() {
+		return this.tables[this.tables.length - 1].size();
+	}
+	
+	@Override
+	public String stats() {
+		long pairs = 0;
+		long bytes = 0;
+		for (PairTable t : this.tables) {
+			pairs += t.size();
+			bytes += t.capacity() * 12L;
+		}
+		return "States in state table: " + this.size() + ", stored pairs: " + pairs
+				+ ", table memory: " + (float) bytes / 1000000 + " MB";
+	}
+	
+	/**
+	 * An open addressing hash table that gives each distinct pair of non-negative
+	 * ints the next free index.
+	 */
+	private static class PairTable {
+		
+		private static final long EMPTY = -1L;
+		
+		private long[] keys;
+		private int[] ids;
+		private int size;
+		
+		PairTable() {
+			this.keys = new long[16];
+			this.ids = new int[16];
+			Arrays.fill(this.keys, EMPTY);
+			this.size = 0;
+		}
+		
+		int size() {
+			return this.size;
+		}
+		
+		int capacity() {
+			return this.keys.length;
+		}
+		
+		int get(int left, int right) {
+			long key = pack(left, right);
+			int mask = this.keys.length - 1;
+			for (int slot = hash(key) & mask; this.keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+				if (this.keys[slot] == key)
+					return this.ids[slot];
+			}
+			return -1;
+		}
+		
+		int put(int left, int right) {
+			long key = pack(left, right);
+			int mask = this.keys.length - 1;
+			int slot = hash(key) & mask;
+			for (; this.keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+				if (this.keys[slot] == key)
+					return this.ids[slot];
+			}
+			if (this.size == Integer.MAX_VALUE)
+				throw new IllegalStateException("Too many pairs in a state table.");
+			int id = this.size++;
+			this.keys[slot] = key;
+			this.ids[slot] = id;
+			if (this.size > this.keys.length - (this.keys.length >>> 2))
+				grow();
+			return id;
+		}
+		
+		private void grow() {
+			long[] oldKeys = this.keys;
+			int[] oldIds = this.ids;
+			this.keys = new long[oldKeys.length * 2];
+			this.ids = new int[oldIds.length * 2];
+			Arrays.fill(this.keys, EMPTY);
+			int mask = this.keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] == EMPTY)
+					continue;
+				int slot = hash(oldKeys[i]) & mask;
+				while (this.keys[slot] != EMPTY)
+					slot = (slot + 1) & mask;
+				this.keys[slot] = oldKeys[i];
+				this.ids[slot] = oldIds[i];
+			}
+		}
+		
+		private static long pack(int left, int right) {
+			return ((long) left << 32) | (right & 0xffffffffL);
+		}
+		
+		private static int hash(long key) {
+			return (int) Common.mix64(key);
+		}
+	}
+}
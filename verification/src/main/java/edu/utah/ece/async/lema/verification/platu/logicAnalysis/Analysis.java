@@ -39,7 +39,10 @@ import edu.utah.ece.async.lema.verification.lpn.LpnDecomposition.LpnProcess;
 import edu.utah.ece.async.lema.verification.platu.MDD.MDT;
 import edu.utah.ece.async.lema.verification.platu.MDD.Mdd;
 import edu.utah.ece.async.lema.verification.platu.MDD.mddNode;
+import edu.utah.ece.async.lema.verification.platu.common.BitStateTable;
+import edu.utah.ece.async.lema.verification.platu.common.HashTable;
 import edu.utah.ece.async.lema.verification.platu.common.IndexObjMap;
+import edu.utah.ece.async.lema.verification.platu.common.TreeTable;
 import edu.utah.ece.async.lema.verification.platu.main.Options;
 import edu.utah.ece.async.lema.verification.platu.markovianAnalysis.ProbGlobalState;
 import edu.utah.ece.async.lema.verification.platu.markovianAnalysis.ProbGlobalStateSet;
@@ -240,7 +243,7 @@ public class Analysis extends CoreObservable{
 		// Set of PrjStates that have been seen before. Set class documentation
 		// for how it behaves. Timing Change.
 //		HashMap<PrjState, PrjState> prjStateSet = generateStateSet();
-		StateSetInterface prjStateSet = generateStateSet();
+		StateSetInterface prjStateSet = generateStateSet(numLpns);
 		
 		PrjState initPrjState;		
 		// Create the appropriate type for the PrjState depending on whether timing is 
@@ -589,6 +592,8 @@ public class Analysis extends CoreObservable{
 			+ ", max_stack_depth: " + max_stack_depth 
 			+ ", peak total memory: " + peakTotalMem / 1000000 + " MB"
 			+ ", peak used memory: " + peakUsedMem / 1000000 + " MB");
+		if (prjStateSet instanceof IndexTupleStateSet)
+			System.out.println("---> " + prjStateSet.toString());
 		if(Options.getTimingAnalysisFlag()){// && !failure){
 			if(!failure){
 				if(Options.get_displayResults()){
@@ -666,6 +671,53 @@ public class Analysis extends CoreObservable{
 		return prjStateSet;
 	}
 	
+	/**
+	 * Multi-threaded version of search_dfs for untimed, non-stochastic models. The global
+	 * states are explored by Options.getParallelThreads() work-stealing threads that share
+	 * one set of reached states. Failure transitions, disabling errors and deadlocks are
+	 * reported as in search_dfs, along with the trace of transitions leading to them.
+	 * Timed and stochastic analysis, and drawing the global state graph, still call search_dfs.
+	 * @param sgList
+	 * @param initStateArray
+	 * @return
+	 * 		The set of reached global states.
+	 */
+	public StateSetInterface search_parallel(final StateGraph[] sgList, final State[] initStateArray) {
+		if (Options.getTimingAnalysisFlag() || Options.getMarkovianModelFlag() || Options.getOutputSgFlag()) {
+			System.out.println("---> parallel search only supports untimed models without the global state graph output");
+			return search_dfs(sgList, initStateArray);
+		}
+		System.out.println("-------- Reachability Analysis ---------");
+		System.out.println("---> calling function search_parallel with " + Options.getParallelThreads() + " threads");
+		constructDstLpnList(sgList);
+		if (Options.getDebugMode())
+			printDstLpnList(sgList);
+		ParallelSearch parallelSearch = new ParallelSearch(sgList, Options.getParallelThreads());
+		StateSetInterface prjStateSet = parallelSearch.search(new PrjState(initStateArray));
+		double totalStateCnt = prjStateSet.size();
+		double peakTotalMem = parallelSearch.getPeakTotalMem();
+		double peakUsedMem = parallelSearch.getPeakUsedMem();
+		System.out.println("---> final numbers: # LPN transition firings: "	+ parallelSearch.getTranFiringCnt() 
+			+ ", # of prjStates found: " + totalStateCnt
+			+ ", peak total memory: " + peakTotalMem / 1000000 + " MB"
+			+ ", peak used memory: " + peakUsedMem / 1000000 + " MB");
+		String failureReason = parallelSearch.getFailureReason();
+		if (failureReason != null) {
+			System.out.println("*** Verification failed: " + failureReason);
+			System.out.println("-------------------------------------------");
+			System.out.println("the counterexample trace:");
+			for (Transition tran : parallelSearch.getTraceCex())
+				System.out.println(tran.getFullLabel());
+			if (Options.get_displayResults()) {
+				message.setErrorDialog("Error", failureReason);
+				this.notifyObservers(message);
+			}
+		}
+		if (Options.getOutputLogFlag()) 
+			writePerformanceResultsToLogFile(false, (int) parallelSearch.getTranFiringCnt(), totalStateCnt, peakTotalMem / 1000000, peakUsedMem / 1000000);
+		return prjStateSet;
+	}
+	
 //	private boolean failureCheck(LinkedList<Transition> curEnabled) {
 //		boolean failureTranIsEnabled = false;
 //		for (Transition tran : curEnabled) {
@@ -705,12 +757,16 @@ public class Analysis extends CoreObservable{
 	
 	/**
 	 * Generates the appropriate version of a HashSet<PrjState> for storing
-	 * the "already seen" set of project states.
+	 * the "already seen" set of project states. Untimed states are stored as
+	 * tuples of local state indices when the state format is collapse, tree or
+	 * bitstate, unless the global state graph is drawn, which needs the states.
+	 * @param numLpns
+	 * 		The number of local states in each project state.
 	 * @return
-	 * 		Returns a HashSet<PrjState>, a StateSet, or a ProbGlobalStateSet
-	 * 				depending on the type.
+	 * 		Returns a HashSet<PrjState>, a StateSet, a ProbGlobalStateSet or an
+	 * 				IndexTupleStateSet depending on the type.
 	 */
-	private static StateSetInterface generateStateSet(){
+	private static StateSetInterface generateStateSet(int numLpns){
 		
 		boolean timed = Options.getTimingAnalysisFlag();
 		boolean subsets = Zone.getSubsetFlag();
@@ -722,11 +778,26 @@ public class Analysis extends CoreObservable{
 		else if(timed && (subsets || supersets)){
 			return new TimedStateSet();
 		}
+		else if(!timed && !Options.getOutputSgFlag()){
+			String format = Options.getStateFormat();
+			if(format.equals("collapse")){
+				return new IndexTupleStateSet(new HashTable());
+			}
+			else if(format.equals("tree")){
+				return new IndexTupleStateSet(new TreeTable(numLpns));
+			}
+			else if(format.equals("bitstate")){
+				System.out.println("---> bitstate storage may miss states with probability "
+						+ Options.getBitstateFalsePositiveRate() + " per new state");
+				return new IndexTupleStateSet(new BitStateTable(Options.getBitstateStates(),
+						Options.getBitstateFalsePositiveRate()));
+			}
+		}
 		
 		return new HashSetWrapper();
 	}
 	
-	private static Transition failureTranIsEnabled(LinkedList<Transition> enabledTrans) {
+	static Transition failureTranIsEnabled(LinkedList<Transition> enabledTrans) {
 		Transition failure = null;
 		for (Transition tran : enabledTrans) {
 			if (tran.isFail()) {
@@ -1463,7 +1534,7 @@ public class Analysis extends CoreObservable{
 				
 		HashSet<PrjState> stateStack = new HashSet<PrjState>();
 		Stack<LinkedList<Transition>> lpnTranStack = new Stack<LinkedList<Transition>>();
-		StateSetInterface prjStateSet = generateStateSet();
+		StateSetInterface prjStateSet = generateStateSet(numLpns);
 		PrjState initPrjState;
 		// Create the appropriate type for the PrjState depending on whether timing is 
 		// being used or not. 
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.logicAnalysis;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+
+/**
+ * A set of PrjStates that several threads can search and add to at the same time.
+ * Lookups do not lock, and additions only lock the bin of the hash table they go to.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class ConcurrentStateSet implements StateSetInterface {
+
+	private final Set<PrjState> states;
+	
+	/**
+	 * @param concurrencyLevel
+	 * 			The number of threads expected to add states at the same time.
+	 */
+	public ConcurrentStateSet(int concurrencyLevel) {
+		states = Collections.newSetFromMap(new ConcurrentHashMap<PrjState, Boolean>(16, 0.75f, concurrencyLevel));
+	}
+
+	@Override
+	public boolean contains(PrjState state) {
+		return states.contains(state);
+	}
+
+	/**
+	 * Adds a state unless an equal state is already in the set. When several threads add
+	 * equal states at the same time, exactly one of them gets true.
+	 */
+	@Override
+	public boolean add(PrjState state) {
+		return states.add(state);
+	}
+
+	@Override
+	public int size() {
+		return states.size();
+	}
+
+	@Override
+	public Iterator<PrjState> iterator() {
+		return states.iterator();
+	}
+	
+	@Override
+	public String toString() {
+		return states.toString();
+	}
+}
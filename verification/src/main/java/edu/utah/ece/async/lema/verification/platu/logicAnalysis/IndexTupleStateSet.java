@@ -0,0 +1,74 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.logicAnalysis;
+
+import java.util.Iterator;
+
+import edu.utah.ece.async.lema.verification.platu.common.SetIntTuple;
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+import edu.utah.ece.async.lema.verification.platu.stategraph.State;
+
+/**
+ * Stores each PrjState as the tuple of the indices its local states have in their
+ * StateGraphs, in a compressed SetIntTuple table. The PrjState objects themselves are
+ * not kept, so the states cannot be listed again.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class IndexTupleStateSet implements StateSetInterface {
+
+	private final SetIntTuple table;
+	
+	public IndexTupleStateSet(SetIntTuple table) {
+		this.table = table;
+	}
+
+	@Override
+	public boolean contains(PrjState state) {
+		return table.contains(toIndexTuple(state));
+	}
+
+	@Override
+	public boolean add(PrjState state) {
+		return table.add(toIndexTuple(state)) == 1;
+	}
+
+	@Override
+	public int size() {
+		return table.size();
+	}
+
+	@Override
+	public Iterator<PrjState> iterator() {
+		throw new UnsupportedOperationException("States stored as index tuples cannot be listed.");
+	}
+	
+	@Override
+	public String toString() {
+		return table.stats();
+	}
+	
+	/**
+	 * The local states of a PrjState are cached in their StateGraphs, which gives each of
+	 * them a unique index.
+	 */
+	private static int[] toIndexTuple(PrjState state) {
+		State[] stateArray = state.toStateArray();
+		int[] tuple = new int[stateArray.length];
+		for (int i = 0; i < stateArray.length; i++)
+			tuple[i] = stateArray[i].getIndex();
+		return tuple;
+	}
+}
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ *  
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *  
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.platu.logicAnalysis;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.utah.ece.async.lema.verification.lpn.Transition;
+import edu.utah.ece.async.lema.verification.platu.main.Options;
+import edu.utah.ece.async.lema.verification.platu.platuLpn.LpnTranList;
+import edu.utah.ece.async.lema.verification.platu.project.PrjState;
+import edu.utah.ece.async.lema.verification.platu.stategraph.State;
+import edu.utah.ece.async.lema.verification.platu.stategraph.StateGraph;
+
+/**
+ * Explores the reachable untimed global states with a pool of work-stealing threads.
+ * Expanding a global state is one task. A worker runs the tasks it created most recently
+ * first, so each worker searches depth first, and an idle worker steals the oldest task of
+ * another worker, which tends to be the root of a large unexplored subtree.
+ * <p>
+ * The search checks for enabled failure transitions, disabling errors and deadlocks in the
+ * same way as Analysis.search_dfs, and stops all the workers at the first failure. Each
+ * global state records the state it was first reached from and the transition fired to
+ * reach it, which give the counterexample trace.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class ParallelSearch {
+	
+	/*
+	 * Seconds between two progress reports.
+	 */
+	private static final int PROGRESS_INTERVAL = 10;
+	
+	private final StateGraph[] sgList;
+	private final int numLpns;
+	private final int threads;
+	private final ConcurrentStateSet prjStateSet;
+	
+	/*
+	 * Number of expansion tasks that were created but have not finished yet.
+	 */
+	private final AtomicLong pending = new AtomicLong();
+	private final CountDownLatch done = new CountDownLatch(1);
+	private final AtomicBoolean stop = new AtomicBoolean(false);
+	private final AtomicReference<Failure> failure = new AtomicReference<Failure>();
+	private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+	private final LongAdder tranFiringCnt = new LongAdder();
+	
+	private long peakTotalMem = 0;
+	private long peakUsedMem = 0;
+	private LinkedList<Transition> traceCex = null;
+	
+	public ParallelSearch(final StateGraph[] sgList, int threads) {
+		this.sgList = sgList;
+		this.numLpns = sgList.length;
+		this.threads = threads;
+		this.prjStateSet = new ConcurrentStateSet(threads);
+	}
+	
+	/**
+	 * Explores every global state reachable from initPrjState, or stops at the first failure.
+	 * @param initPrjState
+	 * @return
+	 * 		The global states that were reached.
+	 */
+	public StateSetInterface search(final PrjState initPrjState) {
+		ReachedState initState = new ReachedState(initPrjState.toStateArray(), null, null);
+		prjStateSet.add(initState);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			pending.incrementAndGet();
+			pool.execute(new Expansion(initState));
+			int seconds = 0;
+			while (!done.await(1, TimeUnit.SECONDS)) {
+				recordMemory();
+				if (++seconds % PROGRESS_INTERVAL == 0) {
+					System.out.println("---> # LPN transition firings: " + tranFiringCnt.sum()
+							+ ", # of prjStates found: " + prjStateSet.size()
+							+ ", peak used memory: " + (float) peakUsedMem / 1000000
+							+ " free memory: "
+							+ (float) Runtime.getRuntime().freeMemory() / 1000000);
+				}
+			}
+		} catch (InterruptedException e) {
+			stop.set(true);
+			Thread.currentThread().interrupt();
+		} finally {
+			pool.shutdownNow();
+		}
+		recordMemory();
+		Throwable cause = error.get();
+		if (cause instanceof RuntimeException)
+			throw (RuntimeException) cause;
+		if (cause instanceof Error)
+			throw (Error) cause;
+		if (failure.get() != null) {
+			traceCex = buildTrace(failure.get());
+		}
+		return prjStateSet;
+	}
+	
+	/**
+	 * Expands one global state and queues the new global states it reaches.
+	 */
+	private void expand(final ReachedState curPrjState) {
+		State[] curStateArray = curPrjState.toStateArray();
+		List<LpnTranList> curEnabledArray = new ArrayList<LpnTranList>(numLpns);
+		for (int i = 0; i < numLpns; i++) {
+			LpnTranList curEnabled = StateGraph.getEnabledFromTranVector(curStateArray[i]);
+			Transition firedFailure = Analysis.failureTranIsEnabled(curEnabled);
+			if (firedFailure != null) {
+				fail(curPrjState, firedFailure, "Failure transition " + firedFailure.getLabel() + " is enabled.");
+				return;
+			}
+			curEnabledArray.add(curEnabled);
+		}
+		for (int i = 0; i < numLpns; i++) {
+			for (Transition firedTran : curEnabledArray.get(i)) {
+				if (stop.get())
+					return;
+				State[] nextStateArray = sgList[i].fire(sgList, curStateArray, firedTran);
+				tranFiringCnt.increment();
+				if (Options.getReportDisablingError()) {
+					for (int j = 0; j < numLpns; j++) {
+						Transition disabledTran = firedTran.disablingError(curEnabledArray.get(j),
+								StateGraph.getEnabledFromTranVector(nextStateArray[j]));
+						if (disabledTran != null) {
+							System.err.println("Disabling Error: "
+									+ disabledTran.getFullLabel() + " is disabled by "
+									+ firedTran.getFullLabel());
+							fail(curPrjState, firedTran, "Disabling error: " + disabledTran.getFullLabel()
+									+ " is disabled by " + firedTran.getFullLabel() + ".");
+							return;
+						}
+					}
+				}
+				ReachedState nextPrjState = new ReachedState(nextStateArray, curPrjState, firedTran);
+				if (!prjStateSet.add(nextPrjState))
+					continue;
+				if (Analysis.deadLock(sgList, nextStateArray)) {
+					fail(nextPrjState, null, "The system deadlocked.");
+					return;
+				}
+				pending.incrementAndGet();
+				new Expansion(nextPrjState).fork();
+			}
+		}
+	}
+	
+	/**
+	 * Records the first failure found and stops the other workers.
+	 */
+	private void fail(ReachedState prjState, Transition lastTran, String reason) {
+		if (failure.compareAndSet(null, new Failure(prjState, lastTran, reason)))
+			stop.set(true);
+	}
+	
+	/**
+	 * Follows the fathers of the failing state back to the initial state, collecting the
+	 * transitions that were fired to reach each of them.
+	 */
+	private static LinkedList<Transition> buildTrace(Failure fail) {
+		LinkedList<Transition> trace = new LinkedList<Transition>();
+		if (fail.lastTran != null)
+			trace.addFirst(fail.lastTran);
+		for (ReachedState state = fail.prjState; state.getFather() != null;
+				state = (ReachedState) state.getFather()) {
+			trace.addFirst(state.firedTran);
+		}
+		return trace;
+	}
+	
+	private void recordMemory() {
+		long curTotalMem = Runtime.getRuntime().totalMemory();
+		long curUsedMem = curTotalMem - Runtime.getRuntime().freeMemory();
+		if (curTotalMem > peakTotalMem)
+			peakTotalMem = curTotalMem;
+		if (curUsedMem > peakUsedMem)
+			peakUsedMem = curUsedMem;
+	}
+	
+	public long getTranFiringCnt() {
+		return tranFiringCnt.sum();
+	}
+	
+	public long getPeakTotalMem() {
+		return peakTotalMem;
+	}
+	
+	public long getPeakUsedMem() {
+		return peakUsedMem;
+	}
+	
+	/**
+	 * @return
+	 * 		Why the verification failed, or null if no failure was found.
+	 */
+	public String getFailureReason() {
+		Failure fail = failure.get();
+		return fail == null ? null : fail.reason;
+	}
+	
+	/**
+	 * @return
+	 * 		The transitions fired from the initial state to the failure, ending with the
+	 * 		enabled failure transition or the transition that caused a disabling error.
+	 * 		Null if no failure was found.
+	 */
+	public LinkedList<Transition> getTraceCex() {
+		return traceCex;
+	}
+	
+	/**
+	 * The task of expanding a single global state.
+	 */
+	private class Expansion extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final ReachedState prjState;
+		
+		Expansion(ReachedState prjState) {
+			this.prjState = prjState;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				if (!stop.get())
+					expand(prjState);
+			} catch (RuntimeException | Error e) {
+				error.compareAndSet(null, e);
+				stop.set(true);
+			} finally {
+				if (pending.decrementAndGet() == 0)
+					done.countDown();
+			}
+		}
+	}
+	
+	/**
+	 * A global state with the state it was first reached from and the transition fired
+	 * there. Only the initial state has neither.
+	 */
+	private static class ReachedState extends PrjState {
+		
+		private final Transition firedTran;
+		
+		ReachedState(State[] stateArray, ReachedState father, Transition firedTran) {
+			super(stateArray);
+			if (father != null && firedTran == null)
+				throw new IllegalArgumentException("A reached state needs the transition fired to reach it.");
+			setFather(father);
+			this.firedTran = firedTran;
+		}
+	}
+	
+	private static class Failure {
+		
+		private final ReachedState prjState;
+		private final Transition lastTran;
+		private final String reason;
+		
+		Failure(ReachedState prjState, Transition lastTran, String reason) {
+			this.prjState = prjState;
+			this.lastTran = lastTran;
+			this.reason = reason;
+		}
+	}
+}
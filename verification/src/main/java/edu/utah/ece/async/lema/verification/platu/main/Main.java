@@ -211,6 +211,26 @@ public class Main {
         value = prop.getProperty("STATE_FORMAT");
         if(value != null) Options.setStateFormat(value);
         
+        value = prop.getProperty("BITSTATE_STATES");
+        if(value != null){
+        	try{
+        		Options.setBitstateStates(Long.parseLong(value));
+        	}
+        	catch(NumberFormatException e){
+        		System.out.println("warning: BITSTATE_STATES option is not valid - default is " + Options.getBitstateStates());
+        	}
+        }
+        
+        value = prop.getProperty("BITSTATE_FALSE_POSITIVE_RATE");
+        if(value != null){
+        	try{
+        		Options.setBitstateFalsePositiveRate(Double.parseDouble(value));
+        	}
+        	catch(NumberFormatException e){
+        		System.out.println("warning: BITSTATE_FALSE_POSITIVE_RATE option is not valid - default is " + Options.getBitstateFalsePositiveRate());
+        	}
+        }
+        
         value = prop.getProperty("NEW_PARSER_FLAG");
         if(value != null) if(value.equals("true") || value.equals("TRUE")) Options.setNewParser();
         
@@ -219,6 +239,16 @@ public class Main {
         
         value = prop.getProperty("PARALLEL");
         if(value != null) if(value.equals("true") || value.equals("TRUE")) Options.setParallelFlag();
+        
+        value = prop.getProperty("PARALLEL_THREADS");
+        if(value != null){
+        	try{
+        		Options.setParallelThreads(Integer.parseInt(value));
+        	}
+        	catch(NumberFormatException e){
+        		System.out.println("warning: PARALLEL_THREADS option is not valid - default is the number of available processors");
+        	}
+        }
     }
 
 //    static Properties storeOptions(File propFile) throws Exception {
@@ -151,7 +151,8 @@ public class Options {
 	public static enum searchTypeDef { 
 		DFS, 			// DFS search on the entire state space
 		BFS, 			// BFS on the entire state space.
-		COMPOSITIONAL 	// using compositional search/reduction to build the reduce SG.
+		COMPOSITIONAL, 	// using compositional search/reduction to build the reduce SG.
+		PARALLEL		// work-stealing search on the entire state space with several threads.
 		}
 		
 	private static String searchType = "dfs";
@@ -167,15 +168,31 @@ public class Options {
 		AIG,			// AIG
 		BINARY_TREE,		// Binary tree
 		DECOMPOSED, 	// decompose a global state into a set of triples of global vectors and two local states sharing variables.
-		NATIVE_HASH			// hash table in C/C++
+		NATIVE_HASH,		// hash table in C/C++
+		COLLAPSE,		// hash table of local state index tuples
+		TREE,			// tree compressed local state index tuples
+		BITSTATE		// bitstate hashing of local state index tuples, may miss states
 	}
 	private static String stateFormat = "explicit";
 	
+	/*
+	 * Number of states the bitstate table is sized for, and the probability that a new
+	 * state is taken for a reached one once that many states are stored.
+	 */
+	private static long bitstateStates = 10000000;
+	
+	private static double bitstateFalsePositiveRate = 0.000001;
+	
 	/*
 	 * Use multi-threading when set to true.
 	 */
 	private static boolean parallelFlag = false;
 	
+	/*
+	 * Number of worker threads used by the parallel search.
+	 */
+	private static int parallelThreads = Runtime.getRuntime().availableProcessors();
+	
 	/*
 	 * Memory upper bound for a verification run. The unit is MB.
 	 */
@@ -384,6 +401,15 @@ public class Options {
     	else if (format.equals("mddbuf")){
     		stateFormat = format;
     	}
+    	else if (format.equals("collapse")){
+    		stateFormat = format;
+    	}
+    	else if (format.equals("tree")){
+    		stateFormat = format;
+    	}
+    	else if (format.equals("bitstate")){
+    		stateFormat = format;
+    	}
     	else{
     		System.out.println("warning: invalid STATE_FORMAT option - default is \"explicit\"");
     	}
@@ -393,6 +419,32 @@ public class Options {
 		return stateFormat;
 	}
 	
+	public static void setBitstateStates(long states){
+		if (states > 0){
+			bitstateStates = states;
+		}
+		else{
+			System.out.println("warning: invalid BITSTATE_STATES option - default is " + bitstateStates);
+		}
+	}
+	
+	public static long getBitstateStates(){
+		return bitstateStates;
+	}
+	
+	public static void setBitstateFalsePositiveRate(double rate){
+		if (rate > 0 && rate < 1){
+			bitstateFalsePositiveRate = rate;
+		}
+		else{
+			System.out.println("warning: invalid BITSTATE_FALSE_POSITIVE_RATE option - default is " + bitstateFalsePositiveRate);
+		}
+	}
+	
+	public static double getBitstateFalsePositiveRate(){
+		return bitstateFalsePositiveRate;
+	}
+	
 	public static void setParallelFlag(){
 		parallelFlag = true;
 	}
@@ -401,6 +453,19 @@ public class Options {
 		return parallelFlag;
 	}
 	
+	public static void setParallelThreads(int threads){
+		if (threads > 0){
+			parallelThreads = threads;
+		}
+		else{
+			System.out.println("warning: invalid PARALLEL_THREADS option - default is the number of available processors");
+		}
+	}
+	
+	public static int getParallelThreads(){
+		return parallelThreads;
+	}
+	
 	public static void setNewParser(){
 		newParser = true;
 	}
@@ -268,8 +268,14 @@ public class Project extends CoreObservable{
 		dfsStateExploration.addObservable(this);
 		if (!Options.getMarkovianModelFlag()) {
 			if (Options.getPOR().toLowerCase().equals("off")) {
-				// DFS state exploration without any state reduction.
-				dfsStateExploration.search_dfs(sgArray, initStateArray);
+				if (Options.getSearchType().toLowerCase().equals("parallel")) {
+					// Multi-threaded state exploration without any state reduction.
+					dfsStateExploration.search_parallel(sgArray, initStateArray);
+				}
+				else {
+					// DFS state exploration without any state reduction.
+					dfsStateExploration.search_dfs(sgArray, initStateArray);
+				}
 			}
 			if (Options.getPOR().toLowerCase().equals("tb")) {
 				dfsStateExploration.searchPOR_taceback(sgArray, initStateArray);
@@ -65,6 +65,10 @@ import java.util.Stack;
 public class StateGraph {
 
 	protected State init = null;
+    /*
+     * The state caches below are guarded by this StateGraph's lock, so that the worker threads
+     * of Analysis.search_parallel can fire transitions into the same StateGraph.
+     */
     protected IndexObjMap<State> stateCache;
     //protected IndexObjMap<State> localStateCache;
     protected HashMap<State, State> state2LocalMap;
@@ -434,7 +438,7 @@ public class StateGraph {
      * @param curState
      * @return
      */
-    public LpnTranList getEnabled(State curState) {
+    public synchronized LpnTranList getEnabled(State curState) {
     	if (curState == null) {
             throw new NullPointerException();
         }
@@ -532,7 +536,7 @@ public class StateGraph {
 		return true;
     }
     
-	public int reachSize() {
+	public synchronized int reachSize() {
     	if(this.stateCache == null){
     		return this.stateSet.size();
     	}
@@ -563,7 +567,7 @@ public class StateGraph {
      * @param mState
      * @return State
      */
-    public State addState(State mState) {
+    public synchronized State addState(State mState) {
     	State cachedState = this.stateCache.add(mState);
     	State lState = this.state2LocalMap.get(cachedState);
     	if(lState == null) {
@@ -577,15 +581,15 @@ public class StateGraph {
     /*
      * Get the local portion of mState from the cache..
      */
-    public State getLocalState(State mState) {
+    public synchronized State getLocalState(State mState) {
     	return this.state2LocalMap.get(mState);
     }
 
-    public State getState(int stateIdx) {
+    public synchronized State getState(int stateIdx) {
     	return this.stateCache.get(stateIdx);
     }
     
-    public void addStateTran(State curSt, Transition firedTran, State nextSt) {
+    public synchronized void addStateTran(State curSt, Transition firedTran, State nextSt) {
     	HashMap<Transition, State> nextMap = this.nextStateMap.get(curSt);
     	if(nextMap == null)  {
     		nextMap = new HashMap<Transition,State>();
@@ -599,7 +603,7 @@ public class StateGraph {
 //    		printNextStateForGivenState(curSt, "StateGraph.java -> addStateTran(State, Transition, State)");    	
     }
     
-    public State getNextState(State curSt, Transition firedTran) {
+    public synchronized State getNextState(State curSt, Transition firedTran) {
     	HashMap<Transition, State> nextMap = this.nextStateMap.get(curSt);
     	if(nextMap == null)
     		return null;   	
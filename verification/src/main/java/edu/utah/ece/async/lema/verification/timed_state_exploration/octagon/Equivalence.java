@@ -67,6 +67,18 @@ public interface Equivalence {
 
 	public boolean superset(Equivalence equivalence);
 
+	/**
+	 * Gives a hash code for the timers and continuous variables that index the
+	 * DBM. Two Equivalences can only be subsets of one another when these codes agree.
+	 */
+	public int getDbmVariablesHashCode();
+
+	/**
+	 * Gives the sum of the entries of the matrix, including the bounds. If this
+	 * Equivalence is a subset of another, then its sum is no larger than the other's.
+	 */
+	public long getMatrixSum();
+
 	public Collection<? extends Transition> getPossibleEvents(int lpnIndex,
 			State state);
 
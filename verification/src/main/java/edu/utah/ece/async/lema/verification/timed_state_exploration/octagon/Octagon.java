@@ -1498,6 +1498,32 @@ public class Octagon implements Equivalence {
 		return true;
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utah.ece.async.lema.verification.timed_state_exploration.octagon.Equivalence#getDbmVariablesHashCode()
+	 */
+	@Override
+	public int getDbmVariablesHashCode(){
+		return Arrays.hashCode(_dbmVarList);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utah.ece.async.lema.verification.timed_state_exploration.octagon.Equivalence#getMatrixSum()
+	 */
+	@Override
+	public long getMatrixSum(){
+		long sum = 0;
+		
+		for(int i=0; i<_matrix.length; i++){
+			for(int j=0; j<_matrix[i].length; j++){
+				sum += _matrix[i][j];
+			}
+		}
+		
+		return sum;
+	}
+	
 	/**
 	 * Determines if this Octagon is a superset of Octagon otherOctagon.
 	 * @param otherOctagon
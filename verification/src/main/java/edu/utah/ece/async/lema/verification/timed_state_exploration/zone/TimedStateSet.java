@@ -49,8 +49,9 @@ public class TimedStateSet extends HashSet<PrjState> implements StateSetInterfac
 	 * 		to be able to take the un-timed portion of a TimedPrjState (which can be thought
 	 * 		of as a PrjState) use it as a key and have return all TimedPrjStates in the
 	 * 		StateSet that share the same un-timed portion. Thus the key value pair
-	 * 		(k, v) of the HashMap should be such that v is a list containing only 
-	 * 		TimedPrjStates that have the same un-timed portion k.
+	 * 		(k, v) of the HashMap should be such that v is a ZoneInclusionIndex containing
+	 * 		only TimedPrjStates that have the same un-timed portion k. The index narrows
+	 * 		the subset and superset checks to the states whose zones can be related.
 	 */
 	
 	/*
@@ -64,7 +65,7 @@ public class TimedStateSet extends HashSet<PrjState> implements StateSetInterfac
 	 * 		In the set mode, operations should be simply passed to the _singletonList
 	 * 		thereby ensuring that the StateSet acts identical to a HashSet in this mode.
 	 * 
-	 * 		Given a key value pair (k, v) stored in the _setList, the LinkedList v should
+	 * 		Given a key value pair (k, v) stored in the _setList, the index v should
 	 * 		only contain TimedPrjStates that have an un-timed portion equal to k. Specifically,
 	 * 		s.getUntimedPrjState.equals(k) should return true for each TimedState in v.
 	 */
@@ -74,7 +75,7 @@ public class TimedStateSet extends HashSet<PrjState> implements StateSetInterfac
 	 */
 	private static final long serialVersionUID = 1L;
 	protected HashSet<PrjState> _singletonList;
-	protected HashMap<PrjState, LinkedList<TimedPrjState>> _setList;
+	protected HashMap<PrjState, ZoneInclusionIndex> _setList;
 	
 	// Caches whether subsets, supersets, and timing is being used.
 	private boolean timed, subsets, supersets;
@@ -97,7 +98,7 @@ public class TimedStateSet extends HashSet<PrjState> implements StateSetInterfac
 		supersets = Zone.getSupersetFlag();
 		
 		if(timed && (subsets || supersets)){
-			_setList = new HashMap<PrjState, LinkedList<TimedPrjState>>();
+			_setList = new HashMap<PrjState, ZoneInclusionIndex>();
 		}
 		else{
 			_singletonList = new HashSet<PrjState>();
@@ -138,8 +139,8 @@ public class TimedStateSet extends HashSet<PrjState> implements StateSetInterfac
 		}
 		int result = 0;
 		
-		for(LinkedList<TimedPrjState> l : _setList.values()){
-			result += l.size();
+		for(ZoneInclusionIndex index : _setList.values()){
+			result += index.size();
 		}
 		
 		return result;
@@ -170,90 +171,60 @@ public class TimedStateSet extends HashSet<PrjState> implements StateSetInterfac
 			
 			PrjState untimedState = ts.getUntimedPrjState();
 			
-			LinkedList<TimedPrjState> list = _setList.get(untimedState);
+			ZoneInclusionIndex index = _setList.get(untimedState);
 			
-			if(list == null){
+			if(index == null){
 				
-				// No list is associated with this set of un-timed (local) states.
-				// So create a new list with this PrjState.
-				LinkedList<TimedPrjState> newList = new LinkedList<TimedPrjState>();
-				newList.add(ts);
-				_setList.put(untimedState, newList);
-				
-				// The list changed, so return true;
-				return true;
+				// No index is associated with this set of un-timed (local) states.
+				// So create a new index for this PrjState.
+				index = new ZoneInclusionIndex();
+				_setList.put(untimedState, index);
 			}
 			
-//			if(list.contains(ts)){
-//				// The set already contains the timed project state. So nothing changes.
-//				return false;
-//			}
+			// If subsets are selected and the state is a subset of a stored state, then
+			// there is no need to add the state. If supersets are selected, the stored
+			// states that are subsets of the new state are removed.
+			LinkedList<TimedPrjState> removed = null;
 			
-			// Get an iterator from the list to allow removal of elements as the list is 
-			// traversed.
-			Iterator<TimedPrjState> iterate = list.iterator();
+			if(supersets && Options.getOutputSgFlag()){
+				removed = new LinkedList<TimedPrjState>();
+			}
 			
-			while(iterate.hasNext()){
-				TimedPrjState listState = iterate.next();
-
-				// If subsets are selected and the state is a subset, then no need to add the
-				// state. Return false.
-				if(subsets && ts.subset(listState)){
-					return false;
-				}
-
-				if(ts.equals(listState)){
-					return false;
-				}
-
-				// If supersets are selected, items that are subsets of the new state may be
-				// removed.
-				if(supersets){
+			if(!index.add(ts, subsets, supersets, removed)){
+				return false;
+			}
+			
+			if(removed != null){
+				for(TimedPrjState listState : removed){
+					// Need to move the transitions form the old state and put it on
+					// the new state.
 					
-					// We may remove any state that the current state is a superset of.
-					// If this state is not present, then it will eventually make it
-					// to the add.
-					if(ts.superset(listState)){
-						
-						if(Options.getOutputSgFlag()){
-							// Need to move the transitions form the old state and put it on
-							// the new state.
-							
-							// Update the transitions from the old state.
-							HashMap<Transition, PrjState> nextStates = listState.getNextGlobalStateMap();
-							
-							// Add these transitions to the new state.
-							for(Entry<Transition, PrjState> e : nextStates.entrySet()){
-								ts.addNextGlobalState(e.getKey(), e.getValue());
-							}
-							
-							// Update the previous states.
-							HashMap<EventSet, HashSet<TimedPrjState>> previousStates =
-									listState.get_previousProjectState();
-							
-							// Each state in the HashSet<TimedPrjState>, need to replace the previous
-							// reference to the old state with the new state.
-							for(EventSet es: previousStates.keySet()){
-								for (TimedPrjState tps : previousStates.get(es)){
-									// Add this previous state to the list of the new state.
-									ts.addPreviousState(es, tps);
-									
-									// Replace the edge to the old state with the new state.
-									tps.getNextGlobalStateMap().put(es, ts);
-								}
-							}
+					// Update the transitions from the old state.
+					HashMap<Transition, PrjState> nextStates = listState.getNextGlobalStateMap();
+					
+					// Add these transitions to the new state.
+					for(Entry<Transition, PrjState> e : nextStates.entrySet()){
+						ts.addNextGlobalState(e.getKey(), e.getValue());
+					}
+					
+					// Update the previous states.
+					HashMap<EventSet, HashSet<TimedPrjState>> previousStates =
+							listState.get_previousProjectState();
+					
+					// Each state in the HashSet<TimedPrjState>, need to replace the previous
+					// reference to the old state with the new state.
+					for(EventSet es: previousStates.keySet()){
+						for (TimedPrjState tps : previousStates.get(es)){
+							// Add this previous state to the list of the new state.
+							ts.addPreviousState(es, tps);
 							
+							// Replace the edge to the old state with the new state.
+							tps.getNextGlobalStateMap().put(es, ts);
 						}
-						
-						iterate.remove();
 					}
 				}
 			}
 			
-			// The set does not already contain the timed project state. So add it.
-			list.add(ts);
-			
-			
 			return true;
 		}
 		
@@ -351,58 +322,20 @@ public class TimedStateSet extends HashSet<PrjState> implements StateSetInterfac
 			// Get the un-timed portion for the cache.
 			PrjState untimedState = ts.getUntimedPrjState();
 
-			// Get the list keyed to this set of (local) un-timed states.
-			LinkedList<TimedPrjState> list = _setList.get(untimedState);
+			// Get the index keyed to this set of (local) un-timed states.
+			ZoneInclusionIndex index = _setList.get(untimedState);
 
-			if(list == null){
+			if(index == null){
 
-				// No list is associated with this set of un-timed (local) states.
+				// No index is associated with this set of un-timed (local) states.
 				// So the timed state cannot be in the set.
 
 				return false;
 			}
 
-			// Get an iterator from the list to allow removal of elements as the list is 
-			// traversed.
-			Iterator<TimedPrjState> iterate = list.iterator();
-
-			boolean result = false;
-
-			while(iterate.hasNext()){
-				TimedPrjState listState = iterate.next();
-
-				// If subsets are selected, then iteration can be exited as soon as a subset is found.
-				if(subsets && ts.subset(listState)){
-					return true;
-				}
-				
-				if(ts.equals(listState)){
-					return true;
-				}
-
-				// If supersets are selected, items that are subsets of the new state may be
-				// removed.
-//				if(supersets){
-//					if(!subsets && ts.equals(listState)){
-//						// When an equal state is found, the return value must be true and the
-//						// state should not be removed. When not doing subsets, the superset check
-//						// cannot end here (since other sets that are supersets may exist further in the
-//						// list). If control has passed here, it can be deduced that subsets has not
-//						// been selected even without the subset flag since the 
-//						// if(subsets && s.subset(listState) would have already been taken.
-//						// The subset flag is added here to allow a quick out of the extra equality check.
-//						result |= true;
-//					}
-//					else if(ts.superset(listState)){
-//						// The new state (s) is a strict superset of an existing state.
-//						// Remove the existing state.
-//						iterate.remove();
-//					}
-//				}
-
-			}
-
-			return result;
+			// If subsets are selected, a state is contained when it is a subset of a stored
+			// state. Otherwise it must equal a stored state.
+			return index.contains(ts, subsets);
 		}
 		
 		throw new IllegalStateException("Contains was called and StateSet was not initialized.");
@@ -498,8 +431,10 @@ public class TimedStateSet extends HashSet<PrjState> implements StateSetInterfac
 		}
 		HashSet<PrjState> result = new HashSet<PrjState>();
 		//throw new IllegalStateException("Array initialized in subset/superset mode.");
-		for(LinkedList<TimedPrjState> list : _setList.values()){
-			result.addAll(list);
+		for(ZoneInclusionIndex index : _setList.values()){
+			for(TimedPrjState ts : index){
+				result.add(ts);
+			}
 		}
 		return result;
 	}
@@ -534,7 +469,7 @@ public class TimedStateSet extends HashSet<PrjState> implements StateSetInterfac
 	@Override
 	public Iterator<PrjState> iterator(){
 		Iterator<PrjState> hashIterator = null;
-		Iterator<LinkedList<TimedPrjState>> listIterator = null;
+		Iterator<ZoneInclusionIndex> listIterator = null;
 		
 		if(_singletonList != null){
 			hashIterator = _singletonList.iterator();
@@ -560,34 +495,34 @@ public class TimedStateSet extends HashSet<PrjState> implements StateSetInterfac
 		 * 		A StateSetIterator is the implementation for the Iterator<PrjState>
 		 * 		required by StateSet being iterable. The StateSet has two modes,
 		 * 		one where a HashSet<PrjState> is used and one where a
-		 * 		HashMap<PrjState, LinkedList<TimedPrjState>> is used. Correspondingly,
+		 * 		HashMap<PrjState, ZoneInclusionIndex> is used. Correspondingly,
 		 * 		This iterator has two modes. One that is meant iterate through the 
 		 * 		HashSet and the other that is meant to iterate through the HashMap.
 		 * 		The member variable _hashIterator is simply the HashSet's own iterator.
 		 * 		The member variables _hashListIterator and _listIterator together
-		 * 		iterate through all the TimedPrjStates that are stored in the LinkedLists
-		 * 		of a HashMap<PrjState, <LinkedList<TimedPrjState>>. The _hashListIterator
-		 * 		iterator goes through each of the LinkedList and the _listIterator goes
-		 * 		through a single list. Thus the idea is to get the first LinkedList,
-		 * 		traverse its elements, get the second LinkedList, traverse its elements
-		 * 		and so on until all elements of the LinkedLists have been traversed.
+		 * 		iterate through all the TimedPrjStates that are stored in the indices
+		 * 		of a HashMap<PrjState, ZoneInclusionIndex>. The _hashListIterator
+		 * 		iterator goes through each of the indices and the _listIterator goes
+		 * 		through a single index. Thus the idea is to get the first index,
+		 * 		traverse its elements, get the second index, traverse its elements
+		 * 		and so on until all elements of the indices have been traversed.
 		 */
 		
 		
 		/*
 		 * Representation Invariant : Only one of _hashIterator or _hashListIterator
 		 * 		should be non-null at one time. The iterator should be iterating through
-		 * 		one mode at a time, either the HashSet mode or the LinkedList mode.
+		 * 		one mode at a time, either the HashSet mode or the index mode.
 		 * 
 		 * 		If _hashListIterator is not null, then _listIterator should either 
-		 * 		be the iterator for the last LinkedList returned by _hashListIterator
+		 * 		be the iterator for the last index returned by _hashListIterator
 		 * 		or an iterator that has not exhausted all its elements. The idea is
 		 * 		the _listIterator should be able to give the next element that is to
 		 * 		be return if there are still elements that can be returned.
 		 */
 		
 		Iterator<PrjState> _hashIterator;
-		Iterator<LinkedList<TimedPrjState>> _hashListIterator;
+		Iterator<ZoneInclusionIndex> _hashListIterator;
 		Iterator<TimedPrjState> _listIterator;
 		
 		/**
@@ -597,10 +532,10 @@ public class TimedStateSet extends HashSet<PrjState> implements StateSetInterfac
 		 * @param hashIterator
 		 * 			Iterator for a HashSet<PrjState.
 		 * @param listIterator
-		 * 			Iterator for a HashMap<PrjState, LinkedList<TimedPrjState>>.
+		 * 			Iterator for a HashMap<PrjState, ZoneInclusionIndex>.
 		 */
 		private StateSetIterator(Iterator<PrjState> hashIterator,
-				Iterator<LinkedList<TimedPrjState>> listIterator){
+				Iterator<ZoneInclusionIndex> listIterator){
 			
 			// This method initializes the iterator for the StateSet. It initializes
 			// the iterator member variables. The member variables that are initialized
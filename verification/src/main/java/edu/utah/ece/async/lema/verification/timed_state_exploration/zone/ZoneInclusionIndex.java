@@ -0,0 +1,319 @@
+/*******************************************************************************
+ *
+ * This file is part of iBioSim. Please visit <http://www.async.ece.utah.edu/ibiosim>
+ * for the latest version of iBioSim.
+ *
+ * Copyright (C) 2017 University of Utah
+ *
+ * This library is free software; you can redistribute it and/or modify it
+ * under the terms of the Apache License. A copy of the license agreement is provided
+ * in the file named "LICENSE.txt" included with this software distribution
+ * and also available online at <http://www.async.ece.utah.edu/ibiosim/License>.
+ *
+ *******************************************************************************/
+package edu.utah.ece.async.lema.verification.timed_state_exploration.zone;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.utah.ece.async.lema.verification.timed_state_exploration.octagon.Equivalence;
+import edu.utah.ece.async.lema.verification.timed_state_exploration.zoneProject.TimedPrjState;
+
+/**
+ * Stores the TimedPrjStates that share the same un-timed portion so that states whose
+ * zones are subsets or supersets of a given state's zones can be found without comparing
+ * against every stored zone.
+ *
+ * @author <a href="http://www.async.ece.utah.edu/ibiosim#Credits"> iBioSim Contributors </a>
+ * @version %I%
+ */
+public class ZoneInclusionIndex implements Iterable<TimedPrjState> {
+
+	/*
+	 * Abstraction Function: The states are grouped by the timers and continuous
+	 * 		variables of their zones. Zones over different variables are never subsets
+	 * 		of one another, so only the group of a state needs to be searched. Each
+	 * 		state is stored along with the sum of the entries of its zones. If the
+	 * 		zones of one state are subsets of the zones of another, then the sum for
+	 * 		the first state is no larger than the sum for the second. Keeping a group
+	 * 		sorted by these sums means that the states that may contain a state all
+	 * 		come after it and the states it may contain all come before it.
+	 */
+
+	/*
+	 * Representation Invariant: Each list in _groups is non-empty and sorted by
+	 * 		non-decreasing _sum. Every entry in a list has the key of that list.
+	 * 		_size is the total number of entries in all the lists.
+	 */
+
+	private HashMap<Integer, ArrayList<Entry>> _groups;
+	private int _size;
+
+	/**
+	 * Creates an empty index.
+	 */
+	public ZoneInclusionIndex(){
+		_groups = new HashMap<Integer, ArrayList<Entry>>();
+		_size = 0;
+	}
+
+	/**
+	 * Gives the number of states in the index.
+	 * @return
+	 * 		The number of TimedPrjStates stored.
+	 */
+	public int size(){
+		return _size;
+	}
+
+	/**
+	 * Determines whether the index contains a state.
+	 * @param ts
+	 * 		The state to look for.
+	 * @param subsets
+	 * 		True if a stored state whose zones are supersets of the zones of ts
+	 * 		contains ts, false if only an equal state does.
+	 * @return
+	 * 		True if ts is contained in the index, false otherwise.
+	 */
+	public boolean contains(TimedPrjState ts, boolean subsets){
+		ArrayList<Entry> group = _groups.get(getKey(ts));
+
+		if(group == null){
+			return false;
+		}
+
+		return contains(group, ts, getSum(ts), subsets);
+	}
+
+	/**
+	 * Adds a state to the index unless the index already contains it.
+	 * @param ts
+	 * 		The state to add.
+	 * @param subsets
+	 * 		True if a stored state whose zones are supersets of the zones of ts
+	 * 		already contains ts, false if only an equal state does.
+	 * @param supersets
+	 * 		True if the stored states whose zones are subsets of the zones of ts
+	 * 		should be removed when ts is added.
+	 * @param removed
+	 * 		Collects the states that are removed in favor of ts. May be null.
+	 * @return
+	 * 		True if ts was added, false if it was already contained.
+	 */
+	public boolean add(TimedPrjState ts, boolean subsets, boolean supersets,
+			Collection<TimedPrjState> removed){
+
+		int key = getKey(ts);
+		long sum = getSum(ts);
+
+		ArrayList<Entry> group = _groups.get(key);
+
+		if(group == null){
+			group = new ArrayList<Entry>();
+			_groups.put(key, group);
+		}
+		else if(contains(group, ts, sum, subsets)){
+			return false;
+		}
+
+		int end = firstAbove(group, sum);
+
+		if(supersets){
+			end = removeContained(group, ts, end, removed);
+		}
+
+		group.add(end, new Entry(ts, sum));
+		_size++;
+
+		return true;
+	}
+
+	/**
+	 * Searches a group for a state that contains ts. Only the states with a sum at
+	 * least as large as the sum for ts can contain it.
+	 */
+	private static boolean contains(ArrayList<Entry> group, TimedPrjState ts, long sum,
+			boolean subsets){
+
+		for(int i=firstAtLeast(group, sum); i<group.size(); i++){
+			Entry e = group.get(i);
+
+			if(subsets){
+				if(ts.subsetZone(e._state)){
+					return true;
+				}
+			}
+			else if(e._sum != sum){
+				// Equal zones have equal sums.
+				return false;
+			}
+			else if(ts.equals(e._state)){
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Removes the states among the first end entries of a group whose zones are
+	 * subsets of the zones of ts. The remaining entries are moved down in a single
+	 * pass.
+	 * @return
+	 * 		The number of entries left before position end.
+	 */
+	private int removeContained(ArrayList<Entry> group, TimedPrjState ts, int end,
+			Collection<TimedPrjState> removed){
+
+		int kept = 0;
+
+		for(int i=0; i<end; i++){
+			Entry e = group.get(i);
+
+			if(ts.supersetZone(e._state)){
+				if(removed != null){
+					removed.add(e._state);
+				}
+				continue;
+			}
+
+			group.set(kept++, e);
+		}
+
+		if(kept == end){
+			return end;
+		}
+
+		for(int i=end; i<group.size(); i++){
+			group.set(kept + i - end, group.get(i));
+		}
+
+		int count = end - kept;
+		group.subList(group.size() - count, group.size()).clear();
+		_size -= count;
+
+		return kept;
+	}
+
+	/**
+	 * Finds the position of the first entry with a sum no smaller than sum.
+	 */
+	private static int firstAtLeast(ArrayList<Entry> group, long sum){
+		int low = 0;
+		int high = group.size();
+
+		while(low < high){
+			int mid = (low + high) >>> 1;
+
+			if(group.get(mid)._sum < sum){
+				low = mid + 1;
+			}
+			else{
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Finds the position of the first entry with a sum larger than sum.
+	 */
+	private static int firstAbove(ArrayList<Entry> group, long sum){
+		int low = 0;
+		int high = group.size();
+
+		while(low < high){
+			int mid = (low + high) >>> 1;
+
+			if(group.get(mid)._sum <= sum){
+				low = mid + 1;
+			}
+			else{
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Combines the variable hash codes of the zones of a state.
+	 */
+	private static int getKey(TimedPrjState ts){
+		int key = 1;
+
+		for(Equivalence z : ts.get_zones()){
+			key = 31*key + z.getDbmVariablesHashCode();
+		}
+
+		return key;
+	}
+
+	/**
+	 * Adds up the matrix sums of the zones of a state.
+	 */
+	private static long getSum(TimedPrjState ts){
+		long sum = 0;
+
+		for(Equivalence z : ts.get_zones()){
+			sum += z.getMatrixSum();
+		}
+
+		return sum;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<TimedPrjState> iterator(){
+
+		final Iterator<ArrayList<Entry>> groupIterator = _groups.values().iterator();
+
+		return new Iterator<TimedPrjState>(){
+
+			private ArrayList<Entry> _group;
+			private int _index;
+
+			@Override
+			public boolean hasNext(){
+				while(_group == null || _index >= _group.size()){
+					if(!groupIterator.hasNext()){
+						return false;
+					}
+					_group = groupIterator.next();
+					_index = 0;
+				}
+				return true;
+			}
+
+			@Override
+			public TimedPrjState next(){
+				if(!hasNext()){
+					throw new NoSuchElementException();
+				}
+				return _group.get(_index++)._state;
+			}
+		};
+	}
+
+	/**
+	 * A stored state along with the sum of the entries of its zones.
+	 */
+	private static class Entry {
+
+		private final TimedPrjState _state;
+		private final long _sum;
+
+		private Entry(TimedPrjState state, long sum){
+			_state = state;
+			_sum = sum;
+		}
+	}
+}
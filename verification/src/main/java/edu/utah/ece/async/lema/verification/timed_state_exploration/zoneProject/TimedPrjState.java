@@ -310,13 +310,13 @@ public class TimedPrjState extends PrjState{
 	 * 		False otherwise.
 	 */
 	public boolean subsetZone(TimedPrjState other){
-		boolean result = true;
-		
 		for(int i=0; i<this._zones.length; i++){
-			result &= _zones[i].subset(other._zones[i]);
+			if(!_zones[i].subset(other._zones[i])){
+				return false;
+			}
 		}
 		
-		return result;
+		return true;
 	}
 	
 	/**
@@ -331,13 +331,13 @@ public class TimedPrjState extends PrjState{
 	 * 		False otherwise.
 	 */
 	public boolean supersetZone(TimedPrjState other){
-		boolean result = true;
-		
 		for(int i=0; i<this._zones.length; i++){
-			result &= _zones[i].superset(other._zones[i]);
+			if(!_zones[i].superset(other._zones[i])){
+				return false;
+			}
 		}
 		
-		return result;
+		return true;
 	}
 	
 	/**
@@ -94,6 +94,8 @@ public class Zone implements Equivalence{
 	* bounds are stored in the first row and first column of the _matrix member field.
 	* The DBM occupies the rest of the array, that is, the sub-array formed by removing
 	* the first column and first row.
+	* The rows of the matrix are stored one after the other in a single int array, so
+	* the (i, j) entry is found at i*matrixSize() + j.
 	* For example, let t1 be a timer for a transition whose delay is between 2 and 3. Further
 	* let c1 be a continuous variable with rate between 4 and 5. Then _matrix would look like
 	*    lb t0 c1 t1
@@ -158,7 +160,7 @@ public class Zone implements Equivalence{
 	public static final int INFINITY = Integer.MAX_VALUE;
 	
 	/* The lower and upper bounds of the times as well as the dbm. */
-	private int[][] _matrix;
+	private int[] _matrix;
 	
 	/* Maps the index to the timer. The index is row/column of the DBM sub-matrix.
 	 * Logically the zero timer is given index -1.
@@ -390,7 +392,7 @@ public class Zone implements Equivalence{
 		newIndex.put(0, 0);
 		
 		// Initialize the matrix.
-		_matrix = new int[matrixSize()][matrixSize()];
+		_matrix = new int[matrixSize()*matrixSize()];
 
 		// Copy the DBM
 		for(int i=0; i<dbmSize(); i++)
@@ -482,7 +484,7 @@ public class Zone implements Equivalence{
 		
 		_indexToTimerPair = enabledTransitionsArrayList.toArray(new LPNTransitionPair[0]);
 		
-		_matrix = new int[matrixSize()][matrixSize()];
+		_matrix = new int[matrixSize()*matrixSize()];
 		
 		for(int i=1; i<dbmSize(); i++)
 		{
@@ -556,7 +558,7 @@ public class Zone implements Equivalence{
 		initialize_indexToTimerPair(localStates);
 		
 		// Initialize the matrix.
-		_matrix = new int[matrixSize()][matrixSize()];
+		_matrix = new int[matrixSize()*matrixSize()];
 		
 		// Set the lower bound/ upper bounds of the timers and the rates.
 		initializeLowerUpperBounds(getAllNames(), localStates);
@@ -604,7 +606,7 @@ public class Zone implements Equivalence{
 		initialize_indexToTimerPair(localStates);
 		
 		// Initialize the matrix.
-		_matrix = new int[matrixSize()][matrixSize()];
+		_matrix = new int[matrixSize()*matrixSize()];
 		
 		// Set the lower bound/ upper bounds of the timers and the rates.
 		initializeLowerUpperBounds(getAllNames(), localStates);
@@ -1146,7 +1148,7 @@ public class Zone implements Equivalence{
 	 */
 	private Zone()
 	{
-		_matrix = new int[0][0];
+		_matrix = new int[0];
 		_indexToTimerPair = new LPNTransitionPair[0];
 		_hashCode = -1;
 		_lpnList = new LPN[0];
@@ -1284,18 +1286,18 @@ public class Zone implements Equivalence{
 	 */
 	public int getUpperBoundbydbmIndex(int index)
 	{
-		return _matrix[0][dbmIndexToMatrixIndex(index)];
+		return _matrix[matrixIndex(0, dbmIndexToMatrixIndex(index))];
 	}
 	
 	
 	public int getUpperBound(int index){
-		return _matrix[0][dbmIndexToMatrixIndex(index)];
+		return _matrix[matrixIndex(0, dbmIndexToMatrixIndex(index))];
 	}
 	
 	@Override
 	public int getUpperBoundTrue(int index){
-		return _matrix[dbmIndexToMatrixIndex(0)]
-				[dbmIndexToMatrixIndex(index)];
+		return _matrix[matrixIndex(dbmIndexToMatrixIndex(0),
+				dbmIndexToMatrixIndex(index))];
 	}
 	
 	public int getUnwarpedUpperBound(LPNContinuousPair lcpair){
@@ -1311,13 +1313,13 @@ public class Zone implements Equivalence{
 	}
 	
 	public int getLowerBound(int index){
-		return _matrix[dbmIndexToMatrixIndex(index)][0];
+		return _matrix[matrixIndex(dbmIndexToMatrixIndex(index), 0)];
 	}
 	
 	@Override
 	public int getLowerBoundTrue(int index){
-		return _matrix[dbmIndexToMatrixIndex(index)]
-				[dbmIndexToMatrixIndex(0)];
+		return _matrix[matrixIndex(dbmIndexToMatrixIndex(index),
+				dbmIndexToMatrixIndex(0))];
 	}
 	
 	/**
@@ -1350,7 +1352,7 @@ public class Zone implements Equivalence{
 	 */
 	public void setUpperBoundbydbmIndex(int index, int value)
 	{
-		_matrix[0][dbmIndexToMatrixIndex(index)] = value;
+		_matrix[matrixIndex(0, dbmIndexToMatrixIndex(index))] = value;
 	}
 	
 	/**
@@ -1447,7 +1449,7 @@ public class Zone implements Equivalence{
 	 */
 	public int getLowerBoundbydbmIndex(int index)
 	{
-		return _matrix[dbmIndexToMatrixIndex(index)][0];
+		return _matrix[matrixIndex(dbmIndexToMatrixIndex(index), 0)];
 	}
 	
 	public int getLowerBoundForRate(LPNTransitionPair contVar){
@@ -1512,7 +1514,7 @@ public class Zone implements Equivalence{
 	 */
 	public void setLowerBoundbydbmIndex(int index, int value)
 	{
-		_matrix[dbmIndexToMatrixIndex(index)][0] = -1*value;
+		_matrix[matrixIndex(dbmIndexToMatrixIndex(index), 0)] = -1*value;
 	}
 	
 	/**
@@ -1833,6 +1835,21 @@ public class Zone implements Equivalence{
 		return i+1;
 	}
 	
+	/**
+	 * Gives the position of an entry of _matrix. The matrix is stored row by
+	 * row in a single array.
+	 * @param row
+	 * 			The row of _matrix.
+	 * @param column
+	 * 			The column of _matrix.
+	 * @return
+	 * 			The index of the (row, column) entry in the _matrix array.
+	 */
+	private int matrixIndex(int row, int column)
+	{
+		return row*matrixSize() + column;
+	}
+	
 	/**
 	 * Retrieves an entry of the DBM using the DBM's addressing.
 	 * @param i
@@ -1845,7 +1862,7 @@ public class Zone implements Equivalence{
 	@Override
 	public int getDbmEntry(int i, int j)
 	{
-		return _matrix[dbmIndexToMatrixIndex(i)][dbmIndexToMatrixIndex(j)];
+		return _matrix[matrixIndex(dbmIndexToMatrixIndex(i), dbmIndexToMatrixIndex(j))];
 	}
 	
 	/**
@@ -1876,7 +1893,7 @@ public class Zone implements Equivalence{
 	 */
 	private void setDbmEntry(int i, int j, int value)
 	{
-		_matrix[dbmIndexToMatrixIndex(i)][dbmIndexToMatrixIndex(j)] = value;
+		_matrix[matrixIndex(dbmIndexToMatrixIndex(i), dbmIndexToMatrixIndex(j))] = value;
 	}
 	
 	/**
@@ -2084,15 +2101,9 @@ public class Zone implements Equivalence{
 		}
 		
 		// Check if the matrix is the same 
-		for(int i=0; i<_matrix.length; i++)
+		if(!Arrays.equals(this._matrix, otherZone._matrix))
 		{
-			for(int j=0; j<_matrix[0].length; j++)
-			{
-				if(!(this._matrix[i][j] == otherZone._matrix[i][j]))
-				{
-					return false;
-				}
-			}
+			return false;
 		}
 		
 		
@@ -2140,11 +2151,8 @@ public class Zone implements Equivalence{
 				// of the other Zone.
 				for(int i=0; i<_matrix.length; i++)
 				{
-					for(int j=0; j<_matrix[0].length; j++)
-					{
-						if(!(this._matrix[i][j] <= otherZone._matrix[i][j])){
-							return false;
-						}
+					if(!(this._matrix[i] <= otherZone._matrix[i])){
+						return false;
 					}
 				}
 				
@@ -2152,6 +2160,30 @@ public class Zone implements Equivalence{
 				return true;
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utah.ece.async.lema.verification.timed_state_exploration.octagon.Equivalence#getDbmVariablesHashCode()
+	 */
+	@Override
+	public int getDbmVariablesHashCode(){
+		return Arrays.hashCode(_indexToTimerPair);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see edu.utah.ece.async.lema.verification.timed_state_exploration.octagon.Equivalence#getMatrixSum()
+	 */
+	@Override
+	public long getMatrixSum(){
+		long sum = 0;
+		
+		for(int i=0; i<_matrix.length; i++){
+			sum += _matrix[i];
+		}
+		
+		return sum;
+	}
+	
 	/**
 	 * Determines if this zone is a superset of Zone otherZone.
 	 * @param otherZone 
@@ -2188,14 +2220,11 @@ public class Zone implements Equivalence{
 	 */
 	private int createHashCode()
 	{
-		int newHashCode = Arrays.hashCode(_indexToTimerPair);
-		
-		for(int i=0; i<_matrix.length; i++)
-		{
-			newHashCode ^= Arrays.hashCode(_matrix[i]);
-		}
+		int newHashCode = 31*Arrays.hashCode(_indexToTimerPair)
+				+ Arrays.hashCode(_matrix);
 		
-		return Math.abs(newHashCode);
+		// Keep the hash code non-negative since a negative value marks it as unset.
+		return newHashCode & Integer.MAX_VALUE;
 	}
 	
 	/**
@@ -2224,25 +2253,151 @@ public class Zone implements Equivalence{
 	@Override
 	public void recononicalize()
 	{
-		for(int k=0; k<dbmSize(); k++)
+		int size = dbmSize();
+		
+		for(int k=0; k<size; k++)
 		{
-			for (int i=0; i<dbmSize(); i++)
+			int rowK = matrixIndex(dbmIndexToMatrixIndex(k), dbmIndexToMatrixIndex(0));
+			
+			for(int i=0; i<size; i++)
 			{
-				for(int j=0; j<dbmSize(); j++)
+				int rowI = matrixIndex(dbmIndexToMatrixIndex(i), dbmIndexToMatrixIndex(0));
+				int ik = _matrix[rowI + k];
+				
+				if(ik == INFINITY)
 				{
-					if(getDbmEntry(i, k) != INFINITY && getDbmEntry(k, j) != INFINITY
-							&& getDbmEntry(i, j) > getDbmEntry(i, k) + getDbmEntry(k, j))
-					{
-						setDbmEntry(i, j, getDbmEntry(i, k) + getDbmEntry(k, j));
-					}
+					continue;
+				}
+				
+				for(int j=0; j<size; j++)
+				{
+					int kj = _matrix[rowK + j];
 					
-					if( (i==j) && getDbmEntry(i, j) != 0)
+					if(kj != INFINITY && _matrix[rowI + j] > ik + kj)
 					{
-						throw new DiagonalNonZeroException("Entry (" + i + ", " + j + ")" +
-								" became " + getDbmEntry(i, j) + ".");
+						_matrix[rowI + j] = ik + kj;
 					}
 				}
 			}
+			
+			// The (i, i) entry only changes in the pass over row i, so the
+			// diagonal can be checked once the pass for k is done.
+			for(int i=0; i<size; i++)
+			{
+				int ii = _matrix[matrixIndex(dbmIndexToMatrixIndex(i),
+						dbmIndexToMatrixIndex(0)) + i];
+				
+				if(ii != 0)
+				{
+					throw new DiagonalNonZeroException("Entry (" + i + ", " + i + ")" +
+							" became " + ii + ".");
+				}
+			}
+		}
+		
+		_hashCode = -1;
+	}
+	
+	/**
+	 * Restores a reduced DBM after the (i, j) entry has been lowered. Only
+	 * the paths that go through the new (i, j) entry can become shorter, so
+	 * this takes O(n^2) time instead of the O(n^3) time of recononicalize.
+	 * The rest of the DBM must already be reduced.
+	 * @param i
+	 * 			The row of the DBM entry that was lowered.
+	 * @param j
+	 * 			The column of the DBM entry that was lowered.
+	 */
+	private void tighten(int i, int j)
+	{
+		int size = dbmSize();
+		int ij = getDbmEntry(i, j);
+		int ji = getDbmEntry(j, i);
+		
+		if(ij == INFINITY)
+		{
+			return;
+		}
+		
+		if(ji != INFINITY && ij + ji < 0)
+		{
+			throw new DiagonalNonZeroException("Entry (" + i + ", " + i + ")" +
+					" became " + (ij + ji) + ".");
+		}
+		
+		int rowJ = matrixIndex(dbmIndexToMatrixIndex(j), dbmIndexToMatrixIndex(0));
+		
+		for(int k=0; k<size; k++)
+		{
+			int rowK = matrixIndex(dbmIndexToMatrixIndex(k), dbmIndexToMatrixIndex(0));
+			int ki = _matrix[rowK + i];
+			
+			if(ki == INFINITY)
+			{
+				continue;
+			}
+			
+			int kj = ki + ij;
+			
+			for(int l=0; l<size; l++)
+			{
+				int jl = _matrix[rowJ + l];
+				
+				if(jl != INFINITY && _matrix[rowK + l] > kj + jl)
+				{
+					_matrix[rowK + l] = kj + jl;
+				}
+			}
+		}
+		
+		_hashCode = -1;
+	}
+	
+	/**
+	 * Reduces the DBM after advance(State[]) when the DBM was reduced before
+	 * the advance. Letting time pass does not change how the timers relate to
+	 * each other, so with the upper bounds removed the DBM is still reduced.
+	 * The new upper bounds are then added back one at a time with tighten.
+	 */
+	private void recononicalizeAdvanced()
+	{
+		int size = dbmSize();
+		int[] upperBounds = new int[size];
+		
+		for(int i=1; i<size; i++)
+		{
+			upperBounds[i] = getDbmEntry(0, i);
+			setDbmEntry(0, i, INFINITY);
+		}
+		
+		for(int i=1; i<size; i++)
+		{
+			if(upperBounds[i] < getDbmEntry(0, i))
+			{
+				setDbmEntry(0, i, upperBounds[i]);
+				tighten(0, i);
+			}
+		}
+		
+		_hashCode = -1;
+	}
+	
+	/**
+	 * Resets a timer to zero in O(n) time. After the reset the timer relates
+	 * to every other timer the same way the zero timer does.
+	 * @param i
+	 * 			The DBM index of the timer to reset.
+	 */
+	private void resetTimer(int i)
+	{
+		for(int j=0; j<dbmSize(); j++)
+		{
+			setDbmEntry(i, j, getDbmEntry(0, j));
+		}
+		
+		for(int j=0; j<dbmSize(); j++)
+		{
+			setDbmEntry(j, i, getDbmEntry(j, 0));
 		}
 	}
 	
@@ -2279,8 +2434,8 @@ public class Zone implements Equivalence{
 
 		// Note : Make sure that the lower bound is stored as a negative number
 		// and that the inequality is correct.
-		return _matrix[0][dbmIndexToMatrixIndex(index)] <=
-			_matrix[1][dbmIndexToMatrixIndex(index)];
+		return _matrix[matrixIndex(0, dbmIndexToMatrixIndex(index))] <=
+			_matrix[matrixIndex(1, dbmIndexToMatrixIndex(index))];
 	}
 	
 	/* (non-Javadoc)
@@ -2372,8 +2527,9 @@ public class Zone implements Equivalence{
 		
 		newZone.advance(localStates);
 		
-		// Recanonicalize
-		newZone.recononicalize();
+		// Recanonicalize. The zone was reduced before the advance, so only the
+		// new upper bounds need to be worked back in.
+		newZone.recononicalizeAdvanced();
 		
 		
 		newZone.checkZoneMaxSize();
@@ -2457,7 +2613,7 @@ public class Zone implements Equivalence{
 		}
 		
 		// Create the new matrix.
-		newZone._matrix = new int[newZone.matrixSize()][newZone.matrixSize()];
+		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 		
 		// TODO: For simplicity, make a copy of the current zone and perform the
 		// restriction and re-canonicalization. Later add a copy re-canonicalization
@@ -2488,8 +2644,8 @@ public class Zone implements Equivalence{
 				int newIndexj = j==0 ? 0 : 
 					Arrays.binarySearch(newZone._indexToTimerPair, tempZone._indexToTimerPair[j]);
 				
-				newZone._matrix[Zone.dbmIndexToMatrixIndex(newIndexi)]
-						[Zone.dbmIndexToMatrixIndex(newIndexj)]
+				newZone._matrix[newZone.matrixIndex(Zone.dbmIndexToMatrixIndex(newIndexi),
+						Zone.dbmIndexToMatrixIndex(newIndexj))]
 								= tempZone.getDbmEntry(i, j);
 			}
 		}
@@ -2693,7 +2849,7 @@ public class Zone implements Equivalence{
 		}
 		
 		// Create the new matrix.
-		newZone._matrix = new int[newZone.matrixSize()][newZone.matrixSize()];
+		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 		
 		// TODO: For simplicity, make a copy of the current zone and perform the
 		// restriction and re-canonicalization. Later add a copy re-canonicalization
@@ -2726,8 +2882,8 @@ public class Zone implements Equivalence{
 					Arrays.binarySearch(newZone._indexToTimerPair,
 							tempZone._indexToTimerPair[j]);
 				
-				newZone._matrix[Zone.dbmIndexToMatrixIndex(newIndexi)]
-						[Zone.dbmIndexToMatrixIndex(newIndexj)]
+				newZone._matrix[newZone.matrixIndex(Zone.dbmIndexToMatrixIndex(newIndexi),
+						Zone.dbmIndexToMatrixIndex(newIndexj))]
 								= tempZone.getDbmEntry(i, j);
 			}
 		}
@@ -2808,20 +2964,11 @@ public class Zone implements Equivalence{
 		}
 		
 		
-		// Copy in the new relations for the new timers.
+		// Copy in the new relations for the new timers. The old timers have
+		// already been copied, so a new timer starts out at the zero timer.
 		for(LPNTransitionPair timerNew : newTimers)
 		{
-			for(LPNTransitionPair timerOld : oldTimers)
-			{	
-				newZone.setDbmEntry(newZone.timerIndexToDBMIndex(timerNew),
-						newZone.timerIndexToDBMIndex(timerOld),
-						 tempZone.getDbmEntry(0, tempZone.timerIndexToDBMIndex(timerOld)));
-
-				
-				newZone.setDbmEntry(newZone.timerIndexToDBMIndex(timerOld),
-						newZone.timerIndexToDBMIndex(timerNew),
-						tempZone.getDbmEntry(tempZone.timerIndexToDBMIndex(timerOld), 0));
-			}
+			newZone.resetTimer(newZone.timerIndexToDBMIndex(timerNew));
 		}
 		
 		// Set the upper and lower bounds for the new timers.
@@ -3466,7 +3613,7 @@ public class Zone implements Equivalence{
 	{
 		for(int i=0; i<dbmSize(); i++)
 		{
-			_matrix[dbmIndexToMatrixIndex(0)][dbmIndexToMatrixIndex(i)] = 
+			_matrix[matrixIndex(dbmIndexToMatrixIndex(0), dbmIndexToMatrixIndex(i))] =
 				getUpperBoundbydbmIndex(i);
 		}
 		
@@ -3546,8 +3693,8 @@ public class Zone implements Equivalence{
 				int newIndexj = j==0 ? 0 : 
 					Arrays.binarySearch(_indexToTimerPair, tempZone._indexToTimerPair[j]);
 
-				_matrix[dbmIndexToMatrixIndex(newIndexi)]
-						[dbmIndexToMatrixIndex(newIndexj)]
+				_matrix[matrixIndex(dbmIndexToMatrixIndex(newIndexi),
+						dbmIndexToMatrixIndex(newIndexj))]
 								= tempZone.getDbmEntry(i, j);
 			}
 		}
@@ -3650,8 +3797,8 @@ public class Zone implements Equivalence{
 //					-1*getDbmEntry(0,
 //							dbmIndexToMatrixIndex(i)));
 			
-			int lower = -1*_matrix[dbmIndexToMatrixIndex(i)][0];
-			int upper = _matrix[0][dbmIndexToMatrixIndex(i)];
+			int lower = -1*_matrix[matrixIndex(dbmIndexToMatrixIndex(i), 0)];
+			int upper = _matrix[matrixIndex(0, dbmIndexToMatrixIndex(i))];
 			int newRate;
 			
 //			if(upper == 0){
@@ -3878,7 +4025,7 @@ public class Zone implements Equivalence{
 		/*
 		 * Copy over the old matrix values and new constraints.
 		 */
-		newZone._matrix = new int[newZone.matrixSize()][newZone.matrixSize()];
+		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 	    
 		for(int i =0; i< this.dbmSize(); i++){
 			
@@ -3892,10 +4039,10 @@ public class Zone implements Equivalence{
 			}
 			
 			// Copy upper and lower bounds for the variable.
-			newZone._matrix[dbmIndexToMatrixIndex(newi)][0] =
-					this._matrix[dbmIndexToMatrixIndex(i)][0];
-			newZone._matrix[0][dbmIndexToMatrixIndex(newi)] =
-					this._matrix[0][dbmIndexToMatrixIndex(i)];
+			newZone._matrix[newZone.matrixIndex(dbmIndexToMatrixIndex(newi), 0)] =
+					this._matrix[this.matrixIndex(dbmIndexToMatrixIndex(i), 0)];
+			newZone._matrix[newZone.matrixIndex(0, dbmIndexToMatrixIndex(newi))] =
+					this._matrix[this.matrixIndex(0, dbmIndexToMatrixIndex(i))];
 			
 			
 			// Copy the DBM Entry
@@ -4537,15 +4684,7 @@ public class Zone implements Equivalence{
 		
 		Zone clonedZone = new Zone();
 		
-		clonedZone._matrix = new int[this.matrixSize()][this.matrixSize()];
-		
-		for(int i=0; i<this.matrixSize(); i++)
-		{
-			for(int j=0; j<this.matrixSize(); j++)
-			{
-				clonedZone._matrix[i][j] = this._matrix[i][j];
-			}
-		}
+		clonedZone._matrix = Arrays.copyOf(this._matrix, this._matrix.length);
 		
 //		clonedZone._indexToTimerPair = Arrays.copyOf(_indexToTimerPair, _indexToTimerPair.length);
 		
@@ -4555,7 +4694,8 @@ public class Zone implements Equivalence{
 			clonedZone._indexToTimerPair[i] = this._indexToTimerPair[i].clone();
 		}
 		
-		clonedZone._hashCode = this._hashCode;
+		// The clone is usually altered right away, so its hash code is left
+		// unset rather than copied.
 		
 		clonedZone._lpnList = Arrays.copyOf(this._lpnList, this._lpnList.length);
 		
@@ -4574,7 +4714,8 @@ public class Zone implements Equivalence{
 	{
 		//int dbmIndex = Arrays.binarySearch(_indexToTimer, timer);
 		
-		_matrix[dbmIndexToMatrixIndex(timer)][dbmIndexToMatrixIndex(0)]
+		_matrix[matrixIndex(dbmIndexToMatrixIndex(timer),
+				dbmIndexToMatrixIndex(0))]
 		                                            = getLowerBoundbydbmIndex(timer);
 	}
 	
@@ -6387,7 +6528,7 @@ public class Zone implements Equivalence{
 		Arrays.sort(newZone._indexToTimerPair);
 		
 		// Create matrix.
-		newZone._matrix = new int[newZone._indexToTimerPair.length+1][newZone._indexToTimerPair.length+1];
+		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 		
 		// Convert the current transitions to a collection of transitions.
 		HashSet<LPNTransitionPair> oldTransitionSet = new HashSet<LPNTransitionPair>();
@@ -6481,7 +6622,7 @@ public class Zone implements Equivalence{
 		Arrays.sort(newZone._indexToTimerPair);
 
 		// Create matrix.
-		newZone._matrix = new int[newZone._indexToTimerPair.length+1][newZone._indexToTimerPair.length+1];
+		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 
 		// Convert the current transitions to a collection of transitions.
 		HashSet<LPNTransitionPair> oldTransitionSet = new HashSet<LPNTransitionPair>();
@@ -6607,7 +6748,7 @@ public class Zone implements Equivalence{
 		}
 		
 		// Copy over the DBM
-		newZone._matrix = new int[newZone.matrixSize()][newZone.matrixSize()];
+		newZone._matrix = new int[newZone.matrixSize()*newZone.matrixSize()];
 		
 		int offseti = 0;
 		int offsetj = 0;
@@ -6623,7 +6764,8 @@ public class Zone implements Equivalence{
 					offsetj++;
 				}
 				
-				newZone._matrix[i][j] = this._matrix[i+offseti][j+offsetj];
+				newZone._matrix[newZone.matrixIndex(i, j)] =
+						this._matrix[this.matrixIndex(i+offseti, j+offsetj)];
 			}
 		}
 		